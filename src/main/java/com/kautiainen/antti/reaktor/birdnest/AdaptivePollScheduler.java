@@ -0,0 +1,315 @@
+package com.kautiainen.antti.reaktor.birdnest;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+
+import javax.validation.constraints.NotNull;
+
+/**
+ * AdaptivePollScheduler schedules the fetches of the captures just after the
+ * next capture is expected to be available.
+ * <p>
+ * The scheduler learns the emission period of the device from the capture
+ * times of the consecutive captures, and the offset from the capture time to
+ * the moment the capture is available from the fetch times. The offset
+ * contains both the publication latency and the clock difference between the
+ * device and this host. The next fetch is scheduled a guard time after the next
+ * expected capture is available.
+ * </p>
+ * <p>
+ * After each fetch on time the offset is probed slightly earlier. A fetch
+ * returning the same capture again means the fetch was too early, and the fetch
+ * is retried with doubling retry delays until the next capture appears, which
+ * reacquires the offset. A capture time skipping frames is counted as missed
+ * frames.
+ * </p>
+ */
+public class AdaptivePollScheduler {
+
+    /**
+     * The default guard time.
+     */
+    public static final Duration DEFAULT_GUARD = Duration.ofMillis(50);
+
+    /**
+     * The weight of a new period sample in the period estimate.
+     */
+    private static final double PERIOD_WEIGHT = 0.25;
+
+    /**
+     * The weight of a new age sample in the average data age.
+     */
+    private static final double AGE_WEIGHT = 0.1;
+
+    /**
+     * The clock of the fetch times.
+     */
+    private final Clock clock_;
+
+    /**
+     * The period used until the period has been learned.
+     */
+    private final Duration defaultPeriod_;
+
+    /**
+     * The guard time.
+     */
+    private final long guardNanos_;
+
+    /**
+     * The learned period in nanoseconds. Zero, if not learned.
+     */
+    private double periodNanos_ = 0;
+
+    /**
+     * The current retry delay in nanoseconds.
+     */
+    private long retryNanos_;
+
+    /**
+     * The estimated offset from the capture time to the availability of the
+     * capture in nanoseconds.
+     */
+    private Long offsetNanos_ = null;
+
+    /**
+     * The capture time of the latest capture.
+     */
+    private Instant lastCapture_ = null;
+
+    /**
+     * The number of consecutive fetches returning the latest capture again.
+     */
+    private int repeats_ = 0;
+
+    /**
+     * The number of observed captures.
+     */
+    private long observedFrames_ = 0;
+
+    /**
+     * The number of frames skipped between the observed captures.
+     */
+    private long missedFrames_ = 0;
+
+    /**
+     * The number of fetches which returned a capture already seen.
+     */
+    private long repeatedFetches_ = 0;
+
+    /**
+     * The age of the latest capture when it was fetched.
+     */
+    private Duration lastDataAge_ = null;
+
+    /**
+     * The moving average of the data age at fetch in nanoseconds.
+     */
+    private double averageDataAgeNanos_ = 0;
+
+    /**
+     * Create a new scheduler using the system clock.
+     *
+     * @param defaultPeriod The period used until the period has been learned.
+     * @throws IllegalArgumentException The period was invalid.
+     */
+    public AdaptivePollScheduler(@NotNull Duration defaultPeriod) throws IllegalArgumentException {
+        this(defaultPeriod, DEFAULT_GUARD, Clock.systemUTC());
+    }
+
+    /**
+     * Create a new scheduler.
+     *
+     * @param defaultPeriod The period used until the period has been learned.
+     * @param guard         The time waited after the expected availability of
+     *                      the next capture, and the first retry delay.
+     * @param clock         The clock of the fetch times.
+     * @throws IllegalArgumentException Any argument was invalid.
+     */
+    public AdaptivePollScheduler(@NotNull Duration defaultPeriod, @NotNull Duration guard, @NotNull Clock clock)
+            throws IllegalArgumentException {
+        if (defaultPeriod == null || defaultPeriod.isNegative() || defaultPeriod.isZero()) {
+            throw new IllegalArgumentException("Invalid default period");
+        }
+        if (guard == null || guard.isNegative() || guard.isZero()) {
+            throw new IllegalArgumentException("Invalid guard time");
+        }
+        if (clock == null) {
+            throw new IllegalArgumentException("Undefined clock");
+        }
+        this.defaultPeriod_ = defaultPeriod;
+        this.guardNanos_ = guard.toNanos();
+        this.retryNanos_ = guardNanos_;
+        this.clock_ = clock;
+    }
+
+    /**
+     * Record a fetch at the current time of the clock.
+     *
+     * @param captureTime The capture time of the current capture after the
+     *                    fetch, or an undefined value, if there is no capture.
+     * @param changed     Did the fetch replace the capture with a new capture.
+     */
+    public synchronized void recordFetch(ZonedDateTime captureTime, boolean changed) {
+        if (captureTime == null) {
+            return;
+        }
+        Instant now = clock_.instant();
+        Instant capture = captureTime.toInstant();
+        if (!changed || (lastCapture_ != null && !capture.isAfter(lastCapture_))) {
+            // The fetch was too early for the next capture.
+            if (repeats_ > 0) {
+                retryNanos_ = Math.max(guardNanos_, Math.min(retryNanos_ * 2, getPeriodNanos() / 2));
+            }
+            repeats_++;
+            repeatedFetches_++;
+            return;
+        }
+
+        if (lastCapture_ != null) {
+            long delta = Duration.between(lastCapture_, capture).toNanos();
+            if (periodNanos_ == 0) {
+                periodNanos_ = delta;
+            } else {
+                long frames = Math.max(1, Math.round(delta / periodNanos_));
+                missedFrames_ += frames - 1;
+                periodNanos_ += PERIOD_WEIGHT * (delta / (double) frames - periodNanos_);
+            }
+        }
+
+        long offset = Duration.between(capture, now).toNanos();
+        if (offsetNanos_ == null || repeats_ > 0) {
+            // The capture appeared after the previous fetch, so the fetch time is
+            // close to the availability of the capture.
+            offsetNanos_ = offset;
+        } else {
+            // Probing slightly earlier availability.
+            offsetNanos_ = Math.min(offsetNanos_, offset) - guardNanos_ / 2;
+        }
+        repeats_ = 0;
+        retryNanos_ = guardNanos_;
+        observedFrames_++;
+        lastCapture_ = capture;
+        lastDataAge_ = Duration.ofNanos(offset);
+        averageDataAgeNanos_ = observedFrames_ == 1 ? offset
+                : averageDataAgeNanos_ + AGE_WEIGHT * (offset - averageDataAgeNanos_);
+    }
+
+    /**
+     * Get the delay to the next fetch from the current time of the clock.
+     *
+     * @return The delay until the next capture is expected to be available
+     *         added with the guard time.
+     */
+    public synchronized Duration nextDelay() {
+        long period = getPeriodNanos();
+        if (lastCapture_ == null || offsetNanos_ == null) {
+            return Duration.ofNanos(period);
+        }
+        if (repeats_ > 0) {
+            // Retrying until the next capture appears.
+            return Duration.ofNanos(retryNanos_);
+        }
+        Instant now = clock_.instant();
+        Instant available = lastCapture_.plusNanos(offsetNanos_ + guardNanos_);
+        long sinceAvailable = Duration.between(available, now).toNanos();
+        long frames = Math.max(1, Math.floorDiv(sinceAvailable, period) + 1);
+        long delay = Duration.between(now, available.plusNanos(frames * period)).toNanos();
+        return Duration.ofNanos(Math.max(0, Math.min(delay, 2 * period)));
+    }
+
+    /**
+     * Get the period in nanoseconds.
+     *
+     * @return The learned period, or the default period.
+     */
+    private long getPeriodNanos() {
+        return periodNanos_ > 0 ? (long) periodNanos_ : defaultPeriod_.toNanos();
+    }
+
+    /**
+     * Get the emission period.
+     *
+     * @return The learned emission period, or the default period, if the period
+     *         has not been learned.
+     */
+    public synchronized Duration getPeriod() {
+        return Duration.ofNanos(getPeriodNanos());
+    }
+
+    /**
+     * Get the estimated availability offset.
+     *
+     * @return The estimated time from the capture time to the availability of
+     *         the capture, or an undefined value, if no capture has been
+     *         fetched.
+     */
+    public synchronized Duration getAvailabilityOffset() {
+        return offsetNanos_ == null ? null : Duration.ofNanos(offsetNanos_);
+    }
+
+    /**
+     * Get the number of observed captures.
+     *
+     * @return The number of different captures fetched.
+     */
+    public synchronized long getObservedFrameCount() {
+        return observedFrames_;
+    }
+
+    /**
+     * Get the number of missed captures.
+     *
+     * @return The number of captures skipped between the fetched captures.
+     */
+    public synchronized long getMissedFrameCount() {
+        return missedFrames_;
+    }
+
+    /**
+     * Get the number of fetches which returned a capture already seen.
+     *
+     * @return The number of repeated fetches.
+     */
+    public synchronized long getRepeatedFetchCount() {
+        return repeatedFetches_;
+    }
+
+    /**
+     * Get the frame miss rate.
+     *
+     * @return The ratio of the missed captures to all captures emitted since the
+     *         first fetched capture.
+     */
+    public synchronized double getFrameMissRate() {
+        long total = observedFrames_ + missedFrames_;
+        return total == 0 ? 0.0 : missedFrames_ / (double) total;
+    }
+
+    /**
+     * Get the age of the latest capture at fetch.
+     *
+     * @return The time from the capture time of the latest capture to its fetch,
+     *         or an undefined value, if no capture has been fetched.
+     */
+    public synchronized Duration getLastDataAge() {
+        return lastDataAge_;
+    }
+
+    /**
+     * Get the moving average of the data age at fetch.
+     *
+     * @return The moving average of the time from the capture time to the fetch.
+     */
+    public synchronized Duration getAverageDataAge() {
+        return Duration.ofNanos((long) averageDataAgeNanos_);
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("AdaptivePollScheduler[period: %s; frames: %d; missed: %d; repeated: %d; age: %s]",
+                getPeriod(), observedFrames_, missedFrames_, repeatedFetches_, getAverageDataAge());
+    }
+}
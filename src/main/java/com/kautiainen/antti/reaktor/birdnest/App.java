@@ -5,16 +5,16 @@ import java.io.InputStreamReader;
 import java.io.PrintWriter;
 import java.lang.System.Logger.Level;
 import java.net.URISyntaxException;
+import java.time.Duration;
 import java.time.ZonedDateTime;
-import java.util.Collections;
-import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
-import java.util.TreeMap;
 
+import javax.json.JsonObject;
 import javax.validation.constraints.NotNull;
 
-import org.w3c.dom.Element;
+import com.kautiainen.antti.reaktor.birdnest.spatial.Zone;
+import com.kautiainen.antti.reaktor.birdnest.work.Worker;
+import com.kautiainen.antti.reaktor.birdnest.work.WorkerPool;
 
 /**
  * The main application on server side performing the update of drones.
@@ -30,22 +30,21 @@ public class App {
      * Output the drone list.
      * 
      * @param output The stream into which the printing is performed.
-     * @param drones The printed drone elements as elements.
+     * @param drones The printed drone observations.
      * @throws IOException The operation failed due Output Exception.
      */
-    public static void printDroneList(@NotNull PrintWriter output, @NotNull List<Element> drones) throws IOException {
-        synchronized (source) {
-            output.println("Drone list at " + source.getUpdateTime());
-            for (Element element : drones) {
-                output.print("Drone: ");
-                output.print(String.join("; ", java.util.Arrays.asList(
-                        source.getDroneSerialNumber(element),
-                        Double.toString(source.getDroneDistanceToNest(element)),
-                        String.format("X: %d", source.getDroneXPosition(element)),
-                        String.format("Y: %d", source.getDroneYPosition(element)),
-                        String.format("Altitude: %d", source.getDroneZPosition(element)))));
-                output.println();
-            }
+    public static void printDroneList(@NotNull PrintWriter output, @NotNull List<DroneObservation> drones)
+            throws IOException {
+        output.println("Drone list at " + source.getUpdateTime());
+        for (DroneObservation drone : drones) {
+            output.print("Drone: ");
+            output.print(String.join("; ", java.util.Arrays.asList(
+                    drone.getSerialNumber(),
+                    Double.toString(source.getDroneDistanceToNest(drone)),
+                    String.format("X: %.0f", drone.getX()),
+                    String.format("Y: %.0f", drone.getY()),
+                    String.format("Altitude: %.0f", drone.getZ()))));
+            output.println();
         }
     }
 
@@ -67,42 +66,38 @@ public class App {
         }
     
 
-        Map<String, Pilot> pilotRegistry = new TreeMap<>();
+        PilotRegistry pilotRegistry = new PilotRegistry();
 
-        DataUpdaterThread updater = new DataUpdaterThread(App.source);
-        updater.start();
+        WorkerPool workers = new WorkerPool("birdnest");
+        DataUpdater updater = new DataUpdater(App.source);
+        workers.start("drone-updater", updater);
         PilotDataUpdater pilotDataUpdater = new PilotDataUpdater(source, pilotRegistry, new PilotLoader(
                 BirdnestServlet.DEFAULT_PILOT_DATA_HOST,
                 BirdnestServlet.DEFAULT_PILOT_DATA_RESOURCE_PATH));
-        // pilotDataUpdater.start();
+        // workers.start("pilot-updater", pilotDataUpdater);
 
         // The loop performing the acquisition of the drones.
         try {
             final BufferedReader reader = new BufferedReader(new InputStreamReader(System.in));
             final PrintWriter writer = new PrintWriter(System.out);
 
-            Thread droneOutputter = new Thread(new Runnable() {
-
-                @Override
-                public void run() {
-                    try {
-                        App.printDroneList(writer, source.getMatchingDroneNodes());
-                    } catch (IOException e) {
-                        // The output failed.
-                        System.getLogger(App.class.getName()).log(Level.ERROR,
-                                "Printing drones failed due exception: %s\nStack trace: %s", e.getClass(),
-                                e.getStackTrace());
-                    }
-                    try {
-                        Thread.sleep(1000);
-                    } catch (InterruptedException e) {
-                        System.getLogger(App.class.getName()).log(Level.ERROR, "Drone outputter interrupted %s",
-                                e.getMessage());
-                    }
+            workers.submit(() -> {
+                try {
+                    App.printDroneList(writer, source.getMatchingDrones());
+                } catch (IOException e) {
+                    // The output failed.
+                    System.getLogger(App.class.getName()).log(Level.ERROR,
+                            "Printing drones failed due exception: %s\nStack trace: %s", e.getClass(),
+                            e.getStackTrace());
                 }
-
+                try {
+                    Thread.sleep(1000);
+                } catch (InterruptedException e) {
+                    System.getLogger(App.class.getName()).log(Level.ERROR, "Drone outputter interrupted %s",
+                            e.getMessage());
+                }
+                return null;
             });
-            droneOutputter.start();
 
             String line = reader.readLine();
             boolean goOn = true;
@@ -114,30 +109,34 @@ public class App {
                 } else if ("status".equals(line)) {
                     // Printing status.
                     writer.println("Status: \n");
-                    writer.println("Drone outputter Live Threads " + droneOutputter.activeCount());
-                    writer.println("Data updater Live Threads " + updater.activeCount());
+                    writer.println("Workers " + workers);
+                    writer.println("Data updater " + updater.getScheduler());
                 } else {
                     // Showing list of violating drones.
                     writer.println("Outputting the drone list on :" + ZonedDateTime.now());
-                    java.util.List<Element> violatingDrones = source.getMatchingDroneNodes();
+                    java.util.List<DroneObservation> violatingDrones = source.getMatchingDrones();
                     printDroneList(writer, violatingDrones);
                 }
                 line = reader.readLine();
             }
         } catch (java.io.IOException inputError) {
             inputError.printStackTrace();
+        } finally {
+            // Stopping the workers.
+            workers.close();
+            pilotRegistry.closeExpiryPublisher();
         }
     }
 
     /**
      * DroneaReader reads drone list and updats the map of violating pilots.
      */
-    public static class PilotDataUpdater extends Thread {
+    public static class PilotDataUpdater implements Worker {
 
         /**
-         * The map storing pilots of violations.
+         * The registry storing pilots of violations.
          */
-        private final Map<String, Pilot> pilotRegistry;
+        private final PilotRegistry pilotRegistry;
 
         /**
          * The data source of the reader.
@@ -155,9 +154,25 @@ public class App {
         private volatile boolean running = true;
 
         /**
-         * Create new randomizer.
+         * The interval of purging the expired pilots without new captures.
+         */
+        public static final Duration PURGE_INTERVAL = Duration.ofSeconds(1);
+
+        /**
+         * The queue of the capture events of the data source waiting for handling.
+         * Undefined value, if the worker has not been started.
+         */
+        private volatile CaptureQueue captures_ = null;
+
+        /**
+         * The most recent handled capture event.
+         */
+        private CaptureEvent lastCapture_ = null;
+
+        /**
+         * The serial numbers of the drones present in the most recent capture.
          */
-        private java.util.Random randomizer_ = new java.util.Random();
+        private final java.util.Set<String> presentDrones_ = new java.util.HashSet<>();
 
         /**
          * Create new drone reader.
@@ -166,7 +181,7 @@ public class App {
          * @param pilotRegistry The registry of pilots.
          * @param loader        The pilot data loader.
          */
-        public PilotDataUpdater(@NotNull DronesDataSource source, @NotNull Map<String, Pilot> pilotRegistry,
+        public PilotDataUpdater(@NotNull DronesDataSource source, @NotNull PilotRegistry pilotRegistry,
                 @NotNull PilotLoader loader) {
             this.source_ = source;
             this.loader_ = loader;
@@ -182,68 +197,105 @@ public class App {
             return source_;
         }
 
+        @Override
+        public void onStart(WorkerPool.Handle handle) {
+            this.captures_ = new CaptureQueue(CaptureQueue.DEFAULT_CAPACITY, handle::wake);
+            getDataSource().subscribeCaptures(captures_);
+        }
+
         /**
-         * The main program of the thread reading drone data, and updating
-         * the pilot data. The program checks the report change, and in case of
-         * update, updates the pilot data accordingly. It does also purge the expired
+         * The step of the worker reading drone data, and updating the pilot data.
+         * The step is woken by each new capture, and it updates the pilot data of
+         * the drones changed by the capture. It does also purge the expired
          * pilots.
+         * 
+         * @return The delay until the next step, or an undefined value, if the
+         *         updater has been shut down, or the source has stopped
+         *         publishing captures.
          */
         @Override
-        public void run() {
+        public Duration step() {
+            if (!running || captures_.isCompleted()) {
+                return null;
+            }
             DronesDataSource source = getDataSource();
-            ZonedDateTime updateTime = null;
-            ZonedDateTime expireTime = null;
-            long expireInterval;
-            java.util.List<Element> violatingDrones = Collections.emptyList();
-            java.util.List<Element> allDrones = Collections.emptyList();
-            synchronized (source) {
-                updateTime = source.getUpdateTime();
-                expireInterval = source.getUpdateInterval();
-                violatingDrones = source.getMatchingDroneNodes();
-                allDrones = source.getDroneNodes();
+            CaptureEvent event;
+            while ((event = captures_.poll()) != null) {
+                handleDelta(source, getDelta(event));
+                lastCapture_ = event;
             }
-            source.getUpdateTime().plusMinutes(source.getUpdateInterval());
-
-            // The actual execution.
-            while (running) {
-                // Testing whether we have new data or not.
-                if (expireTime == null || !ZonedDateTime.now().isBefore(expireTime)) {
-                    // Getting new drone data as the current data has been expired.
-                    synchronized (source) {
-                        updateTime = source.getUpdateTime();
-                        expireInterval = source.getUpdateInterval();
-                        violatingDrones = source.getMatchingDroneNodes();
-                        allDrones = source.getDroneNodes();
-                    }
-                }
 
-                // Synchronizing the pilot registry.
-                synchronized (pilotRegistry) {
-                    // Handling new data, if it is available.
-                    if (updateTime == null || expireTime != null && expireTime.compareTo(updateTime) <= 0) {
-                        // We do have new data.
-                        handleViolations(source, updateTime, violatingDrones);
+            // Purging old pilot data
+            purgeExpiredPilots();
+            loader_.purgeExpired();
 
-                        // Refreshing the expire time of all detected drones in the registry.
-                        updatePilotDetectionTimes(updateTime, allDrones.stream()
-                                .map((Element element) -> (source.getDroneSerialNumber(element))).toList());
+            // Waiting for the next capture.
+            return PURGE_INTERVAL;
+        }
 
-                        // Updating expire time of the thread.
-                        expireTime = updateTime.plusMinutes(expireInterval);
-                    }
+        /**
+         * Get the delta of the capture from the last handled capture. If the events
+         * between were dropped, the delta is computed from the last handled
+         * capture, and its previous capture time is the capture time preceding the
+         * event, as the drones which left may have been seen on the dropped
+         * captures.
+         * 
+         * @param event The capture event.
+         * @return The delta from the last handled capture.
+         */
+        protected DroneDelta getDelta(@NotNull CaptureEvent event) {
+            if (lastCapture_ == null || event.getSequence() == lastCapture_.getSequence() + 1) {
+                return event.getDelta();
+            }
+            DroneDelta delta = DroneDelta.between(lastCapture_.getReport(), event.getReport());
+            ZonedDateTime lastSeen = event.getDelta().getPreviousCaptureTime();
+            if (lastSeen == null) {
+                return delta;
+            }
+            return new DroneDelta(lastSeen, delta.getCaptureTime(), delta.getEntered(), delta.getMoved(),
+                    delta.getLeft(), delta.getUnchangedCount());
+        }
 
-                    // Purging old pilot data
-                    purgeExpiredPilots();
-                }
+        @Override
+        public void onStop() {
+            CaptureQueue captures = captures_;
+            if (captures != null) {
+                captures.cancel();
+            }
+        }
 
-                // Sleeping before next run.
-                try {
-                    sleep(getSleepTime());
-                } catch (InterruptedException e) {
-                    // Sleep ended.
+        /**
+         * Handle the delta of a capture. Only the changed drones are processed.
+         * The delta is handled on the thread of the worker.
+         * 
+         * @param source The data source.
+         * @param delta  The delta of the capture.
+         */
+        protected void handleDelta(@NotNull DronesDataSource source, @NotNull DroneDelta delta) {
+            // Only entered and moved drones may have new violations or closer distances.
+            java.util.List<DroneObservation> violatingDrones = new java.util.ArrayList<>();
+            for (DroneObservation drone : delta.getEntered().values()) {
+                if (source.validDrone(drone)) {
+                    violatingDrones.add(drone);
                 }
             }
+            for (DroneObservation drone : delta.getMoved().values()) {
+                if (source.validDrone(drone)) {
+                    violatingDrones.add(drone);
+                }
+            }
+            handleViolations(source, delta.getCaptureTime(), violatingDrones);
 
+            // The drones present in the area keep their pilots, and the drones leaving
+            // the area were last seen on the previous capture.
+            synchronized (this) {
+                presentDrones_.addAll(delta.getEntered().keySet());
+                presentDrones_.removeAll(delta.getLeft().keySet());
+            }
+            if (delta.getPreviousCaptureTime() != null) {
+                updatePilotDetectionTimes(delta.getPreviousCaptureTime(),
+                        new java.util.ArrayList<>(delta.getLeft().keySet()));
+            }
         }
 
         /**
@@ -252,78 +304,117 @@ public class App {
          * @param updateTime   The update time.
          * @param droneSerials The detected drone serials.
          */
-        protected synchronized void updatePilotDetectionTimes(@NotNull ZonedDateTime updateTime,
+        protected void updatePilotDetectionTimes(@NotNull ZonedDateTime updateTime,
                 @NotNull java.util.List<String> droneSerials) {
             for (String serial : droneSerials) {
-                if (pilotRegistry.containsKey(serial)) {
-                    pilotRegistry.get(serial).updateExpireTime(updateTime);
-                }
+                pilotRegistry.recordSighting(serial, updateTime);
             }
         }
 
         /**
-         * Handle DMZ violating drones.
+         * Handle DMZ violating drones. The pilots of the new drones are resolved
+         * concurrently, and each pilot is added to the registry as soon as it has
+         * been loaded.
          * 
          * @param source          The data source.
          * @param updateTime      Teh update time of the violation.
          * @param violatingDrones The violating drones.
          */
-        protected synchronized void handleViolations(DronesDataSource source, ZonedDateTime updateTime,
-                java.util.List<Element> violatingDrones) {
-            // Adding new pilots and updating the distance.
-            for (Element element : violatingDrones) {
-                String serial = source.getDroneSerialNumber(element);
-                double distance = source.getDroneDistanceToNest(element);
-                if (pilotRegistry.containsKey(serial)) {
-                    // Updating distance - the expire time is updated along with all drones update.
-                    Pilot pilot = pilotRegistry.get(serial);
-                    if (pilot.getClosestDistanceToNest() > distance) {
-                        pilot.setClosestDistanceToNest(distance);
-                    }
+        protected void handleViolations(DronesDataSource source, ZonedDateTime updateTime,
+                java.util.List<DroneObservation> violatingDrones) {
+            // Updating the distance of the known pilots.
+            java.util.Map<String, DroneObservation> newDrones = new java.util.LinkedHashMap<>();
+            for (DroneObservation drone : violatingDrones) {
+                String serial = drone.getSerialNumber();
+                if (serial == null) {
+                    continue;
+                }
+                if (pilotRegistry.recordSighting(serial, updateTime, source.getDroneDistanceToNest(drone))) {
+                    updateZoneDistances(source, pilotRegistry.get(serial), drone);
                 } else {
-                    // Creating new pilot data.
-                    Pilot pilot;
-                    try {
-                        pilot = loader_.getPilot(serial, updateTime, distance);
-                    } catch (IllegalArgumentException | IOException e) {
-                        // Logging error and creating stub pilot
-                        System.getLogger(App.class.getName()).log(Level.ERROR, "Could not get pilot info: ",
-                                e.getMessage());
-                        pilot = new Pilot(serial, updateTime, distance, "[Drone:" + serial + "]", null,
-                                null);
-                    }
-                    pilotRegistry.put(serial, pilot);
+                    newDrones.put(serial, drone);
                 }
             }
+
+            // Creating new pilot data.
+            if (!newDrones.isEmpty()) {
+                loader_.resolveAll(newDrones.keySet(), PilotLoader.DEFAULT_RESOLVE_TIMEOUT,
+                        (String serial, JsonObject data) -> pilotRegistry
+                                .add(loadPilot(source, updateTime, newDrones.get(serial), data)),
+                        (String serial, Throwable failure) -> pilotRegistry
+                                .add(loadPilot(source, updateTime, newDrones.get(serial), failure)));
+            }
         }
 
         /**
-         * Removes all expired pilots from the pilot registry.
+         * Create the pilot of the drone from the loaded pilot data. If the pilot
+         * data is not suitable, a stub pilot is created.
+         * 
+         * @param source     The data source.
+         * @param updateTime The update time of the violation.
+         * @param drone      The violating drone.
+         * @param data       The loaded pilot data.
+         * @return The pilot of the drone.
          */
-        protected synchronized void purgeExpiredPilots() {
-            Iterator<Map.Entry<String, Pilot>> iterator = pilotRegistry.entrySet().iterator();
+        protected Pilot loadPilot(DronesDataSource source, ZonedDateTime updateTime, DroneObservation drone,
+                JsonObject data) {
+            String serial = drone.getSerialNumber();
+            double distance = source.getDroneDistanceToNest(drone);
             Pilot pilot;
-            while (iterator.hasNext()) {
-                pilot = iterator.next().getValue();
-                if (!pilot.isValid()) {
-                    iterator.remove();
-                }
+            try {
+                pilot = loader_.createPilot(serial, data, updateTime, distance);
+            } catch (IllegalArgumentException e) {
+                return loadPilot(source, updateTime, drone, e);
             }
+            updateZoneDistances(source, pilot, drone);
+            return pilot;
+        }
+
+        /**
+         * Create the stub pilot of the drone whose pilot information is not
+         * available.
+         * 
+         * @param source     The data source.
+         * @param updateTime The update time of the violation.
+         * @param drone      The violating drone.
+         * @param failure    The failure of the loading.
+         * @return The stub pilot of the drone.
+         */
+        protected Pilot loadPilot(DronesDataSource source, ZonedDateTime updateTime, DroneObservation drone,
+                Throwable failure) {
+            // Logging error and creating stub pilot
+            System.getLogger(App.class.getName()).log(Level.ERROR, "Could not get pilot info: ",
+                    failure.getMessage());
+            Pilot pilot = new Pilot(drone.getSerialNumber(), updateTime, source.getDroneDistanceToNest(drone), null,
+                    null, null);
+            updateZoneDistances(source, pilot, drone);
+            return pilot;
         }
 
         /**
-         * The sleep time of the thread. The implemetnation does use random element in
-         * the timer choosing
-         * random time between 100 and 199 milliseconds.
+         * Update the closest distances of the pilot to the zones the drone
+         * violates.
          * 
-         * @return The sleep time of the tread. This number has to be greater than 0.
+         * @param source The data source.
+         * @param pilot  The pilot of the drone.
+         * @param drone  The violating drone.
          */
-        protected int getSleepTime() {
-            return 100 + randomizer_.nextInt(100);
+        protected void updateZoneDistances(DronesDataSource source, Pilot pilot, DroneObservation drone) {
+            for (Zone zone : source.getViolatedZones(drone)) {
+                pilot.setClosestDistanceToZone(zone.getId(), zone.distance(drone.getX(), drone.getY()));
+            }
+        }
+
+        /**
+         * Removes the expired pilots from the pilot registry. The pilots of the
+         * drones still present are kept.
+         */
+        protected synchronized void purgeExpiredPilots() {
+            pilotRegistry.removeExpired(ZonedDateTime.now(), presentDrones_::contains);
         }
 
         /**
-         * Shutdown the thread causing it to cease execution at the first possible
+         * Shutdown the updater causing it to cease execution at the first possible
          * occasion.
          */
         public synchronized void shutdown() {
@@ -1,18 +1,28 @@
 package com.kautiainen.antti.reaktor.birdnest;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.net.URISyntaxException;
+import java.nio.file.Paths;
+import java.time.Duration;
 import java.time.ZonedDateTime;
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 
+import javax.json.JsonObject;
+
 import javax.servlet.ServletException;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
-import org.w3c.dom.Element;
+import org.apache.commons.text.StringEscapeUtils;
+
+import com.kautiainen.antti.reaktor.birdnest.data.HttpClientRegistry;
+import com.kautiainen.antti.reaktor.birdnest.data.PersistentCache;
+import com.kautiainen.antti.reaktor.birdnest.spatial.Zone;
+import com.kautiainen.antti.reaktor.birdnest.work.Worker;
+import com.kautiainen.antti.reaktor.birdnest.work.WorkerPool;
 
 /**
  * The servlet performing the generation of the requests.
@@ -41,9 +51,16 @@ public class BirdnestServlet extends HttpServlet {
     public static final String DEFAULT_PILOT_DATA_HOST = DEFAULT_REPORT_DATA_HOST;
 
     /**
-     * The violating pilots list. This list is modified during updates.
+     * The system property of the file persisting the pilot data over the
+     * restarts. The pilot data is not persisted, if the property is not set.
+     */
+    public static final String PILOT_CACHE_FILE_PROPERTY = "birdnest.pilotCacheFile";
+
+    /**
+     * The registry of the violating pilots. The registry is modified during
+     * updates, and read without locking during the page loads.
      */
-    private volatile java.util.List<Pilot> violatingPilots = new ArrayList<>();
+    private final PilotRegistry violatingPilots_ = new PilotRegistry();
 
     /**
      * The data source.
@@ -51,9 +68,15 @@ public class BirdnestServlet extends HttpServlet {
     private DronesDataSource source_ = null;
 
     /**
-     * The thread updating the data.
+     * The worker updating the data.
      */
-    private DataUpdaterThread updater_ = null;
+    private DataUpdater updater_ = null;
+
+    /**
+     * The pool running the workers of the servlet. Undefined value, if the
+     * servlet has not been initialized.
+     */
+    private WorkerPool workers_ = null;
 
     /**
      * The loader of the pilots.
@@ -65,44 +88,49 @@ public class BirdnestServlet extends HttpServlet {
      * 
      * @param now THe current time.
      */
-    public synchronized void removeExpiredPilots(ZonedDateTime now) {
-        java.util.Iterator<Pilot> pilotIterator = getViolatingPilots().iterator();
-        while (pilotIterator.hasNext()) {
-            Pilot pilot = pilotIterator.next();
-            if (!pilot.isValid(now)) {
-                // Removing the expired pilot.
-                pilotIterator.remove();
-            }
-        }
+    public void removeExpiredPilots(ZonedDateTime now) {
+        violatingPilots_.removeExpired(now);
     }
 
     /**
-     * Add violating pilot.
+     * Add violating pilot. If the pilot of the drone is already known, the
+     * sighting of the added pilot is merged into the known pilot.
      * 
      * @param pilot The violating pilot.
      * @throws IllegalArgumentException The illegal argument exception.
      */
-    protected synchronized void addViolatingPilot(Pilot pilot) throws IllegalArgumentException {
-        if (pilot != null) {
-            getViolatingPilots().add(pilot);
-        } else {
-            throw new IllegalArgumentException("Undefined pilot cannot be added");
-        }
+    protected void addViolatingPilot(Pilot pilot) throws IllegalArgumentException {
+        violatingPilots_.add(pilot);
     }
 
     /**
      * Get the violating pilots.
      * 
-     * @return The collecttion of the violating pilots.
+     * @return The unmodifiable collecttion of the violating pilots. The iteration
+     *  of the collection is weakly consistent.
      */
-    private synchronized Collection<Pilot> getViolatingPilots() {
-        return this.violatingPilots;
+    protected Collection<Pilot> getViolatingPilots() {
+        return violatingPilots_.getPilots();
+    }
+
+    /**
+     * Get the registry of the violating pilots.
+     * 
+     * @return The registry of the violating pilots.
+     */
+    public PilotRegistry getPilotRegistry() {
+        return violatingPilots_;
     }
 
     /**
      * Pilot data updater updates the pilot data.
      */
-    public class PilotDataUpdater extends Thread {
+    public class PilotDataUpdater implements Worker {
+
+        /**
+         * The interval of removing the expired pilots without new captures.
+         */
+        public static final long PURGE_INTERVAL_MS = 1000;
 
         public PilotDataUpdater() {
 
@@ -112,89 +140,160 @@ public class BirdnestServlet extends HttpServlet {
 
         private volatile boolean goOn_ = true;
 
+        /**
+         * The queue of the capture events. Undefined value, if the worker has not
+         * been started.
+         */
+        private volatile CaptureQueue captures_ = null;
+
+        /**
+         * The serials of the drones whose failed pilot lookup has been logged. The
+         * failure is logged once while the drone keeps violating without its
+         * pilot.
+         */
+        private final java.util.Set<String> failedLookups_ = java.util.concurrent.ConcurrentHashMap.newKeySet();
+
+        /**
+         * Update the closest distances of the pilot to the zones the drone
+         * violates.
+         * 
+         * @param pilot The pilot of the drone.
+         * @param drone The violating drone.
+         */
+        protected void updateZoneDistances(Pilot pilot, DroneObservation drone) {
+            for (Zone zone : source_.getViolatedZones(drone)) {
+                pilot.setClosestDistanceToZone(zone.getId(), zone.distance(drone.getX(), drone.getY()));
+            }
+        }
+
         @Override
-        public void run() {
-            java.util.List<Element> violatingDrones = null;
-            while (goOn_) {
-                ZonedDateTime dataUpdate = source_.getUpdateTime();
-                synchronized (source_) {
-                    if (dataUpdate != null && (lastUpdate_ == null || dataUpdate.isAfter(lastUpdate_))) {
-                        // Updating the pilot data.
-                        violatingDrones = source_.getMatchingDroneNodes();
-                    } else {
-                        // No vioalting drones was found.
-                        violatingDrones = null;
-                    }
-                }
+        public void onStart(WorkerPool.Handle handle) {
+            this.captures_ = new CaptureQueue(CaptureQueue.DEFAULT_CAPACITY, handle::wake);
+            source_.subscribeCaptures(captures_);
+        }
 
-                if (violatingDrones == null) {
-                    // Sleeping for a quarter second before checking again if pilot information
-                    // should be updated.
-                    try {
-                        Thread.sleep(250);
-                    } catch (InterruptedException e) {
-                    }
+        @Override
+        public Duration step() {
+            if (!goOn_ || captures_.isCompleted()) {
+                return null;
+            }
+            // Each snapshot contains all drones of its capture, and only the latest
+            // queued capture is handled.
+            CaptureEvent event, latest = null;
+            while ((event = captures_.poll()) != null) {
+                latest = event;
+            }
+            ZonedDateTime dataUpdate = latest == null ? null : latest.getCaptureTime();
+            if (dataUpdate != null && (lastUpdate_ == null || dataUpdate.isAfter(lastUpdate_))) {
+                // Updating pilot data for violating drones.
+                lastUpdate_ = dataUpdate;
+                handleViolations(source_.getMatchingDrones(latest.getReport()), dataUpdate);
+            }
 
-                } else {
-                    // Updating pilot data for violating drones - and removing drones which havaen't violated the area for 10 minutes.
-                    java.util.List<Element> droneList = null;
-                    ZonedDateTime violationTime = null; 
+            // Rooting out expired drones.
+            removeExpiredPilots(ZonedDateTime.now());
+            pilotLoader.purgeExpired();
 
-                    // Getting information changing on the data source before using persisting methods.
-                    synchronized (source_) {
-                        violationTime = source_.getUpdateTime();
-                        droneList  = source_.getMatchingDroneNodes();
+            // Waiting for the next capture.
+            return Duration.ofMillis(PURGE_INTERVAL_MS);
+        }
+
+        @Override
+        public void onStop() {
+            CaptureQueue captures = captures_;
+            if (captures != null) {
+                captures.cancel();
+            }
+        }
+
+        /**
+         * Update the pilots of the violating drones. The pilots of the new drones
+         * are resolved concurrently, and each pilot is added as soon as it has been
+         * loaded. The pilot of a drone not known by the pilot service is added
+         * without the pilot information, so it is not looked up again on each
+         * capture.
+         * 
+         * @param droneList     The violating drones.
+         * @param violationTime The time of the violation.
+         */
+        protected void handleViolations(java.util.List<DroneObservation> droneList, ZonedDateTime violationTime) {
+            // Performing updates of the known pilots.
+            java.util.Map<String, DroneObservation> newDrones = new java.util.LinkedHashMap<>();
+            for (DroneObservation drone: droneList) {
+                String serial = drone.getSerialNumber();
+                if (serial != null) {
+                    double distance = source_.getDroneDistanceToNest(drone);
+                    if (violatingPilots_.recordSighting(serial, violationTime, distance)) {
+                        // Updating the pilot.
+                        updateZoneDistances(violatingPilots_.get(serial), drone);
+                    } else {
+                        newDrones.put(serial, drone);
                     }
+                }
+            }
 
-                    // Performing updates and additions of new pilots to the violating pilots.
-                    if (droneList != null) {
-                        synchronized (violatingPilots) {
-                            for (Element droneNode: droneList) {
-                                String serial = source_.getDroneSerialNumber(droneNode);
-                                if (serial != null) {
-                                    double distance = source_.getDroneDistanceToNest(droneNode);
-                                    java.util.Optional<Pilot> dronePilot = violatingPilots.stream().filter((Pilot pilot) -> (
-                                        pilot.getDroneSerialNumber() == serial)).findAny();
-                                    if (dronePilot.isPresent()) {
-                                        // Updating the pilot.
-                                        Pilot pilot = dronePilot.get();
-                                        pilot.setClosestDistanceToNest(distance);
-                                        pilot.setExpireTime(pilot.updateExpireTime(violationTime));
-                                    } else {
-                                        // Creating new pilot.
-                                        String name, email, phone;
-
-                                        // Get the pilot information.
-                                        // TODO: REST JSON query.
-                                        try {
-                                            Pilot pilot = pilotLoader.getPilot(serial, violationTime, distance);
-                                            violatingPilots.add(pilot);
-                                        } catch (NullPointerException | IOException exception) {
-                                            // The loadign of the pilot failed.
-                                            log("Loading of the pilot failed", exception);
-                                        } catch (IllegalArgumentException e) {
-                                            // The URI was invalid - reporting error.
-                                            // TODO: add escaping of serial.
-                                            log("Serial of the drone was not suitable: " + serial, e);
-                                            name = "[Pilot of " + serial + "]";
-                                            email = null;
-                                            phone = null;
-                                            violatingPilots.add(new Pilot(serial, violationTime, distance, name, email, phone));
-                                        }
-                                    }
+            // Forgetting the logged failures of the drones no longer violating.
+            failedLookups_.retainAll(newDrones.keySet());
+
+            // Performing additions of new pilots to the violating pilots.
+            if (!newDrones.isEmpty()) {
+                pilotLoader.resolveAll(newDrones.keySet(), PilotLoader.DEFAULT_RESOLVE_TIMEOUT,
+                        (String serial, JsonObject data) -> {
+                            failedLookups_.remove(serial);
+                            Pilot pilot = loadPilot(newDrones.get(serial), violationTime, data);
+                            if (pilot != null) {
+                                addViolatingPilot(pilot);
+                            }
+                        }, (String serial, Throwable failure) -> {
+                            if (failure instanceof java.io.FileNotFoundException) {
+                                failedLookups_.remove(serial);
+                                // The pilot is not known, and the drone is listed without
+                                // pilot information.
+                                log("Pilot of the drone was not found: " + StringEscapeUtils.escapeJava(serial));
+                                DroneObservation drone = newDrones.get(serial);
+                                Pilot pilot = new Pilot(serial, violationTime, source_.getDroneDistanceToNest(drone),
+                                        null, null, null);
+                                updateZoneDistances(pilot, drone);
+                                addViolatingPilot(pilot);
+                            } else {
+                                // The failure is cached by the pilot loader for its negative
+                                // TTL, and each capture until then gets the same failure. The
+                                // pilot is loaded again on a violation after the failure has
+                                // expired.
+                                if (failedLookups_.add(serial)) {
+                                    log("Loading of the pilot failed: " + StringEscapeUtils.escapeJava(serial) + ": "
+                                            + failure);
                                 }
                             }
-                        }
-                    }
-                }
+                        });
+            }
+        }
 
-                // Rooting out expired drones.
-                removeExpiredPilots(ZonedDateTime.now());
+        /**
+         * Create the pilot of the violating drone from the loaded pilot data.
+         * 
+         * @param drone         The violating drone.
+         * @param violationTime The time of the violation.
+         * @param data          The loaded pilot data.
+         * @return The pilot of the drone, or an undefined value, if the creation
+         *         failed.
+         */
+        protected Pilot loadPilot(DroneObservation drone, ZonedDateTime violationTime, JsonObject data) {
+            String serial = drone.getSerialNumber();
+            double distance = source_.getDroneDistanceToNest(drone);
+            try {
+                Pilot pilot = pilotLoader.createPilot(serial, data, violationTime, distance);
+                updateZoneDistances(pilot, drone);
+                return pilot;
+            } catch (IllegalArgumentException e) {
+                // The pilot data was invalid - reporting error.
+                log("Pilot data of the drone was not suitable: " + StringEscapeUtils.escapeJava(serial), e);
+                return new Pilot(serial, violationTime, distance, null, null, null);
             }
-    }
+        }
 
         /**
-         * Shutdown the thread.
+         * Shutdown the updater.
          */
         public synchronized void shutdown() {
             this.goOn_ = false;
@@ -203,7 +302,7 @@ public class BirdnestServlet extends HttpServlet {
     }
 
     /**
-     * The thread performing pilot data updating.
+     * The worker performing pilot data updating.
      */
     private PilotDataUpdater pilotInformation_ = this.new PilotDataUpdater();
 
@@ -216,9 +315,34 @@ public class BirdnestServlet extends HttpServlet {
 
     @Override
     public void destroy() {
-        // Stopping the updater thread.
-        updater_.shutDown();
-        pilotInformation_.shutdown();
+        try {
+            // Stopping the workers.
+            if (updater_ != null) {
+                updater_.shutDown();
+            }
+            if (source_ != null) {
+                source_.closeCapturePublisher();
+            }
+            violatingPilots_.closeExpiryPublisher();
+            pilotInformation_.shutdown();
+            if (workers_ != null) {
+                workers_.shutdown(WorkerPool.DEFAULT_SHUTDOWN_TIMEOUT);
+                workers_ = null;
+            }
+        } finally {
+            // Releasing the shared HTTP client.
+            HttpClientRegistry.getDefault().shutdown();
+
+            // Closing the pilot cache, once no lookup can persist pilot data.
+            PersistentCache pilotCache = pilotLoader.getPersistentCache();
+            if (pilotCache != null) {
+                try {
+                    pilotCache.close();
+                } catch (IOException exception) {
+                    log("Closing the pilot cache failed", exception);
+                }
+            }
+        }
 
         // Calling superclass to release its resources.
         super.destroy();
@@ -229,9 +353,28 @@ public class BirdnestServlet extends HttpServlet {
         // First call super class initialization.
         super.init();
 
-        // Starting the updater thread.
-        updater_.start();
-        pilotInformation_.start();
+        try {
+            source_ = new DronesDataSource();
+        } catch (URISyntaxException exception) {
+            throw new ServletException("Invalid drone report source", exception);
+        }
+        updater_ = new DataUpdater(source_);
+
+        // Restoring the pilot data of the previous deployment.
+        String pilotCacheFile = System.getProperty(PILOT_CACHE_FILE_PROPERTY);
+        if (pilotCacheFile != null) {
+            try {
+                pilotLoader.setPersistentCache(
+                        new PersistentCache(Paths.get(pilotCacheFile), PilotLoader.DEFAULT_PERSISTENT_TTL));
+            } catch (IOException | IllegalArgumentException exception) {
+                log("Opening the pilot cache failed", exception);
+            }
+        }
+
+        // Starting the workers.
+        workers_ = new WorkerPool("birdnest");
+        workers_.start("drone-updater", updater_);
+        workers_.start("pilot-updater", pilotInformation_);
     }
 
     @Override
@@ -246,10 +389,9 @@ public class BirdnestServlet extends HttpServlet {
     }
 
     /**
-     * Output vioalting pilots. 
+     * Output vioalting pilots. The pilots are read without locking the updates.
      * 
-     * @param request
-     * @param out
+     * @param out The writer of the output.
      */
     public void outputViolatingPilotTable(PrintWriter out) {
         out.append("<table>");
@@ -257,16 +399,16 @@ public class BirdnestServlet extends HttpServlet {
         out.append("<tr>");
         out.append("<th>Pilot name</th><th>Email Address</th><th>Phone number</th><th>Closest distance to nest (mm)</th>");
         out.append("</tr>");
-        synchronized (violatingPilots) {
-            for (Pilot pilot: violatingPilots) {
-                out.append("<tr>");
-                for (Object data: Arrays.asList(pilot.getName(), pilot.getEmail(), pilot.getPhoneNumber(), pilot.getClosestDistanceToNest())) {
-                    out.append("<td>");
-                    out.append(data.toString());
-                    out.append("</td>");
+        for (Pilot pilot: getViolatingPilots()) {
+            out.append("<tr>");
+            for (Object data: Arrays.asList(pilot.getName(), pilot.getEmail(), pilot.getPhoneNumber(), pilot.getClosestDistanceToNest())) {
+                out.append("<td>");
+                if (data != null) {
+                    out.append(StringEscapeUtils.escapeHtml4(data.toString()));
                 }
-                out.append("</tr>");
+                out.append("</td>");
             }
+            out.append("</tr>");
         }
         out.append("</table>");
     }
@@ -0,0 +1,84 @@
+package com.kautiainen.antti.reaktor.birdnest;
+
+import java.time.ZonedDateTime;
+
+import javax.validation.constraints.NotNull;
+
+/**
+ * CaptureEvent tells a new capture replaced the snapshot of the drones data
+ * source. The event carries the new snapshot and its delta from the previous
+ * snapshot.
+ */
+public final class CaptureEvent {
+
+    /**
+     * The sequence number of the capture.
+     */
+    private final long sequence_;
+
+    /**
+     * The snapshot of the capture.
+     */
+    private final DroneReport report_;
+
+    /**
+     * The delta from the previous snapshot.
+     */
+    private final DroneDelta delta_;
+
+    /**
+     * Create a new capture event.
+     *
+     * @param sequence The sequence number of the capture. The numbers of the
+     *                 consecutive captures of a source are consecutive.
+     * @param report   The snapshot of the capture.
+     * @param delta    The delta from the previous snapshot.
+     */
+    public CaptureEvent(long sequence, @NotNull DroneReport report, @NotNull DroneDelta delta) {
+        this.sequence_ = sequence;
+        this.report_ = report;
+        this.delta_ = delta;
+    }
+
+    /**
+     * Get the sequence number of the capture.
+     *
+     * @return The sequence number of the capture. A gap in the numbers tells the
+     *         events between were dropped.
+     */
+    public long getSequence() {
+        return sequence_;
+    }
+
+    /**
+     * Get the snapshot of the capture.
+     *
+     * @return The snapshot of the capture.
+     */
+    public DroneReport getReport() {
+        return report_;
+    }
+
+    /**
+     * Get the delta of the capture.
+     *
+     * @return The delta from the previous snapshot.
+     */
+    public DroneDelta getDelta() {
+        return delta_;
+    }
+
+    /**
+     * Get the capture time.
+     *
+     * @return The capture time of the snapshot.
+     */
+    public ZonedDateTime getCaptureTime() {
+        return report_.getCaptureTime();
+    }
+
+    @Override
+    public String toString() {
+        return "CaptureEvent[" + sequence_ + "; " + getCaptureTime() + "]";
+    }
+}
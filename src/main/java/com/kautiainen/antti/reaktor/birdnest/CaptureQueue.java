@@ -0,0 +1,135 @@
+package com.kautiainen.antti.reaktor.birdnest;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Flow;
+
+import javax.validation.constraints.NotNull;
+
+/**
+ * CaptureQueue is a subscriber queueing the capture events for a worker.
+ * <p>
+ * The queue requests at most its capacity of events ahead of the events polled
+ * by the worker, so a lagging worker makes the publisher drop the events
+ * instead of growing the queue. The given callback is called once per received
+ * event, so the worker may wait for the events instead of polling the source.
+ * </p>
+ */
+public class CaptureQueue implements Flow.Subscriber<CaptureEvent> {
+
+    /**
+     * The default capacity of the queue.
+     */
+    public static final int DEFAULT_CAPACITY = 8;
+
+    /**
+     * The maximum number of queued events.
+     */
+    private final int capacity_;
+
+    /**
+     * The callback called when an event is received.
+     */
+    private final Runnable onEvent_;
+
+    /**
+     * The queued events.
+     */
+    private final ConcurrentLinkedQueue<CaptureEvent> events_ = new ConcurrentLinkedQueue<>();
+
+    /**
+     * The subscription of the queue. Undefined value, if the queue has not
+     * subscribed.
+     */
+    private volatile Flow.Subscription subscription_ = null;
+
+    /**
+     * Has the publisher completed.
+     */
+    private volatile boolean completed_ = false;
+
+    /**
+     * Create a new capture queue.
+     *
+     * @param capacity The maximum number of queued events.
+     * @param onEvent  The callback called when an event is received.
+     * @throws IllegalArgumentException The capacity was not positive, or the
+     *                                  callback was undefined.
+     */
+    public CaptureQueue(int capacity, @NotNull Runnable onEvent) throws IllegalArgumentException {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Invalid capacity");
+        }
+        if (onEvent == null) {
+            throw new IllegalArgumentException("Undefined callback");
+        }
+        this.capacity_ = capacity;
+        this.onEvent_ = onEvent;
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        if (subscription_ != null) {
+            // The queue subscribes to a single publisher.
+            subscription.cancel();
+            return;
+        }
+        subscription_ = subscription;
+        subscription.request(capacity_);
+    }
+
+    @Override
+    public void onNext(CaptureEvent event) {
+        events_.offer(event);
+        onEvent_.run();
+    }
+
+    @Override
+    public void onError(Throwable error) {
+        System.getLogger(getClass().getName()).log(System.Logger.Level.WARNING, "Capture events failed", error);
+        completed_ = true;
+        onEvent_.run();
+    }
+
+    @Override
+    public void onComplete() {
+        completed_ = true;
+        onEvent_.run();
+    }
+
+    /**
+     * Poll the next event. Polling an event requests a new event from the
+     * publisher.
+     *
+     * @return The next event, or an undefined value, if there are no queued
+     *         events.
+     */
+    public CaptureEvent poll() {
+        CaptureEvent event = events_.poll();
+        Flow.Subscription subscription = subscription_;
+        if (event != null && subscription != null) {
+            subscription.request(1);
+        }
+        return event;
+    }
+
+    /**
+     * Has the publisher completed, and all queued events been polled.
+     *
+     * @return True, if and only if no more events will be received.
+     */
+    public boolean isCompleted() {
+        return completed_ && events_.isEmpty();
+    }
+
+    /**
+     * Cancel the subscription. The queued events are discarded.
+     */
+    public void cancel() {
+        Flow.Subscription subscription = subscription_;
+        if (subscription != null) {
+            subscription.cancel();
+        }
+        completed_ = true;
+        events_.clear();
+    }
+}
@@ -0,0 +1,182 @@
+package com.kautiainen.antti.reaktor.birdnest;
+
+import java.time.ZonedDateTime;
+import java.util.List;
+
+import javax.validation.constraints.NotNull;
+
+/**
+ * ColumnarDroneSnapshot stores the drones of a capture as parallel arrays.
+ * <p>
+ * The coordinates of the drone with index <code>i</code> are stored at index
+ * <code>i</code> of the coordinate arrays, and its serial number at index
+ * <code>i</code> of the serial number table. The layout allows evaluating all
+ * drones of a capture in a tight loop without touching the drone objects.
+ * </p>
+ * <p>
+ * The arrays are owned by the snapshot, and they must not be altered after the
+ * construction.
+ * </p>
+ */
+public final class ColumnarDroneSnapshot {
+
+    /**
+     * The capture time of the snapshot.
+     */
+    private final ZonedDateTime captureTime_;
+
+    /**
+     * The number of drones in the snapshot.
+     */
+    private final int size_;
+
+    /**
+     * The serial numbers of the drones.
+     */
+    private final String[] serialNumbers_;
+
+    /**
+     * The X coordinates of the drones in millimeters.
+     */
+    private final double[] x_;
+
+    /**
+     * The Y coordinates of the drones in millimeters.
+     */
+    private final double[] y_;
+
+    /**
+     * The altitudes of the drones in millimeters.
+     */
+    private final double[] z_;
+
+    /**
+     * Create a new columnar snapshot from the given arrays. The arrays are not
+     * copied.
+     *
+     * @param captureTime   The capture time of the snapshot.
+     * @param size          The number of drones in the snapshot.
+     * @param serialNumbers The serial numbers of the drones.
+     * @param x             The X coordinates of the drones.
+     * @param y             The Y coordinates of the drones.
+     * @param z             The altitudes of the drones.
+     * @throws IllegalArgumentException Any array was undefined or shorter than the
+     *                                  size.
+     */
+    public ColumnarDroneSnapshot(ZonedDateTime captureTime, int size, @NotNull String[] serialNumbers,
+            @NotNull double[] x, @NotNull double[] y, @NotNull double[] z) throws IllegalArgumentException {
+        if (size < 0 || serialNumbers == null || x == null || y == null || z == null) {
+            throw new IllegalArgumentException("Invalid snapshot columns");
+        }
+        if (serialNumbers.length < size || x.length < size || y.length < size || z.length < size) {
+            throw new IllegalArgumentException("Snapshot columns are shorter than the snapshot");
+        }
+        this.captureTime_ = captureTime;
+        this.size_ = size;
+        this.serialNumbers_ = serialNumbers;
+        this.x_ = x;
+        this.y_ = y;
+        this.z_ = z;
+    }
+
+    /**
+     * Create a columnar snapshot of the given drones.
+     *
+     * @param captureTime The capture time of the snapshot.
+     * @param drones      The drones of the snapshot.
+     * @return The columnar snapshot with the drones in the order of the given
+     *         list.
+     */
+    public static ColumnarDroneSnapshot of(ZonedDateTime captureTime, @NotNull List<DroneObservation> drones) {
+        int size = drones.size();
+        String[] serialNumbers = new String[size];
+        double[] x = new double[size], y = new double[size], z = new double[size];
+        int index = 0;
+        for (DroneObservation drone : drones) {
+            serialNumbers[index] = drone.getSerialNumber();
+            x[index] = drone.getX();
+            y[index] = drone.getY();
+            z[index] = drone.getZ();
+            index++;
+        }
+        return new ColumnarDroneSnapshot(captureTime, size, serialNumbers, x, y, z);
+    }
+
+    /**
+     * Get the capture time of the snapshot.
+     *
+     * @return The capture time of the snapshot.
+     */
+    public ZonedDateTime getCaptureTime() {
+        return captureTime_;
+    }
+
+    /**
+     * Get the number of drones.
+     *
+     * @return The number of drones in the snapshot.
+     */
+    public int size() {
+        return size_;
+    }
+
+    /**
+     * Get the serial number of a drone.
+     *
+     * @param index The index of the drone.
+     * @return The serial number of the drone.
+     */
+    public String getSerialNumber(int index) {
+        return serialNumbers_[index];
+    }
+
+    /**
+     * Get the X coordinate of a drone.
+     *
+     * @param index The index of the drone.
+     * @return The X coordinate of the drone in millimeters.
+     */
+    public double getX(int index) {
+        return x_[index];
+    }
+
+    /**
+     * Get the Y coordinate of a drone.
+     *
+     * @param index The index of the drone.
+     * @return The Y coordinate of the drone in millimeters.
+     */
+    public double getY(int index) {
+        return y_[index];
+    }
+
+    /**
+     * Get the altitude of a drone.
+     *
+     * @param index The index of the drone.
+     * @return The altitude of the drone in millimeters.
+     */
+    public double getZ(int index) {
+        return z_[index];
+    }
+
+    /**
+     * Get the X coordinate column. The returned array is shared, and it must not
+     * be altered.
+     *
+     * @return The X coordinates of the drones.
+     */
+    double[] getXColumn() {
+        return x_;
+    }
+
+    /**
+     * Get the Y coordinate column. The returned array is shared, and it must not
+     * be altered.
+     *
+     * @return The Y coordinates of the drones.
+     */
+    double[] getYColumn() {
+        return y_;
+    }
+}
@@ -0,0 +1,162 @@
+package com.kautiainen.antti.reaktor.birdnest;
+import java.io.IOException;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+
+import org.xml.sax.SAXException;
+
+import com.kautiainen.antti.reaktor.birdnest.data.ResiliencePolicy;
+import com.kautiainen.antti.reaktor.birdnest.work.Worker;
+
+/**
+ * The worker performing drone data updating.
+ * It does wait until the next capture of the sensor is expected to be
+ * available, after successful update, or a jittered backoff on failed read.
+ */
+public class DataUpdater implements Worker {
+
+    /**
+     * The default update innterval in milliseconds.
+     */
+    public static long DEFAULT_UPDATE_INTERVAL_MS = 2000;
+
+    /**
+     * The scheduler timing the updates to the capture cadence of the sensor.
+     */
+    private final AdaptivePollScheduler scheduler_ = new AdaptivePollScheduler(
+            Duration.ofMillis(DEFAULT_UPDATE_INTERVAL_MS));
+
+    /**
+     * The data of the sensor.
+     */
+    private volatile DronesDataSource data_;
+
+    /**
+     * The most recent update time of the current updater.
+     */
+    private ZonedDateTime updateTime_ = null;
+
+    /**
+     * By default the worker is running.
+     * When this value is set false, the execution of the worker will end.
+     */
+    private volatile boolean goOn_ = true;
+
+    /**
+     * The backoff of the failed updates. Undefined value, if the latest update
+     * succeeded.
+     */
+    private ResiliencePolicy.Backoff backoff_ = null;
+
+    /**
+     * Createa new data updater with a data source.
+     * 
+     * @param dataSource The data source.
+     * @throws IllegalArgumentException The given source was invalid.
+     */
+    public DataUpdater(DronesDataSource dataSource) throws IllegalArgumentException {
+        if (dataSource == null) {
+            throw new IllegalArgumentException("Undefined data is not accepted");
+        }
+        this.data_ = dataSource;
+    }
+
+    /**
+     * Get the scheduler of the updates.
+     * 
+     * @return The scheduler timing the updates to the capture cadence of the
+     *         sensor.
+     */
+    public AdaptivePollScheduler getScheduler() {
+        return this.scheduler_;
+    }
+
+    @Override
+    public Duration step() {
+        if (!goOn_) {
+            return null;
+        }
+        boolean retry = false;
+        try {
+            // Update the data.
+            boolean changed = data_.update();
+            ZonedDateTime captureTime = data_.getUpdateTime();
+            scheduler_.recordFetch(captureTime, changed);
+
+            // Updating the update timer.
+            if (captureTime != null) {
+                setUpdateTime(captureTime);
+            }
+        } catch (IOException ioe) {
+            // The input error causes retry to acquire the doc.
+            retry = true;
+        } catch (IllegalStateException e) {
+            // Log the illegal state exception.
+            retry = true;
+        } catch (SAXException e) {
+            retry = true;
+        } catch (IllegalArgumentException e) {
+            // The capture time is ahead of the local clock.
+            System.getLogger(getClass().getName()).log(System.Logger.Level.DEBUG,
+                    "Capture time ahead of the local clock", e);
+        }
+
+        if (retry) {
+            // Retry due failed update - backing off with jitter, and waiting for
+            // the open circuit of the source.
+            ResiliencePolicy policy = data_.getResiliencePolicy();
+            if (policy == null) {
+                policy = ResiliencePolicy.getDefault();
+            }
+            if (backoff_ == null) {
+                backoff_ = policy.newBackoff();
+            }
+            Duration delay = backoff_.next();
+            Duration retryAfter = policy.getEndpoint(data_.getSourceURI()).getRetryAfter();
+            return retryAfter.compareTo(delay) > 0 ? retryAfter : delay;
+        } else {
+            // Waiting until the next capture is expected to be available.
+            backoff_ = null;
+            return scheduler_.nextDelay();
+        }
+    }
+
+    @Override
+    public void onStop() {
+        System.getLogger(getClass().getName()).log(System.Logger.Level.INFO,
+                String.format("Updates ended: frame miss rate %.3f, average data age %s",
+                        scheduler_.getFrameMissRate(), scheduler_.getAverageDataAge()));
+    }
+
+    /**
+     * Set the most recent update time.
+     * 
+     * @param updateTime The update time.
+     * @throws IllegalArgumentException The given update time is either
+     *                                  undefined, or happens after current time.
+     */
+    private synchronized void setUpdateTime(ZonedDateTime updateTime)
+            throws IllegalArgumentException {
+        if (updateTime == null || ZonedDateTime.now().isBefore(updateTime)) {
+            throw new IllegalArgumentException("Invalid update time");
+        }
+        this.updateTime_ = updateTime;
+    }
+
+    /**
+     * Get the most recetn update time.
+     * 
+     * @return The update time of the drones data.
+     */
+    public synchronized ZonedDateTime getUpdateTime() {
+        return this.updateTime_;
+    }
+
+    /**
+     * Shut down the updater. The updater ends before its next update.
+     */
+    public synchronized void shutDown() {
+        this.goOn_ = false;
+    }
+
+}
\ No newline at end of file
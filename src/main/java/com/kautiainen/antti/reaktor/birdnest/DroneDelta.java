@@ -0,0 +1,188 @@
+package com.kautiainen.antti.reaktor.birdnest;
+
+import java.time.ZonedDateTime;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.validation.constraints.NotNull;
+
+/**
+ * DroneDelta is the change of the drones between two consecutive captures.
+ * <p>
+ * The drones are keyed by serial number. The entered drones were not present
+ * in the previous capture, the moved drones were present with a different
+ * position, and the left drones were present in the previous capture but not
+ * in the current capture. The left drones are reported with their last
+ * observation.
+ * </p>
+ */
+public final class DroneDelta {
+
+    /**
+     * The capture time of the previous capture.
+     */
+    private final ZonedDateTime previousCaptureTime_;
+
+    /**
+     * The capture time of the current capture.
+     */
+    private final ZonedDateTime captureTime_;
+
+    /**
+     * The drones which entered the area.
+     */
+    private final Map<String, DroneObservation> entered_;
+
+    /**
+     * The drones which moved within the area.
+     */
+    private final Map<String, DroneObservation> moved_;
+
+    /**
+     * The drones which left the area.
+     */
+    private final Map<String, DroneObservation> left_;
+
+    /**
+     * The number of drones present in both captures at the same position.
+     */
+    private final int unchangedCount_;
+
+    /**
+     * Create a new drone delta.
+     *
+     * @param previousCaptureTime The capture time of the previous capture, or an
+     *                            undefined value, if there was no previous
+     *                            capture.
+     * @param captureTime         The capture time of the current capture.
+     * @param entered             The drones which entered the area.
+     * @param moved               The drones which moved within the area.
+     * @param left                The last observations of the drones which left
+     *                            the area.
+     * @param unchangedCount      The number of drones which did not move.
+     */
+    public DroneDelta(ZonedDateTime previousCaptureTime, @NotNull ZonedDateTime captureTime,
+            @NotNull Map<String, DroneObservation> entered, @NotNull Map<String, DroneObservation> moved,
+            @NotNull Map<String, DroneObservation> left, int unchangedCount) {
+        this.previousCaptureTime_ = previousCaptureTime;
+        this.captureTime_ = captureTime;
+        this.entered_ = Collections.unmodifiableMap(entered);
+        this.moved_ = Collections.unmodifiableMap(moved);
+        this.left_ = Collections.unmodifiableMap(left);
+        this.unchangedCount_ = unchangedCount;
+    }
+
+    /**
+     * Compute the delta between two snapshots.
+     *
+     * @param previous The previous snapshot. Defaults to a snapshot without
+     *                 drones.
+     * @param current  The current snapshot.
+     * @return The delta from the previous snapshot to the current snapshot.
+     */
+    public static DroneDelta between(DroneReport previous, @NotNull DroneReport current) {
+        List<DroneObservation> previousDrones = previous == null ? Collections.emptyList() : previous.getDrones();
+        HashMap<String, DroneObservation> remaining = new HashMap<>(previousDrones.size() * 2);
+        for (DroneObservation drone : previousDrones) {
+            remaining.put(drone.getSerialNumber(), drone);
+        }
+
+        LinkedHashMap<String, DroneObservation> entered = new LinkedHashMap<>();
+        LinkedHashMap<String, DroneObservation> moved = new LinkedHashMap<>();
+        int unchanged = 0;
+        for (DroneObservation drone : current.getDrones()) {
+            DroneObservation last = remaining.remove(drone.getSerialNumber());
+            if (last == null) {
+                entered.put(drone.getSerialNumber(), drone);
+            } else if (last.getX() != drone.getX() || last.getY() != drone.getY()
+                    || Double.compare(last.getZ(), drone.getZ()) != 0) {
+                moved.put(drone.getSerialNumber(), drone);
+            } else {
+                unchanged++;
+            }
+        }
+
+        LinkedHashMap<String, DroneObservation> left = new LinkedHashMap<>();
+        for (DroneObservation drone : previousDrones) {
+            if (remaining.containsKey(drone.getSerialNumber())) {
+                left.put(drone.getSerialNumber(), drone);
+            }
+        }
+        return new DroneDelta(previous == null ? null : previous.getCaptureTime(), current.getCaptureTime(),
+                entered, moved, left, unchanged);
+    }
+
+    /**
+     * Get the capture time of the previous capture.
+     *
+     * @return The capture time of the previous capture, or an undefined value
+     *         (<code>null</code>), if there was no previous capture.
+     */
+    public ZonedDateTime getPreviousCaptureTime() {
+        return previousCaptureTime_;
+    }
+
+    /**
+     * Get the capture time of the current capture.
+     *
+     * @return The capture time of the current capture.
+     */
+    public ZonedDateTime getCaptureTime() {
+        return captureTime_;
+    }
+
+    /**
+     * Get the drones which entered the area.
+     *
+     * @return The unmodifiable map from serial number to the observation.
+     */
+    public Map<String, DroneObservation> getEntered() {
+        return entered_;
+    }
+
+    /**
+     * Get the drones which moved within the area.
+     *
+     * @return The unmodifiable map from serial number to the new observation.
+     */
+    public Map<String, DroneObservation> getMoved() {
+        return moved_;
+    }
+
+    /**
+     * Get the drones which left the area.
+     *
+     * @return The unmodifiable map from serial number to the last observation.
+     */
+    public Map<String, DroneObservation> getLeft() {
+        return left_;
+    }
+
+    /**
+     * Get the number of drones which did not move.
+     *
+     * @return The number of drones present in both captures at the same
+     *         position.
+     */
+    public int getUnchangedCount() {
+        return unchangedCount_;
+    }
+
+    /**
+     * Does the delta contain any changes.
+     *
+     * @return True, if and only if any drone entered, moved, or left.
+     */
+    public boolean isEmpty() {
+        return entered_.isEmpty() && moved_.isEmpty() && left_.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("DroneDelta[%s; entered: %d; moved: %d; left: %d; unchanged: %d]", captureTime_,
+                entered_.size(), moved_.size(), left_.size(), unchangedCount_);
+    }
+}
@@ -0,0 +1,122 @@
+package com.kautiainen.antti.reaktor.birdnest;
+
+import java.time.ZonedDateTime;
+
+import javax.validation.constraints.NotNull;
+
+/**
+ * DroneObservation is a compact immutable record of a single drone in a
+ * capture.
+ * <p>
+ * The coordinates are stored as primitives in millimeters, so the record can
+ * be tested against the NDZ without any further parsing. The observations are
+ * created once per capture, and they are safe to share between threads.
+ * </p>
+ */
+public final class DroneObservation {
+
+    /**
+     * The serial number of the drone.
+     */
+    private final String serialNumber_;
+
+    /**
+     * The capture time of the observation.
+     */
+    private final ZonedDateTime captureTime_;
+
+    /**
+     * The X coordinate of the drone in millimeters.
+     */
+    private final double x_;
+
+    /**
+     * The Y coordinate of the drone in millimeters.
+     */
+    private final double y_;
+
+    /**
+     * The altitude of the drone in millimeters.
+     */
+    private final double z_;
+
+    /**
+     * Create a new drone observation.
+     *
+     * @param serialNumber The serial number of the drone.
+     * @param captureTime  The capture time of the capture containing the drone.
+     * @param x            The X coordinate of the drone in millimeters.
+     * @param y            The Y coordinate of the drone in millimeters.
+     * @param z            The altitude of the drone in millimeters.
+     */
+    public DroneObservation(@NotNull String serialNumber, ZonedDateTime captureTime, double x, double y, double z) {
+        this.serialNumber_ = serialNumber;
+        this.captureTime_ = captureTime;
+        this.x_ = x;
+        this.y_ = y;
+        this.z_ = z;
+    }
+
+    /**
+     * Get the serial number of the drone.
+     *
+     * @return The serial number of the drone.
+     */
+    public String getSerialNumber() {
+        return serialNumber_;
+    }
+
+    /**
+     * Get the capture time of the observation.
+     *
+     * @return The capture time of the capture containing the drone.
+     */
+    public ZonedDateTime getCaptureTime() {
+        return captureTime_;
+    }
+
+    /**
+     * Get the X coordinate of the drone.
+     *
+     * @return The X coordinate in millimeters.
+     */
+    public double getX() {
+        return x_;
+    }
+
+    /**
+     * Get the Y coordinate of the drone.
+     *
+     * @return The Y coordinate in millimeters.
+     */
+    public double getY() {
+        return y_;
+    }
+
+    /**
+     * Get the altitude of the drone.
+     *
+     * @return The altitude in millimeters.
+     */
+    public double getZ() {
+        return z_;
+    }
+
+    /**
+     * Get the distance of the drone to the given point on the ground plane.
+     *
+     * @param x The X coordinate of the point in millimeters.
+     * @param y The Y coordinate of the point in millimeters.
+     * @return The distance to the given point in millimeters.
+     */
+    public double distanceTo(double x, double y) {
+        double dx = x_ - x;
+        double dy = y_ - y;
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Drone[%s; X: %s; Y: %s; Altitude: %s]", serialNumber_, x_, y_, z_);
+    }
+}
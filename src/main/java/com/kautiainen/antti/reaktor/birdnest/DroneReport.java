@@ -0,0 +1,100 @@
+package com.kautiainen.antti.reaktor.birdnest;
+
+import java.time.ZonedDateTime;
+import java.util.Collections;
+import java.util.List;
+
+import javax.validation.constraints.NotNull;
+
+import com.kautiainen.antti.reaktor.birdnest.spatial.GridIndex;
+
+/**
+ * DroneReport is the most recent capture of a drone report reduced to the
+ * capture time and the drone observations of the capture.
+ */
+public final class DroneReport {
+
+    /**
+     * The capture time of the report.
+     */
+    private final ZonedDateTime captureTime_;
+
+    /**
+     * The drones of the capture.
+     */
+    private final List<DroneObservation> drones_;
+
+    /**
+     * The columnar representation of the drones. The value is created on first
+     * use.
+     */
+    private volatile ColumnarDroneSnapshot columns_ = null;
+
+    /**
+     * The spatial index of the drones. The value is created on first use.
+     */
+    private volatile GridIndex spatialIndex_ = null;
+
+    /**
+     * Create a new drone report.
+     *
+     * @param captureTime The capture time of the most recent capture.
+     * @param drones      The drones of the capture. The list is not copied, and
+     *                    it must not be altered after the creation of the report.
+     */
+    public DroneReport(@NotNull ZonedDateTime captureTime, @NotNull List<DroneObservation> drones) {
+        this.captureTime_ = captureTime;
+        this.drones_ = Collections.unmodifiableList(drones);
+    }
+
+    /**
+     * Get the capture time of the report.
+     *
+     * @return The capture time of the report.
+     */
+    public ZonedDateTime getCaptureTime() {
+        return captureTime_;
+    }
+
+    /**
+     * Get the drones of the report.
+     *
+     * @return The unmodifiable list of the drones of the capture.
+     */
+    public List<DroneObservation> getDrones() {
+        return drones_;
+    }
+
+    /**
+     * Get the drones of the report as parallel columns. The index of a drone in
+     * the columns is its index in the list of drones.
+     *
+     * @return The columnar snapshot of the drones.
+     */
+    public ColumnarDroneSnapshot getColumns() {
+        ColumnarDroneSnapshot result = columns_;
+        if (result == null) {
+            // Creating the columns more than once is harmless.
+            result = ColumnarDroneSnapshot.of(captureTime_, drones_);
+            columns_ = result;
+        }
+        return result;
+    }
+
+    /**
+     * Get the spatial index of the drones over the monitoring area. The index of
+     * a drone in the spatial index is its index in the list of drones.
+     *
+     * @return The grid index of the drones.
+     */
+    public GridIndex getSpatialIndex() {
+        GridIndex result = spatialIndex_;
+        if (result == null) {
+            // Creating the index more than once is harmless.
+            ColumnarDroneSnapshot columns = getColumns();
+            result = new GridIndex(columns.getXColumn(), columns.getYColumn(), columns.size());
+            spatialIndex_ = result;
+        }
+        return result;
+    }
+}
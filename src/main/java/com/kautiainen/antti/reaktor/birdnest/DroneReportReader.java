@@ -0,0 +1,269 @@
+package com.kautiainen.antti.reaktor.birdnest;
+
+import java.io.InputStream;
+import java.lang.System.Logger.Level;
+import java.time.DateTimeException;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+import javax.validation.constraints.NotNull;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * DroneReportReader reads the drone report with a pull parser.
+ * <p>
+ * The report is read in one pass, and the drones of the most recent capture
+ * are emitted as {@link DroneObservation} records without building a document
+ * tree of the report.
+ * </p>
+ */
+public class DroneReportReader implements Function<InputStream, DroneReport> {
+
+    /**
+     * The factory creating the stream readers. The factory is configured once,
+     * and it is safe to share between threads after the configuration.
+     */
+    private static final XMLInputFactory INPUT_FACTORY = createInputFactory();
+
+    /**
+     * Create the input factory of the stream readers.
+     *
+     * @return The input factory refusing document type definitions and external
+     *         entities.
+     */
+    private static XMLInputFactory createInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+        return factory;
+    }
+
+    /**
+     * The tag name of the report root.
+     */
+    private final String rootTag_;
+
+    /**
+     * The tag name of the capture.
+     */
+    private final String captureTag_;
+
+    /**
+     * The attribute name of the capture timestamp.
+     */
+    private final String timestampAttribute_;
+
+    /**
+     * The tag name of the drone.
+     */
+    private final String droneTag_;
+
+    /**
+     * The tag name of the serial number of the drone.
+     */
+    private final String serialNumberTag_;
+
+    /**
+     * The tag name of the X position of the drone.
+     */
+    private final String xPositionTag_;
+
+    /**
+     * The tag name of the Y position of the drone.
+     */
+    private final String yPositionTag_;
+
+    /**
+     * The tag name of the Z position of the drone.
+     */
+    private final String zPositionTag_;
+
+    /**
+     * Create a new drone report reader.
+     *
+     * @param rootTag            The tag name of the report root.
+     * @param captureTag         The tag name of the capture.
+     * @param timestampAttribute The attribute name of the capture timestamp.
+     * @param droneTag           The tag name of the drone.
+     * @param serialNumberTag    The tag name of the serial number.
+     * @param xPositionTag       The tag name of the X position.
+     * @param yPositionTag       The tag name of the Y position.
+     * @param zPositionTag       The tag name of the Z position.
+     */
+    public DroneReportReader(@NotNull String rootTag, @NotNull String captureTag, @NotNull String timestampAttribute,
+            @NotNull String droneTag, @NotNull String serialNumberTag, @NotNull String xPositionTag,
+            @NotNull String yPositionTag, @NotNull String zPositionTag) {
+        this.rootTag_ = rootTag;
+        this.captureTag_ = captureTag;
+        this.timestampAttribute_ = timestampAttribute;
+        this.droneTag_ = droneTag;
+        this.serialNumberTag_ = serialNumberTag;
+        this.xPositionTag_ = xPositionTag;
+        this.yPositionTag_ = yPositionTag;
+        this.zPositionTag_ = zPositionTag;
+    }
+
+    /**
+     * Reads the most recent capture of the report.
+     *
+     * @param stream The input stream containing the report.
+     * @return The drone report of the most recent capture, if the stream
+     *         contained a valid report. Otherwise, an undefined value
+     *         (<code>null</code>).
+     */
+    @Override
+    public DroneReport apply(InputStream stream) {
+        XMLStreamReader reader = null;
+        try {
+            reader = INPUT_FACTORY.createXMLStreamReader(stream);
+            return read(reader);
+        } catch (XMLStreamException | IllegalArgumentException | DateTimeException e) {
+            System.getLogger(DroneReportReader.class.getName()).log(Level.ERROR,
+                    "Reading the drone report failed: {0}", e.getMessage());
+            return null;
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (XMLStreamException e) {
+                    // Closing the reader does not close the stream.
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the report from the stream reader.
+     *
+     * @param reader The stream reader positioned at the start of the document.
+     * @return The drone report of the most recent capture, or an undefined value,
+     *         if the document is not a report, or it does not have any capture.
+     * @throws XMLStreamException       The document was not well formed.
+     * @throws IllegalArgumentException A capture did not have a timestamp.
+     * @throws DateTimeException        A capture timestamp was invalid.
+     */
+    protected DroneReport read(@NotNull XMLStreamReader reader)
+            throws XMLStreamException, IllegalArgumentException, DateTimeException {
+        // Seeking the root element.
+        while (reader.hasNext() && reader.next() != XMLStreamConstants.START_ELEMENT)
+            ;
+        if (!reader.isStartElement() || !rootTag_.equals(reader.getLocalName())) {
+            // The document is not a report.
+            return null;
+        }
+
+        ZonedDateTime mostRecentTime = null;
+        List<DroneObservation> mostRecentDrones = null;
+        ZonedDateTime captureTime = null;
+        List<DroneObservation> captureDrones = null;
+        String serial = null;
+        double x = Double.NaN, y = Double.NaN, z = Double.NaN;
+        // Does the current drone have an invalid position. The invalid drones are
+        // skipped like the document reader skips them.
+        boolean invalidDrone = false;
+        // The child elements of the current drone already read. The drone with a
+        // duplicate serial number or X or Y position is skipped, and a duplicate Z
+        // position leaves the Z position undefined, like in the document reader.
+        boolean hasSerial = false, hasX = false, hasY = false, hasZ = false, duplicateZ = false, invalidZ = false;
+        // The depth of the current element from the report element, and the depth of
+        // the current drone element. The drone depth is negative outside drones.
+        int depth = 0, droneDepth = -1;
+        while (reader.hasNext()) {
+            switch (reader.next()) {
+                case XMLStreamConstants.START_ELEMENT:
+                    depth++;
+                    String tagName = reader.getLocalName();
+                    if (captureDrones == null && captureTag_.equals(tagName)) {
+                        String timestamp = reader.getAttributeValue(null, timestampAttribute_);
+                        if (timestamp == null) {
+                            throw new IllegalArgumentException("Capture is missing timestamp");
+                        }
+                        captureTime = ZonedDateTime.parse(timestamp);
+                        captureDrones = new ArrayList<>();
+                    } else if (captureDrones != null && droneDepth < 0 && droneTag_.equals(tagName)) {
+                        droneDepth = depth;
+                        serial = null;
+                        x = y = z = Double.NaN;
+                        invalidDrone = false;
+                        hasSerial = hasX = hasY = hasZ = duplicateZ = invalidZ = false;
+                    } else if (droneDepth >= 0 && depth == droneDepth + 1) {
+                        // The child of the drone.
+                        if (serialNumberTag_.equals(tagName)) {
+                            serial = reader.getElementText().trim();
+                            invalidDrone |= hasSerial;
+                            hasSerial = true;
+                            depth--;
+                        } else if (xPositionTag_.equals(tagName)) {
+                            x = parsePosition(reader.getElementText());
+                            invalidDrone |= Double.isNaN(x) || hasX;
+                            hasX = true;
+                            depth--;
+                        } else if (yPositionTag_.equals(tagName)) {
+                            y = parsePosition(reader.getElementText());
+                            invalidDrone |= Double.isNaN(y) || hasY;
+                            hasY = true;
+                            depth--;
+                        } else if (zPositionTag_.equals(tagName)) {
+                            z = parsePosition(reader.getElementText());
+                            invalidZ |= Double.isNaN(z);
+                            duplicateZ |= hasZ;
+                            hasZ = true;
+                            depth--;
+                        }
+                    }
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    if (depth == droneDepth) {
+                        // The drone ended.
+                        if (duplicateZ) {
+                            z = Double.NaN;
+                        } else {
+                            invalidDrone |= invalidZ;
+                        }
+                        if (!invalidDrone && serial != null && !Double.isNaN(x) && !Double.isNaN(y)) {
+                            captureDrones.add(new DroneObservation(serial, captureTime, x, y, z));
+                        }
+                        droneDepth = -1;
+                    } else if (captureDrones != null && droneDepth < 0 && captureTag_.equals(reader.getLocalName())) {
+                        // The capture ended.
+                        if (mostRecentTime == null || mostRecentTime.isBefore(captureTime)) {
+                            mostRecentTime = captureTime;
+                            mostRecentDrones = captureDrones;
+                        }
+                        captureDrones = null;
+                    }
+                    depth--;
+                    break;
+                default:
+                    // Other events do not carry drone information.
+            }
+        }
+
+        if (mostRecentTime == null) {
+            // The report did not have any capture.
+            return null;
+        }
+        return new DroneReport(mostRecentTime, mostRecentDrones);
+    }
+
+    /**
+     * Parse the position coordinate of a drone.
+     *
+     * @param text The text of the position element.
+     * @return The coordinate, or {@link Double#NaN}, if the text is not a valid
+     *         coordinate.
+     */
+    private static double parsePosition(String text) {
+        try {
+            return Double.parseDouble(text.trim());
+        } catch (NumberFormatException invalidPosition) {
+            return Double.NaN;
+        }
+    }
+}
@@ -1,4 +1,5 @@
 package com.kautiainen.antti.reaktor.birdnest;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.lang.System.Logger.Level;
@@ -7,16 +8,25 @@ import java.net.URISyntaxException;
 import java.net.URL;
 import java.time.ZonedDateTime;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.Predicate;
 import java.util.stream.Stream;
+import java.util.zip.CRC32C;
 
 import javax.validation.constraints.NotNull;
 import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
 
 import org.w3c.dom.Document;
@@ -25,7 +35,11 @@ import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 import org.xml.sax.SAXException;
 
+import com.kautiainen.antti.reaktor.birdnest.data.DocumentBuilderPool;
 import com.kautiainen.antti.reaktor.birdnest.data.HttpDataSource;
+import com.kautiainen.antti.reaktor.birdnest.spatial.CircleZone;
+import com.kautiainen.antti.reaktor.birdnest.spatial.Zone;
+import com.kautiainen.antti.reaktor.birdnest.spatial.ZoneSet;
 
 /**
  * Drones handles the drones from the data source.
@@ -45,14 +59,30 @@ import com.kautiainen.antti.reaktor.birdnest.data.HttpDataSource;
 public class DronesDataSource extends HttpDataSource<Document> {
 
     /**
-     * Get the document builder.
+     * The parser mode determines how the drone report is parsed.
+     */
+    public static enum ParserMode {
+        /**
+         * The report is parsed into a DOM document, and the drones are read from
+         * the document.
+         */
+        DOM,
+        /**
+         * The report is read with a pull parser in one pass, and the drones are
+         * emitted as drone observations without building a document.
+         */
+        STREAMING
+    }
+
+    /**
+     * Get the document builder. The builder is created with the configuration of
+     * the default document builder pool, but it does not belong to the pool.
      * 
      * @return Get the document builder.
      */
     protected static DocumentBuilder getXmlDocumentBuilder() {
         try {
-            DocumentBuilderFactory xmlReaderFactory = DocumentBuilderFactory.newInstance();
-            return xmlReaderFactory.newDocumentBuilder();
+            return DocumentBuilderPool.getDefault().createBuilder();
         } catch (ParserConfigurationException e) {
             // The document buider factory is wrong.
             return null;
@@ -60,7 +90,8 @@ public class DronesDataSource extends HttpDataSource<Document> {
     }
 
     /**
-     * Function reading the XML document of the drones.
+     * Function reading the XML document of the drones. The document is parsed
+     * with a builder borrowed from the default document builder pool.
      * 
      * @return Function which builds XML document from InputStream object.
      *         The returned object is null in case of any error.
@@ -68,7 +99,7 @@ public class DronesDataSource extends HttpDataSource<Document> {
     public static Function<InputStream, Document> getDocumentReader() {
         return (InputStream in) -> {
             try {
-                return getXmlDocumentBuilder().parse(in);
+                return DocumentBuilderPool.getDefault().parse(in);
             } catch (SAXException e) {
                 // TODO: logging.
                 return null;
@@ -94,6 +125,11 @@ public class DronesDataSource extends HttpDataSource<Document> {
      */
     public static final int DEFAULT_DMZ_THRESHOLD = 100 * 1000;
 
+    /**
+     * The identifier of the NDZ around the nest in the default zone set.
+     */
+    public static final String NEST_ZONE_ID = "nest";
+
     /**
      * The default capture tag name.
      */
@@ -119,18 +155,72 @@ public class DronesDataSource extends HttpDataSource<Document> {
      */
     private volatile ArrayList<Element> drones_ = new ArrayList<>();
 
+    /**
+     * The snapshot of the most recent capture. This value is undefined
+     * (<code>null</code>), if the drones data has not been updated.
+     */
+    private volatile DroneReport snapshot_ = null;
+
+    /**
+     * The delta of the most recent capture.
+     */
+    private volatile DroneDelta lastDelta_ = null;
+
+    /**
+     * The listeners of the capture deltas.
+     */
+    private final CopyOnWriteArrayList<Consumer<? super DroneDelta>> deltaListeners_ = new CopyOnWriteArrayList<>();
+
+    /**
+     * The default number of capture events buffered for each subscriber.
+     */
+    public static final int DEFAULT_CAPTURE_BUFFER_SIZE = 16;
+
+    /**
+     * The publisher of the capture events.
+     */
+    private final SubmissionPublisher<CaptureEvent> capturePublisher_ = new SubmissionPublisher<>(
+            ForkJoinPool.commonPool(), DEFAULT_CAPTURE_BUFFER_SIZE);
+
+    /**
+     * The number of capture events dropped for lagging subscribers.
+     */
+    private final AtomicLong droppedCaptureEvents_ = new AtomicLong();
+
+    /**
+     * The parser mode of the drone report.
+     */
+    private volatile ParserMode parserMode_ = ParserMode.DOM;
+
+    /**
+     * Is the change detection of the raw report content enabled. An undefined
+     * value enables the change detection, unless the report is streamed.
+     */
+    private volatile Boolean changeDetection_ = null;
+
+    /**
+     * The content hash of the most recent handled report. This value is undefined
+     * (<code>null</code>), if no report has been handled with change detection.
+     */
+    private Long lastContentHash_ = null;
+
+    /**
+     * The number of captures which replaced the snapshot.
+     */
+    private final AtomicLong processedCaptures_ = new AtomicLong();
+
+    /**
+     * The number of skipped reports.
+     */
+    private final AtomicLong skippedCaptures_ = new AtomicLong();
+
     /**
      * The function testing whether the drone is confirmed to fly in the NDZ.
      */
     private java.util.function.Predicate<Node> droneTester_ = (Node node) -> {
         if (validDroneNode(node)) {
-            // Testing the distance.
-            Double distance = getDroneDistanceToNest((Element) node);
-
-            // Ceiling is used on distance to ensure that the drone is within the NDZ. Due
-            // coordinate
-            // system this creates 1 mm accuracy.
-            return (Math.ceil(distance) <= getTreshholdRange());
+            // Testing the position against the zones.
+            return validDrone(toDroneObservation((Element) node, null));
         }
 
         // The test failed
@@ -163,10 +253,31 @@ public class DronesDataSource extends HttpDataSource<Document> {
     private double nestXPosition_ = 250000.0;
 
     /**
-     * The update time of the drones. This value is undefined
-     * (<code>null</code>), if the drones data has not been updated.
+     * The evaluator of the NDZ. The value is created on first use.
      */
-    private ZonedDateTime updateTime_ = null;
+    private volatile NdzEvaluator ndzEvaluator_ = null;
+
+    /**
+     * The reader of the raw content of the reports.
+     */
+    private static final Function<InputStream, byte[]> CONTENT_READER = DronesDataSource::readContent;
+
+    /**
+     * The streaming reader of the reports. The value is created on first use.
+     */
+    private volatile Function<InputStream, DroneReport> streamingReportReader_ = null;
+
+    /**
+     * The no-fly zones. The undefined value means the default zone set
+     * containing only the NDZ around the nest.
+     */
+    private volatile ZoneSet zones_ = null;
+
+    /**
+     * The default zone set containing only the NDZ around the nest. The value is
+     * created on first use.
+     */
+    private volatile ZoneSet defaultZones_ = null;
 
     /**
      * Create a new drone positions with default source.
@@ -175,6 +286,7 @@ public class DronesDataSource extends HttpDataSource<Document> {
      */
     public DronesDataSource() throws URISyntaxException {
         super(DEFAULT_DRONE_REPORT_HOST, DEFAULT_DRONE_REPORT_REST_PATH, getDocumentReader());
+        setAcceptedContentTypes("application/xml", "text/xml");
     }
 
     /**
@@ -184,6 +296,7 @@ public class DronesDataSource extends HttpDataSource<Document> {
      */
     public DronesDataSource(@NotNull URI uri) {
         super(uri, getDocumentReader());
+        setAcceptedContentTypes("application/xml", "text/xml");
     }
 
     /**
@@ -236,12 +349,13 @@ public class DronesDataSource extends HttpDataSource<Document> {
         Stream<Node> children = seekChildNodes(element,
                 (Node node) -> (node instanceof Element && tagName.equals(node.getNodeName())));
 
-        if (children.count() > 1) {
+        List<Node> matches = children.limit(2).toList();
+        if (matches.size() > 1) {
             // There was more than one child matching the value.
             return null;
         } else {
             // There was only one node.
-            return children.findFirst().orElse(null);
+            return matches.isEmpty() ? null : matches.get(0);
         }
     }
 
@@ -434,7 +548,14 @@ public class DronesDataSource extends HttpDataSource<Document> {
 
     /**
      * Updates the drone position data.
+     * <p>
+     * If the change detection is enabled, the raw content of the report is
+     * compared to the content of the previous report before parsing, and an
+     * identical report is skipped without parsing. A parsed report whose capture
+     * time equals the time of the current snapshot is skipped, too.
+     * </p>
      * 
+     * @return True, if and only if the snapshot was replaced with a new capture.
      * @throws IOException           The updated failed due IO Exception.
      * @throws SAXException          The update failed due parse exception during
      *                               parsing of the
@@ -442,24 +563,33 @@ public class DronesDataSource extends HttpDataSource<Document> {
      * @throws IllegalStateException The update failed due internal state of the
      *                               drones.
      */
-    public synchronized void update() throws IOException, SAXException, IllegalStateException {
+    public synchronized boolean update() throws IOException, SAXException, IllegalStateException {
         try {
-            // Get next document from source.
-            Document xmlDoc = this.getReport().orElse(null);
-
-            // Testing the validity of the read data.
-            if (xmlDoc != null && !validDataNode(xmlDoc)) {
-                // The node was invalid.
-                xmlDoc = null;
-            }
-            if (xmlDoc == null) {
-                // The retries failed.
-                throw new IOException("Could not access the source");
+            if (isChangeDetectionEnabled()) {
+                // Reading the raw content to detect unchanged reports before parsing.
+                byte[] content = getData(CONTENT_READER).orElse(null);
+                if (content == null) {
+                    throw new IOException("Could not access the source");
+                }
+                long contentHash = getContentHash(content);
+                if (lastContentHash_ != null && lastContentHash_ == contentHash) {
+                    // The report has not changed.
+                    skippedCaptures_.incrementAndGet();
+                    return false;
+                }
+                boolean result = handleContent(new ByteArrayInputStream(content));
+                lastContentHash_ = contentHash;
+                return result;
+            } else if (getParserMode() == ParserMode.STREAMING) {
+                // Reading the drones without building the document.
+                DroneReport report = getData(getStreamingReportReader()).orElse(null);
+                if (report == null) {
+                    throw new IOException("Could not access the source");
+                }
+                return handleReport(report);
             } else {
-                // Updating the data from xml document.
-                // TODO: Remove debug output
-                System.err.println("xmlDoc: " + xmlDoc.toString());
-                handleData(xmlDoc);
+                // Get next document from source.
+                return handleDocument(this.getReport().orElse(null));
             }
         } catch (SAXException saxException) {
             // Stream is corrupted.
@@ -471,6 +601,135 @@ public class DronesDataSource extends HttpDataSource<Document> {
         }
     }
 
+    /**
+     * Handle the raw content of the report with the current parser mode.
+     * 
+     * @param content The stream containing the report.
+     * @return True, if and only if the snapshot was replaced with a new capture.
+     * @throws IOException  The content did not contain a valid report.
+     * @throws SAXException The document was invalid.
+     */
+    protected boolean handleContent(@NotNull InputStream content) throws IOException, SAXException {
+        if (getParserMode() == ParserMode.STREAMING) {
+            DroneReport report = getStreamingReportReader().apply(content);
+            if (report == null) {
+                throw new IOException("Could not access the source");
+            }
+            return handleReport(report);
+        } else {
+            return handleDocument(getDocumentReader().apply(content));
+        }
+    }
+
+    /**
+     * Handle the read XML document.
+     * 
+     * @param xmlDoc The read document.
+     * @return True, if and only if the snapshot was replaced with a new capture.
+     * @throws IOException  The document was undefined or not a report.
+     * @throws SAXException The document was invalid.
+     */
+    private boolean handleDocument(Document xmlDoc) throws IOException, SAXException {
+        // Testing the validity of the read data.
+        if (xmlDoc != null && !validDataNode(xmlDoc)) {
+            // The node was invalid.
+            xmlDoc = null;
+        }
+        if (xmlDoc == null) {
+            // The retries failed.
+            throw new IOException("Could not access the source");
+        } else {
+            // Updating the data from xml document.
+            return handleData(xmlDoc);
+        }
+    }
+
+    /**
+     * Read the whole content of the stream, and close the stream.
+     * 
+     * @param in The read stream.
+     * @return The content of the stream, or an undefined value, if the reading
+     *         failed.
+     */
+    private static byte[] readContent(InputStream in) {
+        try (InputStream stream = in) {
+            return stream.readAllBytes();
+        } catch (IOException e) {
+            System.getLogger(DronesDataSource.class.getName()).log(Level.ERROR,
+                    "Reading the drone report failed: {0}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Get the hash of the raw report content.
+     * 
+     * @param content The content.
+     * @return The hash combining the length and the checksum of the content.
+     */
+    protected static long getContentHash(@NotNull byte[] content) {
+        CRC32C checksum = new CRC32C();
+        checksum.update(content, 0, content.length);
+        return ((long) content.length << 32) ^ checksum.getValue();
+    }
+
+    /**
+     * Is the change detection enabled. By default the change detection is
+     * enabled, unless the parser mode is {@link ParserMode#STREAMING}, as the
+     * change detection reads the whole report into memory before parsing.
+     * 
+     * @return True, if and only if the raw report content is compared to the
+     *         previous content before parsing.
+     */
+    public boolean isChangeDetectionEnabled() {
+        Boolean enabled = changeDetection_;
+        return enabled == null ? getParserMode() != ParserMode.STREAMING : enabled;
+    }
+
+    /**
+     * Set the change detection of the raw report content. The change detection
+     * of the streamed report is opt-in.
+     * 
+     * @param enabled Is the change detection enabled.
+     */
+    public synchronized void setChangeDetectionEnabled(boolean enabled) {
+        this.changeDetection_ = enabled;
+        if (!enabled) {
+            this.lastContentHash_ = null;
+        }
+    }
+
+    /**
+     * Get the number of processed captures.
+     * 
+     * @return The number of captures which replaced the snapshot.
+     */
+    public long getProcessedCaptureCount() {
+        return processedCaptures_.get();
+    }
+
+    /**
+     * Get the number of skipped captures.
+     * 
+     * @return The number of reports skipped due unchanged content or unchanged
+     *         capture time.
+     */
+    public long getSkippedCaptureCount() {
+        return skippedCaptures_.get();
+    }
+
+    /**
+     * Test whether the capture time is the capture time of the current snapshot.
+     * 
+     * @param captureTime The capture time.
+     * @return True, if and only if the current snapshot has the given capture
+     *         time.
+     */
+    private boolean isCurrentCapture(ZonedDateTime captureTime) {
+        DroneReport current = getSnapshot();
+        return current != null && current.getCaptureTime().isEqual(captureTime);
+    }
+
     /**
      * Performs update, and return updated drones.
      * 
@@ -535,9 +794,10 @@ public class DronesDataSource extends HttpDataSource<Document> {
      * Handle the drone data. This throws parse exception.
      * 
      * @param data The DOM document containing the xml data.
+     * @return True, if and only if the snapshot was replaced with a new capture.
      * @throws SAXException The given document is invalid.
      */
-    public synchronized void handleData(Document data) throws SAXException {
+    public synchronized boolean handleData(Document data) throws SAXException {
         // Testing we do have proper xml data.
         if (data == null || !getDataRootTag().equals(data.getDocumentElement().getNodeName())) {
             // We do have invalid type.
@@ -565,11 +825,215 @@ public class DronesDataSource extends HttpDataSource<Document> {
             matchingDrones = new ArrayList<>();
         }
 
+        // Skipping the capture already in the snapshot.
+        ZonedDateTime captureTime = getCaptureTime(mostRecentCapture);
+        if (isCurrentCapture(captureTime)) {
+            skippedCaptures_.incrementAndGet();
+            return false;
+        }
+
+        // Converting the drones to the observations once per capture.
+        ArrayList<DroneObservation> observations = new ArrayList<>(matchingDrones.size());
+        for (Element drone : matchingDrones) {
+            DroneObservation observation = toDroneObservation(drone, captureTime);
+            if (observation != null) {
+                observations.add(observation);
+            }
+        }
+
         // Updating the data of drones - this is synchronized to prevetn false
         // information.
-        this.drones_ = matchingDrones;
-        this.updateTime_ = getCaptureTime(mostRecentCapture);
+        replaceSnapshot(new DroneReport(captureTime, observations), matchingDrones);
+        return true;
+    }
 
+    /**
+     * Handle the drone report read without the document.
+     * 
+     * @param report The drone report of the most recent capture.
+     * @return True, if and only if the snapshot was replaced with a new capture.
+     * @throws IllegalArgumentException The given report was undefined.
+     */
+    public synchronized boolean handleReport(@NotNull DroneReport report) throws IllegalArgumentException {
+        if (report == null) {
+            throw new IllegalArgumentException("Undefined report");
+        }
+        if (isCurrentCapture(report.getCaptureTime())) {
+            skippedCaptures_.incrementAndGet();
+            return false;
+        }
+
+        // The streaming report does not have drone elements.
+        replaceSnapshot(report, new ArrayList<>());
+        return true;
+    }
+
+    /**
+     * Replace the current snapshot with a new capture, and publish the delta of
+     * the capture to the delta listeners.
+     * 
+     * @param report The snapshot of the new capture.
+     * @param drones The drone elements of the new capture.
+     */
+    private synchronized void replaceSnapshot(@NotNull DroneReport report, @NotNull ArrayList<Element> drones) {
+        DroneDelta delta = DroneDelta.between(this.snapshot_, report);
+        // Building the spatial index once per capture before publishing the snapshot.
+        report.getSpatialIndex();
+        this.drones_ = drones;
+        this.snapshot_ = report;
+        this.lastDelta_ = delta;
+        long sequence = processedCaptures_.incrementAndGet();
+        for (Consumer<? super DroneDelta> listener : deltaListeners_) {
+            listener.accept(delta);
+        }
+        if (!capturePublisher_.isClosed()) {
+            // Dropping the event for the subscribers whose buffer is full instead of
+            // blocking the update.
+            capturePublisher_.offer(new CaptureEvent(sequence, report, delta),
+                    (Flow.Subscriber<? super CaptureEvent> subscriber, CaptureEvent event) -> {
+                        droppedCaptureEvents_.incrementAndGet();
+                        return false;
+                    });
+        }
+    }
+
+    /**
+     * Get the publisher of the capture events. The publisher delivers an event
+     * once per new capture to each subscriber asynchronously. The events are
+     * delivered as the subscribers request them, and an event is dropped for a
+     * subscriber whose buffer of {@link #DEFAULT_CAPTURE_BUFFER_SIZE} events is
+     * full.
+     * 
+     * @return The publisher of the capture events.
+     */
+    public Flow.Publisher<CaptureEvent> getCapturePublisher() {
+        return capturePublisher_;
+    }
+
+    /**
+     * Subscribe to the capture events.
+     * 
+     * @param subscriber The subscriber of the capture events.
+     * @see #getCapturePublisher()
+     */
+    public void subscribeCaptures(@NotNull Flow.Subscriber<? super CaptureEvent> subscriber) {
+        capturePublisher_.subscribe(subscriber);
+    }
+
+    /**
+     * Get the number of dropped capture events.
+     * 
+     * @return The number of capture events dropped for lagging subscribers.
+     */
+    public long getDroppedCaptureEventCount() {
+        return droppedCaptureEvents_.get();
+    }
+
+    /**
+     * Close the publisher of the capture events. The subscribers are completed
+     * after the buffered events have been delivered.
+     */
+    public void closeCapturePublisher() {
+        capturePublisher_.close();
+    }
+
+    /**
+     * Get the delta of the most recent capture.
+     * 
+     * @return The delta from the previous capture to the current snapshot, or an
+     *         undefined value (<code>null</code>), if the drones data has not been
+     *         updated.
+     */
+    public DroneDelta getLastDelta() {
+        return lastDelta_;
+    }
+
+    /**
+     * Add a delta listener, if it does not already belong to the listeners. The
+     * listeners are called on the updating thread once per new capture, and they
+     * should return quickly.
+     * 
+     * @param listener The added listener.
+     */
+    public void addDeltaListener(@NotNull Consumer<? super DroneDelta> listener) {
+        if (listener != null) {
+            deltaListeners_.addIfAbsent(listener);
+        }
+    }
+
+    /**
+     * Remove a delta listener, if it does belong to the listeners.
+     * 
+     * @param listener The removed listener.
+     */
+    public void removeDeltaListener(Consumer<? super DroneDelta> listener) {
+        deltaListeners_.remove(listener);
+    }
+
+    /**
+     * Convert the drone element into a drone observation.
+     * 
+     * @param drone       The drone element.
+     * @param captureTime The capture time of the capture containing the drone.
+     * @return The drone observation of the element, if the element is a valid
+     *         drone with serial number and position. Otherwise, an undefined value
+     *         (<code>null</code>).
+     */
+    public DroneObservation toDroneObservation(Element drone, ZonedDateTime captureTime) {
+        try {
+            String serial = getDroneSerialNumber(drone);
+            Double x = getDroneXPosition(drone);
+            Double y = getDroneYPosition(drone);
+            if (serial == null || x == null || y == null) {
+                return null;
+            }
+            Double z = seekChildNode(drone, getZPositionTagName()) == null ? null : getDroneZPosition(drone);
+            return new DroneObservation(serial, captureTime, x, y, z == null ? Double.NaN : z);
+        } catch (NullPointerException | NumberFormatException | ClassCastException invalidPosition) {
+            // The drone did not have valid position.
+            return null;
+        }
+    }
+
+    /**
+     * Get the parser mode of the drone report.
+     * 
+     * @return The current parser mode.
+     */
+    public ParserMode getParserMode() {
+        return parserMode_;
+    }
+
+    /**
+     * Set the parser mode of the drone report. The mode takes effect on the next
+     * update.
+     * 
+     * @param mode The new parser mode.
+     * @throws IllegalArgumentException The given mode was undefined.
+     */
+    public void setParserMode(@NotNull ParserMode mode) throws IllegalArgumentException {
+        if (mode == null) {
+            throw new IllegalArgumentException("Undefined parser mode");
+        }
+        this.parserMode_ = mode;
+    }
+
+    /**
+     * Get the reader reading the drone report without building the document.
+     * 
+     * @return The streaming reader using the tag names of this data source.
+     */
+    protected Function<InputStream, DroneReport> getStreamingReportReader() {
+        Function<InputStream, DroneReport> result = streamingReportReader_;
+        if (result == null) {
+            // The same reader is returned to allow reusing the value of an unchanged
+            // report.
+            result = new DroneReportReader(getDataRootTag(), getCaptureTagname(), getSnapShotAttributeName(),
+                    getDroneTag(), getSerialNumberTagName(), getXPositionTagName(), getYPositionTagName(),
+                    getZPositionTagName());
+            streamingReportReader_ = result;
+        }
+        return result;
     }
 
     /**
@@ -634,6 +1098,236 @@ public class DronesDataSource extends HttpDataSource<Document> {
         return this.drones_.stream().filter((Element element) -> (element != null && validDrone(element))).toList();
     }
 
+    /**
+     * Test a drone observation for violating the NDZ.
+     * 
+     * @param drone The drone observation.
+     * @return True, if and only if the given drone passes the NDZ test.
+     */
+    public boolean validDrone(DroneObservation drone) {
+        return drone != null && getZones().violatesAny(drone.getX(), drone.getY());
+    }
+
+    /**
+     * Get the no-fly zones.
+     * 
+     * @return The current zone set. Defaults to the zone set containing only the
+     *         NDZ around the nest with identifier {@link #NEST_ZONE_ID}.
+     */
+    public ZoneSet getZones() {
+        ZoneSet result = zones_;
+        if (result == null) {
+            result = defaultZones_;
+            if (result == null) {
+                result = new ZoneSet(List.of(new CircleZone(NEST_ZONE_ID, getNestXPosition(), getNestYPosition_(),
+                        getTreshholdRange())));
+                defaultZones_ = result;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Set the no-fly zones. The zones take effect on the next evaluation.
+     * 
+     * @param zones The new zone set. An undefined value restores the default
+     *              zone set.
+     */
+    public void setZones(ZoneSet zones) {
+        this.zones_ = zones;
+    }
+
+    /**
+     * Get the zones the drone violates.
+     * 
+     * @param drone The drone observation.
+     * @return The list of the zones containing the drone.
+     */
+    public List<Zone> getViolatedZones(DroneObservation drone) {
+        if (drone == null) {
+            return Collections.emptyList();
+        }
+        return getZones().getViolatedZones(drone.getX(), drone.getY());
+    }
+
+    /**
+     * Get the violators of the given snapshot for each zone. All zones are
+     * evaluated in a single pass over the drones.
+     * 
+     * @param snapshot The snapshot. Defaults to a snapshot without drones.
+     * @return The map from zone identifier to the list of the drones violating
+     *         the zone. The map contains every zone in the zone set order.
+     */
+    public Map<String, List<DroneObservation>> getZoneViolations(DroneReport snapshot) {
+        ZoneSet zones = getZones();
+        Map<String, List<DroneObservation>> result = new LinkedHashMap<>(zones.size() * 2);
+        if (snapshot == null) {
+            zones.getZones().forEach((Zone zone) -> result.put(zone.getId(), Collections.emptyList()));
+        } else {
+            ColumnarDroneSnapshot columns = snapshot.getColumns();
+            zones.evaluate(columns.getXColumn(), columns.getYColumn(), columns.size())
+                    .forEach((String id, BitSet violators) -> result.put(id, selectDrones(snapshot, violators)));
+        }
+        return Collections.unmodifiableMap(result);
+    }
+
+    /**
+     * Get the evaluator testing the drones against the NDZ.
+     * 
+     * @return The evaluator of the NDZ around the nest.
+     */
+    public NdzEvaluator getNdzEvaluator() {
+        NdzEvaluator result = ndzEvaluator_;
+        if (result == null) {
+            result = new NdzEvaluator(getNestXPosition(), getNestYPosition_(), getTreshholdRange());
+            ndzEvaluator_ = result;
+        }
+        return result;
+    }
+
+    /**
+     * Get the violators of the given snapshot.
+     * 
+     * @param snapshot The snapshot. Defaults to a snapshot without drones.
+     * @return The bit set containing the indexes of the drones violating any
+     *         zone.
+     */
+    public BitSet getViolators(DroneReport snapshot) {
+        if (snapshot == null) {
+            return new BitSet();
+        }
+        if (zones_ == null) {
+            // The default zone set only contains the NDZ around the nest.
+            return getNdzEvaluator().evaluate(snapshot.getSpatialIndex());
+        }
+        ColumnarDroneSnapshot columns = snapshot.getColumns();
+        return zones_.evaluateAny(columns.getXColumn(), columns.getYColumn(), columns.size());
+    }
+
+    /**
+     * Get the matching drone observations at the moment.
+     * The acquired list is not altered by the drones list.
+     * 
+     * @return The list of the drones violating the NDZ.
+     */
+    public java.util.List<DroneObservation> getMatchingDrones() {
+        return getMatchingDrones(getSnapshot());
+    }
+
+    /**
+     * Get the matching drone observations of the given snapshot.
+     * 
+     * @param snapshot The snapshot. Defaults to a snapshot without drones.
+     * @return The list of the drones of the snapshot violating the NDZ.
+     */
+    public java.util.List<DroneObservation> getMatchingDrones(DroneReport snapshot) {
+        if (snapshot == null) {
+            return Collections.emptyList();
+        }
+        return selectDrones(snapshot, getViolators(snapshot));
+    }
+
+    /**
+     * Get the drones of the current snapshot within the radius of the point.
+     * 
+     * @param x      The X coordinate of the point in millimeters.
+     * @param y      The Y coordinate of the point in millimeters.
+     * @param radius The radius in millimeters.
+     * @return The list of the drones at most the radius away from the point.
+     */
+    public List<DroneObservation> getDronesWithinRadius(double x, double y, double radius) {
+        DroneReport snapshot = getSnapshot();
+        if (snapshot == null) {
+            return Collections.emptyList();
+        }
+        return selectDrones(snapshot, snapshot.getSpatialIndex().withinRadius(x, y, radius));
+    }
+
+    /**
+     * Get the drones of the current snapshot within the rectangle.
+     * 
+     * @param minX The smallest X coordinate of the rectangle in millimeters.
+     * @param minY The smallest Y coordinate of the rectangle in millimeters.
+     * @param maxX The largest X coordinate of the rectangle in millimeters.
+     * @param maxY The largest Y coordinate of the rectangle in millimeters.
+     * @return The list of the drones within the rectangle.
+     */
+    public List<DroneObservation> getDronesWithinRectangle(double minX, double minY, double maxX, double maxY) {
+        DroneReport snapshot = getSnapshot();
+        if (snapshot == null) {
+            return Collections.emptyList();
+        }
+        return selectDrones(snapshot, snapshot.getSpatialIndex().withinRectangle(minX, minY, maxX, maxY));
+    }
+
+    /**
+     * Get the drones of the current snapshot nearest to the nest.
+     * 
+     * @param count The maximum number of drones.
+     * @return The list of at most given number of drones ordered by ascending
+     *         distance to the nest.
+     */
+    public List<DroneObservation> getNearestDronesToNest(int count) {
+        DroneReport snapshot = getSnapshot();
+        if (snapshot == null) {
+            return Collections.emptyList();
+        }
+        List<DroneObservation> drones = snapshot.getDrones();
+        int[] nearest = snapshot.getSpatialIndex().nearest(getNestXPosition(), getNestYPosition_(), count);
+        ArrayList<DroneObservation> result = new ArrayList<>(nearest.length);
+        for (int index : nearest) {
+            result.add(drones.get(index));
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    /**
+     * Select the drones of the snapshot.
+     * 
+     * @param snapshot The snapshot.
+     * @param selected The indexes of the selected drones.
+     * @return The unmodifiable list of the selected drones in the snapshot order.
+     */
+    private static List<DroneObservation> selectDrones(@NotNull DroneReport snapshot, @NotNull BitSet selected) {
+        List<DroneObservation> drones = snapshot.getDrones();
+        ArrayList<DroneObservation> result = new ArrayList<>(selected.cardinality());
+        for (int i = selected.nextSetBit(0); i >= 0; i = selected.nextSetBit(i + 1)) {
+            result.add(drones.get(i));
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    /**
+     * The list of all drone observations.
+     * 
+     * @return The list of all drones of the current snapshot.
+     */
+    public List<DroneObservation> getDrones() {
+        DroneReport snapshot = getSnapshot();
+        return snapshot == null ? Collections.emptyList() : snapshot.getDrones();
+    }
+
+    /**
+     * Get the snapshot of the most recent capture. The snapshot is immutable, and
+     * it may be used without holding the monitor of the data source.
+     * 
+     * @return The most recent snapshot, or an undefined value
+     *         (<code>null</code>), if the drones data has not been updated.
+     */
+    public DroneReport getSnapshot() {
+        return snapshot_;
+    }
+
+    /**
+     * Get the drone distance to the nest.
+     * 
+     * @param drone The drone observation.
+     * @return The distance from the drone to the nest in millimeters.
+     */
+    public double getDroneDistanceToNest(@NotNull DroneObservation drone) {
+        return drone.distanceTo(getNestXPosition(), getNestYPosition_());
+    }
+
     /**
      * Get the drone distance to the nest.
      * 
@@ -642,7 +1336,7 @@ public class DronesDataSource extends HttpDataSource<Document> {
      *         valid. Otherwise, an undefined value.
      */
     public Double getDroneDistanceToNest(Element droneElement) {
-        if (this.validDrone(droneElement)) {
+        if (this.validDroneNode(droneElement)) {
             // Calculating hte distance.
             double xPosition, yPosition;
             synchronized (this) {
@@ -651,7 +1345,7 @@ public class DronesDataSource extends HttpDataSource<Document> {
             }
             try {
                 xPosition = getDroneXPosition(droneElement) - xPosition;
-                yPosition = getDroneXPosition(droneElement) - yPosition;
+                yPosition = getDroneYPosition(droneElement) - yPosition;
                 return Math.sqrt(Math.pow(xPosition, 2) + Math.pow(yPosition, 2));
             } catch (NullPointerException nullPosition) {
                 // Either X- or Y-position was invalid.
@@ -669,7 +1363,8 @@ public class DronesDataSource extends HttpDataSource<Document> {
      * @return The time of the most recent drones data.
      */
     public java.time.ZonedDateTime getUpdateTime() {
-        return updateTime_;
+        DroneReport snapshot = getSnapshot();
+        return snapshot == null ? null : snapshot.getCaptureTime();
     }
 
     /**
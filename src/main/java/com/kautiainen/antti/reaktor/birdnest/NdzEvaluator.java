@@ -0,0 +1,162 @@
+package com.kautiainen.antti.reaktor.birdnest;
+
+import java.util.BitSet;
+
+import javax.validation.constraints.NotNull;
+
+import com.kautiainen.antti.reaktor.birdnest.spatial.GridIndex;
+
+/**
+ * NdzEvaluator tests the drones of a whole capture against a circular NDZ.
+ * <p>
+ * The evaluation compares squared distances, so it does not need square roots
+ * or boxed values. The distances are first computed into a primitive array in a
+ * loop without branches, which the just in time compiler is able to vectorize,
+ * and the violators are then packed into a bit set.
+ * </p>
+ * <p>
+ * A drone violates the NDZ, if the ceiling of its distance to the center is at
+ * most the threshold. This is the same rule the drone elements are tested
+ * with.
+ * </p>
+ */
+public final class NdzEvaluator {
+
+    /**
+     * The X coordinate of the center in millimeters.
+     */
+    private final double centerX_;
+
+    /**
+     * The Y coordinate of the center in millimeters.
+     */
+    private final double centerY_;
+
+    /**
+     * The threshold range of the NDZ in millimeters.
+     */
+    private final double threshold_;
+
+    /**
+     * The square of the largest distance passing the NDZ test.
+     */
+    private final double limitSquared_;
+
+    /**
+     * Create a new NDZ evaluator.
+     *
+     * @param centerX   The X coordinate of the center in millimeters.
+     * @param centerY   The Y coordinate of the center in millimeters.
+     * @param threshold The threshold range in millimeters.
+     */
+    public NdzEvaluator(double centerX, double centerY, double threshold) {
+        this.centerX_ = centerX;
+        this.centerY_ = centerY;
+        this.threshold_ = threshold;
+        // The ceiling of a distance is at most the threshold, if and only if the
+        // distance is at most the floor of the threshold.
+        double limit = Math.floor(threshold);
+        this.limitSquared_ = limit < 0 ? -1.0 : limit * limit;
+    }
+
+    /**
+     * Get the X coordinate of the center.
+     *
+     * @return The X coordinate of the center in millimeters.
+     */
+    public double getCenterX() {
+        return centerX_;
+    }
+
+    /**
+     * Get the Y coordinate of the center.
+     *
+     * @return The Y coordinate of the center in millimeters.
+     */
+    public double getCenterY() {
+        return centerY_;
+    }
+
+    /**
+     * Get the threshold range.
+     *
+     * @return The threshold range in millimeters.
+     */
+    public double getThreshold() {
+        return threshold_;
+    }
+
+    /**
+     * Test a single position.
+     *
+     * @param x The X coordinate in millimeters.
+     * @param y The Y coordinate in millimeters.
+     * @return True, if and only if the given position violates the NDZ.
+     */
+    public boolean test(double x, double y) {
+        double dx = x - centerX_;
+        double dy = y - centerY_;
+        return dx * dx + dy * dy <= limitSquared_;
+    }
+
+    /**
+     * Evaluate all drones of the snapshot.
+     *
+     * @param snapshot The evaluated snapshot.
+     * @return The bit set containing the indexes of the violating drones.
+     */
+    public BitSet evaluate(@NotNull ColumnarDroneSnapshot snapshot) {
+        return evaluate(snapshot.getXColumn(), snapshot.getYColumn(), snapshot.size());
+    }
+
+    /**
+     * Evaluate the positions of the spatial index. Only the positions in the
+     * cells intersecting the NDZ are tested.
+     *
+     * @param index The spatial index of the positions.
+     * @return The bit set containing the indexes of the violating positions.
+     */
+    public BitSet evaluate(@NotNull GridIndex index) {
+        return index.withinDistanceSquared(centerX_, centerY_, limitSquared_);
+    }
+
+    /**
+     * Evaluate the positions given as parallel arrays.
+     *
+     * @param x     The X coordinates in millimeters.
+     * @param y     The Y coordinates in millimeters.
+     * @param count The number of evaluated positions.
+     * @return The bit set containing the indexes of the violating positions.
+     */
+    public BitSet evaluate(@NotNull double[] x, @NotNull double[] y, int count) {
+        double[] distances = squaredDistances(x, y, count, new double[count]);
+        long[] words = new long[(count + 63) >>> 6];
+        double limit = limitSquared_;
+        for (int i = 0; i < count; i++) {
+            if (distances[i] <= limit) {
+                words[i >>> 6] |= 1L << i;
+            }
+        }
+        return BitSet.valueOf(words);
+    }
+
+    /**
+     * Compute the squared distances of the positions to the center.
+     *
+     * @param x      The X coordinates in millimeters.
+     * @param y      The Y coordinates in millimeters.
+     * @param count  The number of positions.
+     * @param result The array into which the squared distances are stored. The
+     *               array must have at least count elements.
+     * @return The given result array.
+     */
+    public double[] squaredDistances(@NotNull double[] x, @NotNull double[] y, int count, @NotNull double[] result) {
+        double cx = centerX_, cy = centerY_;
+        for (int i = 0; i < count; i++) {
+            double dx = x[i] - cx;
+            double dy = y[i] - cy;
+            result[i] = dx * dx + dy * dy;
+        }
+        return result;
+    }
+}
@@ -2,6 +2,7 @@ package com.kautiainen.antti.reaktor.birdnest;
 import java.time.ZonedDateTime;
 import java.util.Arrays;
 
+import javax.json.JsonString;
 import javax.json.JsonValue;
 
 /**
@@ -65,6 +66,11 @@ public class Pilot {
      */
     private ZonedDateTime expireTime_ = null;
 
+    /**
+     * The time the drone of the pilot was last seen.
+     */
+    private ZonedDateTime lastSeen_ = null;
+
     /**
      * The phone number of the pilot.
      */
@@ -86,6 +92,12 @@ public class Pilot {
      */
     private double distance_;
 
+    /**
+     * The closest distances to the violated zones keyed by the zone identifier.
+     * In millimeters.
+     */
+    private final java.util.Map<String, Double> zoneDistances_ = new java.util.HashMap<>();
+
     /**
      * The pilot identifier.
      */
@@ -131,10 +143,28 @@ public class Pilot {
             setFirstName(String.join(" ", nameParts.subList(0, nameParts.size()-1)));
             setLastName(nameParts.get(nameParts.size()-1));
         }
-        setExpireTime(updateExpireTime(detectionTime));
+        setViolationTime(detectionTime);
         this.build();
     }
 
+    /**
+     * Convert the JSON value to the string value of a property. The JSON strings
+     * are converted to their unquoted content.
+     * 
+     * @param value The JSON value.
+     * @return The string value, or an undefined value, if the value is undefined
+     *  or JSON null.
+     */
+    static String toStringValue(JsonValue value) {
+        if (value == null || value.getValueType() == JsonValue.ValueType.NULL) {
+            return null;
+        } else if (value instanceof JsonString) {
+            return ((JsonString) value).getString();
+        } else {
+            return value.toString();
+        }
+    }
+
     /**
      * Is the pilot incomplete.
      * 
@@ -161,7 +191,7 @@ public class Pilot {
      * @return True, if and only if the expire time is valid.
      */
     public boolean validExpireTime(ZonedDateTime time) {
-        return time != null && ZonedDateTime.now().isAfter(time);
+        return time != null;
     }
 
     /**
@@ -200,7 +230,7 @@ public class Pilot {
      * 
      * @return The drone serial number of the pilot.
      */
-    public String getDroneSerialNumber() {
+    public synchronized String getDroneSerialNumber() {
         return this.droneSerialNumber_;
     }
 
@@ -225,6 +255,40 @@ public class Pilot {
         }
     }
 
+    /**
+     * Get the closest distance to the zone.
+     * 
+     * @param zoneId The identifier of the zone.
+     * @return The closest distance to the zone, or an undefined value, if the
+     *         drone has not violated the zone.
+     */
+    public synchronized Double getClosestDistanceToZone(String zoneId) {
+        return this.zoneDistances_.get(zoneId);
+    }
+
+    /**
+     * Set distance to the zone. The distance is only changed, if the drone is
+     * closer to the zone than it has been before.
+     * 
+     * @param zoneId   The identifier of the zone.
+     * @param distance The new distance to the zone.
+     */
+    public synchronized void setClosestDistanceToZone(String zoneId, double distance) {
+        if (zoneId != null) {
+            this.zoneDistances_.merge(zoneId, distance, Math::min);
+        }
+    }
+
+    /**
+     * Get the closest distances to the violated zones.
+     * 
+     * @return The unmodifiable map from the zone identifier to the closest
+     *         distance.
+     */
+    public synchronized java.util.Map<String, Double> getZoneDistances() {
+        return java.util.Map.copyOf(this.zoneDistances_);
+    }
+
     /**
      * Get the current expiration time of the pilot data.
      * 
@@ -344,7 +408,7 @@ public class Pilot {
      * @throws IllegalStateException The built pilot does not support change of the value.
      */
     public void setFirstName(JsonValue firstName) throws IllegalArgumentException, IllegalStateException {
-        this.setFirstName(firstName == null ? null : firstName.toString());
+        this.setFirstName(toStringValue(firstName));
     }
 
     /**
@@ -393,7 +457,7 @@ public class Pilot {
      * @throws IllegalStateException The built pilot does not support change of the value.
      */
     public void setLastName(JsonValue lastName) throws IllegalArgumentException, IllegalStateException {
-        this.setLastName(lastName == null ? null : lastName.toString());
+        this.setLastName(toStringValue(lastName));
     }
 
     /**
@@ -442,7 +506,7 @@ public class Pilot {
      * @throws IllegalStateException The built pilot does not support change of the value.
      */
     public void setEmail(JsonValue email) throws IllegalArgumentException, IllegalStateException {
-        this.setEmail(email == null ? null : email.toString());
+        this.setEmail(toStringValue(email));
     }
 
     /**
@@ -491,7 +555,8 @@ public class Pilot {
      * @throws IllegalStateException The built pilot does not support change of the value.
      */
     public void setPhoneNumber(JsonValue phoneNumber) throws IllegalArgumentException, IllegalStateException {
-        this.setPhoneNumber(phoneNumber == null || phoneNumber.toString().isBlank() ? null : phoneNumber.toString());
+        String value = toStringValue(phoneNumber);
+        this.setPhoneNumber(value == null || value.isBlank() ? null : value);
     }
 
     /**
@@ -506,11 +571,13 @@ public class Pilot {
     /**
      * Test validity of the pilot identifier.
      * 
-     * @param pilotId The pilot identifier.
+     * @param pilotId The pilot identifier. An undefined value is an unknown
+     *  identifier.
      * @return True, if and only if hte pilot identifier is valid.
      */
     public boolean validPilotId(String pilotId) {
-        return pilotId != null && !pilotId.isBlank();
+        // The stub pilots of the unavailable pilot data have no identifier.
+        return pilotId == null || !pilotId.isBlank();
     }
 
     /**
@@ -541,7 +608,7 @@ public class Pilot {
      * @throws IllegalStateException The built pilot does not support change of the value.
      */
     public void setPilotId(JsonValue pilotId) throws IllegalArgumentException, IllegalStateException {
-        this.setPilotId(pilotId == null ? null : pilotId.toString());
+        this.setPilotId(toStringValue(pilotId));
     }
 
     /**
@@ -554,13 +621,77 @@ public class Pilot {
         return DEFAULT_EXPIRATION_TIMEOUT;
     }
 
-    public void setDroneSerial(String droneSerial) {
+    /**
+     * Set the drone serial number of the pilot.
+     * 
+     * @param droneSerial The serial number of the drone of the pilot.
+     * @throws IllegalArgumentException The given serial number is invalid.
+     * @throws IllegalStateException The built pilot does not support change of the value.
+     */
+    public synchronized void setDroneSerial(String droneSerial) throws IllegalArgumentException, IllegalStateException {
+        if (validDroneSerial(droneSerial)) {
+            if (this.isIncomplete()) {
+                this.droneSerialNumber_ = droneSerial;
+            } else {
+                throw new IllegalStateException("Cannot change the value after consruction");
+            }
+        } else {
+            throw new IllegalArgumentException(INVALID_DRONE_SARIAL_NUMBER_MESSAGE);
+        }
     }
 
-    public void setViolationTime(ZonedDateTime violationTime) {
+    /**
+     * Set the time of the violation. The violation time is the time the drone
+     * was last seen, and the pilot data expires the expiration minutes after it.
+     * 
+     * @param violationTime The time of the violation.
+     * @throws IllegalArgumentException The given violation time is invalid, or
+     *  it would move the expiration time of the built pilot backward.
+     */
+    public synchronized void setViolationTime(ZonedDateTime violationTime) throws IllegalArgumentException {
+        setExpireTime(updateExpireTime(violationTime));
+        this.lastSeen_ = violationTime;
     }
 
+    /**
+     * Get the time the drone of the pilot was last seen.
+     * 
+     * @return The last time the drone was seen, or an undefined value, if the
+     *  time is not known.
+     */
+    public synchronized ZonedDateTime getLastSeenTime() {
+        return this.lastSeen_;
+    }
+
+    /**
+     * Record a sighting of the drone of the pilot. The closest distance only
+     * decreases, and the last seen time and the expiration time only move
+     * forward, so the sightings may be recorded in any order.
+     * 
+     * @param seenTime The time of the sighting. An undefined value does not
+     *  change the last seen time.
+     * @param distanceToNest The distance to the nest at the sighting. An
+     *  invalid distance does not change the closest distance.
+     */
+    public synchronized void recordSighting(ZonedDateTime seenTime, double distanceToNest) {
+        if (validClosestDistanceToNest(distanceToNest)) {
+            setClosestDistanceToNest(distanceToNest);
+        }
+        if (seenTime != null && (this.lastSeen_ == null || seenTime.isAfter(this.lastSeen_))) {
+            this.lastSeen_ = seenTime;
+            ZonedDateTime expireTime = updateExpireTime(seenTime);
+            if (this.expireTime_ == null || expireTime.isAfter(this.expireTime_)) {
+                this.expireTime_ = expireTime;
+            }
+        }
+    }
+
+    /**
+     * Is the pilot still valid at the current time.
+     * 
+     * @return True, if and only if the pilot has not expired.
+     */
     public boolean isValid() {
-        return false;
+        return isValid(ZonedDateTime.now());
     }
 }
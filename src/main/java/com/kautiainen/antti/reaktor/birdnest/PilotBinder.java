@@ -0,0 +1,280 @@
+package com.kautiainen.antti.reaktor.birdnest;
+
+import java.io.Reader;
+import java.lang.System.Logger.Level;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.json.Json;
+import javax.json.JsonException;
+import javax.json.JsonObject;
+import javax.json.JsonValue;
+import javax.json.stream.JsonParser;
+import javax.json.stream.JsonParser.Event;
+import javax.validation.constraints.NotNull;
+
+/**
+ * PilotBinder binds the pilot data of the pilot service to the pilots.
+ * <p>
+ * The setters of the pilot properties are resolved once by the JSON field name,
+ * so the binding does neither introspect the pilot nor invoke the setters
+ * reflectively. The fields without a setter are ignored.
+ * </p>
+ */
+public class PilotBinder {
+
+    /**
+     * PropertySetter sets a pilot property from its string value.
+     */
+    @FunctionalInterface
+    public static interface PropertySetter {
+
+        /**
+         * Set the property of the pilot.
+         *
+         * @param pilot The pilot.
+         * @param value The string value of the property. An undefined value, if
+         *              the value is JSON null.
+         * @throws IllegalArgumentException The value was invalid.
+         * @throws IllegalStateException    The pilot has been built.
+         */
+        void set(Pilot pilot, String value) throws IllegalArgumentException, IllegalStateException;
+    }
+
+    /**
+     * The setters of the pilot data fields of the pilot service by the field
+     * name.
+     */
+    public static final Map<String, PropertySetter> DEFAULT_SETTERS = Map.of(
+            "pilotId", Pilot::setPilotId,
+            "firstName", Pilot::setFirstName,
+            "lastName", Pilot::setLastName,
+            "email", Pilot::setEmail,
+            "phoneNumber", (Pilot pilot, String value) -> pilot
+                    .setPhoneNumber(value == null || value.isBlank() ? null : value));
+
+    /**
+     * The binder using the default setters.
+     */
+    private static final PilotBinder DEFAULT = new PilotBinder();
+
+    /**
+     * Get the binder using the default setters.
+     *
+     * @return The default binder.
+     */
+    public static PilotBinder getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * The setters by the field name.
+     */
+    private final Map<String, PropertySetter> setters_;
+
+    /**
+     * The number of the ignored fields.
+     */
+    private final AtomicLong ignored_ = new AtomicLong();
+
+    /**
+     * Create a new binder with the default setters.
+     */
+    public PilotBinder() {
+        this(DEFAULT_SETTERS);
+    }
+
+    /**
+     * Create a new binder.
+     *
+     * @param setters The setters by the field name.
+     * @throws IllegalArgumentException The setters were undefined, or contained
+     *                                  an undefined name or setter.
+     */
+    public PilotBinder(@NotNull Map<String, PropertySetter> setters) throws IllegalArgumentException {
+        try {
+            this.setters_ = Map.copyOf(setters);
+        } catch (NullPointerException exception) {
+            throw new IllegalArgumentException("Undefined setters", exception);
+        }
+    }
+
+    /**
+     * Get the setter of the field.
+     *
+     * @param fieldName The name of the field.
+     * @return The setter of the field, or an undefined value, if the field is
+     *         ignored.
+     */
+    public PropertySetter getSetter(String fieldName) {
+        return fieldName == null ? null : setters_.get(fieldName);
+    }
+
+    /**
+     * Get the number of the ignored fields.
+     *
+     * @return The number of the fields without a setter or with a structured
+     *         value ignored by the binder.
+     */
+    public long getIgnoredCount() {
+        return ignored_.get();
+    }
+
+    /**
+     * Record the ignored field.
+     *
+     * @param fieldName The name of the ignored field.
+     */
+    private void ignore(String fieldName) {
+        ignored_.incrementAndGet();
+        System.Logger logger = System.getLogger(PilotBinder.class.getName());
+        if (logger.isLoggable(Level.TRACE)) {
+            logger.log(Level.TRACE, "Ignored pilot data field \"{0}\"", fieldName);
+        }
+    }
+
+    /**
+     * Bind the pilot data to the pilot.
+     *
+     * @param json  The pilot data.
+     * @param pilot The pilot being built.
+     * @return The given pilot.
+     * @throws IllegalArgumentException The pilot data or the pilot was undefined,
+     *                                  or the pilot data was invalid.
+     * @throws IllegalStateException    The pilot has been built.
+     */
+    public Pilot bind(@NotNull JsonObject json, @NotNull Pilot pilot)
+            throws IllegalArgumentException, IllegalStateException {
+        if (json == null || pilot == null) {
+            throw new IllegalArgumentException("Undefined pilot data or pilot");
+        }
+        for (Map.Entry<String, JsonValue> entry : json.entrySet()) {
+            PropertySetter setter = setters_.get(entry.getKey());
+            JsonValue value = entry.getValue();
+            if (setter == null || value instanceof javax.json.JsonStructure) {
+                ignore(entry.getKey());
+            } else {
+                setter.set(pilot, Pilot.toStringValue(value));
+            }
+        }
+        return pilot;
+    }
+
+    /**
+     * Bind the pilot data object read from the parser to the pilot. The parser
+     * is positioned after the end of the object.
+     *
+     * @param parser The parser positioned before the start of the pilot data
+     *               object.
+     * @param pilot  The pilot being built.
+     * @return The given pilot.
+     * @throws IllegalArgumentException The parser or the pilot was undefined, or
+     *                                  the pilot data was invalid.
+     * @throws IllegalStateException    The pilot has been built.
+     */
+    public Pilot bind(@NotNull JsonParser parser, @NotNull Pilot pilot)
+            throws IllegalArgumentException, IllegalStateException {
+        if (parser == null || pilot == null) {
+            throw new IllegalArgumentException("Undefined parser or pilot");
+        }
+        try {
+            if (!parser.hasNext() || parser.next() != Event.START_OBJECT) {
+                throw new IllegalArgumentException("Pilot data is not an object");
+            }
+            while (parser.hasNext()) {
+                Event event = parser.next();
+                if (event == Event.END_OBJECT) {
+                    return pilot;
+                }
+                String fieldName = parser.getString();
+                PropertySetter setter = setters_.get(fieldName);
+                if (!parser.hasNext()) {
+                    break;
+                }
+                switch (parser.next()) {
+                case START_OBJECT:
+                case START_ARRAY:
+                    skipStructure(parser);
+                    ignore(fieldName);
+                    break;
+                case VALUE_NULL:
+                    bindValue(setter, fieldName, pilot, null);
+                    break;
+                case VALUE_TRUE:
+                    bindValue(setter, fieldName, pilot, "true");
+                    break;
+                case VALUE_FALSE:
+                    bindValue(setter, fieldName, pilot, "false");
+                    break;
+                default:
+                    bindValue(setter, fieldName, pilot, parser.getString());
+                }
+            }
+        } catch (JsonException exception) {
+            throw new IllegalArgumentException("Invalid pilot data", exception);
+        }
+        throw new IllegalArgumentException("Truncated pilot data");
+    }
+
+    /**
+     * Bind the pilot data read from the reader to the pilot.
+     *
+     * @param reader The reader of the pilot data.
+     * @param pilot  The pilot being built.
+     * @return The given pilot.
+     * @throws IllegalArgumentException The reader or the pilot was undefined, or
+     *                                  the pilot data was invalid.
+     * @throws IllegalStateException    The pilot has been built.
+     */
+    public Pilot read(@NotNull Reader reader, @NotNull Pilot pilot)
+            throws IllegalArgumentException, IllegalStateException {
+        if (reader == null) {
+            throw new IllegalArgumentException("Undefined reader");
+        }
+        try (JsonParser parser = Json.createParser(reader)) {
+            return bind(parser, pilot);
+        } catch (JsonException exception) {
+            throw new IllegalArgumentException("Invalid pilot data", exception);
+        }
+    }
+
+    /**
+     * Set the value of the field, or ignore the field without a setter.
+     *
+     * @param setter    The setter of the field.
+     * @param fieldName The name of the field.
+     * @param pilot     The pilot being built.
+     * @param value     The value of the field.
+     */
+    private void bindValue(PropertySetter setter, String fieldName, Pilot pilot, String value) {
+        if (setter == null) {
+            ignore(fieldName);
+        } else {
+            setter.set(pilot, value);
+        }
+    }
+
+    /**
+     * Skip the rest of the object or the array whose start the parser has
+     * read.
+     *
+     * @param parser The parser.
+     */
+    private static void skipStructure(JsonParser parser) {
+        int depth = 1;
+        while (depth > 0 && parser.hasNext()) {
+            switch (parser.next()) {
+            case START_OBJECT:
+            case START_ARRAY:
+                depth++;
+                break;
+            case END_OBJECT:
+            case END_ARRAY:
+                depth--;
+                break;
+            default:
+                // Skipping the value.
+            }
+        }
+    }
+}
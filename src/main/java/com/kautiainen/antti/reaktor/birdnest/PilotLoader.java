@@ -1,47 +1,51 @@
 package com.kautiainen.antti.reaktor.birdnest;
 
-import java.beans.IntrospectionException;
-import java.beans.PropertyDescriptor;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.lang.System.Logger.Level;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.time.ZonedDateTime;
 import java.util.Collections;
 import java.util.Map.Entry;
+import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.regex.Pattern;
 
 import javax.json.Json;
+import javax.json.JsonException;
 import javax.json.JsonObject;
 import javax.json.JsonValue;
+import javax.validation.constraints.NotNull;
 
 import org.apache.commons.text.StringEscapeUtils;
 
+import com.kautiainen.antti.reaktor.birdnest.data.HttpClientRegistry;
+import com.kautiainen.antti.reaktor.birdnest.data.HttpDataSource;
+import com.kautiainen.antti.reaktor.birdnest.data.PersistentCache;
+import com.kautiainen.antti.reaktor.birdnest.data.ResiliencePolicy;
+import com.kautiainen.antti.reaktor.birdnest.data.TtlCache;
 import com.kautiainen.antti.reaktor.birdnest.rest.RestDataSource;
 import com.kautiainen.antti.reaktor.birdnest.rest.RestParameter;
-import com.sun.jersey.api.client.ClientHandlerException;
-import com.sun.jersey.api.client.UniformInterfaceException;
 
 /**
  * PilotLoader loads pilot data.
  */
 public class PilotLoader {
 
-    /**
-     * The format strign for read only porperty.
-     */
-    private static final String READ_ONLY_PROPERTY_FORMAT_STRING = "Read only property %s of %s with value %s";
-
-    /**
-     * THe format string taking property name, object name, and value as parameters.
-     */
-    private static final String UNKNOWN_PROPERTY_FORMAT_STRING = "Unknown %s property of %s with value %s";
-
     /**
      * THe message indicating an innocent pilot is requested.
      */
@@ -57,6 +61,45 @@ public class PilotLoader {
      */
     public static final String UNDEFINED_VALUE_STRING = "undefined";
 
+    /**
+     * The default maximum number of the cached pilot lookups.
+     */
+    public static final int DEFAULT_CACHE_SIZE = 1024;
+
+    /**
+     * The default time the pilot data is cached. The personal data of the pilots
+     * is not kept in memory longer than the pilots are retained, so a drone
+     * violating again after its pilot has expired gets fresh pilot data.
+     */
+    public static final Duration DEFAULT_POSITIVE_TTL = Duration.ofMinutes(Pilot.DEFAULT_EXPIRATION_TIMEOUT);
+
+    /**
+     * The default time the missing pilots and the failed lookups are cached.
+     */
+    public static final Duration DEFAULT_NEGATIVE_TTL = Duration.ofMinutes(1);
+
+    /**
+     * The default maximum number of the lookups in flight of a batch resolution.
+     */
+    public static final int DEFAULT_MAX_IN_FLIGHT = 8;
+
+    /**
+     * The default deadline of a batch resolution.
+     */
+    public static final Duration DEFAULT_RESOLVE_TIMEOUT = Duration.ofSeconds(10);
+
+    /**
+     * The default time to live of the persisted pilot data. The pilot data is not
+     * kept longer than the privacy protection allows.
+     */
+    public static final Duration DEFAULT_PERSISTENT_TTL = Duration.ofMinutes(Pilot.DEFAULT_EXPIRATION_TIMEOUT);
+
+    /**
+     * The pilot data of the pilots not found. The identity of the value marks the
+     * not found status.
+     */
+    private static final JsonObject NOT_FOUND = JsonValue.EMPTY_JSON_OBJECT;
+
     /**
      * Quote a string representation, if it is present.
      * 
@@ -117,6 +160,13 @@ public class PilotLoader {
      */
     private java.util.List<Consumer<? super IOException>> ioErrorHandlers_ = new java.util.ArrayList<>();
 
+    /**
+     * The cache of the pilot data by the drone serial number. Undefined value, if
+     * the pilot data is not cached.
+     */
+    private volatile TtlCache<String, JsonObject> cache_ = new TtlCache<>(DEFAULT_CACHE_SIZE, DEFAULT_POSITIVE_TTL,
+            DEFAULT_NEGATIVE_TTL);
+
     /**
      * Create pilot laoder for given host and base rest path.
      * 
@@ -125,20 +175,782 @@ public class PilotLoader {
      * @throws IllegalArgumentException The given host or resource path is invalid.
      */
     public PilotLoader(String host, String resourcePath) throws IllegalArgumentException {
+        this(host, resourcePath, HttpClientRegistry.getDefault());
+    }
+
+    /**
+     * Create pilot laoder for given host and base rest path using given HTTP client
+     * registry.
+     * 
+     * @param host           The host of the
+     * @param resourcePath   The resource path without parameters.
+     * @param clientRegistry The registry of the HTTP client shared with the other
+     *                       data sources.
+     * @throws IllegalArgumentException The given host or resource path is invalid.
+     */
+    public PilotLoader(String host, String resourcePath, HttpClientRegistry clientRegistry)
+            throws IllegalArgumentException {
+        this(createResourceUri(host, resourcePath), clientRegistry);
+    }
+
+    /**
+     * Create pilot loader for given resource URI using given HTTP client
+     * registry.
+     * 
+     * @param resourceUri    The URI of the pilot resource without parameters.
+     * @param clientRegistry The registry of the HTTP client shared with the other
+     *                       data sources.
+     * @throws IllegalArgumentException The given resource URI is invalid.
+     */
+    public PilotLoader(URI resourceUri, HttpClientRegistry clientRegistry) throws IllegalArgumentException {
+        dataSource_ = new RestDataSource<JsonObject>(resourceUri,
+                new PilotReader(),
+                new RestParameter<String>("serialNumber",
+                        Pattern.compile("[-\\w]+"),
+                        (String x) -> (x),
+                        (String x) -> (x)));
+        dataSource_.setClientRegistry(clientRegistry);
+        dataSource_.setAcceptedContentTypes("application/json");
+        dataSource_.setStatusHandler(new HttpDataSource.StatusHandler<JsonObject>() {
+            @Override
+            public Optional<JsonObject> handleStatus(int status, java.net.http.HttpHeaders headers,
+                    InputStream messageBody) throws IOException {
+                // The pilot not found is a result, and the other statuses are errors.
+                if (status == 404) {
+                    return Optional.of(NOT_FOUND);
+                }
+                throw new java.io.StreamCorruptedException("Server responded with error status " + status);
+            }
+        });
+    }
+
+    /**
+     * Create the URI of the pilot resource.
+     * 
+     * @param host         The host of the pilot service.
+     * @param resourcePath The resource path without parameters.
+     * @return The HTTPS URI of the pilot resource.
+     * @throws IllegalArgumentException The given host or resource path is invalid.
+     */
+    private static URI createResourceUri(String host, String resourcePath) throws IllegalArgumentException {
         try {
-            dataSource_ = new RestDataSource<JsonObject>(new URI("https", host, resourcePath, null),
-                    new PilotReader(),
-                    new RestParameter<String>("serialNumber",
-                            Pattern.compile("[-\\]w+"),
-                            (String x) -> (x),
-                            (String x) -> (x)));
+            return new URI("https", host, resourcePath, null);
         } catch (URISyntaxException e) {
-            // TODO Auto-generated catch block
-            e.printStackTrace();
             throw new IllegalArgumentException("Invalid rest uri", e);
         }
     }
 
+    /**
+     * Get the cache of the pilot data.
+     * 
+     * @return The cache of the pilot data by the drone serial number, or an
+     *         undefined value, if the pilot data is not cached.
+     */
+    public TtlCache<String, JsonObject> getCache() {
+        return cache_;
+    }
+
+    /**
+     * Set the cache of the pilot data.
+     * 
+     * @param cache The cache of the pilot data by the drone serial number. An
+     *              undefined value disables the caching.
+     */
+    public void setCache(TtlCache<String, JsonObject> cache) {
+        this.cache_ = cache;
+    }
+
+    /**
+     * The persistent cache of the pilot data. Undefined value, if the pilot data
+     * is not persisted.
+     */
+    private volatile PersistentCache persistentCache_ = null;
+
+    /**
+     * Get the persistent cache of the pilot data.
+     * 
+     * @return The persistent cache of the pilot data by the drone serial number,
+     *         or an undefined value, if the pilot data is not persisted.
+     */
+    public PersistentCache getPersistentCache() {
+        return persistentCache_;
+    }
+
+    /**
+     * Set the persistent cache of the pilot data. The cache is consulted before
+     * the pilot service, and the pilot data loaded from the service is stored
+     * into it. The cache of the loader is warmed with the pilot data of the
+     * persistent cache.
+     * 
+     * @param persistentCache The persistent cache of the pilot data by the drone
+     *                        serial number. An undefined value disables the
+     *                        persistence.
+     */
+    public void setPersistentCache(PersistentCache persistentCache) {
+        this.persistentCache_ = persistentCache;
+        warmCache();
+    }
+
+    /**
+     * Warm the cache with the live pilot data of the persistent cache. The warmed
+     * pilot data expires with its persisted value.
+     * 
+     * @return The number of the pilots added to the cache.
+     */
+    public int warmCache() {
+        PersistentCache persistentCache = persistentCache_;
+        TtlCache<String, JsonObject> cache = cache_;
+        int result = 0;
+        if (persistentCache != null && cache != null) {
+            for (Entry<String, PersistentCache.Entry> entry : persistentCache.getEntries().entrySet()) {
+                JsonObject json = decode(persistentCache, entry.getKey(), entry.getValue());
+                if (json != null) {
+                    cache.put(entry.getKey(), json, entry.getValue().getExpireTime());
+                    result++;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Get the persisted pilot data of the drone. The persisted pilot data is
+     * added to the cache.
+     * 
+     * @param droneSerial The serial number of the drone.
+     * @return The persisted pilot data, or an undefined value, if the pilot data
+     *         has not been persisted.
+     */
+    private JsonObject getPersisted(String droneSerial) {
+        PersistentCache persistentCache = persistentCache_;
+        PersistentCache.Entry entry = persistentCache == null ? null : persistentCache.get(droneSerial);
+        JsonObject json = entry == null ? null : decode(persistentCache, droneSerial, entry);
+        TtlCache<String, JsonObject> cache = cache_;
+        if (json != null && cache != null) {
+            cache.put(droneSerial, json, entry.getExpireTime());
+        }
+        return json;
+    }
+
+    /**
+     * Decode the persisted pilot data. The invalid pilot data is removed from the
+     * persistent cache.
+     * 
+     * @param persistentCache The persistent cache.
+     * @param droneSerial     The serial number of the drone.
+     * @param entry           The persisted entry.
+     * @return The pilot data, or an undefined value, if the persisted value was
+     *         invalid.
+     */
+    private static JsonObject decode(PersistentCache persistentCache, String droneSerial,
+            PersistentCache.Entry entry) {
+        try (javax.json.JsonReader reader = Json.createReader(
+                new java.io.StringReader(new String(entry.getValue(), StandardCharsets.UTF_8)))) {
+            return reader.readObject();
+        } catch (JsonException | IllegalStateException exception) {
+            System.getLogger(PilotLoader.class.getName()).log(Level.WARNING,
+                    "Discarded invalid persisted pilot data of " + quoteIfPresent(droneSerial), exception);
+            try {
+                persistentCache.remove(droneSerial);
+            } catch (IOException removalError) {
+                // The value is discarded again on the next lookup.
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Persist the pilot data of the drone.
+     * 
+     * @param droneSerial The serial number of the drone.
+     * @param json        The pilot data.
+     */
+    private void persist(String droneSerial, JsonObject json) {
+        PersistentCache persistentCache = persistentCache_;
+        if (persistentCache != null) {
+            try {
+                persistentCache.put(droneSerial, json.toString().getBytes(StandardCharsets.UTF_8));
+            } catch (IOException exception) {
+                System.getLogger(PilotLoader.class.getName()).log(Level.WARNING,
+                        "Persisting the pilot data of " + quoteIfPresent(droneSerial) + " failed", exception);
+            }
+        }
+    }
+
+    /**
+     * Purge the expired pilot data from the persistent cache.
+     *
+     * @return The number of the purged pilot data.
+     */
+    public int purgeExpired() {
+        PersistentCache persistentCache = persistentCache_;
+        if (persistentCache != null) {
+            try {
+                return persistentCache.purgeExpired();
+            } catch (IOException exception) {
+                System.getLogger(PilotLoader.class.getName()).log(Level.WARNING,
+                        "Purging the persisted pilot data failed", exception);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * The binder of the pilot data to the pilots.
+     */
+    private volatile PilotBinder binder_ = PilotBinder.getDefault();
+
+    /**
+     * Get the binder of the pilot data.
+     * 
+     * @return The binder of the pilot data to the pilots.
+     */
+    public PilotBinder getBinder() {
+        return binder_;
+    }
+
+    /**
+     * Set the binder of the pilot data.
+     * 
+     * @param binder The binder of the pilot data to the pilots.
+     * @throws IllegalArgumentException The binder was undefined.
+     */
+    public void setBinder(@NotNull PilotBinder binder) throws IllegalArgumentException {
+        if (binder == null) {
+            throw new IllegalArgumentException("Undefined binder");
+        }
+        this.binder_ = binder;
+    }
+
+    /**
+     * Flight is an upstream lookup of the pilot data shared by the concurrent
+     * callers of the same drone serial.
+     */
+    private final class Flight {
+
+        /**
+         * The serial number of the drone.
+         */
+        private final String serial_;
+
+        /**
+         * The future of the shared result.
+         */
+        private final CompletableFuture<JsonObject> shared_ = new CompletableFuture<>();
+
+        /**
+         * The number of the callers waiting for the result.
+         */
+        private int waiters_ = 0;
+
+        /**
+         * Has the flight been abandoned by all of its callers.
+         */
+        private boolean abandoned_ = false;
+
+        /**
+         * The upstream request. Undefined value, if the request has not been
+         * started.
+         */
+        private CompletableFuture<Optional<JsonObject>> upstream_ = null;
+
+        /**
+         * Create a new flight.
+         * 
+         * @param serial The serial number of the drone.
+         */
+        private Flight(String serial) {
+            this.serial_ = serial;
+        }
+
+        /**
+         * Join the flight.
+         * 
+         * @return The future of the result of the caller, or an undefined value, if
+         *         the flight has been abandoned. Cancelling the future leaves the
+         *         flight.
+         */
+        private synchronized CompletableFuture<JsonObject> join() {
+            if (abandoned_) {
+                return null;
+            }
+            waiters_++;
+            CompletableFuture<JsonObject> result = new CompletableFuture<>();
+            shared_.whenComplete((JsonObject value, Throwable error) -> {
+                if (error == null) {
+                    result.complete(value);
+                } else {
+                    result.completeExceptionally(error instanceof CompletionException && error.getCause() != null
+                            ? error.getCause()
+                            : error);
+                }
+            });
+            result.whenComplete((JsonObject value, Throwable error) -> {
+                if (result.isCancelled()) {
+                    leave();
+                }
+            });
+            return result;
+        }
+
+        /**
+         * Leave the flight. The upstream request is cancelled, when the last
+         * caller leaves before the result.
+         */
+        private synchronized void leave() {
+            if (--waiters_ == 0 && !shared_.isDone()) {
+                abandoned_ = true;
+                inFlight_.remove(serial_, this);
+                // Cancelling the shared result first, so the cancelled request is not cached.
+                shared_.cancel(false);
+                if (upstream_ != null) {
+                    upstream_.cancel(true);
+                }
+            }
+        }
+
+        /**
+         * Start the upstream request, if it has not been started.
+         */
+        private void start() {
+            synchronized (this) {
+                if (upstream_ != null || abandoned_) {
+                    return;
+                }
+                try {
+                    upstream_ = dataSource_.getAsync(Collections.singletonList(serial_));
+                } catch (RuntimeException exception) {
+                    // The serial was not valid for the request.
+                    upstream_ = CompletableFuture.failedFuture(exception);
+                    inFlight_.remove(serial_, this);
+                    shared_.completeExceptionally(exception);
+                    return;
+                }
+            }
+            upstream_.whenComplete(this::complete);
+        }
+
+        /**
+         * Complete the flight with the result of the upstream request. The result
+         * is cached, and the flight removed, before the result is shared.
+         * 
+         * @param value The value of the request.
+         * @param error The error of the request.
+         */
+        private void complete(Optional<JsonObject> value, Throwable error) {
+            JsonObject json = value == null ? null : value.orElse(null);
+            IOException failure = null;
+            if (json == NOT_FOUND) {
+                failure = new FileNotFoundException("Pilot not found for " + quoteIfPresent(serial_));
+            } else if (json == null) {
+                // The request failed, or the circuit of the pilot service was open.
+                failure = new IOException("Pilot data not available for " + quoteIfPresent(serial_));
+            }
+            if (failure == null) {
+                persist(serial_, json);
+            }
+            TtlCache<String, JsonObject> cache = cache_;
+            if (cache != null && !shared_.isCancelled()) {
+                if (failure == null) {
+                    cache.put(serial_, json);
+                } else {
+                    cache.putFailure(serial_, failure);
+                }
+            }
+            // The later callers use the cached result instead of the completed flight.
+            inFlight_.remove(serial_, this);
+            if (failure == null) {
+                shared_.complete(json);
+            } else {
+                shared_.completeExceptionally(failure);
+            }
+        }
+    }
+
+    /**
+     * The lookups in flight by the drone serial.
+     */
+    private final ConcurrentHashMap<String, Flight> inFlight_ = new ConcurrentHashMap<>();
+
+    /**
+     * The number of the lookups joining a lookup in flight.
+     */
+    private final AtomicLong coalesced_ = new AtomicLong();
+
+    /**
+     * Get the pilot data of the drone asynchronously. The cached pilot data and
+     * the cached failures are used until they expire, and the persisted pilot
+     * data is used before the pilot service is requested. The concurrent lookups of
+     * the same drone share a single upstream request, and its result or failure.
+     * Cancelling the returned future leaves the shared request, and the request
+     * is cancelled, when all of its callers have left.
+     * 
+     * @param droneSerial The serial number of the drone.
+     * @return The future of the pilot data of the drone. The future fails with
+     *         {@link FileNotFoundException}, if the pilot was not found, with
+     *         {@link IOException}, if the pilot data was not available, and with
+     *         {@link IllegalArgumentException}, if the serial was invalid.
+     */
+    public CompletableFuture<JsonObject> getPilotDataAsync(String droneSerial) {
+        TtlCache<String, JsonObject> cache = cache_;
+        TtlCache.Entry<JsonObject> cached = cache == null ? null : cache.get(droneSerial);
+        if (cached != null) {
+            return cached.isNegative() ? CompletableFuture.failedFuture(cached.getFailure())
+                    : CompletableFuture.completedFuture(cached.getValue());
+        }
+        if (droneSerial == null) {
+            return CompletableFuture.failedFuture(new IllegalArgumentException("Undefined drone serial"));
+        }
+        JsonObject persisted = getPersisted(droneSerial);
+        if (persisted != null) {
+            return CompletableFuture.completedFuture(persisted);
+        }
+        while (true) {
+            Flight created = new Flight(droneSerial);
+            Flight flight = inFlight_.computeIfAbsent(droneSerial, (String serial) -> created);
+            CompletableFuture<JsonObject> result = flight.join();
+            if (result != null) {
+                if (flight == created) {
+                    flight.start();
+                } else {
+                    coalesced_.incrementAndGet();
+                }
+                return result;
+            }
+            // The flight was abandoned by its callers.
+            inFlight_.remove(droneSerial, flight);
+        }
+    }
+
+    /**
+     * Get the pilot data of the drone.
+     * 
+     * @param droneSerial The serial number of the drone.
+     * @return The pilot data of the drone.
+     * @throws FileNotFoundException    The pilot of the drone was not found.
+     * @throws IOException              The pilot data was not available, or the
+     *                                  wait was interrupted.
+     * @throws IllegalArgumentException The given drone serial was invalid.
+     * @see #getPilotDataAsync(String)
+     */
+    protected JsonObject getPilotData(String droneSerial) throws IOException, IllegalArgumentException {
+        CompletableFuture<JsonObject> result = getPilotDataAsync(droneSerial);
+        try {
+            return result.get();
+        } catch (InterruptedException exception) {
+            // Leaving the shared lookup.
+            result.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new java.io.InterruptedIOException("Pilot lookup interrupted for " + quoteIfPresent(droneSerial));
+        } catch (CancellationException exception) {
+            throw new java.io.InterruptedIOException("Pilot lookup cancelled for " + quoteIfPresent(droneSerial));
+        } catch (ExecutionException exception) {
+            Throwable cause = exception.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException("Pilot lookup failed for " + quoteIfPresent(droneSerial), cause);
+        }
+    }
+
+    /**
+     * Get the number of the lookups in flight.
+     * 
+     * @return The number of the drone serials whose pilot data is being looked
+     *         up.
+     */
+    public int getInFlightCount() {
+        return inFlight_.size();
+    }
+
+    /**
+     * Get the number of the coalesced lookups.
+     * 
+     * @return The number of the lookups which joined a lookup in flight instead
+     *         of starting a new upstream request.
+     */
+    public long getCoalescedCount() {
+        return coalesced_.get();
+    }
+
+    /**
+     * Batch is a resolution of the pilot data of several drones with a bounded
+     * number of the lookups in flight.
+     */
+    private final class Batch {
+
+        /**
+         * The serials waiting for their lookup.
+         */
+        private final java.util.Iterator<String> pending_;
+
+        /**
+         * The maximum number of the lookups in flight.
+         */
+        private final int limit_;
+
+        /**
+         * The lookups in flight by the drone serial.
+         */
+        private final java.util.Map<String, CompletableFuture<JsonObject>> running_ = new java.util.HashMap<>();
+
+        /**
+         * The resolved pilot data by the drone serial.
+         */
+        private final java.util.Map<String, JsonObject> resolved_ = new java.util.LinkedHashMap<>();
+
+        /**
+         * The consumer of the resolved pilot data.
+         */
+        private final BiConsumer<String, ? super JsonObject> onResult_;
+
+        /**
+         * The consumer of the failed lookups.
+         */
+        private final BiConsumer<String, ? super Throwable> onFailure_;
+
+        /**
+         * The future of the resolved pilot data.
+         */
+        private final CompletableFuture<java.util.Map<String, JsonObject>> done_ = new CompletableFuture<>();
+
+        /**
+         * The number of the results being delivered.
+         */
+        private int delivering_ = 0;
+
+        /**
+         * Is the batch starting the lookups.
+         */
+        private boolean filling_ = false;
+
+        /**
+         * Has the batch ended.
+         */
+        private boolean ended_ = false;
+
+        /**
+         * Create a new batch.
+         * 
+         * @param serials   The serials of the drones.
+         * @param limit     The maximum number of the lookups in flight.
+         * @param onResult  The consumer of the resolved pilot data.
+         * @param onFailure The consumer of the failed lookups.
+         */
+        private Batch(java.util.Collection<String> serials, int limit, BiConsumer<String, ? super JsonObject> onResult,
+                BiConsumer<String, ? super Throwable> onFailure) {
+            this.pending_ = new java.util.LinkedHashSet<>(serials).iterator();
+            this.limit_ = limit;
+            this.onResult_ = onResult;
+            this.onFailure_ = onFailure;
+        }
+
+        /**
+         * Start the lookups up to the limit, and end the batch, when all lookups
+         * have been delivered.
+         */
+        private void fill() {
+            synchronized (this) {
+                if (filling_) {
+                    // The lookup completed while it was started.
+                    return;
+                }
+                filling_ = true;
+                try {
+                    while (!ended_ && running_.size() < limit_ && pending_.hasNext()) {
+                        String serial = pending_.next();
+                        CompletableFuture<JsonObject> lookup = getPilotDataAsync(serial);
+                        running_.put(serial, lookup);
+                        lookup.whenComplete((JsonObject value, Throwable error) -> complete(serial, value, error));
+                    }
+                } finally {
+                    filling_ = false;
+                }
+                if (ended_ || !running_.isEmpty() || pending_.hasNext() || delivering_ > 0) {
+                    return;
+                }
+                ended_ = true;
+            }
+            done_.complete(getResolved());
+        }
+
+        /**
+         * Deliver the result of the lookup.
+         * 
+         * @param serial The serial of the drone.
+         * @param value  The pilot data.
+         * @param error  The failure of the lookup.
+         */
+        private void complete(String serial, JsonObject value, Throwable error) {
+            synchronized (this) {
+                if (ended_ || !running_.containsKey(serial)) {
+                    return;
+                }
+                running_.remove(serial);
+                delivering_++;
+                if (error == null) {
+                    resolved_.put(serial, value);
+                }
+            }
+            try {
+                deliver(serial, value, error);
+            } finally {
+                synchronized (this) {
+                    delivering_--;
+                }
+                fill();
+            }
+        }
+
+        /**
+         * Deliver the result to the consumers.
+         * 
+         * @param serial The serial of the drone.
+         * @param value  The pilot data.
+         * @param error  The failure of the lookup.
+         */
+        private void deliver(String serial, JsonObject value, Throwable error) {
+            try {
+                if (error == null) {
+                    if (onResult_ != null) {
+                        onResult_.accept(serial, value);
+                    }
+                } else if (onFailure_ != null) {
+                    onFailure_.accept(serial, error instanceof CompletionException && error.getCause() != null
+                            ? error.getCause()
+                            : error);
+                }
+            } catch (RuntimeException exception) {
+                System.getLogger(PilotLoader.class.getName()).log(Level.ERROR,
+                        "Delivering the pilot of " + quoteIfPresent(serial) + " failed", exception);
+            }
+        }
+
+        /**
+         * End the batch at the deadline. The lookups in flight are cancelled, and
+         * the unfinished lookups fail with {@link TimeoutException}.
+         */
+        private void expire() {
+            java.util.List<String> unfinished = new java.util.ArrayList<>();
+            java.util.List<CompletableFuture<JsonObject>> cancelled;
+            synchronized (this) {
+                if (ended_) {
+                    return;
+                }
+                ended_ = true;
+                unfinished.addAll(running_.keySet());
+                cancelled = new java.util.ArrayList<>(running_.values());
+                running_.clear();
+                pending_.forEachRemaining(unfinished::add);
+            }
+            for (CompletableFuture<JsonObject> lookup : cancelled) {
+                lookup.cancel(true);
+            }
+            for (String serial : unfinished) {
+                deliver(serial, null, new TimeoutException("Pilot lookup deadline exceeded for " + quoteIfPresent(serial)));
+            }
+            done_.complete(getResolved());
+        }
+
+        /**
+         * Get the resolved pilot data.
+         * 
+         * @return The unmodifiable copy of the resolved pilot data.
+         */
+        private synchronized java.util.Map<String, JsonObject> getResolved() {
+            return java.util.Collections.unmodifiableMap(new java.util.LinkedHashMap<>(resolved_));
+        }
+    }
+
+    /**
+     * The maximum number of the lookups in flight of a batch resolution.
+     */
+    private volatile int maxInFlight_ = DEFAULT_MAX_IN_FLIGHT;
+
+    /**
+     * Get the maximum number of the lookups in flight of a batch resolution.
+     * 
+     * @return The maximum number of the concurrent lookups of a batch.
+     */
+    public int getMaxInFlight() {
+        return maxInFlight_;
+    }
+
+    /**
+     * Set the maximum number of the lookups in flight of a batch resolution.
+     * 
+     * @param maxInFlight The maximum number of the concurrent lookups of a batch.
+     * @throws IllegalArgumentException The maximum was not positive.
+     */
+    public void setMaxInFlight(int maxInFlight) throws IllegalArgumentException {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("Invalid maximum number of lookups in flight");
+        }
+        this.maxInFlight_ = maxInFlight;
+    }
+
+    /**
+     * Resolve the pilot data of the drones concurrently. At most
+     * {@link #getMaxInFlight()} lookups are in flight at once, and the results are
+     * delivered as each lookup completes, so a slow lookup does not hold back the
+     * others. The consumers may be called concurrently from the threads completing
+     * the lookups.
+     * <p>
+     * At the deadline the lookups in flight are cancelled, and the unfinished
+     * lookups are delivered as failures with {@link TimeoutException}.
+     * </p>
+     * 
+     * @param serials   The serials of the drones. The duplicates are resolved
+     *                  once.
+     * @param timeout   The deadline of the resolution from the call.
+     * @param onResult  The consumer of the resolved pilot data by the drone
+     *                  serial. Undefined value, if the results are not consumed.
+     * @param onFailure The consumer of the failures of the lookups by the drone
+     *                  serial. The failure is {@link FileNotFoundException}, if the
+     *                  pilot was not found. Undefined value, if the failures are
+     *                  not consumed.
+     * @return The future completing with the resolved pilot data by the drone
+     *         serial, when all lookups have been delivered, or at the deadline.
+     * @throws IllegalArgumentException The serials or the timeout was undefined.
+     */
+    public CompletableFuture<java.util.Map<String, JsonObject>> resolveAll(
+            @NotNull java.util.Collection<String> serials, @NotNull Duration timeout,
+            BiConsumer<String, ? super JsonObject> onResult, BiConsumer<String, ? super Throwable> onFailure)
+            throws IllegalArgumentException {
+        if (serials == null || timeout == null) {
+            throw new IllegalArgumentException("Undefined serials or timeout");
+        }
+        Batch batch = new Batch(serials, maxInFlight_, onResult, onFailure);
+        batch.fill();
+        if (!batch.done_.isDone()) {
+            CompletableFuture.delayedExecutor(Math.max(0, timeout.toNanos()), TimeUnit.NANOSECONDS)
+                    .execute(batch::expire);
+        }
+        return batch.done_;
+    }
+
+    /**
+     * Get the resilience policy of the pilot requests.
+     * 
+     * @return The policy retrying the failed pilot requests and guarding the
+     *         pilot service.
+     */
+    public ResiliencePolicy getResiliencePolicy() {
+        return dataSource_.getResiliencePolicy();
+    }
+
+    /**
+     * Set the resilience policy of the pilot requests.
+     * 
+     * @param policy The policy retrying the failed pilot requests and guarding
+     *               the pilot service. An undefined value disables the retries.
+     */
+    public void setResiliencePolicy(ResiliencePolicy policy) {
+        dataSource_.setResiliencePolicy(policy);
+    }
+
     /**
      * Get pilot from service.
      * 
@@ -146,6 +958,10 @@ public class PilotLoader {
      * @param violationTime The time of the violation. The value must be defined and
      *                      withing expiration time.
      * @throws IllegalArgumentException The given drone serial was invalid.
+     * @throws FileNotFoundException    The pilot of the drone was not found.
+     * @throws IOException              The pilot data was not available. The
+     *                                  failure is cached for the negative time
+     *                                  to live of the cache.
      */
     public Pilot getPilot(String droneSerial, ZonedDateTime violationTime, double violationDistance)
             throws IllegalArgumentException, IOException {
@@ -153,38 +969,29 @@ public class PilotLoader {
             throw new IllegalArgumentException(INNOCENT_PILOT_MESSAGE);
         }
 
-        try {
-            JsonObject json = this.dataSource_.get(Collections.singletonList(droneSerial));
-
-            Pilot pilot = new Pilot();
-            for (Entry<String, JsonValue> entry : json.entrySet()) {
-                try {
-                    Method method = new PropertyDescriptor(entry.getKey(), Pilot.class).getWriteMethod();
-                    if (method == null) {
-                        System.getLogger(Pilot.class.getName()).log(Level.INFO, READ_ONLY_PROPERTY_FORMAT_STRING,
-                                quoteIfPresent(entry.getKey()), "Pilot", quoteIfPresent(entry.getValue()));
-                    } else {
-                        method.invoke(pilot, entry.getValue());
-                    }
-                } catch (IntrospectionException | IllegalAccessException | InvocationTargetException e) {
-                    // The property is not supported by the bean.
-                    System.getLogger(Pilot.class.getName()).log(Level.INFO, UNKNOWN_PROPERTY_FORMAT_STRING,
-                            quoteIfPresent(entry.getKey()), "Pilot", quoteIfPresent(entry.getValue()));
-                }
-
-            }
-            pilot.setClosestDistanceToNest(violationDistance);
-            pilot.setDroneSerial(droneSerial);
-            pilot.setViolationTime(violationTime);
-            pilot.build();
-            return pilot;
-        } catch (UniformInterfaceException httpError) {
-            throw new java.io.EOFException("Http error: " + quoteIfPresent(httpError.getMessage()));
-        } catch (ClientHandlerException streamCorrupted) {
-            throw new java.io.StreamCorruptedException(
-                    "Invalid response content " + quoteIfPresent(streamCorrupted.getMessage()));
+        return createPilot(droneSerial, getPilotData(droneSerial), violationTime, violationDistance);
+    }
 
-        }
+    /**
+     * Create the pilot of the violating drone from the pilot data.
+     * 
+     * @param droneSerial       The serial number of the drone.
+     * @param json              The pilot data of the drone.
+     * @param violationTime     The time of the violation.
+     * @param violationDistance The distance of the violation to the nest.
+     * @return The built pilot.
+     * @throws IllegalArgumentException The pilot data, the drone serial, or the
+     *                                  violation was invalid, or the pilot data
+     *                                  was undefined.
+     */
+    public Pilot createPilot(String droneSerial, @NotNull JsonObject json, ZonedDateTime violationTime,
+            double violationDistance) throws IllegalArgumentException {
+        Pilot pilot = binder_.bind(json, new Pilot());
+        pilot.setClosestDistanceToNest(violationDistance);
+        pilot.setDroneSerial(droneSerial);
+        pilot.setViolationTime(violationTime);
+        pilot.build();
+        return pilot;
     }
 
     /**
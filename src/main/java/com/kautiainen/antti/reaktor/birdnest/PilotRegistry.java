@@ -0,0 +1,409 @@
+package com.kautiainen.antti.reaktor.birdnest;
+
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+import javax.validation.constraints.NotNull;
+
+/**
+ * PilotRegistry stores the pilots of the violating drones keyed by the drone
+ * serial number.
+ * <p>
+ * The lookups and the iteration of the pilots do not lock the registry, so the
+ * rendering of the pilots never blocks the updaters, nor the updaters the
+ * rendering. The iteration is weakly consistent: it reflects the pilots at
+ * some point at or after its start, and never throws
+ * {@link java.util.ConcurrentModificationException}. The sightings of a drone
+ * are merged into its pilot atomically.
+ * </p>
+ * <p>
+ * The expiration of the pilots is indexed by the deadlines ordered by the
+ * expiration time, so the removal of the expired pilots only examines the
+ * pilots whose deadline has passed. The sightings do not touch the index: a
+ * sighted pilot is re-scheduled at its new expiration time when its old
+ * deadline is reached. The removed expired pilots are published to the
+ * subscribers of the expiry events.
+ * </p>
+ */
+public class PilotRegistry {
+
+    /**
+     * The default number of the expiry events buffered for each subscriber.
+     */
+    public static final int DEFAULT_EXPIRY_BUFFER_SIZE = 64;
+
+    /**
+     * Deadline is the scheduled expiration of a pilot.
+     */
+    private static final class Deadline implements Comparable<Deadline> {
+
+        /**
+         * The time of the deadline.
+         */
+        private final Instant time_;
+
+        /**
+         * The scheduling order of the deadline breaking the ties of the times.
+         */
+        private final long order_;
+
+        /**
+         * The serial number of the drone of the pilot.
+         */
+        private final String serial_;
+
+        /**
+         * The scheduled pilot.
+         */
+        private final Pilot pilot_;
+
+        /**
+         * Create a new deadline.
+         *
+         * @param time   The time of the deadline.
+         * @param order  The scheduling order of the deadline.
+         * @param serial The serial number of the drone.
+         * @param pilot  The scheduled pilot.
+         */
+        private Deadline(Instant time, long order, String serial, Pilot pilot) {
+            this.time_ = time;
+            this.order_ = order;
+            this.serial_ = serial;
+            this.pilot_ = pilot;
+        }
+
+        @Override
+        public int compareTo(Deadline other) {
+            int result = time_.compareTo(other.time_);
+            return result == 0 ? Long.compare(order_, other.order_) : result;
+        }
+    }
+
+    /**
+     * The pilots keyed by the drone serial number.
+     */
+    private final ConcurrentHashMap<String, Pilot> pilots_ = new ConcurrentHashMap<>();
+
+    /**
+     * The unmodifiable view of the pilots.
+     */
+    private final Collection<Pilot> view_ = Collections.unmodifiableCollection(pilots_.values());
+
+    /**
+     * The deadlines of the pilots ordered by the time. The deadlines of the
+     * removed and replaced pilots are discarded when they are reached.
+     */
+    private final PriorityQueue<Deadline> deadlines_ = new PriorityQueue<>();
+
+    /**
+     * The scheduling order of the next deadline.
+     */
+    private long nextOrder_ = 0;
+
+    /**
+     * The publisher of the expired pilots.
+     */
+    private final SubmissionPublisher<Pilot> expiryPublisher_ = new SubmissionPublisher<>(
+            ForkJoinPool.commonPool(), DEFAULT_EXPIRY_BUFFER_SIZE);
+
+    /**
+     * The number of expiry events dropped for lagging subscribers.
+     */
+    private final AtomicLong droppedExpiryEvents_ = new AtomicLong();
+
+    /**
+     * Create a new empty registry.
+     */
+    public PilotRegistry() {
+    }
+
+    /**
+     * Get the pilot of the drone.
+     *
+     * @param droneSerial The serial number of the drone.
+     * @return The pilot of the drone, or an undefined value, if the registry
+     *         does not contain the pilot of the drone.
+     */
+    public Pilot get(String droneSerial) {
+        return droneSerial == null ? null : pilots_.get(droneSerial);
+    }
+
+    /**
+     * Does the registry contain the pilot of the drone.
+     *
+     * @param droneSerial The serial number of the drone.
+     * @return True, if and only if the registry contains the pilot of the drone.
+     */
+    public boolean contains(String droneSerial) {
+        return droneSerial != null && pilots_.containsKey(droneSerial);
+    }
+
+    /**
+     * Add a pilot. If the registry already contains the pilot of the drone, the
+     * closest distance and the last seen time of the added pilot are merged into
+     * the existing pilot.
+     *
+     * @param pilot The added pilot.
+     * @return The pilot of the drone in the registry.
+     * @throws IllegalArgumentException The pilot or its drone serial number was
+     *                                  undefined.
+     */
+    public Pilot add(@NotNull Pilot pilot) throws IllegalArgumentException {
+        if (pilot == null || pilot.getDroneSerialNumber() == null) {
+            throw new IllegalArgumentException("Undefined pilot cannot be added");
+        }
+        Pilot result = pilots_.merge(pilot.getDroneSerialNumber(), pilot, (Pilot existing, Pilot added) -> {
+            existing.recordSighting(added.getLastSeenTime(), added.getClosestDistanceToNest());
+            return existing;
+        });
+        if (result == pilot) {
+            schedule(pilot.getDroneSerialNumber(), pilot, pilot.getExpireTime());
+        }
+        return result;
+    }
+
+    /**
+     * Schedule the expiration of the pilot.
+     *
+     * @param serial     The serial number of the drone.
+     * @param pilot      The scheduled pilot.
+     * @param expireTime The expiration time of the pilot. An undefined value
+     *                   schedules the pilot for the next removal.
+     */
+    private void schedule(String serial, Pilot pilot, ZonedDateTime expireTime) {
+        synchronized (deadlines_) {
+            deadlines_.add(new Deadline(expireTime == null ? Instant.MIN : expireTime.toInstant(), nextOrder_++,
+                    serial, pilot));
+        }
+    }
+
+    /**
+     * Record a sighting of the drone. The closest distance and the last seen
+     * time of the pilot are updated atomically. The pilot is re-scheduled at the
+     * new expiration time when its current deadline is reached.
+     *
+     * @param droneSerial    The serial number of the drone.
+     * @param seenTime       The time of the sighting.
+     * @param distanceToNest The distance of the drone to the nest. A negative or
+     *                       NaN distance does not change the closest distance.
+     * @return True, if and only if the registry contained the pilot of the drone.
+     */
+    public boolean recordSighting(String droneSerial, ZonedDateTime seenTime, double distanceToNest) {
+        if (droneSerial == null) {
+            return false;
+        }
+        return pilots_.computeIfPresent(droneSerial, (String serial, Pilot pilot) -> {
+            pilot.recordSighting(seenTime, distanceToNest);
+            return pilot;
+        }) != null;
+    }
+
+    /**
+     * Record a sighting of the drone without a distance.
+     *
+     * @param droneSerial The serial number of the drone.
+     * @param seenTime    The time of the sighting.
+     * @return True, if and only if the registry contained the pilot of the drone.
+     */
+    public boolean recordSighting(String droneSerial, ZonedDateTime seenTime) {
+        return recordSighting(droneSerial, seenTime, Double.NaN);
+    }
+
+    /**
+     * Remove the pilot of the drone.
+     *
+     * @param droneSerial The serial number of the drone.
+     * @return The removed pilot, or an undefined value, if the registry did not
+     *         contain the pilot of the drone.
+     */
+    public Pilot remove(String droneSerial) {
+        return droneSerial == null ? null : pilots_.remove(droneSerial);
+    }
+
+    /**
+     * Remove the pilots expired at the given time.
+     *
+     * @param now The current time.
+     * @return The number of the removed pilots.
+     */
+    public int removeExpired(@NotNull ZonedDateTime now) {
+        return removeExpired(now, (String serial) -> false);
+    }
+
+    /**
+     * Remove the pilots expired at the given time. Only the pilots whose
+     * deadline has passed are examined. The expiration is checked atomically
+     * with the removal, so a pilot sighted during the removal is re-scheduled
+     * instead of removed. The removed pilots are published to the subscribers
+     * of the expiry events.
+     *
+     * @param now      The current time.
+     * @param retained The predicate of the drone serials whose pilots are kept
+     *                 even if they have expired. The retained pilots are
+     *                 examined again on the next removal.
+     * @return The number of the removed pilots.
+     */
+    public int removeExpired(@NotNull ZonedDateTime now, @NotNull Predicate<String> retained) {
+        Instant time = now.toInstant();
+        List<Pilot> expired = new ArrayList<>();
+        List<Deadline> deferred = new ArrayList<>();
+        synchronized (deadlines_) {
+            Deadline deadline;
+            while ((deadline = deadlines_.peek()) != null && deadline.time_.isBefore(time)) {
+                deadlines_.poll();
+                Deadline current = deadline;
+                if (pilots_.get(current.serial_) != current.pilot_) {
+                    // The pilot has been removed or replaced.
+                    continue;
+                }
+                if (retained.test(current.serial_)) {
+                    deferred.add(current);
+                    continue;
+                }
+                pilots_.computeIfPresent(current.serial_, (String serial, Pilot pilot) -> {
+                    if (pilot != current.pilot_) {
+                        return pilot;
+                    } else if (pilot.isValid(now)) {
+                        // The pilot has been sighted after the deadline was scheduled.
+                        deadlines_.add(new Deadline(pilot.getExpireTime().toInstant(), nextOrder_++, serial,
+                                pilot));
+                        return pilot;
+                    }
+                    expired.add(pilot);
+                    return null;
+                });
+            }
+            deadlines_.addAll(deferred);
+        }
+        publishExpired(expired);
+        return expired.size();
+    }
+
+    /**
+     * Publish the expired pilots to the subscribers of the expiry events.
+     *
+     * @param expired The expired pilots.
+     */
+    private void publishExpired(List<Pilot> expired) {
+        for (Pilot pilot : expired) {
+            if (expiryPublisher_.isClosed()) {
+                return;
+            }
+            // Dropping the event for the subscribers whose buffer is full instead of
+            // blocking the removal.
+            expiryPublisher_.offer(pilot, (Flow.Subscriber<? super Pilot> subscriber, Pilot event) -> {
+                droppedExpiryEvents_.incrementAndGet();
+                return false;
+            });
+        }
+    }
+
+    /**
+     * Get the time of the earliest deadline.
+     *
+     * @return The time of the earliest scheduled expiration, or an undefined
+     *         value, if no expiration is scheduled. The pilot of the deadline
+     *         may have been sighted since, and expire later.
+     */
+    public Instant getNextDeadline() {
+        synchronized (deadlines_) {
+            Deadline deadline = deadlines_.peek();
+            return deadline == null ? null : deadline.time_;
+        }
+    }
+
+    /**
+     * Get the number of the scheduled deadlines.
+     *
+     * @return The number of the scheduled deadlines including the deadlines of
+     *         the removed pilots not yet reached.
+     */
+    public int getScheduledCount() {
+        synchronized (deadlines_) {
+            return deadlines_.size();
+        }
+    }
+
+    /**
+     * Get the publisher of the expiry events. The publisher delivers each
+     * expired pilot removed from the registry to each subscriber
+     * asynchronously. An event is dropped for a subscriber whose buffer of
+     * {@link #DEFAULT_EXPIRY_BUFFER_SIZE} events is full.
+     *
+     * @return The publisher of the expired pilots.
+     */
+    public Flow.Publisher<Pilot> getExpiryPublisher() {
+        return expiryPublisher_;
+    }
+
+    /**
+     * Subscribe to the expiry events.
+     *
+     * @param subscriber The subscriber of the expired pilots.
+     * @see #getExpiryPublisher()
+     */
+    public void subscribeExpiries(@NotNull Flow.Subscriber<? super Pilot> subscriber) {
+        expiryPublisher_.subscribe(subscriber);
+    }
+
+    /**
+     * Get the number of dropped expiry events.
+     *
+     * @return The number of expiry events dropped for lagging subscribers.
+     */
+    public long getDroppedExpiryEventCount() {
+        return droppedExpiryEvents_.get();
+    }
+
+    /**
+     * Close the publisher of the expiry events. The subscribers are completed
+     * after the buffered events have been delivered.
+     */
+    public void closeExpiryPublisher() {
+        expiryPublisher_.close();
+    }
+
+    /**
+     * Get the pilots. The returned collection is an unmodifiable live view, and
+     * its iteration is weakly consistent.
+     *
+     * @return The pilots of the registry.
+     */
+    public Collection<Pilot> getPilots() {
+        return view_;
+    }
+
+    /**
+     * Get the number of the pilots.
+     *
+     * @return The number of the pilots in the registry.
+     */
+    public int size() {
+        return pilots_.size();
+    }
+
+    /**
+     * Is the registry empty.
+     *
+     * @return True, if and only if the registry contains no pilots.
+     */
+    public boolean isEmpty() {
+        return pilots_.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "PilotRegistry[" + pilots_.size() + " pilots]";
+    }
+}
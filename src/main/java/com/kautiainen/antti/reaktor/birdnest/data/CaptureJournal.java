@@ -0,0 +1,453 @@
+package com.kautiainen.antti.reaktor.birdnest.data;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.validation.constraints.NotNull;
+
+/**
+ * CaptureJournal stores raw captures into memory mapped segment files.
+ * <p>
+ * Each record consists of the length of the data as an int, the capture time
+ * in epoch milliseconds as a long, and the raw data. A record with zero length
+ * ends the segment, so the empty data is refused. The records are written
+ * directly into the mapped segment, and the appended record is returned as a
+ * read only view of the mapped segment, so the data is not copied again for
+ * parsing.
+ * </p>
+ * <p>
+ * A new segment is started, when the record does not fit into the current
+ * segment, and the oldest segments are deleted when the journal has more than
+ * the maximum number of segments.
+ * </p>
+ */
+public class CaptureJournal implements Closeable {
+
+    /**
+     * The default size of a segment in bytes.
+     */
+    public static final int DEFAULT_SEGMENT_SIZE = 16 * 1024 * 1024;
+
+    /**
+     * The default maximum number of segments.
+     */
+    public static final int DEFAULT_MAX_SEGMENTS = 16;
+
+    /**
+     * The size of the record header in bytes.
+     */
+    public static final int HEADER_SIZE = Integer.BYTES + Long.BYTES;
+
+    /**
+     * The pattern of the segment file names. The first group contains the
+     * sequence number of the segment.
+     */
+    private static final Pattern SEGMENT_NAME = Pattern.compile("capture-(\\d{8})\\.journal");
+
+    /**
+     * Record is a single raw capture of the journal.
+     */
+    public static final class Record {
+
+        /**
+         * The capture time of the record.
+         */
+        private final Instant time_;
+
+        /**
+         * The raw data of the record.
+         */
+        private final ByteBuffer data_;
+
+        /**
+         * Create a new record.
+         *
+         * @param time The capture time of the record.
+         * @param data The read only raw data of the record.
+         */
+        Record(@NotNull Instant time, @NotNull ByteBuffer data) {
+            this.time_ = time;
+            this.data_ = data;
+        }
+
+        /**
+         * Get the capture time of the record.
+         *
+         * @return The time the record was captured.
+         */
+        public Instant getTime() {
+            return time_;
+        }
+
+        /**
+         * Get the length of the raw data.
+         *
+         * @return The number of bytes in the record.
+         */
+        public int getLength() {
+            return data_.remaining();
+        }
+
+        /**
+         * Get the raw data.
+         *
+         * @return The read only buffer containing the raw data.
+         */
+        public ByteBuffer getData() {
+            return data_.duplicate();
+        }
+
+        /**
+         * Open a stream reading the raw data without copying it.
+         *
+         * @return The input stream reading the raw data.
+         */
+        public InputStream getInputStream() {
+            final ByteBuffer buffer = getData();
+            return new InputStream() {
+
+                @Override
+                public int read() {
+                    return buffer.hasRemaining() ? (buffer.get() & 0xFF) : -1;
+                }
+
+                @Override
+                public int read(byte[] target, int offset, int length) {
+                    if (length == 0) {
+                        return 0;
+                    }
+                    if (!buffer.hasRemaining()) {
+                        return -1;
+                    }
+                    int count = Math.min(length, buffer.remaining());
+                    buffer.get(target, offset, count);
+                    return count;
+                }
+
+                @Override
+                public int available() {
+                    return buffer.remaining();
+                }
+            };
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Record[%s; %d bytes]", time_, getLength());
+        }
+    }
+
+    /**
+     * The directory of the segments.
+     */
+    private final Path directory_;
+
+    /**
+     * The size of a new segment.
+     */
+    private final int segmentSize_;
+
+    /**
+     * The maximum number of segments.
+     */
+    private final int maxSegments_;
+
+    /**
+     * The segment files by sequence number.
+     */
+    private final TreeMap<Long, Path> segments_ = new TreeMap<>();
+
+    /**
+     * The sequence number of the current segment.
+     */
+    private long currentSequence_ = -1;
+
+    /**
+     * The mapped buffer of the current segment. Undefined value, if no segment
+     * has been opened for appending.
+     */
+    private MappedByteBuffer current_ = null;
+
+    /**
+     * Is the journal closed.
+     */
+    private boolean closed_ = false;
+
+    /**
+     * Create a new journal with the default segment size and segment count.
+     *
+     * @param directory The directory of the segment files.
+     * @throws IOException The directory could not be read or created.
+     */
+    public CaptureJournal(@NotNull Path directory) throws IOException {
+        this(directory, DEFAULT_SEGMENT_SIZE, DEFAULT_MAX_SEGMENTS);
+    }
+
+    /**
+     * Create a new journal. The existing segments of the directory are kept, and
+     * the appended records are written into new segments.
+     *
+     * @param directory   The directory of the segment files.
+     * @param segmentSize The size of a segment in bytes.
+     * @param maxSegments The maximum number of kept segments.
+     * @throws IllegalArgumentException The segment size or count was invalid.
+     * @throws IOException              The directory could not be read or
+     *                                  created.
+     */
+    public CaptureJournal(@NotNull Path directory, int segmentSize, int maxSegments)
+            throws IllegalArgumentException, IOException {
+        if (directory == null) {
+            throw new IllegalArgumentException("Undefined journal directory");
+        }
+        if (segmentSize <= HEADER_SIZE) {
+            throw new IllegalArgumentException("Too small segment size");
+        }
+        if (maxSegments < 1) {
+            throw new IllegalArgumentException("Invalid maximum segment count");
+        }
+        this.directory_ = directory;
+        this.segmentSize_ = segmentSize;
+        this.maxSegments_ = maxSegments;
+        Files.createDirectories(directory);
+        segments_.putAll(findSegments(directory));
+        this.currentSequence_ = segments_.isEmpty() ? -1 : segments_.lastKey();
+    }
+
+    /**
+     * Find the segment files of the directory.
+     *
+     * @param directory The directory of the journal.
+     * @return The map from sequence number to the segment file.
+     * @throws IOException The directory could not be read.
+     */
+    private static TreeMap<Long, Path> findSegments(Path directory) throws IOException {
+        TreeMap<Long, Path> result = new TreeMap<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                Matcher matcher = SEGMENT_NAME.matcher(file.getFileName().toString());
+                if (matcher.matches()) {
+                    result.put(Long.parseLong(matcher.group(1)), file);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Get the directory of the journal.
+     *
+     * @return The directory containing the segment files.
+     */
+    public Path getDirectory() {
+        return directory_;
+    }
+
+    /**
+     * Get the segment files.
+     *
+     * @return The list of the segment files from the oldest to the newest.
+     */
+    public synchronized List<Path> getSegments() {
+        return Collections.unmodifiableList(new ArrayList<>(segments_.values()));
+    }
+
+    /**
+     * Start a new segment, and delete the oldest segments exceeding the maximum
+     * segment count.
+     *
+     * @param minimumSize The minimum size of the new segment.
+     * @throws IOException The segment could not be created.
+     */
+    private void rotate(int minimumSize) throws IOException {
+        if (current_ != null) {
+            endSegment();
+        }
+        currentSequence_++;
+        Path file = directory_.resolve(String.format("capture-%08d.journal", currentSequence_));
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            // The mapping stays valid after the channel is closed.
+            current_ = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(segmentSize_, minimumSize));
+        }
+        segments_.put(currentSequence_, file);
+        while (segments_.size() > maxSegments_) {
+            Files.deleteIfExists(segments_.pollFirstEntry().getValue());
+        }
+    }
+
+    /**
+     * End the current segment.
+     */
+    private void endSegment() {
+        if (current_.remaining() >= Integer.BYTES) {
+            current_.putInt(current_.position(), 0);
+        }
+        current_.force();
+        current_ = null;
+    }
+
+    /**
+     * Append a record with given raw data.
+     *
+     * @param time The capture time of the record.
+     * @param data The raw data.
+     * @return The appended record.
+     * @throws IllegalArgumentException The data was empty.
+     * @throws IOException              The journal is closed, or the segment
+     *                                  could not be created.
+     */
+    public synchronized Record append(@NotNull Instant time, @NotNull byte[] data)
+            throws IllegalArgumentException, IOException {
+        if (closed_) {
+            throw new IOException("Journal is closed");
+        }
+        if (data.length == 0) {
+            throw new IllegalArgumentException("Empty record");
+        }
+        if (current_ == null || current_.remaining() < HEADER_SIZE + data.length) {
+            rotate(HEADER_SIZE + data.length);
+        }
+        int start = current_.position();
+        current_.putInt(data.length).putLong(time.toEpochMilli()).put(data);
+        return new Record(time, current_.duplicate().position(start + HEADER_SIZE).limit(current_.position())
+                .slice().asReadOnlyBuffer());
+    }
+
+    /**
+     * Append a record reading the raw data from the stream. The data is read
+     * directly into the mapped segment, and it is only copied, if it does not
+     * fit into the rest of the current segment.
+     *
+     * @param time The capture time of the record.
+     * @param in   The stream containing the raw data. The stream is read to the
+     *             end, but it is not closed.
+     * @return The appended record.
+     * @throws IllegalArgumentException The stream was empty.
+     * @throws IOException              The journal is closed, or the stream or
+     *                                  the segment could not be read or written.
+     */
+    public synchronized Record append(@NotNull Instant time, @NotNull InputStream in)
+            throws IllegalArgumentException, IOException {
+        if (closed_) {
+            throw new IOException("Journal is closed");
+        }
+        if (current_ == null || current_.remaining() <= HEADER_SIZE) {
+            rotate(HEADER_SIZE + 1);
+        }
+        int start = current_.position();
+        ByteBuffer target = current_.duplicate().position(start + HEADER_SIZE);
+        byte[] chunk = new byte[8192];
+        int read;
+        while ((read = in.read(chunk, 0, Math.min(chunk.length, Math.max(target.remaining(), 1)))) >= 0) {
+            try {
+                target.put(chunk, 0, read);
+            } catch (BufferOverflowException overflow) {
+                // The record does not fit into the segment. The data is collected, and
+                // the record is written into a new segment.
+                ByteArrayOutputStream overflowData = new ByteArrayOutputStream(target.position() - start);
+                ByteBuffer written = current_.duplicate().position(start + HEADER_SIZE).limit(target.position());
+                byte[] head = new byte[written.remaining()];
+                written.get(head);
+                overflowData.write(head);
+                overflowData.write(chunk, 0, read);
+                in.transferTo(overflowData);
+                return append(time, overflowData.toByteArray());
+            }
+        }
+        int length = target.position() - start - HEADER_SIZE;
+        if (length == 0) {
+            // The header is not written, so the segment still ends at the start.
+            throw new IllegalArgumentException("Empty record");
+        }
+        current_.putInt(start, length).putLong(start + Integer.BYTES, time.toEpochMilli());
+        current_.position(target.position());
+        return new Record(time, current_.duplicate().position(start + HEADER_SIZE).limit(current_.position())
+                .slice().asReadOnlyBuffer());
+    }
+
+    /**
+     * Read the records of the segment file.
+     *
+     * @param file   The segment file.
+     * @param result The list into which the records are added.
+     * @throws IOException The segment could not be read.
+     */
+    private static void readSegment(Path file, List<Record> result) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        while (buffer.remaining() >= HEADER_SIZE) {
+            int length = buffer.getInt();
+            if (length <= 0 || buffer.remaining() < Long.BYTES + length) {
+                // The end of the segment.
+                break;
+            }
+            Instant time = Instant.ofEpochMilli(buffer.getLong());
+            int start = buffer.position();
+            result.add(new Record(time, buffer.duplicate().position(start).limit(start + length).slice()));
+            buffer.position(start + length);
+        }
+    }
+
+    /**
+     * Read all records of the journal.
+     *
+     * @return The list of the records from the oldest to the newest.
+     * @throws IOException The segments could not be read.
+     */
+    public synchronized List<Record> readAll() throws IOException {
+        if (current_ != null) {
+            current_.force();
+        }
+        List<Record> result = new ArrayList<>();
+        for (Path file : segments_.values()) {
+            readSegment(file, result);
+        }
+        return result;
+    }
+
+    /**
+     * Read all records of the journal directory.
+     *
+     * @param directory The directory of the journal.
+     * @return The list of the records from the oldest to the newest.
+     * @throws IOException The segments could not be read.
+     */
+    public static List<Record> readAll(@NotNull Path directory) throws IOException {
+        List<Record> result = new ArrayList<>();
+        for (Path file : findSegments(directory).values()) {
+            readSegment(file, result);
+        }
+        return result;
+    }
+
+    /**
+     * Close the journal. The current segment is ended and forced to the storage.
+     * The mapped memory is released when the records are no longer referenced.
+     */
+    @Override
+    public synchronized void close() {
+        if (current_ != null) {
+            endSegment();
+        }
+        closed_ = true;
+    }
+}
@@ -0,0 +1,188 @@
+package com.kautiainen.antti.reaktor.birdnest.data;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.validation.constraints.NotNull;
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.w3c.dom.Document;
+import org.xml.sax.SAXException;
+
+/**
+ * DocumentBuilderPool reuses the XML document builders.
+ * <p>
+ * The document builder factory is looked up and configured once, and the
+ * builders are reset and returned to the pool after each parse. The factory
+ * has secure processing enabled, and it refuses document type declarations and
+ * external entities.
+ * </p>
+ * <p>
+ * The pool does not bind builders to threads, so it works the same way for
+ * platform threads and short lived threads.
+ * </p>
+ */
+public class DocumentBuilderPool {
+
+    /**
+     * The default maximum number of idle builders.
+     */
+    public static final int DEFAULT_MAX_IDLE = 8;
+
+    /**
+     * The default pool shared by the XML consumers.
+     */
+    private static final DocumentBuilderPool DEFAULT_POOL = new DocumentBuilderPool(DEFAULT_MAX_IDLE);
+
+    /**
+     * Get the default pool.
+     *
+     * @return The default pool shared by the XML consumers.
+     */
+    public static DocumentBuilderPool getDefault() {
+        return DEFAULT_POOL;
+    }
+
+    /**
+     * Create the configured document builder factory.
+     *
+     * @return The document builder factory with secure processing.
+     * @throws IllegalStateException The factory does not support secure
+     *                               processing.
+     */
+    protected static DocumentBuilderFactory createFactory() throws IllegalStateException {
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        try {
+            factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+            factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+            factory.setFeature("http://xml.org/sax/features/external-general-entities", false);
+            factory.setFeature("http://xml.org/sax/features/external-parameter-entities", false);
+        } catch (ParserConfigurationException e) {
+            throw new IllegalStateException("The document builder factory does not support secure processing", e);
+        }
+        factory.setXIncludeAware(false);
+        factory.setExpandEntityReferences(false);
+        return factory;
+    }
+
+    /**
+     * The factory creating the builders.
+     */
+    private final DocumentBuilderFactory factory_;
+
+    /**
+     * The idle builders.
+     */
+    private final ConcurrentLinkedQueue<DocumentBuilder> idle_ = new ConcurrentLinkedQueue<>();
+
+    /**
+     * The number of idle builders.
+     */
+    private final AtomicInteger idleCount_ = new AtomicInteger();
+
+    /**
+     * The maximum number of idle builders.
+     */
+    private final int maxIdle_;
+
+    /**
+     * Create a new document builder pool.
+     *
+     * @param maxIdle The maximum number of idle builders kept in the pool.
+     * @throws IllegalArgumentException The maximum number of idle builders was
+     *                                  negative.
+     * @throws IllegalStateException    The factory could not be configured.
+     */
+    public DocumentBuilderPool(int maxIdle) throws IllegalArgumentException, IllegalStateException {
+        if (maxIdle < 0) {
+            throw new IllegalArgumentException("Negative maximum idle count");
+        }
+        this.maxIdle_ = maxIdle;
+        this.factory_ = createFactory();
+    }
+
+    /**
+     * Create a new document builder with the configuration of the pool. The
+     * builder does not belong to the pool.
+     *
+     * @return The new document builder.
+     * @throws ParserConfigurationException The builder could not be created.
+     */
+    public DocumentBuilder createBuilder() throws ParserConfigurationException {
+        synchronized (factory_) {
+            // The factory is not guaranteed to be thread safe.
+            return factory_.newDocumentBuilder();
+        }
+    }
+
+    /**
+     * Borrow a builder from the pool. The builder should be returned with
+     * {@link #release(DocumentBuilder)}.
+     *
+     * @return The idle builder, or a new builder, if the pool had no idle builders.
+     * @throws ParserConfigurationException The builder could not be created.
+     */
+    public DocumentBuilder borrow() throws ParserConfigurationException {
+        DocumentBuilder builder = idle_.poll();
+        if (builder == null) {
+            return createBuilder();
+        }
+        idleCount_.decrementAndGet();
+        return builder;
+    }
+
+    /**
+     * Return the builder to the pool. The builder is reset before it is made
+     * available for other users.
+     *
+     * @param builder The returned builder.
+     */
+    public void release(DocumentBuilder builder) {
+        if (builder == null) {
+            return;
+        }
+        builder.reset();
+        if (idleCount_.incrementAndGet() <= maxIdle_) {
+            idle_.offer(builder);
+        } else {
+            // The pool is full, and the builder is discarded.
+            idleCount_.decrementAndGet();
+        }
+    }
+
+    /**
+     * Parse the XML document using a pooled builder.
+     *
+     * @param in The input stream containing the document.
+     * @return The parsed document.
+     * @throws SAXException The document was not valid XML document.
+     * @throws IOException  The operation failed due input error.
+     */
+    public Document parse(@NotNull InputStream in) throws SAXException, IOException {
+        DocumentBuilder builder;
+        try {
+            builder = borrow();
+        } catch (ParserConfigurationException e) {
+            throw new SAXException("Could not create document builder", e);
+        }
+        try {
+            return builder.parse(in);
+        } finally {
+            release(builder);
+        }
+    }
+
+    /**
+     * Get the number of idle builders.
+     *
+     * @return The number of idle builders in the pool.
+     */
+    public int getIdleCount() {
+        return Math.min(idleCount_.get(), maxIdle_);
+    }
+}
@@ -0,0 +1,236 @@
+package com.kautiainen.antti.reaktor.birdnest.data;
+
+import java.net.http.HttpClient;
+import java.net.http.HttpClient.Version;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.validation.constraints.NotNull;
+
+/**
+ * HttpClientRegistry manages the HTTP client shared by the data sources.
+ * <p>
+ * The client is created on first use and kept until the registry is shut down,
+ * so the connections, the TLS sessions and the selector thread of the client
+ * are reused by all requests. The data sources use the default registry unless
+ * they are given another registry.
+ * </p>
+ * <p>
+ * The connection pool size of the JDK client is a system wide setting read
+ * when the first client of the virtual machine is created. The registry sets
+ * it only if it has not been set before.
+ * </p>
+ */
+public class HttpClientRegistry {
+
+    /**
+     * The default connect timeout.
+     */
+    public static final Duration DEFAULT_CONNECT_TIMEOUT = Duration.ofSeconds(2);
+
+    /**
+     * The default request timeout.
+     */
+    public static final Duration DEFAULT_REQUEST_TIMEOUT = Duration.ofSeconds(10);
+
+    /**
+     * The default maximum number of pooled connections.
+     */
+    public static final int DEFAULT_POOL_SIZE = 16;
+
+    /**
+     * The system property of the connection pool size of the JDK client.
+     */
+    public static final String POOL_SIZE_PROPERTY = "jdk.httpclient.connectionPoolSize";
+
+    /**
+     * The default registry.
+     */
+    private static final HttpClientRegistry DEFAULT_REGISTRY = new HttpClientRegistry(Version.HTTP_2, null,
+            DEFAULT_CONNECT_TIMEOUT, DEFAULT_REQUEST_TIMEOUT, DEFAULT_POOL_SIZE);
+
+    /**
+     * Get the default registry.
+     *
+     * @return The registry shared by the data sources by default.
+     */
+    public static HttpClientRegistry getDefault() {
+        return DEFAULT_REGISTRY;
+    }
+
+    /**
+     * The preferred protocol version. The client falls back to HTTP/1.1, if the
+     * server does not support HTTP/2. The data sources request the plain HTTP
+     * resources with HTTP/1.1.
+     */
+    private final Version version_;
+
+    /**
+     * The executor given by the user. Undefined value, if the registry creates
+     * its own executor.
+     */
+    private final ExecutorService executor_;
+
+    /**
+     * The connect timeout.
+     */
+    private final Duration connectTimeout_;
+
+    /**
+     * The request timeout.
+     */
+    private final Duration requestTimeout_;
+
+    /**
+     * The maximum number of pooled connections.
+     */
+    private final int poolSize_;
+
+    /**
+     * The current client. Undefined value, if the client has not been created.
+     */
+    private HttpClient client_ = null;
+
+    /**
+     * The executor created by the registry for the current client.
+     */
+    private ExecutorService ownExecutor_ = null;
+
+    /**
+     * The number of created clients.
+     */
+    private final AtomicLong createdClients_ = new AtomicLong();
+
+    /**
+     * Create a new client registry.
+     *
+     * @param version        The preferred protocol version.
+     * @param executor       The executor of the client. If undefined, the
+     *                       registry creates a pool of daemon threads, and shuts
+     *                       it down with the registry.
+     * @param connectTimeout The connect timeout.
+     * @param requestTimeout The request timeout.
+     * @param poolSize       The maximum number of pooled connections. The value
+     *                       zero leaves the pool size to the default of the JDK.
+     * @throws IllegalArgumentException Any timeout was undefined or not positive,
+     *                                  or the pool size was negative.
+     */
+    public HttpClientRegistry(@NotNull Version version, ExecutorService executor, @NotNull Duration connectTimeout,
+            @NotNull Duration requestTimeout, int poolSize) throws IllegalArgumentException {
+        if (version == null) {
+            throw new IllegalArgumentException("Undefined protocol version");
+        }
+        if (connectTimeout == null || connectTimeout.isNegative() || connectTimeout.isZero()
+                || requestTimeout == null || requestTimeout.isNegative() || requestTimeout.isZero()) {
+            throw new IllegalArgumentException("Invalid timeout");
+        }
+        if (poolSize < 0) {
+            throw new IllegalArgumentException("Negative pool size");
+        }
+        this.version_ = version;
+        this.executor_ = executor;
+        this.connectTimeout_ = connectTimeout;
+        this.requestTimeout_ = requestTimeout;
+        this.poolSize_ = poolSize;
+    }
+
+    /**
+     * Get the preferred protocol version.
+     *
+     * @return The preferred protocol version.
+     */
+    public Version getVersion() {
+        return version_;
+    }
+
+    /**
+     * Get the connect timeout.
+     *
+     * @return The connect timeout.
+     */
+    public Duration getConnectTimeout() {
+        return connectTimeout_;
+    }
+
+    /**
+     * Get the request timeout. The data sources set the timeout to their
+     * requests.
+     *
+     * @return The request timeout.
+     */
+    public Duration getRequestTimeout() {
+        return requestTimeout_;
+    }
+
+    /**
+     * Get the maximum number of pooled connections.
+     *
+     * @return The maximum number of pooled connections, or zero, if the default
+     *         of the JDK is used.
+     */
+    public int getPoolSize() {
+        return poolSize_;
+    }
+
+    /**
+     * Get the number of created clients.
+     *
+     * @return The number of clients the registry has created.
+     */
+    public long getCreatedClientCount() {
+        return createdClients_.get();
+    }
+
+    /**
+     * Get the shared client. The client is created on first use, and after the
+     * registry has been shut down.
+     *
+     * @return The shared client.
+     */
+    public synchronized HttpClient getClient() {
+        if (client_ == null) {
+            if (poolSize_ > 0 && System.getProperty(POOL_SIZE_PROPERTY) == null) {
+                System.setProperty(POOL_SIZE_PROPERTY, Integer.toString(poolSize_));
+            }
+            ExecutorService executor = executor_;
+            if (executor == null) {
+                ownExecutor_ = Executors.newCachedThreadPool(createThreadFactory());
+                executor = ownExecutor_;
+            }
+            client_ = HttpClient.newBuilder().version(version_).connectTimeout(connectTimeout_).executor(executor)
+                    .build();
+            createdClients_.incrementAndGet();
+        }
+        return client_;
+    }
+
+    /**
+     * Create the factory of the daemon threads of the executor of the registry.
+     *
+     * @return The thread factory.
+     */
+    private static ThreadFactory createThreadFactory() {
+        AtomicInteger count = new AtomicInteger();
+        return (Runnable task) -> {
+            Thread thread = new Thread(task, "http-client-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Shut down the registry. The client is released, and the executor created by
+     * the registry is shut down. The executor given by the user is not shut down.
+     */
+    public synchronized void shutdown() {
+        client_ = null;
+        if (ownExecutor_ != null) {
+            ownExecutor_.shutdownNow();
+            ownExecutor_ = null;
+        }
+    }
+}
@@ -1,9 +1,11 @@
 package com.kautiainen.antti.reaktor.birdnest.data;
 import java.io.BufferedReader;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.PrintStream;
+import java.io.PushbackInputStream;
 import java.io.StreamCorruptedException;
 import java.net.URI;
 import java.net.URISyntaxException;
@@ -11,17 +13,23 @@ import java.net.http.HttpClient;
 import java.net.http.HttpHeaders;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
-import java.net.http.HttpClient.Version;
 import java.net.http.HttpRequest.BodyPublisher;
 import java.net.http.HttpResponse.BodyHandlers;
 import java.text.MessageFormat;
-import java.time.Duration;
+import java.time.Instant;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Function;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
 
 import javax.validation.constraints.NotNull;
 
@@ -32,6 +40,25 @@ import javax.validation.constraints.NotNull;
  */
 public class HttpDataSource<TYPE> extends NetworkDataSource<TYPE> {
 
+    /**
+     * BodySource supplies the message bodies in place of the HTTP requests, such
+     * as the bodies replayed from a capture journal.
+     */
+    @FunctionalInterface
+    public static interface BodySource {
+
+        /**
+         * Get the next message body.
+         * 
+         * @return The stream of the next message body, or an undefined value, if
+         *         the source has no more message bodies.
+         * @throws IOException          The message body could not be read.
+         * @throws InterruptedException The wait for the message body was
+         *                              interrupted.
+         */
+        InputStream nextBody() throws IOException, InterruptedException;
+    }
+
     /**
      * StatusHandler handles status exceptions.
      */
@@ -141,7 +168,264 @@ public class HttpDataSource<TYPE> extends NetworkDataSource<TYPE> {
     /**
      * The status handler handling the error status messages of the response.
      */
-    private StatusHandler<? extends TYPE> statusHandler_;
+    private volatile StatusHandler<? extends TYPE> statusHandler_;
+
+    /**
+     * The journal into which the raw message bodies of the successful responses
+     * are appended before parsing. Undefined value, if the message bodies are not
+     * journaled.
+     */
+    private volatile CaptureJournal captureJournal_ = null;
+
+    /**
+     * The source of the message bodies replacing the HTTP requests. Undefined
+     * value, if the message bodies are requested from the source URI.
+     */
+    private volatile BodySource bodySource_ = null;
+
+    /**
+     * The maximum number of bytes drained from a partially consumed message body
+     * before it is closed.
+     */
+    public static final int MAX_DRAINED_BYTES = 64 * 1024;
+
+    /**
+     * TrackedBody tracks the consumption of a message body.
+     */
+    protected static class TrackedBody extends FilterInputStream {
+
+        /**
+         * The number of bytes read.
+         */
+        private long bytesRead_ = 0;
+
+        /**
+         * Has the end of the body been reached.
+         */
+        private boolean consumed_ = false;
+
+        /**
+         * Create a new tracked body.
+         * 
+         * @param body The message body.
+         */
+        public TrackedBody(@NotNull InputStream body) {
+            super(body);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int result = super.read();
+            if (result < 0) {
+                consumed_ = true;
+            } else {
+                bytesRead_++;
+            }
+            return result;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int result = super.read(buffer, offset, length);
+            if (result < 0) {
+                consumed_ = true;
+            } else {
+                bytesRead_ += result;
+            }
+            return result;
+        }
+
+        @Override
+        public long skip(long count) throws IOException {
+            long result = super.skip(count);
+            bytesRead_ += result;
+            return result;
+        }
+
+        /**
+         * Read and discard the rest of the body.
+         * 
+         * @param limit The maximum number of drained bytes.
+         */
+        public void drain(int limit) {
+            byte[] buffer = new byte[4096];
+            int remaining = limit;
+            try {
+                int read;
+                while (!consumed_ && remaining > 0
+                        && (read = read(buffer, 0, Math.min(buffer.length, remaining))) >= 0) {
+                    remaining -= read;
+                }
+            } catch (IOException ignored) {
+                // The body is closed anyway.
+            }
+        }
+
+        /**
+         * Get the number of bytes read.
+         * 
+         * @return The number of bytes read from the body.
+         */
+        public long getBytesRead() {
+            return bytesRead_;
+        }
+
+        /**
+         * Has the body been read to the end.
+         * 
+         * @return True, if and only if the end of the body has been reached.
+         */
+        public boolean isConsumed() {
+            return consumed_;
+        }
+    }
+
+    /**
+     * The content encodings accepted when the compression is enabled.
+     */
+    public static final String ACCEPTED_ENCODINGS = "gzip, deflate";
+
+    /**
+     * Is the compressed transfer enabled.
+     */
+    private volatile boolean compression_ = true;
+
+    /**
+     * The default maximum number of resources whose validators are remembered.
+     */
+    public static final int DEFAULT_MAX_VALIDATED_RESOURCES = 1024;
+
+    /**
+     * Validated is the last successful response of a resource with its
+     * validators and its parsed value.
+     */
+    protected static final class Validated {
+
+        /**
+         * The entity tag of the response.
+         */
+        private final String entityTag_;
+
+        /**
+         * The last modified header of the response.
+         */
+        private final String lastModified_;
+
+        /**
+         * The parser which parsed the value.
+         */
+        private final Function<?, ?> parser_;
+
+        /**
+         * The parsed value.
+         */
+        private final Object value_;
+
+        /**
+         * The number of bytes of the message body.
+         */
+        private final long bytes_;
+
+        /**
+         * The time used to parse the value in nanoseconds.
+         */
+        private final long parseNanos_;
+
+        /**
+         * Create a new validated response.
+         * 
+         * @param entityTag    The entity tag, or an undefined value.
+         * @param lastModified The last modified header, or an undefined value.
+         * @param parser       The parser which parsed the value.
+         * @param value        The parsed value.
+         * @param bytes        The number of bytes of the message body.
+         * @param parseNanos   The time used to parse the value in nanoseconds.
+         */
+        Validated(String entityTag, String lastModified, Function<?, ?> parser, Object value, long bytes,
+                long parseNanos) {
+            this.entityTag_ = entityTag;
+            this.lastModified_ = lastModified;
+            this.parser_ = parser;
+            this.value_ = value;
+            this.bytes_ = bytes;
+            this.parseNanos_ = parseNanos;
+        }
+
+        /**
+         * Was the value parsed with the parser.
+         * 
+         * @param parser The parser.
+         * @return True, if and only if the value was parsed with the given parser.
+         */
+        boolean parsedWith(Function<?, ?> parser) {
+            return parser_ == parser;
+        }
+    }
+
+    /**
+     * The last validated responses by the request URI. The least recently used
+     * resources are forgotten first.
+     */
+    private final Map<URI, Validated> validated_ = Collections
+            .synchronizedMap(new java.util.LinkedHashMap<URI, Validated>(16, 0.75f, true) {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<URI, Validated> eldest) {
+                    return size() > DEFAULT_MAX_VALIDATED_RESOURCES;
+                }
+            });
+
+    /**
+     * Are the conditional requests enabled.
+     */
+    private volatile boolean conditionalRequests_ = true;
+
+    /**
+     * The number of not modified responses.
+     */
+    private final AtomicLong notModifiedCount_ = new AtomicLong();
+
+    /**
+     * The number of message body bytes the not modified responses saved.
+     */
+    private final AtomicLong bytesSaved_ = new AtomicLong();
+
+    /**
+     * The parse time the not modified responses saved in nanoseconds.
+     */
+    private final AtomicLong parseNanosSaved_ = new AtomicLong();
+
+    /**
+     * The accepted media types of the successful responses. An empty list accepts
+     * all content types.
+     */
+    private volatile List<String> acceptedContentTypes_ = Collections.emptyList();
+
+    /**
+     * The number of handled responses.
+     */
+    private final AtomicLong responseCount_ = new AtomicLong();
+
+    /**
+     * The number of bytes read from the message bodies.
+     */
+    private final AtomicLong bytesReceived_ = new AtomicLong();
+
+    /**
+     * The number of responses closed before the end of the message body.
+     */
+    private final AtomicLong unconsumedCount_ = new AtomicLong();
+
+    /**
+     * The registry of the shared HTTP client.
+     */
+    private volatile HttpClientRegistry clientRegistry_ = HttpClientRegistry.getDefault();
+
+    /**
+     * The policy retrying the failed requests and guarding the endpoints.
+     */
+    private volatile ResiliencePolicy resiliencePolicy_ = ResiliencePolicy.getDefault();
 
     /**
      * Create a new http data source with given URI and reader function.
@@ -235,6 +519,155 @@ public class HttpDataSource<TYPE> extends NetworkDataSource<TYPE> {
         return this.statusHandler_;
     }
 
+    /**
+     * Set the status handler.
+     * 
+     * @param statusHandler The status handler handling the other statuses than
+     *                      200 and 204. An undefined value reports the error
+     *                      statuses with exception.
+     */
+    public void setStatusHandler(StatusHandler<? extends TYPE> statusHandler) {
+        this.statusHandler_ = statusHandler;
+    }
+
+    /**
+     * Get the capture journal.
+     * 
+     * @return The journal into which the raw message bodies are appended, or an
+     *         undefined value, if the message bodies are not journaled.
+     */
+    public CaptureJournal getCaptureJournal() {
+        return this.captureJournal_;
+    }
+
+    /**
+     * Set the capture journal. The raw message body of each successful response
+     * is appended into the journal, and the parser reads the journaled record.
+     * 
+     * @param journal The journal, or an undefined value to stop journaling.
+     */
+    public void setCaptureJournal(CaptureJournal journal) {
+        this.captureJournal_ = journal;
+    }
+
+    /**
+     * Get the body source.
+     * 
+     * @return The source of the message bodies replacing the HTTP requests, or
+     *         an undefined value, if the message bodies are requested from the
+     *         source URI.
+     */
+    public BodySource getBodySource() {
+        return this.bodySource_;
+    }
+
+    /**
+     * Set the body source. While the body source is set, each acquisition parses
+     * the next message body of the body source in the calling thread instead of
+     * sending a request.
+     * 
+     * @param bodySource The source of the message bodies, or an undefined value
+     *                   to request the message bodies from the source URI.
+     */
+    public void setBodySource(BodySource bodySource) {
+        this.bodySource_ = bodySource;
+    }
+
+    /**
+     * Create a request builder with the common settings of the requests. The
+     * request timeout of the client registry is set, and the compressed content
+     * encodings are accepted, if the compression is enabled. The plain HTTP
+     * requests use HTTP/1.1.
+     * 
+     * @param uri The URI of the request.
+     * @return The request builder.
+     */
+    protected HttpRequest.Builder newRequestBuilder(@NotNull URI uri) {
+        HttpRequest.Builder result = HttpRequest.newBuilder(uri).timeout(getClientRegistry().getRequestTimeout());
+        if ("http".equalsIgnoreCase(uri.getScheme())) {
+            // HTTP/2 is negotiated on TLS connections. On a plain connection the client
+            // would offer the h2c upgrade on every request.
+            result.version(HttpClient.Version.HTTP_1_1);
+        }
+        if (isCompressionEnabled()) {
+            result.header("Accept-Encoding", ACCEPTED_ENCODINGS);
+        }
+        return result;
+    }
+
+    /**
+     * Is the compressed transfer enabled.
+     * 
+     * @return True, if and only if the requests accept compressed content
+     *         encodings.
+     */
+    public boolean isCompressionEnabled() {
+        return this.compression_;
+    }
+
+    /**
+     * Set the compressed transfer enabled. The compressed responses are
+     * decompressed regardless of this setting.
+     * 
+     * @param enabled Do the requests accept compressed content encodings.
+     */
+    public void setCompressionEnabled(boolean enabled) {
+        this.compression_ = enabled;
+    }
+
+    /**
+     * Get the decoded message body. The compressed body is decompressed while it
+     * is read, so the parser reads the decompressed content without an
+     * intermediate copy.
+     * 
+     * @param headers The headers of the response.
+     * @param body    The raw message body.
+     * @return The stream reading the decoded message body. Closing the stream
+     *         does not close the raw message body.
+     * @throws IOException              The compressed body could not be read.
+     * @throws StreamCorruptedException The content encoding was not supported.
+     */
+    protected InputStream getDecodedBody(HttpHeaders headers, @NotNull InputStream body)
+            throws IOException, StreamCorruptedException {
+        String encoding = headers == null ? null
+                : headers.firstValue("Content-Encoding")
+                        .map((String value) -> value.trim().toLowerCase(java.util.Locale.ROOT)).orElse(null);
+        InputStream raw = new FilterInputStream(body) {
+            @Override
+            public void close() {
+                // The raw message body is closed by the response handling.
+            }
+        };
+        if (encoding == null || encoding.isEmpty() || "identity".equals(encoding)) {
+            return raw;
+        } else if ("gzip".equals(encoding) || "x-gzip".equals(encoding)) {
+            return new GZIPInputStream(raw, 8192);
+        } else if ("deflate".equals(encoding)) {
+            // The deflate encoding should be zlib wrapped, but some servers send raw
+            // deflate data.
+            PushbackInputStream in = new PushbackInputStream(raw, 2);
+            int first = in.read(), second = first < 0 ? -1 : in.read();
+            if (second >= 0) {
+                in.unread(second);
+            }
+            if (first >= 0) {
+                in.unread(first);
+            }
+            boolean zlib = first >= 0 && second >= 0 && (first & 0x0F) == 8 && ((first << 8) | second) % 31 == 0;
+            return new InflaterInputStream(in, new Inflater(!zlib), 8192) {
+                @Override
+                public void close() throws IOException {
+                    super.close();
+                    // The inflater given to the stream is not ended by the stream.
+                    inf.end();
+                }
+            };
+        } else {
+            throw new StreamCorruptedException(
+                    MessageFormat.format("Server responded with unsupported content encoding {0}", encoding));
+        }
+    }
+
     /**
      * The get request with given parameters.
      * 
@@ -244,7 +677,7 @@ public class HttpDataSource<TYPE> extends NetworkDataSource<TYPE> {
      */
     protected HttpRequest getGetRequest(List<?> parameters)
             throws IllegalArgumentException {
-        return HttpRequest.newBuilder(getSourceURI(parameters == null ? Collections.emptyList() : parameters)).GET()
+        return newRequestBuilder(getSourceURI(parameters == null ? Collections.emptyList() : parameters)).GET()
                 .build();
     }
 
@@ -257,7 +690,7 @@ public class HttpDataSource<TYPE> extends NetworkDataSource<TYPE> {
      */
     protected HttpRequest getGetRequest(Map<String, ?> parameters)
             throws IllegalArgumentException {
-        return HttpRequest.newBuilder(getSourceURI(parameters == null ? Collections.emptyMap() : parameters)).GET()
+        return newRequestBuilder(getSourceURI(parameters == null ? Collections.emptyMap() : parameters)).GET()
                 .build();
     }
 
@@ -270,8 +703,8 @@ public class HttpDataSource<TYPE> extends NetworkDataSource<TYPE> {
      */
     protected HttpRequest getPostRequest(List<?> parameters)
             throws IllegalArgumentException {
-        return HttpRequest.newBuilder(getSourceURI(parameters == null ? Collections.emptyList() : parameters)).POST(getBodyPublisher(parameters))
-                .build();
+        return newRequestBuilder(getSourceURI(parameters == null ? Collections.emptyList() : parameters))
+                .POST(getBodyPublisher(parameters)).build();
     }
 
     /**
@@ -283,8 +716,8 @@ public class HttpDataSource<TYPE> extends NetworkDataSource<TYPE> {
      */
     protected HttpRequest getPostRequest(Map<String, ?> parameters)
             throws IllegalArgumentException {
-        return HttpRequest.newBuilder(getSourceURI(parameters == null ? Collections.emptyMap() : parameters)).POST(getBodyPublisher(parameters))
-                .build();
+        return newRequestBuilder(getSourceURI(parameters == null ? Collections.emptyMap() : parameters))
+                .POST(getBodyPublisher(parameters)).build();
     }
 
     /**
@@ -310,6 +743,129 @@ public class HttpDataSource<TYPE> extends NetworkDataSource<TYPE> {
     }
 
 
+    /**
+     * Get the HTTP client sending the requests.
+     * 
+     * @return The shared HTTP client of the client registry.
+     */
+    protected HttpClient getHttpClient() {
+        return getClientRegistry().getClient();
+    }
+
+    /**
+     * Get the registry of the HTTP client.
+     * 
+     * @return The registry providing the shared HTTP client.
+     */
+    public HttpClientRegistry getClientRegistry() {
+        return this.clientRegistry_;
+    }
+
+    /**
+     * Set the registry of the HTTP client.
+     * 
+     * @param registry The registry providing the HTTP client. An undefined value
+     *                 restores the default registry.
+     */
+    public void setClientRegistry(HttpClientRegistry registry) {
+        this.clientRegistry_ = registry == null ? HttpClientRegistry.getDefault() : registry;
+    }
+
+    /**
+     * Get the resilience policy.
+     * 
+     * @return The policy retrying the failed requests and guarding the
+     *         endpoints, or an undefined value, if the requests are sent once
+     *         without a circuit breaker.
+     */
+    public ResiliencePolicy getResiliencePolicy() {
+        return this.resiliencePolicy_;
+    }
+
+    /**
+     * Set the resilience policy.
+     * 
+     * @param policy The policy retrying the failed requests and guarding the
+     *               endpoints. An undefined value disables the retries and the
+     *               circuit breaker.
+     */
+    public void setResiliencePolicy(ResiliencePolicy policy) {
+        this.resiliencePolicy_ = policy;
+    }
+
+    /**
+     * Send the request without blocking under the resilience policy.
+     * <p>
+     * A request to an endpoint with an open circuit fails with
+     * {@link ResiliencePolicy.CircuitOpenException} without being sent. The
+     * failed GET requests are retried after the backoff of the policy, as long
+     * as the attempts remain and the circuit allows. The response of the last
+     * attempt is returned even if its status tells a failure.
+     * </p>
+     * 
+     * @param request The sent request.
+     * @return The future completing with the response of the last attempt.
+     */
+    protected CompletableFuture<HttpResponse<InputStream>> sendAsync(@NotNull HttpRequest request) {
+        ResiliencePolicy policy = getResiliencePolicy();
+        if (policy == null) {
+            return getDataResponseAsync(request);
+        }
+        return sendAsync(request, policy, policy.getEndpoint(request.uri()), policy.newBackoff());
+    }
+
+    /**
+     * Send an attempt of the request, and retry on failure.
+     * 
+     * @param request  The sent request.
+     * @param policy   The resilience policy.
+     * @param endpoint The endpoint of the request.
+     * @param backoff  The backoff of the retries of the request.
+     * @return The future completing with the response of the last attempt.
+     */
+    private CompletableFuture<HttpResponse<InputStream>> sendAsync(HttpRequest request, ResiliencePolicy policy,
+            ResiliencePolicy.Endpoint endpoint, ResiliencePolicy.Backoff backoff) {
+        if (!endpoint.tryAcquire()) {
+            return CompletableFuture.failedFuture(endpoint.rejected());
+        }
+        return getDataResponseAsync(request).handle((HttpResponse<InputStream> response, Throwable error) -> {
+            if (error == null && !policy.isFailureStatus(response.statusCode())) {
+                endpoint.recordSuccess();
+                return CompletableFuture.completedFuture(response);
+            }
+            endpoint.recordFailure();
+            if (backoff.getAttempts() + 1 >= policy.getMaxAttempts() || !"GET".equals(request.method())) {
+                // No retries left.
+                return error == null ? CompletableFuture.completedFuture(response)
+                        : CompletableFuture.<HttpResponse<InputStream>>failedFuture(error);
+            }
+            if (response != null) {
+                // Releasing the connection of the failed response.
+                try {
+                    response.body().close();
+                } catch (IOException exception) {
+                    // The connection is not reused.
+                }
+            }
+            java.time.Duration delay = backoff.next();
+            return CompletableFuture.runAsync(() -> {
+            }, CompletableFuture.delayedExecutor(delay.toNanos(), TimeUnit.NANOSECONDS))
+                    .thenCompose((Void ignored) -> sendAsync(request, policy, endpoint, backoff));
+        }).thenCompose(Function.identity());
+    }
+
+    /**
+     * Send the request without blocking. The message body is streamed to the
+     * returned response as it arrives.
+     * 
+     * @param request The sent request.
+     * @return The future completing with the response when the headers of the
+     *         response have been received.
+     */
+    protected CompletableFuture<HttpResponse<InputStream>> getDataResponseAsync(@NotNull HttpRequest request) {
+        return getHttpClient().sendAsync(request, BodyHandlers.ofInputStream());
+    }
+
     /**
      * Get the response with default method.
      * 
@@ -321,10 +877,8 @@ public class HttpDataSource<TYPE> extends NetworkDataSource<TYPE> {
      */
     protected HttpResponse<InputStream> getDataResponse(List<?> parameters)
             throws java.io.IOException, InterruptedException {
-        HttpClient client = HttpClient.newBuilder().version(Version.HTTP_1_1).connectTimeout(Duration.ofSeconds(2))
-                .build();
         HttpRequest request = getGetRequest(parameters);
-        HttpResponse<InputStream> response = client.send(request, BodyHandlers.ofInputStream());
+        HttpResponse<InputStream> response = getHttpClient().send(request, BodyHandlers.ofInputStream());
 
         return response;
     }
@@ -340,10 +894,8 @@ public class HttpDataSource<TYPE> extends NetworkDataSource<TYPE> {
      */
     protected HttpResponse<InputStream> getDataResponse(Map<String, ?> parameters)
             throws java.io.IOException, InterruptedException {
-        HttpClient client = HttpClient.newBuilder().version(Version.HTTP_1_1).connectTimeout(Duration.ofSeconds(2))
-                .build();
         HttpRequest request = getGetRequest(parameters);
-        HttpResponse<InputStream> response = client.send(request, BodyHandlers.ofInputStream());
+        HttpResponse<InputStream> response = getHttpClient().send(request, BodyHandlers.ofInputStream());
 
         return response;
     }
@@ -447,7 +999,7 @@ public class HttpDataSource<TYPE> extends NetworkDataSource<TYPE> {
      * @throws java.io.IOException  The operation failed due input error.
      * @throws InterruptedException The operation was interruted.
      */
-    protected synchronized HttpResponse<InputStream> getDataResponse() throws java.io.IOException, InterruptedException {
+    protected HttpResponse<InputStream> getDataResponse() throws java.io.IOException, InterruptedException {
         return getDataResponse((List<?>)null);
     }
 
@@ -462,54 +1014,176 @@ public class HttpDataSource<TYPE> extends NetworkDataSource<TYPE> {
         return uri != null && Arrays.asList("http", "https", "file").contains(uri.getScheme());
     }
 
-    /** 
-     * Get data with given parameters.
+    /**
+     * Get data with given parameters without blocking.
+     * <p>
+     * The request is sent asynchronously, and the message body is parsed when
+     * the response arrives. The data source is not locked during the request, so
+     * several requests may be in progress at the same time. The errors are
+     * fired to the exception handlers, and the future completes with an empty
+     * value.
+     * </p>
      * 
      * @param parameters The parameters of the data request.
-     * @eturn The value of the request with given parameters, or an empty value.
-     * @throws IllegalArgumentException The given parameters were invalid. 
+     * @return The future completing with the value of the request, or with an
+     *         empty value.
+     * @throws IllegalArgumentException The given parameters were invalid.
      */
-    protected synchronized Optional<TYPE> getData(List<?> parameters) throws IllegalArgumentException {
-        try {
-            HttpResponse<InputStream> response = getDataResponse(parameters);
-            return handleResponse(response);
-        } catch (IOException | InterruptedException exception) {
-            // Reporting the error and returning status.
-            this.fireException(exception);
-            return Optional.empty();
+    public CompletableFuture<Optional<TYPE>> getAsync(List<?> parameters) throws IllegalArgumentException {
+        return getAsync(getGetRequest(parameters), this.getParser(), getStatusHandler());
+    }
+
+    /**
+     * Get data with given parameters without blocking.
+     * 
+     * @param parameters The parameters of the data request as mapping from
+     *                   parameter name to parameter value.
+     * @return The future completing with the value of the request, or with an
+     *         empty value.
+     * @throws IllegalArgumentException The given parameters were invalid.
+     * @see #getAsync(List)
+     */
+    public CompletableFuture<Optional<TYPE>> getAsync(Map<String, ?> parameters) throws IllegalArgumentException {
+        return getAsync(getGetRequest(parameters), this.getParser(), getStatusHandler());
+    }
+
+    /**
+     * Send the request without blocking, and handle its response.
+     * 
+     * @param <RESULT>      The type of the result.
+     * @param request       The sent request.
+     * @param parser        The parser parsing the message body of the successful
+     *                      response.
+     * @param statusHandler The status handler handling the other statuses.
+     * @return The future completing with the value of the request, or with an
+     *         empty value.
+     */
+    protected <RESULT> CompletableFuture<Optional<RESULT>> getAsync(@NotNull HttpRequest request,
+            Function<? super InputStream, ? extends RESULT> parser, StatusHandler<? extends RESULT> statusHandler) {
+        BodySource bodySource = getBodySource();
+        if (bodySource != null) {
+            return CompletableFuture.completedFuture(getFromBodySource(bodySource, parser));
         }
+        return sendAsync(getConditionalRequest(request, parser))
+                .thenApply((HttpResponse<InputStream> response) -> {
+            try {
+                return handleResponse(response, parser, statusHandler);
+            } catch (IOException exception) {
+                throw new CompletionException(exception);
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+                throw new CompletionException(exception);
+            }
+        }).exceptionally((Throwable error) -> {
+            // Reporting the error and returning empty value.
+            Throwable cause = (error instanceof CompletionException && error.getCause() != null) ? error.getCause()
+                    : error;
+            this.fireException(cause instanceof Exception ? (Exception) cause : new CompletionException(cause));
+            return Optional.empty();
+        });
     }
 
-    /** 
-     * Get data with given parameters.
+    /**
+     * Parse the next message body of the body source.
      * 
-     * @param parameters The parameters of the data request as mapping from parameter name to parameter value. 
-     * @eturn The value of the request with given parameters, or an empty value.
-     * @throws IllegalArgumentException The given parameters were invalid. 
+     * @param <RESULT>   The type of the result.
+     * @param bodySource The body source.
+     * @param parser     The parser parsing the message body.
+     * @return The parsed value of the message body, or an empty value, if the
+     *         body source had no more message bodies, or the parsing failed.
      */
-    protected synchronized Optional<TYPE> getData(Map<String, ?> parameters) throws IllegalArgumentException {
-        try {
-            HttpResponse<InputStream> response = getDataResponse(parameters);
-            return handleResponse(response);
-        } catch (IOException | InterruptedException exception) {
-            // Reporting the error and returning status.
+    private <RESULT> Optional<RESULT> getFromBodySource(BodySource bodySource,
+            Function<? super InputStream, ? extends RESULT> parser) {
+        try (InputStream body = bodySource.nextBody()) {
+            if (body == null || parser == null) {
+                return Optional.empty();
+            }
+            return Optional.ofNullable(parser.apply(body));
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            this.fireException(exception);
+            return Optional.empty();
+        } catch (IOException | RuntimeException exception) {
             this.fireException(exception);
             return Optional.empty();
         }
     }
 
-    @Override
-    protected synchronized Optional<TYPE> getData() {
+    /**
+     * Wait for the result of the asynchronous request.
+     * 
+     * @param <RESULT> The type of the result.
+     * @param result   The future of the result.
+     * @return The value of the request, or an empty value, if the request failed
+     *         or the wait was interrupted.
+     */
+    protected <RESULT> Optional<RESULT> await(@NotNull CompletableFuture<Optional<RESULT>> result) {
         try {
-            HttpResponse<InputStream> response = getDataResponse();
-            return handleResponse(response);
-        } catch (IOException | InterruptedException exception) {
-            // Reporting the error and returning status.
+            return result.get();
+        } catch (InterruptedException exception) {
+            // Cancelling the request.
+            result.cancel(true);
+            Thread.currentThread().interrupt();
             this.fireException(exception);
             return Optional.empty();
+        } catch (java.util.concurrent.ExecutionException exception) {
+            // The asynchronous request reports its errors itself.
+            return Optional.empty();
         }
     }
 
+    /** 
+     * Get data with given parameters. The data source is not locked during the
+     * request.
+     * 
+     * @param parameters The parameters of the data request.
+     * @return The value of the request with given parameters, or an empty value.
+     * @throws IllegalArgumentException The given parameters were invalid. 
+     */
+    protected Optional<TYPE> getData(List<?> parameters) throws IllegalArgumentException {
+        return await(getAsync(parameters));
+    }
+
+    /** 
+     * Get data with given parameters. The data source is not locked during the
+     * request.
+     * 
+     * @param parameters The parameters of the data request as mapping from parameter name to parameter value. 
+     * @return The value of the request with given parameters, or an empty value.
+     * @throws IllegalArgumentException The given parameters were invalid. 
+     */
+    protected Optional<TYPE> getData(Map<String, ?> parameters) throws IllegalArgumentException {
+        return await(getAsync(parameters));
+    }
+
+    @Override
+    protected Optional<TYPE> getData() {
+        return getData((List<?>) null);
+    }
+
+    /**
+     * Get data with default parameters using given parser instead of the parser of
+     * the data source.
+     * 
+     * @param <RESULT> The type of the parsed result.
+     * @param parser   The parser parsing the message body.
+     * @return The parsed value of the request, or an empty value.
+     */
+    protected <RESULT> Optional<RESULT> getData(@NotNull Function<? super InputStream, ? extends RESULT> parser) {
+        return await(getAsync(getGetRequest((List<?>) null), parser, null));
+    }
+
+    /**
+     * Get the value with default parameters. The data source is not locked during
+     * the request.
+     * 
+     * @return The value of the request, or an undefined value.
+     */
+    @Override
+    public TYPE get() {
+        return getData().orElse(null);
+    }
+
     /**
      * Handles the HPTTP response.If hte handle response returns an undefined value,
      * the error has been fired to the error listeners. By default handles status
@@ -526,30 +1200,122 @@ public class HttpDataSource<TYPE> extends NetworkDataSource<TYPE> {
      *                                  contain valid
      *                                  data to compose the resulting object.
      */
-    protected synchronized Optional<TYPE> handleResponse(HttpResponse<InputStream> response)
+    protected Optional<TYPE> handleResponse(HttpResponse<InputStream> response)
             throws IOException, InterruptedException, StreamCorruptedException {
-        if (response.statusCode() == 200) {
+        return handleResponse(response, this.getParser(), getStatusHandler());
+    }
+
+    /**
+     * Handles the HTTP response with given parser and status handler.
+     * <p>
+     * The status, the content type and the message body are all taken from the
+     * given response. The consumption of the message body is tracked, the rest
+     * of a partially consumed body is drained to keep the connection reusable,
+     * and the body is always closed.
+     * </p>
+     * 
+     * @param <RESULT>      The type of the result.
+     * @param response      The response.
+     * @param parser        The parser parsing the message body of the successful
+     *                      response. If undefined, the message body is not parsed.
+     * @param statusHandler The status handler handling other statuses than 200 and
+     *                      204. If undefined, the error statuses are reported with
+     *                      exception.
+     * @return The return value, if the given response contained valid data to
+     *         create a resulting object. Otherwise an empty value.
+     * @throws IOException              The operation failed due Input error.
+     * @throws InterruptedException     The operation was interrupted.
+     * @throws StreamCorruptedException The stream was corrupted, and did not
+     *                                  contain valid data to compose the resulting
+     *                                  object, or the content type was not
+     *                                  accepted.
+     */
+    protected <RESULT> Optional<RESULT> handleResponse(HttpResponse<InputStream> response,
+            Function<? super InputStream, ? extends RESULT> parser, StatusHandler<? extends RESULT> statusHandler)
+            throws IOException, InterruptedException, StreamCorruptedException {
+        responseCount_.incrementAndGet();
+        try (TrackedBody body = new TrackedBody(response.body())) {
+            try (InputStream content = getDecodedBody(response.headers(), body)) {
+                return handleResponse(response.request().uri(), response.statusCode(), response.headers(), body,
+                        content, parser, statusHandler);
+            } finally {
+                body.drain(MAX_DRAINED_BYTES);
+                bytesReceived_.addAndGet(body.getBytesRead());
+                if (!body.isConsumed()) {
+                    unconsumedCount_.incrementAndGet();
+                }
+            }
+        }
+    }
+
+    /**
+     * Handles the status, the headers and the tracked message body of a response.
+     * 
+     * @param <RESULT>      The type of the result.
+     * @param uri           The URI of the request.
+     * @param status        The status code of the response.
+     * @param headers       The headers of the response.
+     * @param body          The tracked raw message body of the response.
+     * @param content       The decoded message body of the response.
+     * @param parser        The parser parsing the message body of the successful
+     *                      response.
+     * @param statusHandler The status handler handling other statuses than 200 and
+     *                      204.
+     * @return The return value, if the response contained valid data to create a
+     *         resulting object. Otherwise an empty value.
+     * @throws IOException              The operation failed due Input error.
+     * @throws StreamCorruptedException The content type was not accepted, or the
+     *                                  status was an error status without status
+     *                                  handler.
+     */
+    @SuppressWarnings("unchecked")
+    private <RESULT> Optional<RESULT> handleResponse(URI uri, int status, HttpHeaders headers, TrackedBody body,
+            InputStream content, Function<? super InputStream, ? extends RESULT> parser,
+            StatusHandler<? extends RESULT> statusHandler)
+            throws IOException, StreamCorruptedException {
+        if (status == 304 && parser != null) {
+            Validated last = validated_.get(uri);
+            if (last != null && last.parsedWith(parser)) {
+                // The resource has not changed, and the previous value is reused.
+                notModifiedCount_.incrementAndGet();
+                bytesSaved_.addAndGet(last.bytes_);
+                parseNanosSaved_.addAndGet(last.parseNanos_);
+                return Optional.ofNullable((RESULT) last.value_);
+            }
+        }
+        if (status == 200) {
             // The request passed successfully.
-            // - Parsing the response
-            InputStream stream = getDataResponse().body();
-            Optional<Function<? super InputStream, ? extends TYPE>> parser = Optional.ofNullable(this.getParser());
-            if (parser.isPresent()) {
-                return Optional.ofNullable(parser.get().apply(stream));
+            if (!validContentType(headers)) {
+                throw new StreamCorruptedException(MessageFormat.format("Server responded with content type {0}",
+                        headers.firstValue("Content-Type").orElse(null)));
+            }
+            InputStream stream = content;
+            CaptureJournal journal = getCaptureJournal();
+            if (journal != null) {
+                // Journaling the decoded message body, and parsing the journaled record.
+                stream = journal.append(Instant.now(), content).getInputStream();
+            }
+            if (parser != null) {
+                // - Parsing the response
+                long parseStart = System.nanoTime();
+                RESULT result = parser.apply(stream);
+                rememberValidators(uri, headers, parser, result, body.getBytesRead(),
+                        System.nanoTime() - parseStart);
+                return Optional.ofNullable(result);
             } else {
                 return Optional.empty();
             }
-        } else if (response.statusCode() == 204) {
+        } else if (status == 204) {
             // No content.
             return Optional.empty();
         } else {
-            if (hasStatusHandler()) {
+            if (statusHandler != null) {
                 // Use the given handler to handle the status.
-                return Optional.ofNullable(
-                        getStatusHandler().handleStatus(response.statusCode(), response.body()).orElse(null));
-            } else if (response.statusCode() >= 400 && response.statusCode() < 600) {
+                return Optional.ofNullable(statusHandler.handleStatus(status, headers, content).orElse(null));
+            } else if (status >= 400 && status < 600) {
                 // Handling the status error.
                 throw new java.io.StreamCorruptedException(
-                        MessageFormat.format("Server responded with error status {0}", response.statusCode()));
+                        MessageFormat.format("Server responded with error status {0}", status));
             }
 
             // The status was such it does not need to be handled, and it does not contain a
@@ -558,6 +1324,177 @@ public class HttpDataSource<TYPE> extends NetworkDataSource<TYPE> {
         }
     }
 
+    /**
+     * Remember the validators of the successful response.
+     * 
+     * @param uri        The URI of the request.
+     * @param headers    The headers of the response.
+     * @param parser     The parser which parsed the value.
+     * @param value      The parsed value.
+     * @param bytes      The number of bytes of the message body.
+     * @param parseNanos The time used to parse the value in nanoseconds.
+     */
+    private void rememberValidators(URI uri, HttpHeaders headers, Function<?, ?> parser, Object value, long bytes,
+            long parseNanos) {
+        if (!isConditionalRequestsEnabled() || uri == null || headers == null) {
+            return;
+        }
+        String entityTag = headers.firstValue("ETag").orElse(null);
+        String lastModified = headers.firstValue("Last-Modified").orElse(null);
+        if (value == null || (entityTag == null && lastModified == null)) {
+            validated_.remove(uri);
+        } else {
+            validated_.put(uri, new Validated(entityTag, lastModified, parser, value, bytes, parseNanos));
+        }
+    }
+
+    /**
+     * Test the content type of the successful response.
+     * 
+     * @param headers The headers of the response.
+     * @return True, if and only if the content type is accepted. A response
+     *         without content type is always accepted.
+     */
+    protected boolean validContentType(HttpHeaders headers) {
+        List<String> accepted = getAcceptedContentTypes();
+        if (accepted.isEmpty() || headers == null) {
+            return true;
+        }
+        Optional<String> contentType = headers.firstValue("Content-Type");
+        if (contentType.isEmpty()) {
+            return true;
+        }
+        // Ignoring the parameters of the media type.
+        String mediaType = contentType.get().split(";", 2)[0].trim().toLowerCase(java.util.Locale.ROOT);
+        return accepted.contains(mediaType);
+    }
+
+    /**
+     * Add the validators of the last successful response of the resource to the
+     * request. The validators are only added, if the value of the last response
+     * was parsed with the same parser.
+     * 
+     * @param request The request.
+     * @param parser  The parser of the response.
+     * @return The conditional request, or the given request, if the resource has
+     *         no validators.
+     */
+    protected HttpRequest getConditionalRequest(@NotNull HttpRequest request, Function<?, ?> parser) {
+        if (!isConditionalRequestsEnabled() || parser == null) {
+            return request;
+        }
+        Validated last = validated_.get(request.uri());
+        if (last == null || !last.parsedWith(parser)) {
+            return request;
+        }
+        HttpRequest.Builder builder = HttpRequest.newBuilder(request, (String name, String value) -> true);
+        if (last.entityTag_ != null) {
+            builder.setHeader("If-None-Match", last.entityTag_);
+        }
+        if (last.lastModified_ != null) {
+            builder.setHeader("If-Modified-Since", last.lastModified_);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Are the conditional requests enabled.
+     * 
+     * @return True, if and only if the validators of the last successful
+     *         responses are sent with the requests.
+     */
+    public boolean isConditionalRequestsEnabled() {
+        return this.conditionalRequests_;
+    }
+
+    /**
+     * Set the conditional requests enabled. Disabling the conditional requests
+     * forgets the remembered validators.
+     * 
+     * @param enabled Are the conditional requests enabled.
+     */
+    public void setConditionalRequestsEnabled(boolean enabled) {
+        this.conditionalRequests_ = enabled;
+        if (!enabled) {
+            validated_.clear();
+        }
+    }
+
+    /**
+     * Get the number of not modified responses.
+     * 
+     * @return The number of responses telling the resource had not changed.
+     */
+    public long getNotModifiedCount() {
+        return notModifiedCount_.get();
+    }
+
+    /**
+     * Get the number of bytes the not modified responses saved.
+     * 
+     * @return The total size of the message bodies which were not transferred.
+     */
+    public long getBytesSaved() {
+        return bytesSaved_.get();
+    }
+
+    /**
+     * Get the parse time the not modified responses saved.
+     * 
+     * @return The total parse time of the values which were not parsed again.
+     */
+    public java.time.Duration getParseTimeSaved() {
+        return java.time.Duration.ofNanos(parseNanosSaved_.get());
+    }
+
+    /**
+     * Get the accepted content types.
+     * 
+     * @return The unmodifiable list of the accepted media types. An empty list
+     *         accepts all content types.
+     */
+    public List<String> getAcceptedContentTypes() {
+        return this.acceptedContentTypes_;
+    }
+
+    /**
+     * Set the accepted content types of the successful responses.
+     * 
+     * @param mediaTypes The accepted media types without parameters. No media
+     *                   types accepts all content types.
+     */
+    public void setAcceptedContentTypes(String... mediaTypes) {
+        this.acceptedContentTypes_ = mediaTypes == null ? Collections.emptyList()
+                : Arrays.stream(mediaTypes).filter(java.util.Objects::nonNull)
+                        .map((String type) -> type.trim().toLowerCase(java.util.Locale.ROOT)).toList();
+    }
+
+    /**
+     * Get the number of handled responses.
+     * 
+     * @return The number of responses handled by the data source.
+     */
+    public long getResponseCount() {
+        return responseCount_.get();
+    }
+
+    /**
+     * Get the number of message body bytes read from the responses.
+     * 
+     * @return The number of bytes read from the message bodies.
+     */
+    public long getBytesReceived() {
+        return bytesReceived_.get();
+    }
+
+    /**
+     * Get the number of responses whose message body was not consumed to the end.
+     * 
+     * @return The number of responses closed before the end of the message body.
+     */
+    public long getUnconsumedResponseCount() {
+        return unconsumedCount_.get();
+    }
 
     /**
      * Get the response with given list of parameters. 
@@ -604,7 +1541,14 @@ public class HttpDataSource<TYPE> extends NetworkDataSource<TYPE> {
 
         URI uri = URI.create("http://assignments.reaktor.com/birdnest/drones/");
 
-        HttpDataSource<InputStream> source = new HttpDataSource<>(uri, (InputStream in) -> (in));
+        HttpDataSource<InputStream> source = new HttpDataSource<>(uri, (InputStream in) -> {
+            // The message body is closed after parsing, so it is read into memory.
+            try {
+                return new java.io.ByteArrayInputStream(in.readAllBytes());
+            } catch (IOException e) {
+                return null;
+            }
+        });
 
         System.out.println("Source URI: " + source.getSourceURI());
 
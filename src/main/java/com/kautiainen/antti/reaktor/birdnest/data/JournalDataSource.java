@@ -0,0 +1,213 @@
+package com.kautiainen.antti.reaktor.birdnest.data;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Function;
+
+import javax.validation.constraints.NotNull;
+
+/**
+ * JournalDataSource replays the records of a capture journal.
+ * <p>
+ * Each acquisition parses the next record of the journal. The records are
+ * returned at the pace they were captured divided by the replay speed, so the
+ * speed of one replays at the original speed, and the speed of ten replays ten
+ * times faster. An infinite speed replays the records without waiting. The
+ * replay waits for the next record without locking the data source.
+ * </p>
+ * <p>
+ * The journal data source is also a body source feeding the raw records to an
+ * HTTP data source, such as the drones data source, in place of its requests.
+ * </p>
+ *
+ * @param <TYPE> The type of the acquired data.
+ */
+public class JournalDataSource<TYPE> extends DataSource<TYPE> implements HttpDataSource.BodySource {
+
+    /**
+     * The replay speed replaying the records without waiting.
+     */
+    public static final double UNLIMITED_SPEED = Double.POSITIVE_INFINITY;
+
+    /**
+     * The directory of the replayed journal.
+     */
+    private final Path directory_;
+
+    /**
+     * The parser parsing the raw records.
+     */
+    private final Function<? super InputStream, ? extends TYPE> parser_;
+
+    /**
+     * The replay speed.
+     */
+    private final double speed_;
+
+    /**
+     * The replayed records. The records are read on the first acquisition.
+     */
+    private List<CaptureJournal.Record> records_ = null;
+
+    /**
+     * The index of the next replayed record.
+     */
+    private int next_ = 0;
+
+    /**
+     * The nano time the first record was replayed.
+     */
+    private long replayStart_ = 0;
+
+    /**
+     * Create a new journal data source.
+     *
+     * @param directory The directory of the replayed journal.
+     * @param parser    The parser parsing the raw records.
+     * @param speed     The replay speed relative to the original speed.
+     * @throws IllegalArgumentException Any parameter was invalid.
+     */
+    public JournalDataSource(@NotNull Path directory, @NotNull Function<? super InputStream, ? extends TYPE> parser,
+            double speed) throws IllegalArgumentException {
+        if (directory == null || parser == null) {
+            throw new IllegalArgumentException("Undefined journal directory or parser");
+        }
+        if (!(speed > 0)) {
+            throw new IllegalArgumentException("Invalid replay speed");
+        }
+        this.directory_ = directory;
+        this.parser_ = parser;
+        this.speed_ = speed;
+    }
+
+    /**
+     * Get the replay speed.
+     *
+     * @return The replay speed relative to the original speed.
+     */
+    public double getSpeed() {
+        return speed_;
+    }
+
+    /**
+     * Get the number of records.
+     *
+     * @return The number of records in the journal.
+     * @throws IOException The journal could not be read.
+     */
+    public synchronized int getRecordCount() throws IOException {
+        return getRecords().size();
+    }
+
+    /**
+     * Does the journal have records left to replay.
+     *
+     * @return True, if and only if the next acquisition replays a record.
+     * @throws IOException The journal could not be read.
+     */
+    public synchronized boolean hasNext() throws IOException {
+        return next_ < getRecords().size();
+    }
+
+    /**
+     * Restart the replay from the first record. The journal is read again on the
+     * next acquisition.
+     */
+    public synchronized void reset() {
+        records_ = null;
+        next_ = 0;
+    }
+
+    /**
+     * Get the replayed records.
+     *
+     * @return The list of the records of the journal.
+     * @throws IOException The journal could not be read.
+     */
+    private List<CaptureJournal.Record> getRecords() throws IOException {
+        if (records_ == null) {
+            records_ = CaptureJournal.readAll(directory_);
+        }
+        return records_;
+    }
+
+    /**
+     * Get the nano time the record is due. The replay starts with the first
+     * record.
+     *
+     * @param record The replayed record.
+     * @return The nano time the record is due.
+     */
+    private long getDueTime(CaptureJournal.Record record) {
+        long now = System.nanoTime();
+        if (next_ == 0) {
+            replayStart_ = now;
+            return now;
+        } else if (speed_ == UNLIMITED_SPEED) {
+            return now;
+        }
+        Duration offset = Duration.between(records_.get(0).getTime(), record.getTime());
+        return replayStart_ + (long) (offset.toNanos() / speed_);
+    }
+
+    /**
+     * Get the raw content of the next record, once the record is due. The
+     * record is claimed before the wait, so the concurrent callers replay
+     * distinct records, and an interrupted wait skips the record.
+     *
+     * @return The stream of the raw content of the next record, or an undefined
+     *         value, if the replay has ended.
+     * @throws IOException          The journal could not be read.
+     * @throws InterruptedException The wait was interrupted.
+     */
+    @Override
+    public InputStream nextBody() throws IOException, InterruptedException {
+        CaptureJournal.Record record;
+        long due;
+        synchronized (this) {
+            List<CaptureJournal.Record> records = getRecords();
+            if (next_ >= records.size()) {
+                // The replay has ended.
+                return null;
+            }
+            record = records.get(next_);
+            due = getDueTime(record);
+            next_++;
+        }
+        long wait = due - System.nanoTime();
+        if (wait > 0) {
+            Thread.sleep(wait / 1000000, (int) (wait % 1000000));
+        }
+        return record.getInputStream();
+    }
+
+    @Override
+    protected Optional<TYPE> getData() {
+        try {
+            InputStream body = nextBody();
+            return body == null ? Optional.empty() : Optional.ofNullable(parser_.apply(body));
+        } catch (IOException exception) {
+            fireException(new DataSourceException("Could not read the journal", exception));
+            return Optional.empty();
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Get the next replayed value. The data source is not locked during the wait
+     * for the record.
+     *
+     * @return The next replayed value, or an undefined value, if the replay has
+     *         ended.
+     */
+    @Override
+    public TYPE get() {
+        return getData().orElse(null);
+    }
+}
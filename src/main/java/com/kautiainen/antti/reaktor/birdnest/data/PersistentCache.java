@@ -0,0 +1,485 @@
+package com.kautiainen.antti.reaktor.birdnest.data;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UTFDataFormatException;
+import java.lang.System.Logger.Level;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.validation.constraints.NotNull;
+
+/**
+ * PersistentCache is an append-only log of the cached values surviving the
+ * restarts of the application.
+ * <p>
+ * Each record consists of the key in modified UTF-8, the expiration time in
+ * epoch milliseconds as a long, the length of the value as an int, and the
+ * value. A record with a negative length removes the key. The latest record of
+ * a key replaces the earlier records.
+ * </p>
+ * <p>
+ * The live values are kept in memory. The records of the replaced, removed, and
+ * expired values are compacted away by rewriting the log with the live values,
+ * when there are more of them than live values. The expired values are purged
+ * from the log, when the log is opened, so the values are not kept on the
+ * storage longer than their time to live across the restarts.
+ * </p>
+ */
+public class PersistentCache implements Closeable {
+
+    /**
+     * The minimum number of the garbage records triggering the compaction.
+     */
+    public static final int MIN_COMPACTION_GARBAGE = 64;
+
+    /**
+     * Entry is a cached value with its expiration time.
+     */
+    public static final class Entry {
+
+        /**
+         * The cached value.
+         */
+        private final byte[] value_;
+
+        /**
+         * The expiration time of the value.
+         */
+        private final Instant expireTime_;
+
+        /**
+         * Create a new entry.
+         *
+         * @param value      The cached value.
+         * @param expireTime The expiration time of the value.
+         */
+        private Entry(byte[] value, Instant expireTime) {
+            this.value_ = value;
+            this.expireTime_ = expireTime;
+        }
+
+        /**
+         * Get the cached value.
+         *
+         * @return The copy of the cached value.
+         */
+        public byte[] getValue() {
+            return value_.clone();
+        }
+
+        /**
+         * Get the expiration time of the value.
+         *
+         * @return The time the value expires.
+         */
+        public Instant getExpireTime() {
+            return expireTime_;
+        }
+    }
+
+    /**
+     * The log file.
+     */
+    private final Path file_;
+
+    /**
+     * The time to live of the values.
+     */
+    private final Duration ttl_;
+
+    /**
+     * The clock of the expiration.
+     */
+    private final Clock clock_;
+
+    /**
+     * The live entries by the key in the order of the records.
+     */
+    private final LinkedHashMap<String, Entry> entries_ = new LinkedHashMap<>();
+
+    /**
+     * The number of the records of the log not containing a live value.
+     */
+    private int garbage_ = 0;
+
+    /**
+     * The number of the compactions.
+     */
+    private long compactions_ = 0;
+
+    /**
+     * The stream appending the records to the log. Undefined value, if the
+     * cache is closed.
+     */
+    private DataOutputStream out_;
+
+    /**
+     * Is the cache closed.
+     */
+    private boolean closed_ = false;
+
+    /**
+     * Open the cache using the system clock.
+     *
+     * @param file The log file. The file and its directory are created, if they
+     *             do not exist.
+     * @param ttl  The time to live of the values.
+     * @throws IllegalArgumentException The file or the time to live was invalid.
+     * @throws IOException              The log could not be read or written.
+     */
+    public PersistentCache(@NotNull Path file, @NotNull Duration ttl) throws IllegalArgumentException, IOException {
+        this(file, ttl, Clock.systemUTC());
+    }
+
+    /**
+     * Open the cache. The live values of the log are loaded, and the log is
+     * compacted, if it contained expired values or an incomplete record.
+     *
+     * @param file  The log file. The file and its directory are created, if they
+     *              do not exist.
+     * @param ttl   The time to live of the values.
+     * @param clock The clock of the expiration.
+     * @throws IllegalArgumentException The file, the time to live, or the clock
+     *                                  was invalid.
+     * @throws IOException              The log could not be read or written.
+     */
+    public PersistentCache(@NotNull Path file, @NotNull Duration ttl, @NotNull Clock clock)
+            throws IllegalArgumentException, IOException {
+        if (file == null) {
+            throw new IllegalArgumentException("Undefined cache file");
+        }
+        if (ttl == null || ttl.isNegative() || ttl.isZero()) {
+            throw new IllegalArgumentException("Invalid time to live");
+        }
+        if (clock == null) {
+            throw new IllegalArgumentException("Undefined clock");
+        }
+        this.file_ = file;
+        this.ttl_ = ttl;
+        this.clock_ = clock;
+        Path directory = file.toAbsolutePath().getParent();
+        if (directory != null) {
+            Files.createDirectories(directory);
+        }
+        boolean complete = load();
+        if (!complete || purge(clock.instant()) > 0) {
+            // The expired values and the incomplete records are removed from the
+            // storage.
+            compact();
+        } else {
+            out_ = openLog(false);
+        }
+    }
+
+    /**
+     * Load the records of the log.
+     *
+     * @return True, if and only if the log ended with a complete record. The
+     *         incomplete or corrupted record and the rest of the log are
+     *         ignored.
+     * @throws IOException The log could not be read.
+     */
+    private boolean load() throws IOException {
+        if (!Files.exists(file_)) {
+            return true;
+        }
+        long size = Files.size(file_);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file_)))) {
+            while (true) {
+                // The log ends cleanly only between the records, so a record cut off
+                // within its key is incomplete.
+                in.mark(1);
+                if (in.read() < 0) {
+                    return true;
+                }
+                in.reset();
+                try {
+                    String key = in.readUTF();
+                    Instant expireTime = Instant.ofEpochMilli(in.readLong());
+                    int length = in.readInt();
+                    if (length < -1 || length > size) {
+                        throw new EOFException("Invalid value length " + length);
+                    }
+                    byte[] value = length < 0 ? null : new byte[length];
+                    if (value != null) {
+                        in.readFully(value);
+                    }
+                    Entry replaced = value == null ? entries_.remove(key)
+                            : entries_.put(key, new Entry(value, expireTime));
+                    garbage_ += (replaced == null ? 0 : 1) + (value == null ? 1 : 0);
+                } catch (EOFException | UTFDataFormatException truncated) {
+                    System.getLogger(PersistentCache.class.getName()).log(Level.WARNING,
+                            "Ignored the incomplete record at the end of {0}", file_);
+                    return false;
+                }
+            }
+        }
+    }
+
+    /**
+     * Open the stream appending the records to the log.
+     *
+     * @param truncate Is the log truncated.
+     * @return The stream appending to the log.
+     * @throws IOException The log could not be opened.
+     */
+    private DataOutputStream openLog(boolean truncate) throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file_, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, truncate ? StandardOpenOption.TRUNCATE_EXISTING : StandardOpenOption.APPEND)));
+    }
+
+    /**
+     * Write the record.
+     *
+     * @param out        The stream of the log.
+     * @param key        The key.
+     * @param expireTime The expiration time of the value.
+     * @param value      The value, or an undefined value, if the key is removed.
+     * @throws IOException The record could not be written.
+     */
+    private static void writeRecord(DataOutputStream out, String key, Instant expireTime, byte[] value)
+            throws IOException {
+        out.writeUTF(key);
+        out.writeLong(expireTime.toEpochMilli());
+        if (value == null) {
+            out.writeInt(-1);
+        } else {
+            out.writeInt(value.length);
+            out.write(value);
+        }
+    }
+
+    /**
+     * Append the record to the log, and compact the log, if it contains more
+     * garbage than live values.
+     *
+     * @param key        The key.
+     * @param expireTime The expiration time of the value.
+     * @param value      The value, or an undefined value, if the key is removed.
+     * @throws IOException The cache is closed, or the record could not be
+     *                     written.
+     */
+    private void append(String key, Instant expireTime, byte[] value) throws IOException {
+        if (closed_) {
+            throw new IOException("Cache is closed");
+        }
+        writeRecord(out_, key, expireTime, value);
+        out_.flush();
+        if (garbage_ >= MIN_COMPACTION_GARBAGE && garbage_ > entries_.size()) {
+            compact();
+        }
+    }
+
+    /**
+     * Get the live value of the key.
+     *
+     * @param key The key.
+     * @return The live entry of the key, or an undefined value, if the key has
+     *         no value, or its value has expired.
+     */
+    public synchronized Entry get(String key) {
+        Entry entry = entries_.get(key);
+        if (entry != null && !clock_.instant().isBefore(entry.getExpireTime())) {
+            // The expired record remains in the log until the compaction.
+            entries_.remove(key);
+            garbage_++;
+            return null;
+        }
+        return entry;
+    }
+
+    /**
+     * Store the value of the key expiring after the time to live of the cache.
+     *
+     * @param key   The key.
+     * @param value The value.
+     * @throws IllegalArgumentException The key or the value was undefined.
+     * @throws IOException              The cache is closed, or the value could
+     *                                  not be written.
+     */
+    public synchronized void put(@NotNull String key, @NotNull byte[] value)
+            throws IllegalArgumentException, IOException {
+        if (key == null || value == null) {
+            throw new IllegalArgumentException("Undefined key or value");
+        }
+        if (closed_) {
+            throw new IOException("Cache is closed");
+        }
+        Entry entry = new Entry(value.clone(), clock_.instant().plus(ttl_));
+        if (entries_.put(key, entry) != null) {
+            garbage_++;
+        }
+        append(key, entry.getExpireTime(), entry.value_);
+    }
+
+    /**
+     * Remove the value of the key.
+     *
+     * @param key The key.
+     * @return True, if and only if the key had a value.
+     * @throws IOException The cache is closed, or the removal could not be
+     *                     written.
+     */
+    public synchronized boolean remove(String key) throws IOException {
+        if (closed_) {
+            throw new IOException("Cache is closed");
+        }
+        if (entries_.remove(key) == null) {
+            return false;
+        }
+        // Both the removed value and the removal are garbage.
+        garbage_ += 2;
+        append(key, clock_.instant(), null);
+        return true;
+    }
+
+    /**
+     * Remove the expired values.
+     *
+     * @param now The current time.
+     * @return The number of the removed values.
+     */
+    private int purge(Instant now) {
+        int removed = 0;
+        for (java.util.Iterator<Entry> iterator = entries_.values().iterator(); iterator.hasNext();) {
+            if (!now.isBefore(iterator.next().getExpireTime())) {
+                iterator.remove();
+                removed++;
+            }
+        }
+        garbage_ += removed;
+        return removed;
+    }
+
+    /**
+     * Purge the expired values from the cache and the log.
+     *
+     * @return The number of the purged values.
+     * @throws IOException The log could not be compacted.
+     */
+    public synchronized int purgeExpired() throws IOException {
+        int removed = purge(clock_.instant());
+        if (removed > 0 && !closed_) {
+            compact();
+        }
+        return removed;
+    }
+
+    /**
+     * Rewrite the log with the live values. The compacted log replaces the log
+     * atomically, so the cache survives a failure during the compaction.
+     *
+     * @throws IOException The cache is closed, or the log could not be
+     *                     written.
+     */
+    public synchronized void compact() throws IOException {
+        if (closed_) {
+            throw new IOException("Cache is closed");
+        }
+        if (out_ != null) {
+            out_.close();
+            out_ = null;
+        }
+        Path compacted = file_.resolveSibling(file_.getFileName() + ".compact");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(compacted)))) {
+            for (Map.Entry<String, Entry> entry : entries_.entrySet()) {
+                writeRecord(out, entry.getKey(), entry.getValue().getExpireTime(), entry.getValue().value_);
+            }
+        }
+        Files.move(compacted, file_, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        garbage_ = 0;
+        compactions_++;
+        out_ = openLog(false);
+    }
+
+    /**
+     * Get the live entries.
+     *
+     * @return The unmodifiable map of the live entries by the key in the order
+     *         they were stored.
+     */
+    public synchronized Map<String, Entry> getEntries() {
+        purge(clock_.instant());
+        return Collections.unmodifiableMap(new LinkedHashMap<>(entries_));
+    }
+
+    /**
+     * Get the number of the values including the expired values not yet
+     * removed.
+     *
+     * @return The number of the values.
+     */
+    public synchronized int size() {
+        return entries_.size();
+    }
+
+    /**
+     * Get the number of the records of the log not containing a live value.
+     *
+     * @return The number of the garbage records.
+     */
+    public synchronized int getGarbageCount() {
+        return garbage_;
+    }
+
+    /**
+     * Get the number of the compactions.
+     *
+     * @return The number of the times the log has been rewritten.
+     */
+    public synchronized long getCompactionCount() {
+        return compactions_;
+    }
+
+    /**
+     * Get the log file.
+     *
+     * @return The file of the log.
+     */
+    public Path getFile() {
+        return file_;
+    }
+
+    /**
+     * Get the time to live of the values.
+     *
+     * @return The time to live of the values.
+     */
+    public Duration getTtl() {
+        return ttl_;
+    }
+
+    /**
+     * Close the cache.
+     *
+     * @throws IOException The log could not be closed.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        closed_ = true;
+        if (out_ != null) {
+            out_.close();
+            out_ = null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("PersistentCache[%s; %d values; %d garbage]", file_, size(), getGarbageCount());
+    }
+}
@@ -0,0 +1,514 @@
+package com.kautiainen.antti.reaktor.birdnest.data;
+
+import java.io.IOException;
+import java.net.URI;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.validation.constraints.NotNull;
+
+/**
+ * ResiliencePolicy protects the upstream services from retry storms.
+ * <p>
+ * The failed requests are retried after an exponential backoff with
+ * decorrelated jitter, so the retries of several callers spread out instead of
+ * arriving at the same moments. Each endpoint has a circuit breaker, which opens
+ * after consecutive failures and rejects the requests to the endpoint without
+ * sending them. After the open duration, the breaker lets a single probe
+ * request through, and closes again, if the probe succeeds.
+ * </p>
+ * <p>
+ * The endpoint of a request is its scheme and authority, so all resources of a
+ * host share the state of the breaker. The clock and the random number
+ * generator are given to the policy, so the policy can be tested with
+ * deterministic time and jitter.
+ * </p>
+ */
+public class ResiliencePolicy {
+
+    /**
+     * The default first retry delay.
+     */
+    public static final Duration DEFAULT_BASE_DELAY = Duration.ofMillis(100);
+
+    /**
+     * The default maximum retry delay.
+     */
+    public static final Duration DEFAULT_MAX_DELAY = Duration.ofSeconds(30);
+
+    /**
+     * The default maximum number of attempts of a single request.
+     */
+    public static final int DEFAULT_MAX_ATTEMPTS = 3;
+
+    /**
+     * The default number of consecutive failures opening the circuit.
+     */
+    public static final int DEFAULT_FAILURE_THRESHOLD = 5;
+
+    /**
+     * The default time the circuit stays open before a probe.
+     */
+    public static final Duration DEFAULT_OPEN_DURATION = Duration.ofSeconds(10);
+
+    /**
+     * The default policy.
+     */
+    private static final ResiliencePolicy DEFAULT_POLICY = new ResiliencePolicy();
+
+    /**
+     * Get the default policy.
+     *
+     * @return The policy shared by the data sources by default.
+     */
+    public static ResiliencePolicy getDefault() {
+        return DEFAULT_POLICY;
+    }
+
+    /**
+     * The state of a circuit breaker.
+     */
+    public static enum State {
+        /**
+         * The requests are sent.
+         */
+        CLOSED,
+        /**
+         * The requests are rejected.
+         */
+        OPEN,
+        /**
+         * A single probe request is sent.
+         */
+        HALF_OPEN
+    }
+
+    /**
+     * CircuitOpenException indicates the request was rejected, because the
+     * circuit of its endpoint was open.
+     */
+    public static class CircuitOpenException extends IOException {
+
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * The time until the circuit allows a probe.
+         */
+        private final Duration retryAfter_;
+
+        /**
+         * Create a new circuit open exception.
+         *
+         * @param endpoint   The endpoint of the rejected request.
+         * @param retryAfter The time until the circuit allows a probe.
+         */
+        public CircuitOpenException(String endpoint, Duration retryAfter) {
+            super("Circuit open for " + endpoint);
+            this.retryAfter_ = retryAfter;
+        }
+
+        /**
+         * Get the time until the circuit allows a probe.
+         *
+         * @return The time until the circuit allows a probe.
+         */
+        public Duration getRetryAfter() {
+            return retryAfter_;
+        }
+    }
+
+    /**
+     * Backoff calculates the delays of the consecutive retries with decorrelated
+     * jitter. Each delay is drawn between the base delay and three times the
+     * previous delay, and limited to the maximum delay.
+     * <p>
+     * The backoff belongs to a single sequence of retries, and it is not thread
+     * safe.
+     * </p>
+     */
+    public class Backoff {
+
+        /**
+         * The previous delay in nanoseconds.
+         */
+        private long previousNanos_ = baseDelay_.toNanos();
+
+        /**
+         * The number of delays since the last reset.
+         */
+        private int attempts_ = 0;
+
+        /**
+         * Create a new backoff of the policy.
+         */
+        protected Backoff() {
+        }
+
+        /**
+         * Get the next delay.
+         *
+         * @return The delay before the next retry.
+         */
+        public Duration next() {
+            long base = baseDelay_.toNanos();
+            long upper = Math.max(base, Math.min(maxDelay_.toNanos(), previousNanos_ * 3));
+            long delay = base + (long) (nextRandom() * (upper - base));
+            previousNanos_ = Math.min(maxDelay_.toNanos(), delay);
+            attempts_++;
+            return Duration.ofNanos(previousNanos_);
+        }
+
+        /**
+         * Get the number of delays since the last reset.
+         *
+         * @return The number of retries.
+         */
+        public int getAttempts() {
+            return attempts_;
+        }
+
+        /**
+         * Reset the backoff after a success.
+         */
+        public void reset() {
+            previousNanos_ = baseDelay_.toNanos();
+            attempts_ = 0;
+        }
+    }
+
+    /**
+     * Endpoint holds the circuit breaker state of an endpoint.
+     */
+    public class Endpoint {
+
+        /**
+         * The key of the endpoint.
+         */
+        private final String key_;
+
+        /**
+         * The state of the circuit.
+         */
+        private State state_ = State.CLOSED;
+
+        /**
+         * The number of consecutive failures.
+         */
+        private int failures_ = 0;
+
+        /**
+         * The moment the open circuit allows a probe.
+         */
+        private Instant openUntil_ = null;
+
+        /**
+         * The start of the probe in flight. Undefined value, if no probe is in
+         * flight.
+         */
+        private Instant probeStart_ = null;
+
+        /**
+         * The number of times the circuit has opened.
+         */
+        private long openCount_ = 0;
+
+        /**
+         * The number of rejected requests.
+         */
+        private long rejectedCount_ = 0;
+
+        /**
+         * Create a new endpoint.
+         *
+         * @param key The key of the endpoint.
+         */
+        protected Endpoint(String key) {
+            this.key_ = key;
+        }
+
+        /**
+         * Get the key of the endpoint.
+         *
+         * @return The scheme and the authority of the endpoint.
+         */
+        public String getKey() {
+            return key_;
+        }
+
+        /**
+         * Acquire the permission to send a request.
+         * <p>
+         * An open circuit turns half open after the open duration, and the
+         * request acquiring the permission becomes the probe. A half open circuit
+         * rejects the other requests until the probe completes, or until the
+         * probe has been in flight for the open duration.
+         * </p>
+         *
+         * @return True, if and only if the request may be sent.
+         */
+        public synchronized boolean tryAcquire() {
+            Instant now = clock_.instant();
+            switch (state_) {
+                case CLOSED:
+                    return true;
+                case OPEN:
+                    if (now.isBefore(openUntil_)) {
+                        rejectedCount_++;
+                        return false;
+                    }
+                    state_ = State.HALF_OPEN;
+                    probeStart_ = now;
+                    return true;
+                default:
+                    if (probeStart_ != null && now.isBefore(probeStart_.plus(openDuration_))) {
+                        rejectedCount_++;
+                        return false;
+                    }
+                    probeStart_ = now;
+                    return true;
+            }
+        }
+
+        /**
+         * Record a successful request. The circuit closes.
+         */
+        public synchronized void recordSuccess() {
+            state_ = State.CLOSED;
+            failures_ = 0;
+            probeStart_ = null;
+            openUntil_ = null;
+        }
+
+        /**
+         * Record a failed request. A failed probe, or reaching the failure
+         * threshold, opens the circuit.
+         */
+        public synchronized void recordFailure() {
+            failures_++;
+            if (state_ == State.HALF_OPEN || (state_ == State.CLOSED && failures_ >= failureThreshold_)) {
+                state_ = State.OPEN;
+                openUntil_ = clock_.instant().plus(openDuration_);
+                probeStart_ = null;
+                openCount_++;
+            }
+        }
+
+        /**
+         * Get the state of the circuit.
+         *
+         * @return The current state of the circuit.
+         */
+        public synchronized State getState() {
+            return state_;
+        }
+
+        /**
+         * Get the time until the circuit allows a probe.
+         *
+         * @return The time until the open circuit allows a probe, or zero, if the
+         *         circuit is not open.
+         */
+        public synchronized Duration getRetryAfter() {
+            if (state_ != State.OPEN) {
+                return Duration.ZERO;
+            }
+            Duration remaining = Duration.between(clock_.instant(), openUntil_);
+            return remaining.isNegative() ? Duration.ZERO : remaining;
+        }
+
+        /**
+         * Get the number of consecutive failures.
+         *
+         * @return The number of failures since the last success.
+         */
+        public synchronized int getFailureCount() {
+            return failures_;
+        }
+
+        /**
+         * Get the number of times the circuit has opened.
+         *
+         * @return The number of times the circuit has opened.
+         */
+        public synchronized long getOpenCount() {
+            return openCount_;
+        }
+
+        /**
+         * Get the number of rejected requests.
+         *
+         * @return The number of requests rejected by the circuit.
+         */
+        public synchronized long getRejectedCount() {
+            return rejectedCount_;
+        }
+
+        /**
+         * Create the exception of a rejected request.
+         *
+         * @return The exception telling the circuit of the endpoint is open.
+         */
+        public CircuitOpenException rejected() {
+            return new CircuitOpenException(key_, getRetryAfter());
+        }
+
+        @Override
+        public synchronized String toString() {
+            return String.format("Endpoint[%s; %s; failures: %d; opened: %d; rejected: %d]", key_, state_,
+                    failures_, openCount_, rejectedCount_);
+        }
+    }
+
+    /**
+     * The first retry delay.
+     */
+    private final Duration baseDelay_;
+
+    /**
+     * The maximum retry delay.
+     */
+    private final Duration maxDelay_;
+
+    /**
+     * The maximum number of attempts of a single request.
+     */
+    private final int maxAttempts_;
+
+    /**
+     * The number of consecutive failures opening the circuit.
+     */
+    private final int failureThreshold_;
+
+    /**
+     * The time the circuit stays open before a probe.
+     */
+    private final Duration openDuration_;
+
+    /**
+     * The clock of the circuit breakers.
+     */
+    private final Clock clock_;
+
+    /**
+     * The random number generator of the jitter.
+     */
+    private final Random random_;
+
+    /**
+     * The endpoints by their keys.
+     */
+    private final Map<String, Endpoint> endpoints_ = new ConcurrentHashMap<>();
+
+    /**
+     * Create a new policy with default values.
+     */
+    public ResiliencePolicy() {
+        this(DEFAULT_BASE_DELAY, DEFAULT_MAX_DELAY, DEFAULT_MAX_ATTEMPTS, DEFAULT_FAILURE_THRESHOLD,
+                DEFAULT_OPEN_DURATION, Clock.systemUTC(), new Random());
+    }
+
+    /**
+     * Create a new policy.
+     *
+     * @param baseDelay        The first retry delay.
+     * @param maxDelay         The maximum retry delay.
+     * @param maxAttempts      The maximum number of attempts of a single request.
+     * @param failureThreshold The number of consecutive failures opening the
+     *                         circuit.
+     * @param openDuration     The time the circuit stays open before a probe.
+     * @param clock            The clock of the circuit breakers.
+     * @param random           The random number generator of the jitter.
+     * @throws IllegalArgumentException Any argument was invalid.
+     */
+    public ResiliencePolicy(@NotNull Duration baseDelay, @NotNull Duration maxDelay, int maxAttempts,
+            int failureThreshold, @NotNull Duration openDuration, @NotNull Clock clock, @NotNull Random random)
+            throws IllegalArgumentException {
+        if (baseDelay == null || baseDelay.isNegative() || maxDelay == null || maxDelay.compareTo(baseDelay) < 0) {
+            throw new IllegalArgumentException("Invalid retry delay");
+        }
+        if (maxAttempts < 1 || failureThreshold < 1) {
+            throw new IllegalArgumentException("Invalid number of attempts or failures");
+        }
+        if (openDuration == null || openDuration.isNegative()) {
+            throw new IllegalArgumentException("Invalid open duration");
+        }
+        if (clock == null || random == null) {
+            throw new IllegalArgumentException("Undefined clock or random number generator");
+        }
+        this.baseDelay_ = baseDelay;
+        this.maxDelay_ = maxDelay;
+        this.maxAttempts_ = maxAttempts;
+        this.failureThreshold_ = failureThreshold;
+        this.openDuration_ = openDuration;
+        this.clock_ = clock;
+        this.random_ = random;
+    }
+
+    /**
+     * Get the next random number of the jitter.
+     *
+     * @return The random number between zero inclusive and one exclusive.
+     */
+    private double nextRandom() {
+        synchronized (random_) {
+            return random_.nextDouble();
+        }
+    }
+
+    /**
+     * Get the maximum number of attempts of a single request.
+     *
+     * @return The maximum number of attempts including the first attempt.
+     */
+    public int getMaxAttempts() {
+        return maxAttempts_;
+    }
+
+    /**
+     * Create a new backoff for a sequence of retries.
+     *
+     * @return The backoff starting from the base delay.
+     */
+    public Backoff newBackoff() {
+        return new Backoff();
+    }
+
+    /**
+     * Get the key of the endpoint of the URI.
+     *
+     * @param uri The URI.
+     * @return The scheme and the authority of the URI.
+     */
+    protected String getEndpointKey(@NotNull URI uri) {
+        return uri.getScheme() + "://" + uri.getRawAuthority();
+    }
+
+    /**
+     * Get the endpoint of the URI. The endpoint is created on first use.
+     *
+     * @param uri The URI of a request.
+     * @return The endpoint of the URI.
+     * @throws IllegalArgumentException The URI was undefined.
+     */
+    public Endpoint getEndpoint(@NotNull URI uri) throws IllegalArgumentException {
+        if (uri == null) {
+            throw new IllegalArgumentException("Undefined URI");
+        }
+        return endpoints_.computeIfAbsent(getEndpointKey(uri), Endpoint::new);
+    }
+
+    /**
+     * Is the status a failure of the upstream.
+     *
+     * @param status The status code of a response.
+     * @return True, if and only if the status tells the upstream failed or is
+     *         overloaded, and the request may be retried.
+     */
+    public boolean isFailureStatus(int status) {
+        return status == 429 || (status >= 500 && status < 600);
+    }
+}
@@ -0,0 +1,479 @@
+package com.kautiainen.antti.reaktor.birdnest.data;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.validation.constraints.NotNull;
+
+/**
+ * TtlCache is a bounded cache of the results of the lookups expiring after
+ * their time to live.
+ * <p>
+ * The successful lookups are cached with the positive time to live, and the
+ * failed lookups with their failure using the negative time to live, so a
+ * failing lookup is not repeated until its failure expires.
+ * </p>
+ * <p>
+ * The size of the cache is bounded with a segmented LRU: a new entry enters the
+ * probationary segment, and an entry hit again is promoted to the protected
+ * segment. The least recently used entries of the probationary segment are
+ * evicted first, so the entries used once do not flush the entries used
+ * repeatedly.
+ * </p>
+ *
+ * @param <KEY>   The type of the keys.
+ * @param <VALUE> The type of the cached values.
+ */
+public class TtlCache<KEY, VALUE> {
+
+    /**
+     * The share of the protected segment of the maximum size in percents.
+     */
+    public static final int PROTECTED_PERCENT = 80;
+
+    /**
+     * Entry is a cached result of a lookup.
+     *
+     * @param <VALUE> The type of the cached value.
+     */
+    public static final class Entry<VALUE> {
+
+        /**
+         * The cached value. Undefined value, if the lookup failed.
+         */
+        private final VALUE value_;
+
+        /**
+         * The failure of the lookup. Undefined value, if the lookup succeeded.
+         */
+        private final IOException failure_;
+
+        /**
+         * The expiration time of the entry.
+         */
+        private final Instant expireTime_;
+
+        /**
+         * Create a new entry.
+         *
+         * @param value      The cached value.
+         * @param failure    The failure of the lookup.
+         * @param expireTime The expiration time of the entry.
+         */
+        private Entry(VALUE value, IOException failure, Instant expireTime) {
+            this.value_ = value;
+            this.failure_ = failure;
+            this.expireTime_ = expireTime;
+        }
+
+        /**
+         * Get the cached value.
+         *
+         * @return The cached value, or an undefined value, if the lookup failed.
+         */
+        public VALUE getValue() {
+            return value_;
+        }
+
+        /**
+         * Get the failure of the lookup.
+         *
+         * @return The failure of the lookup, or an undefined value, if the lookup
+         *         succeeded.
+         */
+        public IOException getFailure() {
+            return failure_;
+        }
+
+        /**
+         * Is the entry a cached failure.
+         *
+         * @return True, if and only if the lookup failed.
+         */
+        public boolean isNegative() {
+            return failure_ != null;
+        }
+
+        /**
+         * Get the expiration time of the entry.
+         *
+         * @return The time the entry expires.
+         */
+        public Instant getExpireTime() {
+            return expireTime_;
+        }
+
+        /**
+         * Get the value, or throw the failure of the lookup.
+         *
+         * @return The cached value.
+         * @throws IOException The cached failure of the lookup.
+         */
+        public VALUE get() throws IOException {
+            if (failure_ != null) {
+                throw failure_;
+            }
+            return value_;
+        }
+    }
+
+    /**
+     * The maximum number of entries.
+     */
+    private final int maxSize_;
+
+    /**
+     * The maximum number of entries of the protected segment.
+     */
+    private final int maxProtectedSize_;
+
+    /**
+     * The time to live of the successful lookups.
+     */
+    private final Duration positiveTtl_;
+
+    /**
+     * The time to live of the failed lookups.
+     */
+    private final Duration negativeTtl_;
+
+    /**
+     * The clock of the expiration.
+     */
+    private final Clock clock_;
+
+    /**
+     * The probationary segment in the access order.
+     */
+    private final LinkedHashMap<KEY, Entry<VALUE>> probation_ = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * The protected segment in the access order.
+     */
+    private final LinkedHashMap<KEY, Entry<VALUE>> protected_ = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * The number of the hits of the successful lookups.
+     */
+    private final AtomicLong hits_ = new AtomicLong();
+
+    /**
+     * The number of the hits of the failed lookups.
+     */
+    private final AtomicLong negativeHits_ = new AtomicLong();
+
+    /**
+     * The number of the misses.
+     */
+    private final AtomicLong misses_ = new AtomicLong();
+
+    /**
+     * The number of the entries evicted due the size.
+     */
+    private final AtomicLong evictions_ = new AtomicLong();
+
+    /**
+     * The number of the expired entries removed.
+     */
+    private final AtomicLong expirations_ = new AtomicLong();
+
+    /**
+     * Create a new cache using the system clock.
+     *
+     * @param maxSize     The maximum number of entries.
+     * @param positiveTtl The time to live of the successful lookups.
+     * @param negativeTtl The time to live of the failed lookups.
+     * @throws IllegalArgumentException Any argument was invalid.
+     */
+    public TtlCache(int maxSize, @NotNull Duration positiveTtl, @NotNull Duration negativeTtl)
+            throws IllegalArgumentException {
+        this(maxSize, positiveTtl, negativeTtl, Clock.systemUTC());
+    }
+
+    /**
+     * Create a new cache.
+     *
+     * @param maxSize     The maximum number of entries.
+     * @param positiveTtl The time to live of the successful lookups.
+     * @param negativeTtl The time to live of the failed lookups. A zero duration
+     *                    disables the caching of the failures.
+     * @param clock       The clock of the expiration.
+     * @throws IllegalArgumentException Any argument was invalid.
+     */
+    public TtlCache(int maxSize, @NotNull Duration positiveTtl, @NotNull Duration negativeTtl,
+            @NotNull Clock clock) throws IllegalArgumentException {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Invalid maximum size");
+        }
+        if (positiveTtl == null || positiveTtl.isNegative() || negativeTtl == null || negativeTtl.isNegative()) {
+            throw new IllegalArgumentException("Invalid time to live");
+        }
+        if (clock == null) {
+            throw new IllegalArgumentException("Undefined clock");
+        }
+        this.maxSize_ = maxSize;
+        this.maxProtectedSize_ = maxSize * PROTECTED_PERCENT / 100;
+        this.positiveTtl_ = positiveTtl;
+        this.negativeTtl_ = negativeTtl;
+        this.clock_ = clock;
+    }
+
+    /**
+     * Get the cached result of the lookup.
+     *
+     * @param key The key of the lookup.
+     * @return The cached result, or an undefined value, if the result is not
+     *         cached or has expired.
+     */
+    public Entry<VALUE> get(KEY key) {
+        Instant now = clock_.instant();
+        synchronized (this) {
+            Entry<VALUE> entry = protected_.get(key);
+            if (entry == null) {
+                entry = probation_.remove(key);
+                if (entry != null && isLive(entry, now)) {
+                    // Promoting the entry hit again.
+                    protected_.put(key, entry);
+                    demoteProtected();
+                }
+            } else if (!isLive(entry, now)) {
+                protected_.remove(key);
+            }
+            if (entry == null || !isLive(entry, now)) {
+                if (entry != null) {
+                    expirations_.incrementAndGet();
+                }
+                misses_.incrementAndGet();
+                return null;
+            }
+            (entry.isNegative() ? negativeHits_ : hits_).incrementAndGet();
+            return entry;
+        }
+    }
+
+    /**
+     * Cache the value of a successful lookup.
+     *
+     * @param key   The key of the lookup.
+     * @param value The value of the lookup.
+     */
+    public void put(KEY key, VALUE value) {
+        store(key, new Entry<>(value, null, clock_.instant().plus(positiveTtl_)));
+    }
+
+    /**
+     * Cache the value of a successful lookup expiring at the given time at the
+     * latest.
+     *
+     * @param key        The key of the lookup.
+     * @param value      The value of the lookup.
+     * @param expireTime The expiration time of the value. The value expires
+     *                   after the positive time to live, if it is earlier.
+     * @throws IllegalArgumentException The expiration time was undefined.
+     */
+    public void put(KEY key, VALUE value, @NotNull Instant expireTime) throws IllegalArgumentException {
+        if (expireTime == null) {
+            throw new IllegalArgumentException("Undefined expiration time");
+        }
+        Instant ttlExpireTime = clock_.instant().plus(positiveTtl_);
+        store(key, new Entry<>(value, null, expireTime.isBefore(ttlExpireTime) ? expireTime : ttlExpireTime));
+    }
+
+    /**
+     * Cache the failure of a lookup.
+     *
+     * @param key     The key of the lookup.
+     * @param failure The failure of the lookup.
+     * @throws IllegalArgumentException The failure was undefined.
+     */
+    public void putFailure(KEY key, @NotNull IOException failure) throws IllegalArgumentException {
+        if (failure == null) {
+            throw new IllegalArgumentException("Undefined failure");
+        }
+        if (!negativeTtl_.isZero()) {
+            store(key, new Entry<>(null, failure, clock_.instant().plus(negativeTtl_)));
+        }
+    }
+
+    /**
+     * Store the entry. An entry replacing a cached entry keeps its segment.
+     *
+     * @param key   The key of the entry.
+     * @param entry The stored entry.
+     */
+    private synchronized void store(KEY key, Entry<VALUE> entry) {
+        if (protected_.containsKey(key)) {
+            protected_.put(key, entry);
+            return;
+        }
+        probation_.put(key, entry);
+        Instant now = clock_.instant();
+        while (probation_.size() + protected_.size() > maxSize_) {
+            evictEldest(probation_.isEmpty() ? protected_ : probation_, now);
+        }
+    }
+
+    /**
+     * Move the least recently used entries of the full protected segment to the
+     * probationary segment.
+     */
+    private void demoteProtected() {
+        Iterator<Map.Entry<KEY, Entry<VALUE>>> iterator = protected_.entrySet().iterator();
+        while (protected_.size() > maxProtectedSize_ && iterator.hasNext()) {
+            Map.Entry<KEY, Entry<VALUE>> eldest = iterator.next();
+            iterator.remove();
+            probation_.put(eldest.getKey(), eldest.getValue());
+        }
+    }
+
+    /**
+     * Remove the least recently used entry of the segment.
+     *
+     * @param segment The segment.
+     * @param now     The current time separating the expired entries from the
+     *                evicted entries.
+     */
+    private void evictEldest(LinkedHashMap<KEY, Entry<VALUE>> segment, Instant now) {
+        Iterator<Entry<VALUE>> iterator = segment.values().iterator();
+        Entry<VALUE> eldest = iterator.next();
+        iterator.remove();
+        (isLive(eldest, now) ? evictions_ : expirations_).incrementAndGet();
+    }
+
+    /**
+     * Is the entry still alive.
+     *
+     * @param entry The tested entry.
+     * @param now   The current time.
+     * @return True, if and only if the entry has not expired.
+     */
+    private static boolean isLive(Entry<?> entry, Instant now) {
+        return now.isBefore(entry.getExpireTime());
+    }
+
+    /**
+     * Remove the cached result of the lookup.
+     *
+     * @param key The key of the lookup.
+     */
+    public synchronized void invalidate(KEY key) {
+        if (protected_.remove(key) == null) {
+            probation_.remove(key);
+        }
+    }
+
+    /**
+     * Remove all cached results.
+     */
+    public synchronized void clear() {
+        probation_.clear();
+        protected_.clear();
+    }
+
+    /**
+     * Get the number of the cached results including the expired results not yet
+     * removed.
+     *
+     * @return The number of the cached results.
+     */
+    public synchronized int size() {
+        return probation_.size() + protected_.size();
+    }
+
+    /**
+     * Get the maximum number of the cached results.
+     *
+     * @return The maximum size of the cache.
+     */
+    public int getMaxSize() {
+        return maxSize_;
+    }
+
+    /**
+     * Get the time to live of the successful lookups.
+     *
+     * @return The time to live of the successful lookups.
+     */
+    public Duration getPositiveTtl() {
+        return positiveTtl_;
+    }
+
+    /**
+     * Get the time to live of the failed lookups.
+     *
+     * @return The time to live of the failed lookups.
+     */
+    public Duration getNegativeTtl() {
+        return negativeTtl_;
+    }
+
+    /**
+     * Get the number of the hits of the successful lookups.
+     *
+     * @return The number of the hits returning a cached value.
+     */
+    public long getHitCount() {
+        return hits_.get();
+    }
+
+    /**
+     * Get the number of the hits of the failed lookups.
+     *
+     * @return The number of the hits returning a cached failure.
+     */
+    public long getNegativeHitCount() {
+        return negativeHits_.get();
+    }
+
+    /**
+     * Get the number of the misses.
+     *
+     * @return The number of the lookups not cached.
+     */
+    public long getMissCount() {
+        return misses_.get();
+    }
+
+    /**
+     * Get the number of the evictions.
+     *
+     * @return The number of the live entries evicted due the maximum size.
+     */
+    public long getEvictionCount() {
+        return evictions_.get();
+    }
+
+    /**
+     * Get the number of the expirations.
+     *
+     * @return The number of the expired entries removed.
+     */
+    public long getExpirationCount() {
+        return expirations_.get();
+    }
+
+    /**
+     * Get the hit rate.
+     *
+     * @return The share of the lookups returning a cached result, or zero, if
+     *         there have been no lookups.
+     */
+    public double getHitRate() {
+        long hits = hits_.get() + negativeHits_.get();
+        long total = hits + misses_.get();
+        return total == 0 ? 0.0 : (double) hits / total;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("TtlCache[%d/%d; hits: %d; negative hits: %d; misses: %d; evictions: %d; expired: %d]",
+                size(), maxSize_, hits_.get(), negativeHits_.get(), misses_.get(), evictions_.get(),
+                expirations_.get());
+    }
+}
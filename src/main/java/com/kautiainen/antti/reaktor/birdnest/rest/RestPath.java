@@ -117,7 +117,7 @@ public class RestPath {
                 e.printStackTrace();
                 throw new Error("This should never happen!");
             }
-            return baseUri.resolve(parameterUri);
+            return baseUri == null ? parameterUri : baseUri.resolve(parameterUri);
         }
 
         /**
@@ -153,7 +153,7 @@ public class RestPath {
                 e.printStackTrace();
                 throw new Error("This should never happen!");
             }
-            return baseUri.resolve(parameterUri);
+            return baseUri == null ? parameterUri : baseUri.resolve(parameterUri);
         }
 
         /**
@@ -0,0 +1,80 @@
+package com.kautiainen.antti.reaktor.birdnest.spatial;
+
+import javax.validation.constraints.NotNull;
+
+/**
+ * CircleZone is a circular zone around a center point.
+ * <p>
+ * A position violates the zone, if the ceiling of its distance to the center is
+ * at most the radius.
+ * </p>
+ */
+public class CircleZone extends Zone {
+
+    /**
+     * The X coordinate of the center.
+     */
+    private final double centerX_;
+
+    /**
+     * The Y coordinate of the center.
+     */
+    private final double centerY_;
+
+    /**
+     * The radius of the zone.
+     */
+    private final double radius_;
+
+    /**
+     * The square of the largest distance violating the zone.
+     */
+    private final double limitSquared_;
+
+    /**
+     * Create a new circular zone.
+     *
+     * @param id      The identifier of the zone.
+     * @param centerX The X coordinate of the center.
+     * @param centerY The Y coordinate of the center.
+     * @param radius  The radius of the zone.
+     * @throws IllegalArgumentException The identifier or the radius was invalid.
+     */
+    public CircleZone(@NotNull String id, double centerX, double centerY, double radius)
+            throws IllegalArgumentException {
+        super(id, centerX - radius, centerY - radius, centerX + radius, centerY + radius);
+        this.centerX_ = centerX;
+        this.centerY_ = centerY;
+        this.radius_ = radius;
+        // The ceiling of a distance is at most the radius, if and only if the
+        // distance is at most the floor of the radius.
+        double limit = Math.floor(radius);
+        this.limitSquared_ = limit * limit;
+    }
+
+    @Override
+    public double getCenterX() {
+        return centerX_;
+    }
+
+    @Override
+    public double getCenterY() {
+        return centerY_;
+    }
+
+    /**
+     * Get the radius of the zone.
+     *
+     * @return The radius of the zone.
+     */
+    public double getRadius() {
+        return radius_;
+    }
+
+    @Override
+    public boolean contains(double x, double y) {
+        double dx = x - centerX_;
+        double dy = y - centerY_;
+        return dx * dx + dy * dy <= limitSquared_;
+    }
+}
@@ -0,0 +1,352 @@
+package com.kautiainen.antti.reaktor.birdnest.spatial;
+
+import java.util.BitSet;
+import java.util.PriorityQueue;
+
+import javax.validation.constraints.NotNull;
+
+/**
+ * GridIndex is a uniform grid over a rectangular area.
+ * <p>
+ * The positions are sorted into square cells, and the queries only test the
+ * positions of the cells intersecting the queried region. The positions outside
+ * the area are stored in the nearest edge cell, so the queries stay correct for
+ * them, too.
+ * </p>
+ * <p>
+ * The index is immutable, and it refers to the coordinate arrays it was built
+ * from. The arrays must not be altered after the construction.
+ * </p>
+ */
+public class GridIndex {
+
+    /**
+     * The default width and height of the area in millimeters. The monitoring
+     * area is a 500 by 500 meter square.
+     */
+    public static final double DEFAULT_AREA_SIZE = 500000.0;
+
+    /**
+     * The default cell size in millimeters. The circle of the default NDZ touches
+     * at most 25 cells of the 100 cells of the default area.
+     */
+    public static final double DEFAULT_CELL_SIZE = 50000.0;
+
+    /**
+     * The smallest X coordinate of the area.
+     */
+    private final double minX_;
+
+    /**
+     * The smallest Y coordinate of the area.
+     */
+    private final double minY_;
+
+    /**
+     * The width and height of a cell.
+     */
+    private final double cellSize_;
+
+    /**
+     * The number of cell columns.
+     */
+    private final int columns_;
+
+    /**
+     * The number of cell rows.
+     */
+    private final int rows_;
+
+    /**
+     * The X coordinates of the positions.
+     */
+    private final double[] x_;
+
+    /**
+     * The Y coordinates of the positions.
+     */
+    private final double[] y_;
+
+    /**
+     * The number of indexed positions.
+     */
+    private final int count_;
+
+    /**
+     * The start offset of each cell in the items array. The cell
+     * <code>c</code> contains the items from <code>cellStart_[c]</code> to
+     * <code>cellStart_[c+1]</code>.
+     */
+    private final int[] cellStart_;
+
+    /**
+     * The position indexes sorted by cell.
+     */
+    private final int[] items_;
+
+    /**
+     * Create a new grid index over the default monitoring area.
+     *
+     * @param x     The X coordinates of the positions.
+     * @param y     The Y coordinates of the positions.
+     * @param count The number of positions.
+     */
+    public GridIndex(@NotNull double[] x, @NotNull double[] y, int count) {
+        this(x, y, count, 0.0, 0.0, DEFAULT_AREA_SIZE, DEFAULT_AREA_SIZE, DEFAULT_CELL_SIZE);
+    }
+
+    /**
+     * Create a new grid index.
+     *
+     * @param x        The X coordinates of the positions.
+     * @param y        The Y coordinates of the positions.
+     * @param count    The number of positions.
+     * @param minX     The smallest X coordinate of the area.
+     * @param minY     The smallest Y coordinate of the area.
+     * @param maxX     The largest X coordinate of the area.
+     * @param maxY     The largest Y coordinate of the area.
+     * @param cellSize The width and height of a cell.
+     * @throws IllegalArgumentException The area or the cell size was invalid, or
+     *                                  the arrays were shorter than the count.
+     */
+    public GridIndex(@NotNull double[] x, @NotNull double[] y, int count, double minX, double minY, double maxX,
+            double maxY, double cellSize) throws IllegalArgumentException {
+        if (x == null || y == null || count < 0 || x.length < count || y.length < count) {
+            throw new IllegalArgumentException("Invalid positions");
+        }
+        if (!(cellSize > 0) || !(maxX > minX) || !(maxY > minY)) {
+            throw new IllegalArgumentException("Invalid grid area");
+        }
+        this.x_ = x;
+        this.y_ = y;
+        this.count_ = count;
+        this.minX_ = minX;
+        this.minY_ = minY;
+        this.cellSize_ = cellSize;
+        this.columns_ = (int) Math.ceil((maxX - minX) / cellSize);
+        this.rows_ = (int) Math.ceil((maxY - minY) / cellSize);
+
+        // Counting sort of the positions by cell.
+        int[] cells = new int[count];
+        int[] start = new int[columns_ * rows_ + 1];
+        for (int i = 0; i < count; i++) {
+            cells[i] = row(y[i]) * columns_ + column(x[i]);
+            start[cells[i] + 1]++;
+        }
+        for (int c = 0; c < columns_ * rows_; c++) {
+            start[c + 1] += start[c];
+        }
+        int[] items = new int[count];
+        int[] fill = new int[columns_ * rows_];
+        for (int i = 0; i < count; i++) {
+            items[start[cells[i]] + fill[cells[i]]++] = i;
+        }
+        this.cellStart_ = start;
+        this.items_ = items;
+    }
+
+    /**
+     * Get the column of the X coordinate.
+     *
+     * @param x The X coordinate.
+     * @return The column of the coordinate clamped to the grid.
+     */
+    protected int column(double x) {
+        int column = (int) Math.floor((x - minX_) / cellSize_);
+        return column < 0 ? 0 : (column >= columns_ ? columns_ - 1 : column);
+    }
+
+    /**
+     * Get the row of the Y coordinate.
+     *
+     * @param y The Y coordinate.
+     * @return The row of the coordinate clamped to the grid.
+     */
+    protected int row(double y) {
+        int row = (int) Math.floor((y - minY_) / cellSize_);
+        return row < 0 ? 0 : (row >= rows_ ? rows_ - 1 : row);
+    }
+
+    /**
+     * Get the number of indexed positions.
+     *
+     * @return The number of positions.
+     */
+    public int size() {
+        return count_;
+    }
+
+    /**
+     * Get the cell size.
+     *
+     * @return The width and height of a cell.
+     */
+    public double getCellSize() {
+        return cellSize_;
+    }
+
+    /**
+     * Get the number of cells.
+     *
+     * @return The number of cells in the grid.
+     */
+    public int getCellCount() {
+        return columns_ * rows_;
+    }
+
+    /**
+     * Get the positions within the squared distance of the point.
+     *
+     * @param px           The X coordinate of the point.
+     * @param py           The Y coordinate of the point.
+     * @param limitSquared The square of the largest accepted distance.
+     * @return The bit set of the indexes of the positions whose squared distance
+     *         to the point is at most the given limit.
+     */
+    public BitSet withinDistanceSquared(double px, double py, double limitSquared) {
+        BitSet result = new BitSet(count_);
+        if (!(limitSquared >= 0)) {
+            return result;
+        }
+        double radius = Math.sqrt(limitSquared);
+        int firstColumn = column(px - radius), lastColumn = column(px + radius);
+        int firstRow = row(py - radius), lastRow = row(py + radius);
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                int cell = row * columns_ + column;
+                for (int i = cellStart_[cell], end = cellStart_[cell + 1]; i < end; i++) {
+                    int item = items_[i];
+                    double dx = x_[item] - px;
+                    double dy = y_[item] - py;
+                    if (dx * dx + dy * dy <= limitSquared) {
+                        result.set(item);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Get the positions within the radius of the point.
+     *
+     * @param px     The X coordinate of the point.
+     * @param py     The Y coordinate of the point.
+     * @param radius The radius.
+     * @return The bit set of the indexes of the positions at most the radius
+     *         away from the point.
+     */
+    public BitSet withinRadius(double px, double py, double radius) {
+        return radius < 0 ? new BitSet() : withinDistanceSquared(px, py, radius * radius);
+    }
+
+    /**
+     * Get the positions within the rectangle. The edges belong to the
+     * rectangle.
+     *
+     * @param minX The smallest X coordinate of the rectangle.
+     * @param minY The smallest Y coordinate of the rectangle.
+     * @param maxX The largest X coordinate of the rectangle.
+     * @param maxY The largest Y coordinate of the rectangle.
+     * @return The bit set of the indexes of the positions within the rectangle.
+     */
+    public BitSet withinRectangle(double minX, double minY, double maxX, double maxY) {
+        BitSet result = new BitSet(count_);
+        if (!(maxX >= minX) || !(maxY >= minY)) {
+            return result;
+        }
+        int firstColumn = column(minX), lastColumn = column(maxX);
+        int firstRow = row(minY), lastRow = row(maxY);
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                int cell = row * columns_ + column;
+                for (int i = cellStart_[cell], end = cellStart_[cell + 1]; i < end; i++) {
+                    int item = items_[i];
+                    if (x_[item] >= minX && x_[item] <= maxX && y_[item] >= minY && y_[item] <= maxY) {
+                        result.set(item);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Get the nearest positions to the point.
+     * <p>
+     * The cells are searched in rings around the cell of the point, and the
+     * search ends when no unsearched cell can contain a nearer position than the
+     * found positions.
+     * </p>
+     *
+     * @param px The X coordinate of the point.
+     * @param py The Y coordinate of the point.
+     * @param k  The maximum number of returned positions.
+     * @return The indexes of at most k nearest positions ordered by ascending
+     *         distance.
+     */
+    public int[] nearest(double px, double py, int k) {
+        int wanted = Math.min(k, count_);
+        if (wanted <= 0) {
+            return new int[0];
+        }
+        // The heap keeps the farthest found position on top.
+        PriorityQueue<double[]> found = new PriorityQueue<>(wanted + 1,
+                (double[] a, double[] b) -> Double.compare(b[0], a[0]));
+        int centerColumn = column(px), centerRow = row(py);
+        int maxRing = Math.max(columns_, rows_);
+        for (int ring = 0; ring <= maxRing; ring++) {
+            int firstColumn = centerColumn - ring, lastColumn = centerColumn + ring;
+            int firstRow = centerRow - ring, lastRow = centerRow + ring;
+            for (int row = Math.max(firstRow, 0); row <= Math.min(lastRow, rows_ - 1); row++) {
+                boolean edgeRow = (row == firstRow || row == lastRow);
+                for (int column = Math.max(firstColumn, 0); column <= Math.min(lastColumn, columns_ - 1); column++) {
+                    if (!edgeRow && column != firstColumn && column != lastColumn) {
+                        // The inner cells were searched on the previous rings.
+                        continue;
+                    }
+                    int cell = row * columns_ + column;
+                    for (int i = cellStart_[cell], end = cellStart_[cell + 1]; i < end; i++) {
+                        int item = items_[i];
+                        double dx = x_[item] - px;
+                        double dy = y_[item] - py;
+                        found.offer(new double[] { dx * dx + dy * dy, item });
+                        if (found.size() > wanted) {
+                            found.poll();
+                        }
+                    }
+                }
+            }
+
+            // The distance from the point to the nearest unsearched cell.
+            double bound = Double.POSITIVE_INFINITY;
+            if (firstColumn > 0) {
+                bound = Math.min(bound, px - (minX_ + firstColumn * cellSize_));
+            }
+            if (lastColumn < columns_ - 1) {
+                bound = Math.min(bound, (minX_ + (lastColumn + 1) * cellSize_) - px);
+            }
+            if (firstRow > 0) {
+                bound = Math.min(bound, py - (minY_ + firstRow * cellSize_));
+            }
+            if (lastRow < rows_ - 1) {
+                bound = Math.min(bound, (minY_ + (lastRow + 1) * cellSize_) - py);
+            }
+            if (bound == Double.POSITIVE_INFINITY) {
+                // All cells have been searched.
+                break;
+            }
+            bound = Math.max(bound, 0.0);
+            if (found.size() == wanted && found.peek()[0] <= bound * bound) {
+                // No unsearched cell has a nearer position.
+                break;
+            }
+        }
+
+        int[] result = new int[found.size()];
+        for (int i = result.length - 1; i >= 0; i--) {
+            result[i] = (int) found.poll()[1];
+        }
+        return result;
+    }
+}
@@ -0,0 +1,176 @@
+package com.kautiainen.antti.reaktor.birdnest.spatial;
+
+import javax.validation.constraints.NotNull;
+
+/**
+ * PolygonZone is a convex polygonal zone.
+ * <p>
+ * The vertices may be given in either winding order. A position violates the
+ * zone, if it is within the polygon or on its edge. The center of the zone is
+ * the centroid of the polygon.
+ * </p>
+ */
+public class PolygonZone extends Zone {
+
+    /**
+     * The X coordinates of the vertices.
+     */
+    private final double[] x_;
+
+    /**
+     * The Y coordinates of the vertices.
+     */
+    private final double[] y_;
+
+    /**
+     * The sign of the cross products of the edges and the contained positions.
+     */
+    private final double orientation_;
+
+    /**
+     * The X coordinate of the centroid.
+     */
+    private final double centerX_;
+
+    /**
+     * The Y coordinate of the centroid.
+     */
+    private final double centerY_;
+
+    /**
+     * Get the smallest value of the array.
+     *
+     * @param values The values.
+     * @return The smallest value.
+     */
+    private static double min(double[] values) {
+        double result = Double.POSITIVE_INFINITY;
+        for (double value : values) {
+            result = Math.min(result, value);
+        }
+        return result;
+    }
+
+    /**
+     * Get the largest value of the array.
+     *
+     * @param values The values.
+     * @return The largest value.
+     */
+    private static double max(double[] values) {
+        double result = Double.NEGATIVE_INFINITY;
+        for (double value : values) {
+            result = Math.max(result, value);
+        }
+        return result;
+    }
+
+    /**
+     * Copy the coordinates, if they are valid polygon coordinates.
+     *
+     * @param x The X coordinates.
+     * @param y The Y coordinates.
+     * @return The copy of the coordinates.
+     * @throws IllegalArgumentException The coordinates did not have the same
+     *                                  number of at least three vertices.
+     */
+    private static double[] checkedCopy(double[] x, double[] y) throws IllegalArgumentException {
+        if (x == null || y == null || x.length != y.length || x.length < 3) {
+            throw new IllegalArgumentException("Polygon requires at least three vertices");
+        }
+        return x.clone();
+    }
+
+    /**
+     * Create a new convex polygonal zone.
+     *
+     * @param id The identifier of the zone.
+     * @param x  The X coordinates of the vertices.
+     * @param y  The Y coordinates of the vertices.
+     * @throws IllegalArgumentException The identifier was invalid, the vertices
+     *                                  did not form a convex polygon, or the
+     *                                  polygon had duplicate consecutive
+     *                                  vertices.
+     */
+    public PolygonZone(@NotNull String id, @NotNull double[] x, @NotNull double[] y)
+            throws IllegalArgumentException {
+        super(id, min(checkedCopy(x, y)), min(y), max(x), max(y));
+        this.x_ = x.clone();
+        this.y_ = y.clone();
+
+        // Determining the orientation, and checking the convexity. The turns of a
+        // simple convex polygon sum to exactly one revolution, and the turns of a
+        // self-intersecting polygon, like a pentagram, to more.
+        double orientation = 0, turns = 0;
+        int count = x_.length;
+        for (int i = 0; i < count; i++) {
+            int next = (i + 1) % count, after = (i + 2) % count;
+            if (x_[next] == x_[i] && y_[next] == y_[i]) {
+                throw new IllegalArgumentException("Polygon has duplicate consecutive vertices");
+            }
+            double cross = (x_[next] - x_[i]) * (y_[after] - y_[next]) - (y_[next] - y_[i]) * (x_[after] - x_[next]);
+            double dot = (x_[next] - x_[i]) * (x_[after] - x_[next]) + (y_[next] - y_[i]) * (y_[after] - y_[next]);
+            turns += Math.atan2(cross, dot);
+            if (cross != 0) {
+                if (orientation == 0) {
+                    orientation = Math.signum(cross);
+                } else if (Math.signum(cross) != orientation) {
+                    throw new IllegalArgumentException("Polygon is not convex");
+                }
+            }
+        }
+        if (orientation == 0) {
+            throw new IllegalArgumentException("Polygon has no area");
+        }
+        if (Math.abs(turns) > 3 * Math.PI) {
+            throw new IllegalArgumentException("Polygon is self-intersecting");
+        }
+        this.orientation_ = orientation;
+
+        // Computing the centroid relative to the first vertex to retain precision.
+        double area = 0, sumX = 0, sumY = 0;
+        for (int i = 1; i < count - 1; i++) {
+            double x1 = x_[i] - x_[0], y1 = y_[i] - y_[0], x2 = x_[i + 1] - x_[0], y2 = y_[i + 1] - y_[0];
+            double cross = x1 * y2 - x2 * y1;
+            area += cross;
+            sumX += (x1 + x2) * cross;
+            sumY += (y1 + y2) * cross;
+        }
+        this.centerX_ = x_[0] + sumX / (3 * area);
+        this.centerY_ = y_[0] + sumY / (3 * area);
+    }
+
+    /**
+     * Get the number of vertices.
+     *
+     * @return The number of vertices.
+     */
+    public int getVertexCount() {
+        return x_.length;
+    }
+
+    @Override
+    public double getCenterX() {
+        return centerX_;
+    }
+
+    @Override
+    public double getCenterY() {
+        return centerY_;
+    }
+
+    @Override
+    public boolean contains(double x, double y) {
+        if (!inBoundingBox(x, y)) {
+            return false;
+        }
+        int count = x_.length;
+        for (int i = 0, previous = count - 1; i < count; previous = i++) {
+            double cross = (x_[i] - x_[previous]) * (y - y_[previous]) - (y_[i] - y_[previous]) * (x - x_[previous]);
+            if (cross * orientation_ < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,164 @@
+package com.kautiainen.antti.reaktor.birdnest.spatial;
+
+import javax.validation.constraints.NotNull;
+
+/**
+ * Zone is a protected area with an identifier and a bounding box.
+ * <p>
+ * The bounding box and the other values needed by the containment test are
+ * computed when the zone is created, so the test of a position does not
+ * allocate memory.
+ * </p>
+ */
+public abstract class Zone {
+
+    /**
+     * The identifier of the zone.
+     */
+    private final String id_;
+
+    /**
+     * The smallest X coordinate of the bounding box.
+     */
+    private final double minX_;
+
+    /**
+     * The smallest Y coordinate of the bounding box.
+     */
+    private final double minY_;
+
+    /**
+     * The largest X coordinate of the bounding box.
+     */
+    private final double maxX_;
+
+    /**
+     * The largest Y coordinate of the bounding box.
+     */
+    private final double maxY_;
+
+    /**
+     * Create a new zone.
+     *
+     * @param id   The identifier of the zone.
+     * @param minX The smallest X coordinate of the bounding box.
+     * @param minY The smallest Y coordinate of the bounding box.
+     * @param maxX The largest X coordinate of the bounding box.
+     * @param maxY The largest Y coordinate of the bounding box.
+     * @throws IllegalArgumentException The identifier was undefined, or the
+     *                                  bounding box was invalid.
+     */
+    protected Zone(@NotNull String id, double minX, double minY, double maxX, double maxY)
+            throws IllegalArgumentException {
+        if (id == null || id.isBlank()) {
+            throw new IllegalArgumentException("Invalid zone identifier");
+        }
+        if (!(maxX >= minX) || !(maxY >= minY)) {
+            throw new IllegalArgumentException("Invalid zone bounding box");
+        }
+        this.id_ = id;
+        this.minX_ = minX;
+        this.minY_ = minY;
+        this.maxX_ = maxX;
+        this.maxY_ = maxY;
+    }
+
+    /**
+     * Get the identifier of the zone.
+     *
+     * @return The identifier of the zone.
+     */
+    public String getId() {
+        return id_;
+    }
+
+    /**
+     * Get the smallest X coordinate of the bounding box.
+     *
+     * @return The smallest X coordinate of the bounding box.
+     */
+    public double getMinX() {
+        return minX_;
+    }
+
+    /**
+     * Get the smallest Y coordinate of the bounding box.
+     *
+     * @return The smallest Y coordinate of the bounding box.
+     */
+    public double getMinY() {
+        return minY_;
+    }
+
+    /**
+     * Get the largest X coordinate of the bounding box.
+     *
+     * @return The largest X coordinate of the bounding box.
+     */
+    public double getMaxX() {
+        return maxX_;
+    }
+
+    /**
+     * Get the largest Y coordinate of the bounding box.
+     *
+     * @return The largest Y coordinate of the bounding box.
+     */
+    public double getMaxY() {
+        return maxY_;
+    }
+
+    /**
+     * Test whether the position is within the bounding box.
+     *
+     * @param x The X coordinate.
+     * @param y The Y coordinate.
+     * @return True, if and only if the position is within the bounding box.
+     */
+    public final boolean inBoundingBox(double x, double y) {
+        return x >= minX_ && x <= maxX_ && y >= minY_ && y <= maxY_;
+    }
+
+    /**
+     * Test whether the position violates the zone.
+     *
+     * @param x The X coordinate.
+     * @param y The Y coordinate.
+     * @return True, if and only if the position is within the zone.
+     */
+    public abstract boolean contains(double x, double y);
+
+    /**
+     * Get the X coordinate of the center of the zone.
+     *
+     * @return The X coordinate of the center.
+     */
+    public abstract double getCenterX();
+
+    /**
+     * Get the Y coordinate of the center of the zone.
+     *
+     * @return The Y coordinate of the center.
+     */
+    public abstract double getCenterY();
+
+    /**
+     * Get the distance of the position to the zone. The distance is the
+     * distance of the position to the center of the zone for all zones, and it
+     * is the value reported as the closest distance of a violating drone.
+     *
+     * @param x The X coordinate.
+     * @param y The Y coordinate.
+     * @return The distance of the position to the center of the zone.
+     */
+    public final double distance(double x, double y) {
+        double dx = x - getCenterX();
+        double dy = y - getCenterY();
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s[%s]", getClass().getSimpleName(), id_);
+    }
+}
@@ -0,0 +1,261 @@
+package com.kautiainen.antti.reaktor.birdnest.spatial;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.IntConsumer;
+
+import javax.validation.constraints.NotNull;
+
+/**
+ * ZoneSet is an immutable set of zones evaluated together.
+ * <p>
+ * The zones are sorted into a uniform grid by their bounding boxes when the set
+ * is created. The evaluation passes the positions once, and each position is
+ * only tested against the zones whose bounding box intersects the cell of the
+ * position. Adding zones far from a position does not slow down its
+ * evaluation.
+ * </p>
+ */
+public class ZoneSet {
+
+    /**
+     * The zones of the set.
+     */
+    private final List<Zone> zones_;
+
+    /**
+     * The smallest X coordinate of the lookup grid.
+     */
+    private final double minX_;
+
+    /**
+     * The smallest Y coordinate of the lookup grid.
+     */
+    private final double minY_;
+
+    /**
+     * The width and height of a lookup cell.
+     */
+    private final double cellSize_;
+
+    /**
+     * The number of lookup cell columns.
+     */
+    private final int columns_;
+
+    /**
+     * The number of lookup cell rows.
+     */
+    private final int rows_;
+
+    /**
+     * The indexes of the zones whose bounding box intersects the cell. The
+     * positions outside the grid use the nearest edge cell, and the zones
+     * extending outside the grid are stored in the edge cells.
+     */
+    private final int[][] cellZones_;
+
+    /**
+     * Create a new zone set over the default monitoring area.
+     *
+     * @param zones The zones of the set.
+     * @throws IllegalArgumentException The zones were invalid or had duplicate
+     *                                  identifiers.
+     */
+    public ZoneSet(@NotNull List<? extends Zone> zones) throws IllegalArgumentException {
+        this(zones, 0.0, 0.0, GridIndex.DEFAULT_AREA_SIZE, GridIndex.DEFAULT_AREA_SIZE, GridIndex.DEFAULT_CELL_SIZE);
+    }
+
+    /**
+     * Create a new zone set.
+     *
+     * @param zones    The zones of the set.
+     * @param minX     The smallest X coordinate of the lookup grid.
+     * @param minY     The smallest Y coordinate of the lookup grid.
+     * @param maxX     The largest X coordinate of the lookup grid.
+     * @param maxY     The largest Y coordinate of the lookup grid.
+     * @param cellSize The width and height of a lookup cell.
+     * @throws IllegalArgumentException The zones were invalid or had duplicate
+     *                                  identifiers, or the grid was invalid.
+     */
+    public ZoneSet(@NotNull List<? extends Zone> zones, double minX, double minY, double maxX, double maxY,
+            double cellSize) throws IllegalArgumentException {
+        if (zones == null || zones.stream().anyMatch(Objects::isNull)) {
+            throw new IllegalArgumentException("Invalid zones");
+        }
+        if (!(cellSize > 0) || !(maxX > minX) || !(maxY > minY)) {
+            throw new IllegalArgumentException("Invalid grid area");
+        }
+        if (zones.stream().map(Zone::getId).distinct().count() != zones.size()) {
+            throw new IllegalArgumentException("Duplicate zone identifier");
+        }
+        this.zones_ = Collections.unmodifiableList(new ArrayList<>(zones));
+        this.minX_ = minX;
+        this.minY_ = minY;
+        this.cellSize_ = cellSize;
+        this.columns_ = (int) Math.ceil((maxX - minX) / cellSize);
+        this.rows_ = (int) Math.ceil((maxY - minY) / cellSize);
+
+        // Sorting the zones into the cells their bounding boxes intersect.
+        int[] counts = new int[columns_ * rows_];
+        for (Zone zone : zones_) {
+            forCells(zone, (int cell) -> counts[cell]++);
+        }
+        this.cellZones_ = new int[columns_ * rows_][];
+        for (int cell = 0; cell < cellZones_.length; cell++) {
+            cellZones_[cell] = new int[counts[cell]];
+            counts[cell] = 0;
+        }
+        for (int z = 0; z < zones_.size(); z++) {
+            final int zoneIndex = z;
+            forCells(zones_.get(z), (int cell) -> cellZones_[cell][counts[cell]++] = zoneIndex);
+        }
+    }
+
+    /**
+     * Perform the action for each lookup cell the bounding box of the zone
+     * intersects.
+     *
+     * @param zone   The zone.
+     * @param action The action performed for the cell index.
+     */
+    private void forCells(Zone zone, IntConsumer action) {
+        for (int row = row(zone.getMinY()), lastRow = row(zone.getMaxY()); row <= lastRow; row++) {
+            for (int column = column(zone.getMinX()), lastColumn = column(zone.getMaxX()); column <= lastColumn;
+                    column++) {
+                action.accept(row * columns_ + column);
+            }
+        }
+    }
+
+    /**
+     * Get the column of the X coordinate.
+     *
+     * @param x The X coordinate.
+     * @return The column of the coordinate clamped to the grid.
+     */
+    protected int column(double x) {
+        int column = (int) Math.floor((x - minX_) / cellSize_);
+        return column < 0 ? 0 : (column >= columns_ ? columns_ - 1 : column);
+    }
+
+    /**
+     * Get the row of the Y coordinate.
+     *
+     * @param y The Y coordinate.
+     * @return The row of the coordinate clamped to the grid.
+     */
+    protected int row(double y) {
+        int row = (int) Math.floor((y - minY_) / cellSize_);
+        return row < 0 ? 0 : (row >= rows_ ? rows_ - 1 : row);
+    }
+
+    /**
+     * Get the zones of the set.
+     *
+     * @return The unmodifiable list of the zones in the order they were given.
+     */
+    public List<Zone> getZones() {
+        return zones_;
+    }
+
+    /**
+     * Get the number of zones.
+     *
+     * @return The number of zones in the set.
+     */
+    public int size() {
+        return zones_.size();
+    }
+
+    /**
+     * Get the zones the position violates.
+     *
+     * @param x The X coordinate.
+     * @param y The Y coordinate.
+     * @return The list of the zones containing the position.
+     */
+    public List<Zone> getViolatedZones(double x, double y) {
+        List<Zone> result = new ArrayList<>(1);
+        for (int zoneIndex : cellZones_[row(y) * columns_ + column(x)]) {
+            Zone zone = zones_.get(zoneIndex);
+            if (zone.contains(x, y)) {
+                result.add(zone);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Test whether the position violates any zone.
+     *
+     * @param x The X coordinate.
+     * @param y The Y coordinate.
+     * @return True, if and only if some zone contains the position.
+     */
+    public boolean violatesAny(double x, double y) {
+        for (int zoneIndex : cellZones_[row(y) * columns_ + column(x)]) {
+            if (zones_.get(zoneIndex).contains(x, y)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Evaluate the positions against all zones in a single pass.
+     *
+     * @param x     The X coordinates of the positions.
+     * @param y     The Y coordinates of the positions.
+     * @param count The number of evaluated positions.
+     * @return The map from zone identifier to the bit set of the indexes of the
+     *         positions violating the zone. The map contains every zone in the
+     *         order of the zones.
+     */
+    public Map<String, BitSet> evaluate(@NotNull double[] x, @NotNull double[] y, int count) {
+        BitSet[] violators = new BitSet[zones_.size()];
+        for (int z = 0; z < violators.length; z++) {
+            violators[z] = new BitSet(count);
+        }
+        for (int i = 0; i < count; i++) {
+            for (int zoneIndex : cellZones_[row(y[i]) * columns_ + column(x[i])]) {
+                if (zones_.get(zoneIndex).contains(x[i], y[i])) {
+                    violators[zoneIndex].set(i);
+                }
+            }
+        }
+        Map<String, BitSet> result = new LinkedHashMap<>(zones_.size() * 2);
+        for (int z = 0; z < violators.length; z++) {
+            result.put(zones_.get(z).getId(), violators[z]);
+        }
+        return result;
+    }
+
+    /**
+     * Evaluate the positions against all zones, and combine the violators.
+     *
+     * @param x     The X coordinates of the positions.
+     * @param y     The Y coordinates of the positions.
+     * @param count The number of evaluated positions.
+     * @return The bit set of the indexes of the positions violating any zone.
+     */
+    public BitSet evaluateAny(@NotNull double[] x, @NotNull double[] y, int count) {
+        BitSet result = new BitSet(count);
+        for (int i = 0; i < count; i++) {
+            if (violatesAny(x[i], y[i])) {
+                result.set(i);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ZoneSet%s", zones_);
+    }
+}
@@ -0,0 +1,6 @@
+/**
+ * The spatial package implements spatial indexes and zone geometry over
+ * positions given as parallel coordinate arrays. The positions are referred by
+ * their index in the arrays.
+*/
+package com.kautiainen.antti.reaktor.birdnest.spatial;
@@ -0,0 +1,61 @@
+package com.kautiainen.antti.reaktor.birdnest.work;
+
+import java.lang.System.Logger.Level;
+import java.time.Duration;
+
+/**
+ * Worker performs long-running background work in steps.
+ * <p>
+ * The worker pool calls {@link #onStart(WorkerPool.Handle)} once, then
+ * {@link #step()} repeatedly waiting the returned delay between the steps, and
+ * finally {@link #onStop()} once, when the worker ends or is cancelled. The
+ * wait between the steps ends early, if the worker is woken through its handle.
+ * All methods are called on the same thread.
+ * </p>
+ */
+public interface Worker {
+
+    /**
+     * The default delay after a failed step.
+     */
+    public static final Duration DEFAULT_ERROR_DELAY = Duration.ofSeconds(1);
+
+    /**
+     * Start the worker. The default implementation does nothing.
+     *
+     * @param handle The handle of the started worker.
+     * @throws Exception The start failed, and the worker ends without steps.
+     */
+    default void onStart(WorkerPool.Handle handle) throws Exception {
+    }
+
+    /**
+     * Perform a step of the work.
+     *
+     * @return The delay until the next step, or an undefined value, if the work
+     *         has ended.
+     * @throws InterruptedException The step was interrupted, and the worker
+     *                              ends.
+     * @throws Exception            The step failed.
+     */
+    Duration step() throws InterruptedException, Exception;
+
+    /**
+     * Handle the failure of a step. The default implementation logs the failure
+     * and waits the default error delay.
+     *
+     * @param exception The failure of the step.
+     * @return The delay until the next step, or an undefined value, if the worker
+     *         ends.
+     */
+    default Duration onError(Exception exception) {
+        System.getLogger(getClass().getName()).log(Level.WARNING, "Worker step failed", exception);
+        return DEFAULT_ERROR_DELAY;
+    }
+
+    /**
+     * Stop the worker. The default implementation does nothing.
+     */
+    default void onStop() {
+    }
+}
@@ -0,0 +1,440 @@
+package com.kautiainen.antti.reaktor.birdnest.work;
+
+import java.lang.System.Logger.Level;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.validation.constraints.NotNull;
+
+/**
+ * WorkerPool runs the workers and the tasks of an application component.
+ * <p>
+ * Each worker and task runs on its own virtual thread, if the runtime provides
+ * virtual threads. Otherwise they run on a cached pool of daemon threads. The
+ * virtual threads are looked up reflectively, so the pool runs on the runtimes
+ * without them, and on the runtimes where they are a disabled preview feature.
+ * </p>
+ * <p>
+ * Shutting down the pool cancels the workers, interrupting their current wait
+ * or step, and waits for them to stop.
+ * </p>
+ */
+public class WorkerPool implements AutoCloseable {
+
+    /**
+     * The default time waited for the workers to stop on shutdown.
+     */
+    public static final Duration DEFAULT_SHUTDOWN_TIMEOUT = Duration.ofSeconds(5);
+
+    /**
+     * Handle controls a started worker.
+     */
+    public final class Handle {
+
+        /**
+         * The name of the worker.
+         */
+        private final String name_;
+
+        /**
+         * The worker.
+         */
+        private final Worker worker_;
+
+        /**
+         * The permits waking the worker before the end of its delay.
+         */
+        private final Semaphore wakeups_ = new Semaphore(0);
+
+        /**
+         * The future completing, when the worker has stopped.
+         */
+        private final CompletableFuture<Void> done_ = new CompletableFuture<>();
+
+        /**
+         * Has the worker been cancelled.
+         */
+        private volatile boolean cancelled_ = false;
+
+        /**
+         * The thread running the worker. Undefined value, if the worker is not
+         * running.
+         */
+        private Thread thread_ = null;
+
+        /**
+         * Create a new handle.
+         *
+         * @param name   The name of the worker.
+         * @param worker The worker.
+         */
+        private Handle(String name, Worker worker) {
+            this.name_ = name;
+            this.worker_ = worker;
+        }
+
+        /**
+         * Get the name of the worker.
+         *
+         * @return The name of the worker.
+         */
+        public String getName() {
+            return name_;
+        }
+
+        /**
+         * Get the pool of the worker.
+         *
+         * @return The pool running the worker.
+         */
+        public WorkerPool getPool() {
+            return WorkerPool.this;
+        }
+
+        /**
+         * Wake the worker. The current delay of the worker ends, and the next step
+         * starts. A wake during a step ends the following delay.
+         */
+        public void wake() {
+            if (wakeups_.availablePermits() == 0) {
+                wakeups_.release();
+            }
+        }
+
+        /**
+         * Cancel the worker. The current step or delay of the worker is
+         * interrupted, and the worker stops.
+         */
+        public synchronized void cancel() {
+            cancelled_ = true;
+            if (thread_ != null) {
+                thread_.interrupt();
+            }
+        }
+
+        /**
+         * Has the worker been cancelled.
+         *
+         * @return True, if and only if the worker has been cancelled.
+         */
+        public boolean isCancelled() {
+            return cancelled_;
+        }
+
+        /**
+         * Has the worker stopped.
+         *
+         * @return True, if and only if the worker has stopped.
+         */
+        public boolean isDone() {
+            return done_.isDone();
+        }
+
+        /**
+         * Wait for the worker to stop.
+         *
+         * @param timeout The maximum wait time.
+         * @return True, if and only if the worker stopped.
+         * @throws InterruptedException The wait was interrupted.
+         */
+        public boolean await(@NotNull Duration timeout) throws InterruptedException {
+            try {
+                done_.get(timeout.toNanos(), TimeUnit.NANOSECONDS);
+                return true;
+            } catch (TimeoutException exception) {
+                return false;
+            } catch (ExecutionException exception) {
+                return true;
+            }
+        }
+
+        /**
+         * Run the worker until it ends or is cancelled.
+         */
+        private void run() {
+            Thread thread = Thread.currentThread();
+            String threadName = thread.getName();
+            synchronized (this) {
+                if (cancelled_) {
+                    // The worker was cancelled before it started.
+                    handles_.remove(this);
+                    done_.complete(null);
+                    return;
+                }
+                thread_ = thread;
+            }
+            thread.setName(name_);
+            try {
+                worker_.onStart(this);
+                while (!cancelled_) {
+                    Duration delay;
+                    try {
+                        delay = worker_.step();
+                    } catch (InterruptedException exception) {
+                        break;
+                    } catch (Exception exception) {
+                        delay = worker_.onError(exception);
+                    }
+                    if (delay == null) {
+                        // The work has ended.
+                        break;
+                    }
+                    if (delay.isNegative() || delay.isZero()) {
+                        wakeups_.tryAcquire();
+                    } else if (wakeups_.tryAcquire(delay.toNanos(), TimeUnit.NANOSECONDS)) {
+                        // Woken before the end of the delay.
+                        wakeups_.drainPermits();
+                    }
+                }
+            } catch (InterruptedException exception) {
+                // The worker was cancelled during its delay.
+            } catch (Exception exception) {
+                System.getLogger(WorkerPool.class.getName()).log(Level.ERROR, "Worker " + name_ + " failed to start",
+                        exception);
+            } finally {
+                try {
+                    worker_.onStop();
+                } finally {
+                    synchronized (this) {
+                        // Clearing the interruption, so it does not leak to the next task of a pooled thread.
+                        thread_ = null;
+                        Thread.interrupted();
+                    }
+                    thread.setName(threadName);
+                    handles_.remove(this);
+                    done_.complete(null);
+                }
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "Worker[" + name_ + (isDone() ? "; done" : cancelled_ ? "; cancelled" : "") + "]";
+        }
+    }
+
+    /**
+     * The name of the pool.
+     */
+    private final String name_;
+
+    /**
+     * The executor of the workers and the tasks.
+     */
+    private final ExecutorService executor_;
+
+    /**
+     * Does the pool use virtual threads.
+     */
+    private final boolean virtual_;
+
+    /**
+     * The handles of the running workers.
+     */
+    private final Set<Handle> handles_ = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Create a new pool preferring virtual threads.
+     *
+     * @param name The name of the pool used as the prefix of the thread names.
+     * @throws IllegalArgumentException The name was undefined.
+     */
+    public WorkerPool(@NotNull String name) throws IllegalArgumentException {
+        this(name, true);
+    }
+
+    /**
+     * Create a new pool.
+     *
+     * @param name          The name of the pool used as the prefix of the thread
+     *                      names.
+     * @param preferVirtual Are the virtual threads used, if the runtime provides
+     *                      them.
+     * @throws IllegalArgumentException The name was undefined.
+     */
+    public WorkerPool(@NotNull String name, boolean preferVirtual) throws IllegalArgumentException {
+        if (name == null) {
+            throw new IllegalArgumentException("Undefined pool name");
+        }
+        ExecutorService executor = preferVirtual ? createVirtualThreadExecutor(name) : null;
+        this.name_ = name;
+        this.virtual_ = executor != null;
+        this.executor_ = executor == null ? Executors.newCachedThreadPool(createThreadFactory(name)) : executor;
+    }
+
+    /**
+     * Create an executor starting a virtual thread for each task.
+     *
+     * @param name The prefix of the thread names.
+     * @return The executor, or an undefined value, if the virtual threads are not
+     *         available.
+     */
+    private static ExecutorService createVirtualThreadExecutor(String name) {
+        try {
+            Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderType.getMethod("name", String.class, long.class).invoke(builder, name + "-", 1L);
+            ThreadFactory factory = (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+            return (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class)
+                    .invoke(null, factory);
+        } catch (ReflectiveOperationException | RuntimeException | LinkageError exception) {
+            // The virtual threads are not available, or the preview features are not
+            // enabled.
+            return null;
+        }
+    }
+
+    /**
+     * Create the factory of the daemon threads of the platform thread pool.
+     *
+     * @param name The prefix of the thread names.
+     * @return The thread factory.
+     */
+    private static ThreadFactory createThreadFactory(String name) {
+        AtomicInteger count = new AtomicInteger();
+        return (Runnable task) -> {
+            Thread thread = new Thread(task, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Get the name of the pool.
+     *
+     * @return The name of the pool.
+     */
+    public String getName() {
+        return name_;
+    }
+
+    /**
+     * Does the pool use virtual threads.
+     *
+     * @return True, if and only if the workers and the tasks run on virtual
+     *         threads.
+     */
+    public boolean isVirtual() {
+        return virtual_;
+    }
+
+    /**
+     * Get the number of the running workers.
+     *
+     * @return The number of the started workers which have not stopped.
+     */
+    public int getWorkerCount() {
+        return handles_.size();
+    }
+
+    /**
+     * Start a worker.
+     *
+     * @param name   The name of the worker.
+     * @param worker The started worker.
+     * @return The handle of the started worker.
+     * @throws IllegalArgumentException The worker was undefined.
+     * @throws java.util.concurrent.RejectedExecutionException The pool has been
+     *                                                          shut down.
+     */
+    public Handle start(@NotNull String name, @NotNull Worker worker) throws IllegalArgumentException {
+        if (worker == null) {
+            throw new IllegalArgumentException("Undefined worker");
+        }
+        Handle handle = new Handle(name == null ? name_ : name, worker);
+        handles_.add(handle);
+        try {
+            executor_.execute(handle::run);
+        } catch (RuntimeException exception) {
+            handles_.remove(handle);
+            throw exception;
+        }
+        return handle;
+    }
+
+    /**
+     * Submit a task.
+     *
+     * @param <RESULT> The type of the result of the task.
+     * @param task     The submitted task.
+     * @return The future of the result of the task.
+     * @throws java.util.concurrent.RejectedExecutionException The pool has been
+     *                                                          shut down.
+     */
+    public <RESULT> Future<RESULT> submit(@NotNull Callable<RESULT> task) {
+        return executor_.submit(task);
+    }
+
+    /**
+     * Run the tasks concurrently, and wait for all of them to complete. If the
+     * wait is interrupted, the unfinished tasks are cancelled.
+     *
+     * @param <RESULT> The type of the results of the tasks.
+     * @param tasks    The tasks.
+     * @return The completed futures of the tasks in the order of the tasks.
+     * @throws InterruptedException The wait was interrupted.
+     */
+    public <RESULT> List<Future<RESULT>> invokeAll(@NotNull Collection<? extends Callable<RESULT>> tasks)
+            throws InterruptedException {
+        return executor_.invokeAll(tasks);
+    }
+
+    /**
+     * Shut down the pool. The workers are cancelled, and the pool waits for the
+     * workers and the tasks to stop for the given time before interrupting the
+     * remaining tasks.
+     *
+     * @param timeout The maximum wait time.
+     */
+    public void shutdown(@NotNull Duration timeout) {
+        for (Handle handle : handles_) {
+            handle.cancel();
+        }
+        executor_.shutdown();
+        try {
+            if (!executor_.awaitTermination(timeout.toNanos(), TimeUnit.NANOSECONDS)) {
+                executor_.shutdownNow();
+            }
+        } catch (InterruptedException exception) {
+            executor_.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Has the pool been shut down.
+     *
+     * @return True, if and only if the pool does not accept new workers or tasks.
+     */
+    public boolean isShutdown() {
+        return executor_.isShutdown();
+    }
+
+    /**
+     * Shut down the pool waiting the default shutdown timeout.
+     */
+    @Override
+    public void close() {
+        shutdown(DEFAULT_SHUTDOWN_TIMEOUT);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("WorkerPool[%s; %s threads; workers: %d]", name_, virtual_ ? "virtual" : "platform",
+                handles_.size());
+    }
+}
@@ -0,0 +1,6 @@
+/**
+ * The work package implements the execution of the background work. The
+ * long-running workers and the short tasks run on a worker pool, which uses
+ * virtual threads when the runtime provides them.
+*/
+package com.kautiainen.antti.reaktor.birdnest.work;
@@ -0,0 +1,140 @@
+package com.kautiainen.antti.reaktor.birdnest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+
+import org.junit.Test;
+
+/**
+ * Testing AdaptivePollScheduler.
+ */
+public class AdaptivePollSchedulerTest {
+
+    /**
+     * The clock advanced by the test.
+     */
+    private static class TestClock extends Clock {
+
+        /**
+         * The current time.
+         */
+        private Instant now_;
+
+        /**
+         * Create a new test clock.
+         *
+         * @param now The initial time.
+         */
+        TestClock(Instant now) {
+            this.now_ = now;
+        }
+
+        /**
+         * Advance the clock.
+         *
+         * @param amount The advanced duration.
+         */
+        void advance(Duration amount) {
+            now_ = now_.plus(amount);
+        }
+
+        @Override
+        public Instant instant() {
+            return now_;
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+    }
+
+    /**
+     * The start of the emitted captures.
+     */
+    private static final Instant START = Instant.parse("2022-12-20T10:00:00.000Z");
+
+    /**
+     * Get the latest capture available at the given time.
+     *
+     * @param now     The fetch time.
+     * @param period  The emission period.
+     * @param latency The time from the capture to its availability.
+     * @return The capture time of the latest available capture.
+     */
+    private static ZonedDateTime getAvailableCapture(Instant now, Duration period, Duration latency) {
+        long frame = Duration.between(START.plus(latency), now).toNanos() / period.toNanos();
+        return START.plusNanos(frame * period.toNanos()).atZone(ZoneOffset.UTC);
+    }
+
+    @Test
+    public void testConvergence() {
+        Duration period = Duration.ofSeconds(2);
+        Duration latency = Duration.ofMillis(300);
+        TestClock clock = new TestClock(START.plusMillis(700));
+        AdaptivePollScheduler scheduler = new AdaptivePollScheduler(Duration.ofMillis(1500), Duration.ofMillis(50),
+                clock);
+
+        ZonedDateTime last = null;
+        for (int i = 0; i < 100; i++) {
+            ZonedDateTime capture = getAvailableCapture(clock.instant(), period, latency);
+            scheduler.recordFetch(capture, !capture.equals(last));
+            last = capture;
+            clock.advance(scheduler.nextDelay());
+        }
+
+        assertEquals(period.toMillis(), scheduler.getPeriod().toMillis());
+        assertEquals(0, scheduler.getMissedFrameCount());
+        assertEquals(0.0, scheduler.getFrameMissRate(), 0.0);
+        assertTrue(scheduler.getObservedFrameCount() > 60);
+        // The captures are fetched shortly after they become available.
+        assertTrue(scheduler.getAverageDataAge().toString(),
+                scheduler.getAverageDataAge().compareTo(latency.plusMillis(150)) < 0);
+        assertTrue(scheduler.getAverageDataAge().compareTo(latency) >= 0);
+        // The early fetches are a small fraction of all fetches.
+        assertTrue(scheduler.toString(), scheduler.getRepeatedFetchCount() < scheduler.getObservedFrameCount() / 2);
+    }
+
+    @Test
+    public void testRepeatAndSkip() {
+        TestClock clock = new TestClock(START.plusMillis(300));
+        Duration guard = Duration.ofMillis(50);
+        AdaptivePollScheduler scheduler = new AdaptivePollScheduler(Duration.ofSeconds(2), guard, clock);
+        ZonedDateTime first = START.atZone(ZoneOffset.UTC);
+
+        scheduler.recordFetch(first, true);
+        clock.advance(Duration.ofSeconds(2));
+        scheduler.recordFetch(first.plusSeconds(2), true);
+        assertEquals(Duration.ofSeconds(2), scheduler.getPeriod());
+
+        // The same capture again retries after the guard time, backing off.
+        clock.advance(Duration.ofMillis(1990));
+        scheduler.recordFetch(first.plusSeconds(2), false);
+        assertEquals(guard, scheduler.nextDelay());
+        clock.advance(guard);
+        scheduler.recordFetch(first.plusSeconds(2), false);
+        assertEquals(guard.multipliedBy(2), scheduler.nextDelay());
+        assertEquals(2, scheduler.getRepeatedFetchCount());
+
+        // The skipped capture is counted as missed.
+        clock.advance(Duration.ofSeconds(2));
+        scheduler.recordFetch(first.plusSeconds(6), true);
+        assertEquals(1, scheduler.getMissedFrameCount());
+        assertEquals(0.25, scheduler.getFrameMissRate(), 1e-9);
+        assertEquals(Duration.ofSeconds(2), scheduler.getPeriod());
+        // The next capture is expected a period after the availability of the latest.
+        assertEquals(Duration.ofMillis(2050), scheduler.nextDelay());
+    }
+}
@@ -0,0 +1,92 @@
+package com.kautiainen.antti.reaktor.birdnest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.time.ZonedDateTime;
+import java.util.Collections;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Testing the capture events of DronesDataSource received through
+ * CaptureQueue.
+ */
+public class CaptureQueueTest {
+
+    /**
+     * The capture time of the first capture.
+     */
+    private static final ZonedDateTime START = ZonedDateTime.parse("2022-12-20T10:00:00.000Z");
+
+    /**
+     * Create a report of a capture.
+     *
+     * @param index The index of the capture.
+     * @return The report of the capture with a single drone.
+     */
+    private static DroneReport createReport(int index) {
+        ZonedDateTime captureTime = START.plusSeconds(2L * index);
+        return new DroneReport(captureTime, Collections.singletonList(
+                new DroneObservation("SN-1", captureTime, 250000 + index, 250000, 100)));
+    }
+
+    @Test
+    public void testEventPerCapture() throws Exception {
+        DronesDataSource source = new DronesDataSource("http://localhost/birdnest/drones");
+        Semaphore received = new Semaphore(0);
+        CaptureQueue queue = new CaptureQueue(CaptureQueue.DEFAULT_CAPACITY, received::release);
+        source.subscribeCaptures(queue);
+
+        source.handleReport(createReport(0));
+        // The repeated capture does not publish an event.
+        source.handleReport(createReport(0));
+        source.handleReport(createReport(1));
+
+        assertTrue(received.tryAcquire(2, 5, TimeUnit.SECONDS));
+        CaptureEvent first = queue.poll();
+        CaptureEvent second = queue.poll();
+        assertNull(queue.poll());
+        assertEquals(START, first.getCaptureTime());
+        assertEquals(first.getSequence() + 1, second.getSequence());
+        assertEquals(Collections.singleton("SN-1"), second.getDelta().getMoved().keySet());
+        assertEquals(0, source.getDroppedCaptureEventCount());
+
+        source.closeCapturePublisher();
+        assertTrue(received.tryAcquire(5, TimeUnit.SECONDS));
+        assertTrue(queue.isCompleted());
+    }
+
+    @Test
+    public void testLaggingSubscriber() throws Exception {
+        DronesDataSource source = new DronesDataSource("http://localhost/birdnest/drones");
+        Semaphore received = new Semaphore(0);
+        CaptureQueue queue = new CaptureQueue(1, received::release);
+        source.subscribeCaptures(queue);
+
+        // The queue requests a single event, and the publisher buffers the rest
+        // until its buffer is full.
+        int captures = DronesDataSource.DEFAULT_CAPTURE_BUFFER_SIZE + 4;
+        for (int i = 0; i < captures; i++) {
+            source.handleReport(createReport(i));
+        }
+        assertTrue(received.tryAcquire(5, TimeUnit.SECONDS));
+        long dropped = source.getDroppedCaptureEventCount();
+        assertTrue(dropped > 0);
+
+        // Polling requests the buffered events.
+        long lastSequence = 0;
+        for (long i = 0; i < captures - dropped; i++) {
+            if (i > 0) {
+                assertTrue(received.tryAcquire(5, TimeUnit.SECONDS));
+            }
+            CaptureEvent event = queue.poll();
+            assertTrue(event.getSequence() > lastSequence);
+            lastSequence = event.getSequence();
+        }
+        assertNull(queue.poll());
+    }
+}
@@ -0,0 +1,50 @@
+package com.kautiainen.antti.reaktor.birdnest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.time.ZonedDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+/**
+ * Testing DroneDelta.
+ */
+public class DroneDeltaTest {
+
+    @Test
+    public void testBetween() {
+        ZonedDateTime first = ZonedDateTime.parse("2022-12-20T10:00:00.000Z");
+        ZonedDateTime second = first.plusSeconds(2);
+        DroneReport previous = new DroneReport(first, Arrays.asList(
+                new DroneObservation("SN-STAY", first, 1000, 1000, 100),
+                new DroneObservation("SN-MOVE", first, 2000, 2000, 100),
+                new DroneObservation("SN-LEAVE", first, 3000, 3000, 100)));
+        DroneReport current = new DroneReport(second, Arrays.asList(
+                new DroneObservation("SN-ENTER", second, 4000, 4000, 100),
+                new DroneObservation("SN-STAY", second, 1000, 1000, 100),
+                new DroneObservation("SN-MOVE", second, 2500, 2000, 100)));
+
+        DroneDelta delta = DroneDelta.between(previous, current);
+
+        assertEquals(first, delta.getPreviousCaptureTime());
+        assertEquals(second, delta.getCaptureTime());
+        assertEquals(Collections.singleton("SN-ENTER"), delta.getEntered().keySet());
+        assertEquals(Collections.singleton("SN-MOVE"), delta.getMoved().keySet());
+        assertEquals(2500, delta.getMoved().get("SN-MOVE").getX(), 0.0);
+        assertEquals(Collections.singleton("SN-LEAVE"), delta.getLeft().keySet());
+        assertEquals(1, delta.getUnchangedCount());
+    }
+
+    @Test
+    public void testFirstCapture() {
+        ZonedDateTime time = ZonedDateTime.parse("2022-12-20T10:00:00.000Z");
+        DroneDelta delta = DroneDelta.between(null, new DroneReport(time, Collections.emptyList()));
+
+        assertNull(delta.getPreviousCaptureTime());
+        assertTrue(delta.isEmpty());
+    }
+}
@@ -0,0 +1,166 @@
+package com.kautiainen.antti.reaktor.birdnest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.ZonedDateTime;
+import java.util.List;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+
+/**
+ * Testing DroneReportReader.
+ */
+public class DroneReportReaderTest {
+
+    /**
+     * The report with two captures. The latter capture is the most recent.
+     */
+    public static final String REPORT = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+            + "<report><deviceInformation deviceId=\"GUARDB1RD\"><listenRange>500000</listenRange></deviceInformation>"
+            + "<capture snapshotTimestamp=\"2022-12-20T10:00:00.000Z\">"
+            + "<drone><serialNumber>SN-OLD</serialNumber><xPosition>250000</xPosition><yPosition>250000</yPosition>"
+            + "<zPosition>4000</zPosition></drone>"
+            + "</capture>"
+            + "<capture snapshotTimestamp=\"2022-12-20T10:00:02.000Z\">"
+            + "<drone><serialNumber>SN-INSIDE</serialNumber><model>HRP-DRP 1 Pro</model>"
+            + "<xPosition>260000.5</xPosition><yPosition>240000.25</yPosition><zPosition>4100.1</zPosition></drone>"
+            + "<drone><serialNumber>SN-EDGE</serialNumber>"
+            + "<xPosition>250000</xPosition><yPosition>350000</yPosition><zPosition>4200</zPosition></drone>"
+            + "<drone><serialNumber> SN-OUTSIDE </serialNumber>"
+            + "<xPosition>350000</xPosition><yPosition>350000</yPosition><zPosition>4300</zPosition></drone>"
+            + "</capture></report>";
+
+    /**
+     * Create the input stream of the given content.
+     * 
+     * @param content The content.
+     * @return The input stream containing UTF-8 encoded content.
+     */
+    public static InputStream stream(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Create the reader with the default tag names.
+     * 
+     * @return The reader with default tag names.
+     */
+    public static DroneReportReader createReader() {
+        return new DroneReportReader("report", "capture", "snapshotTimestamp", "drone", "serialNumber",
+                "xPosition", "yPosition", "zPosition");
+    }
+
+    @Test
+    public void testReadMostRecentCapture() {
+        DroneReport report = createReader().apply(stream(REPORT));
+
+        assertNotNull(report);
+        assertEquals(ZonedDateTime.parse("2022-12-20T10:00:02.000Z"), report.getCaptureTime());
+        List<DroneObservation> drones = report.getDrones();
+        assertEquals(3, drones.size());
+        assertEquals("SN-INSIDE", drones.get(0).getSerialNumber());
+        assertEquals(260000.5, drones.get(0).getX(), 0.0);
+        assertEquals(240000.25, drones.get(0).getY(), 0.0);
+        assertEquals(4100.1, drones.get(0).getZ(), 0.0);
+        assertEquals("SN-OUTSIDE", drones.get(2).getSerialNumber());
+    }
+
+    @Test
+    public void testInvalidReport() {
+        assertNull(createReader().apply(stream("<other><capture snapshotTimestamp=\"2022-12-20T10:00:02.000Z\"/></other>")));
+        assertNull(createReader().apply(stream("<report><capture>")));
+    }
+
+    /**
+     * The report with drones having malformed positions.
+     */
+    public static final String MALFORMED_REPORT = REPORT
+            .replace("<xPosition>250000</xPosition><yPosition>350000</yPosition>",
+                    "<xPosition>250000</xPosition><yPosition>35O000</yPosition>")
+            .replace("<zPosition>4000</zPosition>", "<zPosition>4,000</zPosition>")
+            .replace("<zPosition>4300</zPosition>", "<zPosition>high</zPosition>");
+
+    @Test
+    public void testStreamingMatchesDocument() throws Exception {
+        assertStreamingMatchesDocument(REPORT, 2);
+    }
+
+    @Test
+    public void testMalformedDroneSkipped() throws Exception {
+        // Only the drones with malformed positions are skipped.
+        assertStreamingMatchesDocument(MALFORMED_REPORT, 1);
+        DroneReport report = createReader().apply(stream(MALFORMED_REPORT));
+        assertNotNull(report);
+        assertEquals(1, report.getDrones().size());
+        assertEquals("SN-INSIDE", report.getDrones().get(0).getSerialNumber());
+    }
+
+    /**
+     * The report with drones having duplicate child elements.
+     */
+    public static final String DUPLICATE_REPORT = REPORT
+            .replace("<xPosition>260000.5</xPosition>", "<xPosition>260000.5</xPosition><xPosition>250000</xPosition>")
+            .replace("<zPosition>4200</zPosition>", "<zPosition>4200</zPosition><zPosition>4250</zPosition>")
+            .replace("<serialNumber> SN-OUTSIDE </serialNumber>",
+                    "<serialNumber> SN-OUTSIDE </serialNumber><serialNumber>SN-OTHER</serialNumber>");
+
+    @Test
+    public void testDuplicateChildren() throws Exception {
+        // The drones with duplicate serial numbers or positions are skipped, and
+        // the duplicate altitude is ignored.
+        assertStreamingMatchesDocument(DUPLICATE_REPORT, 1);
+        DroneReport report = createReader().apply(stream(DUPLICATE_REPORT));
+        assertNotNull(report);
+        assertEquals(1, report.getDrones().size());
+        assertEquals("SN-EDGE", report.getDrones().get(0).getSerialNumber());
+        assertTrue(Double.isNaN(report.getDrones().get(0).getZ()));
+    }
+
+    /**
+     * Assert the streaming reader and the document reader give the same
+     * violators.
+     *
+     * @param content       The report.
+     * @param violatorCount The expected number of the violators.
+     */
+    private static void assertStreamingMatchesDocument(String content, int violatorCount) throws Exception {
+        DronesDataSource domSource = new DronesDataSource("http://localhost/birdnest/drones");
+        Document document = DronesDataSource.getDocumentReader().apply(stream(content));
+        domSource.handleData(document);
+
+        DronesDataSource streamingSource = new DronesDataSource("http://localhost/birdnest/drones");
+        streamingSource.handleReport(createReader().apply(stream(content)));
+
+        assertEquals(domSource.getUpdateTime(), streamingSource.getUpdateTime());
+        List<DroneObservation> expected = domSource.getMatchingDrones();
+        List<DroneObservation> result = streamingSource.getMatchingDrones();
+        assertEquals(violatorCount, expected.size());
+        assertEquals(expected.size(), result.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getSerialNumber(), result.get(i).getSerialNumber());
+            assertEquals(domSource.getDroneDistanceToNest(expected.get(i)),
+                    streamingSource.getDroneDistanceToNest(result.get(i)), 0.0);
+        }
+    }
+
+    @Test
+    public void testUnchangedCaptureIsSkipped() throws Exception {
+        DronesDataSource source = new DronesDataSource("http://localhost/birdnest/drones");
+        source.handleReport(createReader().apply(stream(REPORT)));
+        DroneReport snapshot = source.getSnapshot();
+
+        assertFalse(source.handleReport(createReader().apply(stream(REPORT))));
+        assertFalse(source.handleData(DronesDataSource.getDocumentReader().apply(stream(REPORT))));
+        assertEquals(1, source.getProcessedCaptureCount());
+        assertEquals(2, source.getSkippedCaptureCount());
+        assertEquals(snapshot, source.getSnapshot());
+    }
+}
@@ -0,0 +1,155 @@
+package com.kautiainen.antti.reaktor.birdnest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.kautiainen.antti.reaktor.birdnest.data.CaptureJournal;
+import com.kautiainen.antti.reaktor.birdnest.data.JournalDataSource;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Testing the change detection of DronesDataSource against a local HTTP stub
+ * of the drone report service.
+ */
+public class DronesDataSourceTest {
+
+    /**
+     * The stub server.
+     */
+    private HttpServer server;
+
+    /**
+     * The report served by the stub.
+     */
+    private volatile String report = DroneReportReaderTest.REPORT;
+
+    /**
+     * The number of the requests served by the stub.
+     */
+    private final AtomicInteger requests = new AtomicInteger();
+
+    /**
+     * The folder of the journals.
+     */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * The tested source.
+     */
+    private DronesDataSource source;
+
+    @Before
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", (HttpExchange exchange) -> {
+            requests.incrementAndGet();
+            byte[] body = report.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/xml");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+        source = new DronesDataSource(
+                URI.create("http://localhost:" + server.getAddress().getPort() + "/birdnest/drones"));
+    }
+
+    @After
+    public void stopServer() {
+        server.stop(0);
+    }
+
+    /**
+     * Test the updates of the identical, the changed, and the new reports.
+     *
+     * @param mode The parser mode.
+     */
+    private void assertUpdates(DronesDataSource.ParserMode mode) throws Exception {
+        source.setParserMode(mode);
+        source.setChangeDetectionEnabled(true);
+        assertTrue(source.update());
+        assertEquals(1, source.getProcessedCaptureCount());
+
+        // The identical report is skipped without parsing.
+        assertFalse(source.update());
+        assertEquals(1, source.getSkippedCaptureCount());
+
+        // The changed report of the same capture is skipped after parsing.
+        report = DroneReportReaderTest.REPORT.replace("GUARDB1RD", "GUARDB2RD");
+        assertFalse(source.update());
+        assertEquals(2, source.getSkippedCaptureCount());
+        assertEquals(1, source.getProcessedCaptureCount());
+
+        // The new capture replaces the snapshot.
+        report = DroneReportReaderTest.REPORT.replace("2022-12-20T10:00:02.000Z", "2022-12-20T10:00:04.000Z");
+        assertTrue(source.update());
+        assertEquals(2, source.getProcessedCaptureCount());
+        assertEquals(ZonedDateTime.parse("2022-12-20T10:00:04.000Z"), source.getUpdateTime());
+        assertEquals(2, source.getMatchingDrones().size());
+    }
+
+    @Test
+    public void testDocumentChangeDetection() throws Exception {
+        assertTrue(source.isChangeDetectionEnabled());
+        assertUpdates(DronesDataSource.ParserMode.DOM);
+    }
+
+    @Test
+    public void testStreamingChangeDetection() throws Exception {
+        assertUpdates(DronesDataSource.ParserMode.STREAMING);
+    }
+
+    @Test
+    public void testStreamingWithoutChangeDetection() throws Exception {
+        // The streamed report is not buffered for the change detection by default.
+        source.setParserMode(DronesDataSource.ParserMode.STREAMING);
+        assertFalse(source.isChangeDetectionEnabled());
+        assertTrue(source.update());
+
+        // The identical report is skipped by the capture time.
+        assertFalse(source.update());
+        assertEquals(1, source.getSkippedCaptureCount());
+        assertEquals(1, source.getProcessedCaptureCount());
+    }
+
+    @Test
+    public void testJournalReplay() throws Exception {
+        Path directory = folder.newFolder("journal").toPath();
+        Instant start = Instant.parse("2022-12-20T10:00:02Z");
+        try (CaptureJournal journal = new CaptureJournal(directory)) {
+            journal.append(start, DroneReportReaderTest.REPORT.getBytes(StandardCharsets.UTF_8));
+            journal.append(start.plusSeconds(2), DroneReportReaderTest.REPORT
+                    .replace("2022-12-20T10:00:02.000Z", "2022-12-20T10:00:04.000Z").getBytes(StandardCharsets.UTF_8));
+        }
+
+        // The replayed bodies are handled in place of the responses.
+        source.setBodySource(new JournalDataSource<>(directory, (java.io.InputStream in) -> in,
+                JournalDataSource.UNLIMITED_SPEED));
+        assertTrue(source.update());
+        assertEquals(ZonedDateTime.parse("2022-12-20T10:00:02.000Z"), source.getUpdateTime());
+        assertTrue(source.update());
+        assertEquals(ZonedDateTime.parse("2022-12-20T10:00:04.000Z"), source.getUpdateTime());
+        assertEquals(2, source.getMatchingDrones().size());
+        assertEquals(0, requests.get());
+    }
+}
@@ -0,0 +1,185 @@
+package com.kautiainen.antti.reaktor.birdnest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.System.Logger.Level;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import com.kautiainen.antti.reaktor.birdnest.spatial.GridIndex;
+
+/**
+ * Testing NdzEvaluator and ColumnarDroneSnapshot.
+ */
+public class NdzEvaluatorTest {
+
+    /**
+     * The system property enabling the benchmarks, e.g.
+     * {@code mvn test -Dbirdnest.benchmarks=true}.
+     */
+    private static final String BENCHMARKS_PROPERTY = "birdnest.benchmarks";
+
+    /**
+     * The X and Y coordinate of the nest in millimeters.
+     */
+    private static final double NEST = 250000;
+
+    /**
+     * The threshold range of the NDZ in millimeters.
+     */
+    private static final double THRESHOLD = 100000;
+
+    /**
+     * The evaluator of the NDZ around the nest.
+     */
+    private final NdzEvaluator evaluator = new NdzEvaluator(NEST, NEST, THRESHOLD);
+
+    @Test
+    public void testBoundary() {
+        // The ceiling of the distance is compared with the threshold.
+        assertTrue(evaluator.test(NEST + 99999.9, NEST));
+        assertTrue(evaluator.test(NEST, NEST - 100000));
+        assertFalse(evaluator.test(NEST - 100000.4, NEST));
+        assertTrue(evaluator.test(NEST + 60000, NEST + 80000));
+        assertFalse(evaluator.test(NEST + 60000, NEST + 80000.4));
+
+        // The fraction of the threshold does not extend the NDZ.
+        NdzEvaluator fractional = new NdzEvaluator(NEST, NEST, THRESHOLD + 0.5);
+        assertTrue(fractional.test(NEST + 100000, NEST));
+        assertFalse(fractional.test(NEST + 100000.4, NEST));
+
+        // The columns are evaluated with the same rule.
+        double[] x = { NEST + 99999.9, NEST + 100000, NEST + 100000.4 };
+        double[] y = { NEST, NEST, NEST };
+        BitSet expected = new BitSet();
+        expected.set(0, 2);
+        assertEquals(expected, evaluator.evaluate(x, y, x.length));
+        assertEquals(expected, evaluator.evaluate(new GridIndex(x, y, x.length)));
+    }
+
+    @Test
+    public void testPackedBits() {
+        // The violators are at the edges of the packed words.
+        ZonedDateTime captureTime = ZonedDateTime.parse("2022-12-20T10:00:02.000Z");
+        int count = 130;
+        List<DroneObservation> drones = new ArrayList<>(count);
+        BitSet expected = new BitSet();
+        for (int i = 0; i < count; i++) {
+            boolean inside = i == 0 || i == 63 || i == 64 || i == 127 || i == 129;
+            drones.add(new DroneObservation("SN-" + i, captureTime, NEST + (inside ? 1000 + i : 200000 + i), NEST,
+                    i));
+            if (inside) {
+                expected.set(i);
+            }
+        }
+
+        ColumnarDroneSnapshot snapshot = ColumnarDroneSnapshot.of(captureTime, drones);
+        assertEquals(captureTime, snapshot.getCaptureTime());
+        assertEquals(count, snapshot.size());
+        for (int i = 0; i < count; i++) {
+            assertEquals("SN-" + i, snapshot.getSerialNumber(i));
+            assertEquals(drones.get(i).getX(), snapshot.getX(i), 0.0);
+            assertEquals(NEST, snapshot.getY(i), 0.0);
+            assertEquals(i, snapshot.getZ(i), 0.0);
+        }
+
+        BitSet result = evaluator.evaluate(snapshot);
+        assertEquals(expected, result);
+        assertEquals(130, result.length());
+
+        // The positions beyond the count are not evaluated.
+        assertEquals(expected.get(0, 100), evaluator.evaluate(snapshot.getXColumn(), snapshot.getYColumn(), 100));
+    }
+
+    @Test
+    public void testGridIndex() {
+        Random random = new Random(42);
+        int count = 2000;
+        double[] x = new double[count], y = new double[count];
+        for (int i = 0; i < count; i++) {
+            x[i] = -20000 + random.nextDouble() * 540000;
+            y[i] = -20000 + random.nextDouble() * 540000;
+        }
+        // Some positions are exactly on the boundary.
+        x[0] = NEST + THRESHOLD;
+        y[0] = NEST;
+        x[1] = NEST;
+        y[1] = NEST - THRESHOLD - 0.4;
+
+        BitSet expected = evaluator.evaluate(x, y, count);
+        assertTrue(expected.get(0));
+        assertFalse(expected.get(1));
+        assertFalse(expected.isEmpty());
+        assertEquals(expected, evaluator.evaluate(new GridIndex(x, y, count)));
+        for (int i = 0; i < count; i++) {
+            assertEquals(evaluator.test(x[i], y[i]), expected.get(i));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testShortColumns() {
+        new ColumnarDroneSnapshot(null, 3, new String[3], new double[3], new double[2], new double[3]);
+    }
+
+    /**
+     * Test the drone with the per-drone rule the evaluator replaced.
+     *
+     * @param drone The tested drone.
+     * @return True, if and only if the ceiling of the distance of the drone to
+     *         the nest is within the threshold.
+     */
+    private static boolean testPerDrone(DroneObservation drone) {
+        double dx = drone.getX() - NEST, dy = drone.getY() - NEST;
+        return Math.ceil(Math.sqrt(dx * dx + dy * dy)) <= THRESHOLD;
+    }
+
+    /**
+     * Per-capture comparison of filtering the drone observations one by one and
+     * evaluating the columns of the snapshot. The benchmark is run only with the
+     * system property {@value #BENCHMARKS_PROPERTY}.
+     */
+    @Test
+    public void testEvaluationThroughput() {
+        Assume.assumeTrue(Boolean.getBoolean(BENCHMARKS_PROPERTY));
+        ZonedDateTime captureTime = ZonedDateTime.parse("2022-12-20T10:00:02.000Z");
+        Random random = new Random(42);
+        int count = 1000;
+        List<DroneObservation> drones = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            drones.add(new DroneObservation("SN-" + i, captureTime, random.nextDouble() * 500000,
+                    random.nextDouble() * 500000, 4000));
+        }
+        ColumnarDroneSnapshot snapshot = ColumnarDroneSnapshot.of(captureTime, drones);
+        assertEquals(drones.stream().filter(NdzEvaluatorTest::testPerDrone).count(),
+                evaluator.evaluate(snapshot).cardinality());
+
+        int rounds = 20000;
+        long[] elapsed = new long[2];
+        // The violators are counted, so the evaluations are not eliminated as
+        // dead code.
+        long violators = 0;
+        for (int warmup = 0; warmup < 2; warmup++) {
+            long startTime = System.nanoTime();
+            for (int i = 0; i < rounds; i++) {
+                violators += drones.stream().filter(NdzEvaluatorTest::testPerDrone).toList().size();
+            }
+            elapsed[0] = System.nanoTime() - startTime;
+            startTime = System.nanoTime();
+            for (int i = 0; i < rounds; i++) {
+                violators += evaluator.evaluate(snapshot).cardinality();
+            }
+            elapsed[1] = System.nanoTime() - startTime;
+        }
+        System.getLogger(NdzEvaluatorTest.class.getName()).log(Level.INFO,
+                "Evaluated {0} captures of {1} drones: per drone {2} ns/capture, columns {3} ns/capture, {4} violators",
+                rounds, count, elapsed[0] / rounds, elapsed[1] / rounds, violators);
+    }
+}
@@ -0,0 +1,321 @@
+package com.kautiainen.antti.reaktor.birdnest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.beans.PropertyDescriptor;
+import java.lang.System.Logger.Level;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.time.ZonedDateTime;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.json.JsonObject;
+import javax.json.JsonString;
+import javax.json.JsonValue;
+import javax.json.stream.JsonLocation;
+import javax.json.stream.JsonParser;
+import javax.json.stream.JsonParser.Event;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+/**
+ * Testing PilotBinder.
+ */
+public class PilotBinderTest {
+
+    /**
+     * The system property enabling the benchmarks, e.g.
+     * {@code mvn test -Dbirdnest.benchmarks=true}.
+     */
+    private static final String BENCHMARKS_PROPERTY = "birdnest.benchmarks";
+
+    /**
+     * The time of the violation.
+     */
+    private static final ZonedDateTime START = ZonedDateTime.parse("2022-12-20T10:00:00.000Z");
+
+    /**
+     * Create a JSON string.
+     *
+     * @param value The content of the string.
+     * @return The JSON string.
+     */
+    private static JsonString string(String value) {
+        return new JsonString() {
+
+            @Override
+            public ValueType getValueType() {
+                return ValueType.STRING;
+            }
+
+            @Override
+            public String getString() {
+                return value;
+            }
+
+            @Override
+            public CharSequence getChars() {
+                return value;
+            }
+
+            @Override
+            public String toString() {
+                return "\"" + value + "\"";
+            }
+        };
+    }
+
+    /**
+     * Create a JSON object backed by the map.
+     *
+     * @param fields The fields of the object.
+     * @return The JSON object.
+     */
+    private static JsonObject object(Map<String, JsonValue> fields) {
+        return (JsonObject) Proxy.newProxyInstance(JsonObject.class.getClassLoader(),
+                new Class<?>[] { JsonObject.class }, (Object proxy, Method method, Object[] args) -> {
+                    if (method.getName().equals("getValueType")) {
+                        return JsonValue.ValueType.OBJECT;
+                    }
+                    return method.invoke(fields, args);
+                });
+    }
+
+    /**
+     * Create the pilot data of the pilot service.
+     *
+     * @return The fields of the pilot data.
+     */
+    private static Map<String, JsonValue> pilotFields() {
+        Map<String, JsonValue> fields = new LinkedHashMap<>();
+        fields.put("pilotId", string("P-1"));
+        fields.put("firstName", string("Ada"));
+        fields.put("lastName", string("Lovelace"));
+        fields.put("phoneNumber", string("+358 50 123"));
+        fields.put("createdDt", string("2022-12-01T10:00:00.000Z"));
+        fields.put("email", string("ada@example.com"));
+        return fields;
+    }
+
+    /**
+     * JSON parser of the events.
+     */
+    private static class EventParser implements JsonParser {
+
+        /**
+         * The events and their string values.
+         */
+        private final Iterator<Object[]> events_;
+
+        /**
+         * The string value of the current event.
+         */
+        private String value_ = null;
+
+        /**
+         * Create a new parser.
+         *
+         * @param events The events with their string values.
+         */
+        EventParser(Object[]... events) {
+            this.events_ = Arrays.asList(events).iterator();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return events_.hasNext();
+        }
+
+        @Override
+        public Event next() {
+            Object[] event = events_.next();
+            value_ = event.length > 1 ? (String) event[1] : null;
+            return (Event) event[0];
+        }
+
+        @Override
+        public String getString() {
+            return value_;
+        }
+
+        @Override
+        public boolean isIntegralNumber() {
+            return new BigDecimal(value_).scale() <= 0;
+        }
+
+        @Override
+        public int getInt() {
+            return Integer.parseInt(value_);
+        }
+
+        @Override
+        public long getLong() {
+            return Long.parseLong(value_);
+        }
+
+        @Override
+        public BigDecimal getBigDecimal() {
+            return new BigDecimal(value_);
+        }
+
+        @Override
+        public JsonLocation getLocation() {
+            return null;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * Create an event.
+     *
+     * @param event The event.
+     * @param value The string value of the event.
+     * @return The event with its value.
+     */
+    private static Object[] event(Event event, String... value) {
+        return value.length == 0 ? new Object[] { event } : new Object[] { event, value[0] };
+    }
+
+    /**
+     * Create the pilot of the bound pilot data.
+     *
+     * @param pilot The bound pilot.
+     * @return The built pilot.
+     */
+    private static Pilot build(Pilot pilot) {
+        pilot.setDroneSerial("SN-1");
+        pilot.setClosestDistanceToNest(1000);
+        pilot.setViolationTime(START);
+        pilot.build();
+        return pilot;
+    }
+
+    @Test
+    public void testBindObject() {
+        PilotBinder binder = new PilotBinder();
+        Pilot pilot = build(binder.bind(object(pilotFields()), new Pilot()));
+        assertEquals("P-1", pilot.getPilotId());
+        assertEquals("Ada Lovelace", pilot.getName());
+        assertEquals("ada@example.com", pilot.getEmail());
+        assertEquals("+358 50 123", pilot.getPhoneNumber());
+        assertEquals(1, binder.getIgnoredCount());
+
+        // The JSON values of the bean setters are unquoted.
+        Pilot bean = new Pilot();
+        bean.setFirstName((JsonValue) string("Ada"));
+        bean.setPhoneNumber((JsonValue) JsonValue.NULL);
+        assertEquals("Ada", bean.getFirstName());
+        assertNull(bean.getPhoneNumber());
+    }
+
+    @Test
+    public void testBindParser() {
+        PilotBinder binder = new PilotBinder();
+        JsonParser parser = new EventParser(event(Event.START_OBJECT), event(Event.KEY_NAME, "pilotId"),
+                event(Event.VALUE_STRING, "P-1"), event(Event.KEY_NAME, "address"), event(Event.START_OBJECT),
+                event(Event.KEY_NAME, "lines"), event(Event.START_ARRAY), event(Event.VALUE_STRING, "Nest 1"),
+                event(Event.END_ARRAY), event(Event.END_OBJECT), event(Event.KEY_NAME, "firstName"),
+                event(Event.VALUE_STRING, "Ada"), event(Event.KEY_NAME, "lastName"),
+                event(Event.VALUE_STRING, "Lovelace"), event(Event.KEY_NAME, "phoneNumber"),
+                event(Event.VALUE_NULL), event(Event.KEY_NAME, "rank"), event(Event.VALUE_NUMBER, "3"),
+                event(Event.END_OBJECT), event(Event.START_OBJECT));
+        Pilot pilot = build(binder.bind(parser, new Pilot()));
+        assertEquals("P-1", pilot.getPilotId());
+        assertEquals("Ada Lovelace", pilot.getName());
+        assertNull(pilot.getPhoneNumber());
+        assertEquals(2, binder.getIgnoredCount());
+        // The parser is positioned after the pilot data.
+        assertSame(Event.START_OBJECT, parser.next());
+
+        try {
+            binder.bind(new EventParser(event(Event.START_OBJECT), event(Event.KEY_NAME, "pilotId")), new Pilot());
+            fail("The truncated pilot data was bound");
+        } catch (IllegalArgumentException exception) {
+            // The pilot data was invalid.
+        }
+    }
+
+    /**
+     * Bind the pilot data with the bean introspection of the pilot.
+     *
+     * @param json  The pilot data.
+     * @param pilot The pilot being built.
+     * @return The given pilot.
+     */
+    private static Pilot bindIntrospected(JsonObject json, Pilot pilot) {
+        for (Map.Entry<String, JsonValue> entry : json.entrySet()) {
+            try {
+                Method method = new PropertyDescriptor(entry.getKey(), Pilot.class).getWriteMethod();
+                if (method != null) {
+                    method.invoke(pilot, ((JsonString) entry.getValue()).getString());
+                }
+            } catch (ReflectiveOperationException | java.beans.IntrospectionException exception) {
+                // The property is not supported by the bean.
+            }
+        }
+        return pilot;
+    }
+
+    @Test
+    public void testIntrospectedBindingEquivalence() {
+        // The benchmark compares the bindings of the same pilot data.
+        JsonObject json = object(pilotFields());
+        List<String> expected = Arrays.asList("P-1", "Ada Lovelace", "ada@example.com", "+358 50 123");
+        for (Pilot pilot : Arrays.asList(new PilotBinder().bind(json, new Pilot()),
+                bindIntrospected(json, new Pilot()))) {
+            assertEquals(expected,
+                    Arrays.asList(pilot.getPilotId(), pilot.getName(), pilot.getEmail(), pilot.getPhoneNumber()));
+        }
+    }
+
+    /**
+     * Throughput comparison of the precompiled setters and the bean
+     * introspection binding the same pilot data. The benchmark is run only with
+     * the system property {@value #BENCHMARKS_PROPERTY}.
+     */
+    @Test
+    public void testBindingThroughput() {
+        Assume.assumeTrue(Boolean.getBoolean(BENCHMARKS_PROPERTY));
+        JsonObject json = object(pilotFields());
+        PilotBinder binder = new PilotBinder();
+        int rounds = 20000;
+        long[] elapsed = new long[2];
+        for (int warmup = 0; warmup < 2; warmup++) {
+            long startTime = System.nanoTime();
+            for (int i = 0; i < rounds; i++) {
+                binder.bind(json, new Pilot());
+            }
+            elapsed[0] = System.nanoTime() - startTime;
+            startTime = System.nanoTime();
+            for (int i = 0; i < rounds; i++) {
+                bindIntrospected(json, new Pilot());
+            }
+            elapsed[1] = System.nanoTime() - startTime;
+        }
+        System.getLogger(PilotBinderTest.class.getName()).log(Level.INFO,
+                "Bound {0} pilots: precompiled setters {1} ms, introspection {2} ms", rounds,
+                TimeUnit.NANOSECONDS.toMillis(elapsed[0]), TimeUnit.NANOSECONDS.toMillis(elapsed[1]));
+    }
+
+    @Test
+    public void testStructuredValueIgnored() {
+        PilotBinder binder = new PilotBinder();
+        Map<String, JsonValue> fields = pilotFields();
+        fields.put("createdDt", JsonValue.EMPTY_JSON_OBJECT);
+        build(binder.bind(object(fields), new Pilot()));
+        assertEquals(1, binder.getIgnoredCount());
+    }
+}
@@ -0,0 +1,300 @@
+package com.kautiainen.antti.reaktor.birdnest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.json.JsonObject;
+import javax.json.JsonValue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.kautiainen.antti.reaktor.birdnest.data.HttpClientRegistry;
+import com.kautiainen.antti.reaktor.birdnest.data.TtlCache;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Testing PilotLoader against a local HTTP stub of the pilot service.
+ */
+public class PilotLoaderTest {
+
+    /**
+     * The stub server.
+     */
+    private HttpServer server;
+
+    /**
+     * The number of requests by the requested drone serial.
+     */
+    private final Map<String, AtomicInteger> requests = new ConcurrentHashMap<>();
+
+    /**
+     * The number of the requests being handled.
+     */
+    private final AtomicInteger concurrent = new AtomicInteger();
+
+    /**
+     * The maximum number of the requests handled concurrently.
+     */
+    private final AtomicInteger maxConcurrent = new AtomicInteger();
+
+    /**
+     * The latch holding the responses of the slow serials.
+     */
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    /**
+     * The tested loader.
+     */
+    private PilotLoader loader;
+
+    @Before
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/birdnest/pilots/", (HttpExchange exchange) -> {
+            String path = exchange.getRequestURI().getPath();
+            String serial = path.substring(path.lastIndexOf('/') + 1);
+            requests.computeIfAbsent(serial, (String key) -> new AtomicInteger()).incrementAndGet();
+            maxConcurrent.accumulateAndGet(concurrent.incrementAndGet(), Math::max);
+            try {
+                if (serial.startsWith("SN-slow")) {
+                    release.await(10, TimeUnit.SECONDS);
+                } else if (serial.startsWith("SN-delay")) {
+                    // Injecting the latency of the serial "SN-delay-<milliseconds>-<id>".
+                    Thread.sleep(Long.parseLong(serial.split("-")[2]));
+                }
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+            } finally {
+                concurrent.decrementAndGet();
+            }
+            exchange.sendResponseHeaders(serial.startsWith("SN-failing") ? 503 : 404, -1);
+            exchange.close();
+        });
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+        loader = new PilotLoader(
+                URI.create("http://localhost:" + server.getAddress().getPort() + "/birdnest/pilots/"),
+                HttpClientRegistry.getDefault());
+        loader.setCache(new TtlCache<>(16, Duration.ofMinutes(30), Duration.ofMinutes(1)));
+    }
+
+    @After
+    public void stopServer() {
+        release.countDown();
+        server.stop(0);
+    }
+
+    /**
+     * Get the number of the requests of the drone serial.
+     *
+     * @param serial The drone serial.
+     * @return The number of the requests the server received.
+     */
+    private int getRequestCount(String serial) {
+        AtomicInteger count = requests.get(serial);
+        return count == null ? 0 : count.get();
+    }
+
+    @Test
+    public void testFailedLookupCaching() throws IOException {
+        loader.setResiliencePolicy(null);
+        for (int i = 0; i < 2; i++) {
+            try {
+                loader.getPilotData("SN-failing");
+                fail("The failing lookup succeeded");
+            } catch (FileNotFoundException exception) {
+                fail("The failing lookup was not found");
+            } catch (IOException exception) {
+                // The pilot data was not available.
+            }
+        }
+        assertEquals(1, getRequestCount("SN-failing"));
+
+        // The failure is requested again after it expires.
+        loader.getCache().invalidate("SN-failing");
+        try {
+            loader.getPilotData("SN-failing");
+            fail("The failing lookup succeeded");
+        } catch (IOException exception) {
+            assertEquals(2, getRequestCount("SN-failing"));
+        }
+    }
+
+    @Test
+    public void testNegativeCaching() throws IOException {
+        for (int i = 0; i < 3; i++) {
+            try {
+                loader.getPilotData("SN-missing");
+                fail("The missing pilot was found");
+            } catch (FileNotFoundException exception) {
+                // The pilot was not found.
+            }
+        }
+        // The not found status is not requested again until the failure expires.
+        assertEquals(1, getRequestCount("SN-missing"));
+        assertEquals(2, loader.getCache().getNegativeHitCount());
+    }
+
+    /**
+     * Wait until the condition holds.
+     *
+     * @param condition The awaited condition.
+     * @return True, if and only if the condition held before the timeout.
+     */
+    private static boolean waitFor(java.util.function.BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) {
+                return false;
+            }
+            Thread.sleep(1);
+        }
+        return true;
+    }
+
+    @Test
+    public void testCoalescing() throws Exception {
+        loader.setCache(null);
+        int callers = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(callers);
+        try {
+            List<Future<JsonObject>> results = new ArrayList<>();
+            for (int i = 0; i < callers; i++) {
+                results.add(executor.submit(() -> loader.getPilotData("SN-slow")));
+            }
+            assertTrue(waitFor(() -> loader.getCoalescedCount() == callers - 1));
+            release.countDown();
+
+            // All callers receive the failure of the single request.
+            for (Future<JsonObject> result : results) {
+                try {
+                    result.get(5, TimeUnit.SECONDS);
+                    fail("The missing pilot was found");
+                } catch (ExecutionException exception) {
+                    assertTrue(exception.getCause() instanceof FileNotFoundException);
+                }
+            }
+            assertEquals(1, getRequestCount("SN-slow"));
+            assertEquals(0, loader.getInFlightCount());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testCancellation() throws Exception {
+        loader.setCache(null);
+        CompletableFuture<JsonObject> first = loader.getPilotDataAsync("SN-slow");
+        CompletableFuture<JsonObject> second = loader.getPilotDataAsync("SN-slow");
+        assertTrue(waitFor(() -> getRequestCount("SN-slow") == 1));
+
+        // The remaining caller keeps the request in flight.
+        first.cancel(true);
+        assertFalse(second.isDone());
+        assertEquals(1, loader.getInFlightCount());
+
+        // The request is abandoned, when all callers have left.
+        second.cancel(true);
+        assertEquals(0, loader.getInFlightCount());
+        CompletableFuture<JsonObject> third = loader.getPilotDataAsync("SN-slow");
+        assertTrue(waitFor(() -> getRequestCount("SN-slow") == 2));
+        release.countDown();
+        try {
+            third.get(5, TimeUnit.SECONDS);
+            fail("The missing pilot was found");
+        } catch (ExecutionException exception) {
+            assertTrue(exception.getCause() instanceof FileNotFoundException);
+        }
+    }
+
+    @Test
+    public void testResolveAllBoundedConcurrency() throws Exception {
+        loader.setMaxInFlight(3);
+        List<String> serials = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+            serials.add("SN-delay-50-" + i);
+        }
+        // The duplicate serials are resolved once.
+        serials.add("SN-delay-50-0");
+        Map<String, Throwable> failures = new ConcurrentHashMap<>();
+        Map<String, JsonObject> resolved = loader.resolveAll(serials, Duration.ofSeconds(10), null, failures::put)
+                .get(10, TimeUnit.SECONDS);
+
+        assertTrue(resolved.isEmpty());
+        assertEquals(12, failures.size());
+        for (Throwable failure : failures.values()) {
+            assertTrue(failure instanceof FileNotFoundException);
+        }
+        assertEquals(1, getRequestCount("SN-delay-50-0"));
+        assertTrue("Too many lookups in flight: " + maxConcurrent.get(), maxConcurrent.get() <= 3);
+        assertEquals(0, loader.getInFlightCount());
+    }
+
+    @Test
+    public void testResolveAllPartialDelivery() throws Exception {
+        loader.getCache().put("SN-cached", JsonValue.EMPTY_JSON_OBJECT);
+        List<String> delivered = java.util.Collections.synchronizedList(new ArrayList<>());
+        Map<String, Throwable> failures = new ConcurrentHashMap<>();
+        CompletableFuture<Map<String, JsonObject>> result = loader.resolveAll(
+                Arrays.asList("SN-slow", "SN-fast", "SN-cached"), Duration.ofMinutes(1),
+                (String serial, JsonObject data) -> delivered.add(serial), (String serial, Throwable failure) -> {
+                    delivered.add(serial);
+                    failures.put(serial, failure);
+                });
+
+        // The fast lookups are delivered while the slow lookup is held.
+        assertTrue(waitFor(() -> delivered.size() == 2));
+        assertFalse(result.isDone());
+        assertFalse(delivered.contains("SN-slow"));
+        assertTrue(failures.get("SN-fast") instanceof FileNotFoundException);
+
+        // The result is completed, when the slow lookup is delivered.
+        release.countDown();
+        Map<String, JsonObject> resolved = result.get(10, TimeUnit.SECONDS);
+        assertEquals(Arrays.asList("SN-cached"), new ArrayList<>(resolved.keySet()));
+        assertTrue(failures.get("SN-slow") instanceof FileNotFoundException);
+        assertEquals(Arrays.asList("SN-cached", "SN-fast", "SN-slow"), delivered.stream().sorted()
+                .collect(java.util.stream.Collectors.toList()));
+        assertTrue(waitFor(() -> loader.getInFlightCount() == 0));
+    }
+
+    @Test
+    public void testResolveAllDeadline() throws Exception {
+        loader.getCache().put("SN-cached", JsonValue.EMPTY_JSON_OBJECT);
+        Map<String, Throwable> failures = new ConcurrentHashMap<>();
+        // The slow lookup is held until the end of the test, so it cannot finish
+        // before the deadline.
+        Map<String, JsonObject> resolved = loader.resolveAll(Arrays.asList("SN-slow", "SN-cached"),
+                Duration.ofMillis(100), null, failures::put).get(10, TimeUnit.SECONDS);
+
+        assertEquals(Arrays.asList("SN-cached"), new ArrayList<>(resolved.keySet()));
+        assertEquals(1, failures.size());
+        assertTrue(failures.get("SN-slow") instanceof TimeoutException);
+        assertTrue(waitFor(() -> loader.getInFlightCount() == 0));
+    }
+}
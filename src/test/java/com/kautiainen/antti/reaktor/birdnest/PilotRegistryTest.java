@@ -0,0 +1,241 @@
+package com.kautiainen.antti.reaktor.birdnest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.System.Logger.Level;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+/**
+ * Testing PilotRegistry.
+ */
+public class PilotRegistryTest {
+
+    /**
+     * The time of the first sighting.
+     */
+    private static final ZonedDateTime START = ZonedDateTime.parse("2022-12-20T10:00:00.000Z");
+
+    /**
+     * Create a stub pilot of the drone.
+     *
+     * @param serial   The serial number of the drone.
+     * @param seenTime The time of the sighting.
+     * @param distance The distance to the nest.
+     * @return The created pilot.
+     */
+    private static Pilot createPilot(String serial, ZonedDateTime seenTime, double distance) {
+        return new Pilot(serial, seenTime, distance, null, null, null);
+    }
+
+    @Test
+    public void testSightings() {
+        PilotRegistry registry = new PilotRegistry();
+        Pilot pilot = createPilot("SN-1", START, 50000);
+        assertEquals("SN-1", pilot.getDroneSerialNumber());
+        assertSame(pilot, registry.add(pilot));
+        // The serials are compared by value.
+        assertSame(pilot, registry.get(new String("SN-1")));
+        assertFalse(registry.recordSighting("SN-2", START, 100));
+
+        // The closest distance only decreases, and the last seen time only moves
+        // forward.
+        assertTrue(registry.recordSighting("SN-1", START.plusSeconds(2), 40000));
+        assertTrue(registry.recordSighting("SN-1", START.plusSeconds(4), 45000));
+        assertTrue(registry.recordSighting("SN-1", START.plusSeconds(1), 30000));
+        assertEquals(30000, pilot.getClosestDistanceToNest(), 0.0);
+        assertEquals(START.plusSeconds(4), pilot.getLastSeenTime());
+        assertEquals(START.plusSeconds(4).plusMinutes(Pilot.DEFAULT_EXPIRATION_TIMEOUT), pilot.getExpireTime());
+
+        // Adding a pilot of a known drone merges the sighting.
+        assertSame(pilot, registry.add(createPilot("SN-1", START.plusSeconds(6), 20000)));
+        assertEquals(1, registry.size());
+        assertEquals(20000, pilot.getClosestDistanceToNest(), 0.0);
+        assertEquals(START.plusSeconds(6), pilot.getLastSeenTime());
+    }
+
+    @Test
+    public void testRemoveExpired() {
+        PilotRegistry registry = new PilotRegistry();
+        registry.add(createPilot("SN-1", START, 100));
+        registry.add(createPilot("SN-2", START.plusMinutes(5), 100));
+        registry.add(createPilot("SN-3", START, 100));
+
+        ZonedDateTime now = START.plusMinutes(Pilot.DEFAULT_EXPIRATION_TIMEOUT).plusSeconds(1);
+        assertEquals(1, registry.removeExpired(now, "SN-3"::equals));
+        assertNull(registry.get("SN-1"));
+        assertTrue(registry.contains("SN-2"));
+        assertTrue(registry.contains("SN-3"));
+        assertEquals(1, registry.removeExpired(now));
+        assertEquals(Arrays.asList("SN-2"), Arrays.asList(registry.getPilots().stream()
+                .map(Pilot::getDroneSerialNumber).toArray(String[]::new)));
+    }
+
+    @Test
+    public void testExpiryIndex() throws InterruptedException {
+        PilotRegistry registry = new PilotRegistry();
+        BlockingQueue<Pilot> expired = new LinkedBlockingQueue<>();
+        registry.subscribeExpiries(new Flow.Subscriber<Pilot>() {
+
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(Pilot item) {
+                expired.add(item);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+            }
+
+            @Override
+            public void onComplete() {
+            }
+        });
+        Pilot first = registry.add(createPilot("SN-1", START, 100));
+        registry.add(createPilot("SN-2", START.plusMinutes(1), 100));
+        Pilot removed = registry.add(createPilot("SN-3", START, 100));
+        assertEquals(START.plusMinutes(Pilot.DEFAULT_EXPIRATION_TIMEOUT).toInstant(), registry.getNextDeadline());
+
+        // The re-sighted pilot is re-scheduled at its deadline.
+        registry.recordSighting("SN-1", START.plusMinutes(5));
+        assertSame(removed, registry.remove("SN-3"));
+        ZonedDateTime now = START.plusMinutes(Pilot.DEFAULT_EXPIRATION_TIMEOUT).plusSeconds(1);
+        assertEquals(0, registry.removeExpired(now));
+        assertSame(first, registry.get("SN-1"));
+        assertEquals(2, registry.getScheduledCount());
+        assertEquals(START.plusMinutes(1 + Pilot.DEFAULT_EXPIRATION_TIMEOUT).toInstant(), registry.getNextDeadline());
+
+        // Only the pilots past their deadline are examined.
+        assertEquals(1, registry.removeExpired(now.plusMinutes(1)));
+        assertEquals("SN-2", expired.poll(5, TimeUnit.SECONDS).getDroneSerialNumber());
+        assertEquals(1, registry.removeExpired(now.plusMinutes(5)));
+        assertSame(first, expired.poll(5, TimeUnit.SECONDS));
+        assertTrue(registry.isEmpty());
+        assertNull(registry.getNextDeadline());
+        assertNull(expired.poll());
+        assertEquals(0, registry.getDroppedExpiryEventCount());
+        registry.closeExpiryPublisher();
+    }
+
+    /**
+     * Render the pilots of the registry as the page of the servlet.
+     *
+     * @param registry The rendered registry.
+     * @return The rendered table.
+     */
+    private static String render(PilotRegistry registry) {
+        StringWriter page = new StringWriter();
+        PrintWriter out = new PrintWriter(page);
+        out.append("<table>");
+        for (Pilot pilot : registry.getPilots()) {
+            out.append("<tr>");
+            for (Object data : Arrays.asList(pilot.getName(), pilot.getEmail(), pilot.getPhoneNumber(),
+                    pilot.getClosestDistanceToNest())) {
+                out.append("<td>").append(String.valueOf(data)).append("</td>");
+            }
+            out.append("</tr>");
+        }
+        out.append("</table>");
+        out.flush();
+        return page.toString();
+    }
+
+    /**
+     * Contention test of the page loads rendering the registry while the updater
+     * records sightings, and adds and removes pilots. The readers must never
+     * fail, and the sightings must not be lost.
+     */
+    @Test
+    public void testConcurrentReaders() throws Exception {
+        int readerCount = 16;
+        int pilotCount = 64;
+        int rounds = 2000;
+        PilotRegistry registry = new PilotRegistry();
+        for (int i = 0; i < pilotCount; i++) {
+            registry.add(createPilot("SN-" + i, START, 1000000));
+        }
+
+        AtomicBoolean writing = new AtomicBoolean(true);
+        CountDownLatch started = new CountDownLatch(readerCount + 1);
+        ExecutorService executor = Executors.newFixedThreadPool(readerCount + 1);
+        try {
+            List<Callable<Long>> readers = new ArrayList<>();
+            for (int i = 0; i < readerCount; i++) {
+                readers.add(() -> {
+                    started.countDown();
+                    started.await();
+                    long pageLoads = 0;
+                    while (writing.get()) {
+                        assertTrue(render(registry).endsWith("</table>"));
+                        pageLoads++;
+                    }
+                    return pageLoads;
+                });
+            }
+            List<Future<Long>> results = new ArrayList<>();
+            for (Callable<Long> reader : readers) {
+                results.add(executor.submit(reader));
+            }
+            long startTime = System.nanoTime();
+            Future<?> writer = executor.submit(() -> {
+                started.countDown();
+                started.await();
+                for (int round = 1; round <= rounds; round++) {
+                    ZonedDateTime seenTime = START.plusSeconds(round);
+                    for (int i = 0; i < pilotCount; i++) {
+                        registry.recordSighting("SN-" + i, seenTime, 1000000 - round);
+                    }
+                    // Churning a transient pilot.
+                    registry.add(createPilot("SN-transient", seenTime, 1000));
+                    registry.remove("SN-transient");
+                }
+                return null;
+            });
+            try {
+                writer.get(60, TimeUnit.SECONDS);
+            } finally {
+                writing.set(false);
+            }
+            long elapsed = System.nanoTime() - startTime;
+            long pageLoads = 0;
+            for (Future<Long> result : results) {
+                pageLoads += result.get(10, TimeUnit.SECONDS);
+            }
+
+            assertEquals(pilotCount, registry.size());
+            for (Pilot pilot : registry.getPilots()) {
+                assertEquals(1000000 - rounds, pilot.getClosestDistanceToNest(), 0.0);
+                assertEquals(START.plusSeconds(rounds), pilot.getLastSeenTime());
+            }
+            System.getLogger(PilotRegistryTest.class.getName()).log(Level.INFO,
+                    "{0} readers: {1} page loads, {2} sightings in {3} ms", readerCount, pageLoads,
+                    (long) rounds * pilotCount, TimeUnit.NANOSECONDS.toMillis(elapsed));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
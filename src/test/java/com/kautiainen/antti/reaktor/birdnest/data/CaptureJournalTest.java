@@ -0,0 +1,145 @@
+package com.kautiainen.antti.reaktor.birdnest.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Testing CaptureJournal and JournalDataSource.
+ */
+public class CaptureJournalTest {
+
+    /**
+     * The folder of the journals.
+     */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Read the stream as a string.
+     *
+     * @param in The stream.
+     * @return The content of the stream.
+     */
+    private static String read(InputStream in) {
+        try {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Test
+    public void testAppendAndRotate() throws IOException {
+        Path directory = folder.newFolder("journal").toPath();
+        Instant start = Instant.parse("2023-01-01T10:00:00Z");
+        try (CaptureJournal journal = new CaptureJournal(directory, 64, 3)) {
+            for (int i = 0; i < 10; i++) {
+                String content = "capture " + i + (i == 5 ? " with content longer than a segment".repeat(3) : "");
+                CaptureJournal.Record record = journal.append(start.plusSeconds(2 * i),
+                        new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)));
+                assertEquals(content, read(record.getInputStream()));
+            }
+            assertEquals(3, journal.getSegments().size());
+        }
+
+        List<CaptureJournal.Record> records = CaptureJournal.readAll(directory);
+        assertFalse(records.isEmpty());
+        CaptureJournal.Record last = records.get(records.size() - 1);
+        assertEquals("capture 9", read(last.getInputStream()));
+        assertEquals(start.plusSeconds(18), last.getTime());
+        for (int i = 1; i < records.size(); i++) {
+            assertEquals(records.get(i - 1).getTime().plusSeconds(2), records.get(i).getTime());
+        }
+    }
+
+    @Test
+    public void testReplay() throws IOException {
+        Path directory = folder.newFolder("replay").toPath();
+        Instant start = Instant.parse("2023-01-01T10:00:00Z");
+        try (CaptureJournal journal = new CaptureJournal(directory)) {
+            for (int i = 0; i < 5; i++) {
+                journal.append(start.plusSeconds(2 * i), ("capture " + i).getBytes(StandardCharsets.UTF_8));
+            }
+        }
+
+        JournalDataSource<String> source = new JournalDataSource<>(directory, CaptureJournalTest::read,
+                JournalDataSource.UNLIMITED_SPEED);
+        assertEquals(5, source.getRecordCount());
+        for (int i = 0; i < 5; i++) {
+            assertEquals("capture " + i, source.get());
+        }
+        assertNull(source.get());
+        source.reset();
+        assertEquals("capture 0", source.get());
+    }
+
+    @Test
+    public void testEmptyRecordRefused() throws IOException {
+        Path directory = folder.newFolder("empty").toPath();
+        Instant start = Instant.parse("2023-01-01T10:00:00Z");
+        try (CaptureJournal journal = new CaptureJournal(directory)) {
+            journal.append(start, "capture 0".getBytes(StandardCharsets.UTF_8));
+            try {
+                journal.append(start.plusSeconds(2), new ByteArrayInputStream(new byte[0]));
+                fail("Empty record was accepted");
+            } catch (IllegalArgumentException expected) {
+                // The empty record would have ended the segment.
+            }
+            try {
+                journal.append(start.plusSeconds(2), new byte[0]);
+                fail("Empty record was accepted");
+            } catch (IllegalArgumentException expected) {
+                // The empty record would have ended the segment.
+            }
+            journal.append(start.plusSeconds(4), "capture 2".getBytes(StandardCharsets.UTF_8));
+        }
+
+        List<CaptureJournal.Record> records = CaptureJournal.readAll(directory);
+        assertEquals(2, records.size());
+        assertEquals("capture 2", read(records.get(1).getInputStream()));
+    }
+
+    @Test
+    public void testReplayWaitsWithoutLock() throws Exception {
+        Path directory = folder.newFolder("paced").toPath();
+        Instant start = Instant.parse("2023-01-01T10:00:00Z");
+        try (CaptureJournal journal = new CaptureJournal(directory)) {
+            journal.append(start, "capture 0".getBytes(StandardCharsets.UTF_8));
+            journal.append(start.plusSeconds(2), "capture 1".getBytes(StandardCharsets.UTF_8));
+        }
+
+        JournalDataSource<String> source = new JournalDataSource<>(directory, CaptureJournalTest::read, 2);
+        assertEquals("capture 0", source.get());
+        CompletableFuture<String> next = CompletableFuture.supplyAsync(source::get);
+
+        // The source is not locked, while the replay waits for the second record.
+        Thread.sleep(200);
+        assertFalse(next.isDone());
+        CompletableFuture<Boolean> locked = CompletableFuture.supplyAsync(() -> {
+            synchronized (source) {
+                return Boolean.TRUE;
+            }
+        });
+        assertTrue(locked.get(500, TimeUnit.MILLISECONDS));
+        assertFalse(next.isDone());
+        assertEquals("capture 1", next.get(5, TimeUnit.SECONDS));
+    }
+}
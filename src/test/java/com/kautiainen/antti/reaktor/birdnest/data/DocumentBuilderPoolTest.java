@@ -0,0 +1,197 @@
+package com.kautiainen.antti.reaktor.birdnest.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.lang.System.Logger.Level;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.parsers.DocumentBuilder;
+
+import org.junit.Assume;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+
+/**
+ * Testing DocumentBuilderPool.
+ */
+public class DocumentBuilderPoolTest {
+
+    /**
+     * The system property enabling the benchmarks, e.g.
+     * {@code mvn test -Dbirdnest.benchmarks=true}.
+     */
+    private static final String BENCHMARKS_PROPERTY = "birdnest.benchmarks";
+
+    /**
+     * Create a stream of the XML content.
+     *
+     * @param content The XML content.
+     * @return The stream of the UTF-8 encoded content.
+     */
+    private static InputStream xml(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Assert the pool refuses the document.
+     *
+     * @param pool    The pool.
+     * @param content The refused XML content.
+     */
+    private static void assertRefused(DocumentBuilderPool pool, String content) throws Exception {
+        try {
+            pool.parse(xml(content));
+            fail("Document was accepted: " + content);
+        } catch (SAXException expected) {
+            // The document type declarations are refused.
+        }
+    }
+
+    @Test
+    public void testReuse() throws Exception {
+        DocumentBuilderPool pool = new DocumentBuilderPool(2);
+        DocumentBuilder builder = pool.borrow();
+        List<SAXParseException> errors = new ArrayList<>();
+        builder.setErrorHandler(new ErrorHandler() {
+            @Override
+            public void warning(SAXParseException exception) {
+                errors.add(exception);
+            }
+
+            @Override
+            public void error(SAXParseException exception) {
+                errors.add(exception);
+            }
+
+            @Override
+            public void fatalError(SAXParseException exception) throws SAXException {
+                errors.add(exception);
+                throw exception;
+            }
+        });
+        try {
+            builder.parse(xml("<drones>"));
+            fail("Truncated document was accepted");
+        } catch (SAXException expected) {
+            assertEquals(1, errors.size());
+        }
+        pool.release(builder);
+        assertEquals(1, pool.getIdleCount());
+
+        // The returned builder is reused without the handler of the previous user.
+        DocumentBuilder reused = pool.borrow();
+        assertSame(builder, reused);
+        assertEquals(0, pool.getIdleCount());
+        try {
+            reused.parse(xml("<drones>"));
+            fail("Truncated document was accepted");
+        } catch (SAXException expected) {
+            assertEquals(1, errors.size());
+        }
+        pool.release(reused);
+
+        // The pooled parses share the builder, but not the documents.
+        Document first = pool.parse(xml("<drones><drone/></drones>"));
+        Document second = pool.parse(xml("<drones/>"));
+        assertNotSame(first, second);
+        assertEquals(1, first.getElementsByTagName("drone").getLength());
+        assertEquals(0, second.getElementsByTagName("drone").getLength());
+        assertEquals(1, pool.getIdleCount());
+        assertSame(builder, pool.borrow());
+    }
+
+    @Test
+    public void testBound() throws Exception {
+        DocumentBuilderPool pool = new DocumentBuilderPool(2);
+        List<DocumentBuilder> borrowed = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            borrowed.add(pool.borrow());
+        }
+        for (DocumentBuilder builder : borrowed) {
+            pool.release(builder);
+        }
+        assertEquals(2, pool.getIdleCount());
+
+        // Only the kept builders are reused.
+        DocumentBuilder first = pool.borrow(), second = pool.borrow(), third = pool.borrow();
+        assertSame(borrowed.get(0), first);
+        assertSame(borrowed.get(1), second);
+        assertTrue(borrowed.stream().noneMatch((DocumentBuilder builder) -> builder == third));
+        assertEquals(0, pool.getIdleCount());
+
+        // The pool without idle builders creates a builder for each use.
+        DocumentBuilderPool empty = new DocumentBuilderPool(0);
+        DocumentBuilder builder = empty.borrow();
+        empty.release(builder);
+        assertEquals(0, empty.getIdleCount());
+        assertNotSame(builder, empty.borrow());
+    }
+
+    @Test
+    public void testDocumentTypeRefused() throws Exception {
+        DocumentBuilderPool pool = new DocumentBuilderPool(1);
+        assertRefused(pool, "<?xml version=\"1.0\"?><!DOCTYPE drones [<!ENTITY pilot SYSTEM \"file:///etc/passwd\">]>"
+                + "<drones>&pilot;</drones>");
+        assertRefused(pool, "<?xml version=\"1.0\"?><!DOCTYPE drones SYSTEM \"http://localhost:1/drones.dtd\">"
+                + "<drones/>");
+        assertRefused(pool, "<?xml version=\"1.0\"?><!DOCTYPE drones [<!ENTITY a \"aaaa\"><!ENTITY b \"&a;&a;\">]>"
+                + "<drones>&b;</drones>");
+
+        // The builder is returned to the pool after the refusal.
+        assertEquals(1, pool.getIdleCount());
+        assertEquals("drones", pool.parse(xml("<drones/>")).getDocumentElement().getTagName());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeBound() {
+        new DocumentBuilderPool(-1);
+    }
+
+    /**
+     * Per-parse comparison of creating the factory and the builder for each
+     * parse and parsing with the pooled builders. The benchmark is run only with
+     * the system property {@value #BENCHMARKS_PROPERTY}.
+     */
+    @Test
+    public void testParseThroughput() throws Exception {
+        Assume.assumeTrue(Boolean.getBoolean(BENCHMARKS_PROPERTY));
+        StringBuilder report = new StringBuilder("<report><capture snapshotTimestamp=\"2022-12-20T10:00:00.000Z\">");
+        for (int i = 0; i < 10; i++) {
+            report.append("<drone><serialNumber>SN-").append(i).append("</serialNumber><positionY>")
+                    .append(100000 + i).append("</positionY><positionX>").append(200000 + i)
+                    .append("</positionX><altitude>4000</altitude></drone>");
+        }
+        byte[] content = report.append("</capture></report>").toString().getBytes(StandardCharsets.UTF_8);
+        DocumentBuilderPool pool = new DocumentBuilderPool(1);
+        int rounds = 5000;
+        long[] elapsed = new long[2];
+        for (int warmup = 0; warmup < 2; warmup++) {
+            long startTime = System.nanoTime();
+            for (int i = 0; i < rounds; i++) {
+                DocumentBuilderPool.createFactory().newDocumentBuilder().parse(new ByteArrayInputStream(content));
+            }
+            elapsed[0] = System.nanoTime() - startTime;
+            startTime = System.nanoTime();
+            for (int i = 0; i < rounds; i++) {
+                pool.parse(new ByteArrayInputStream(content));
+            }
+            elapsed[1] = System.nanoTime() - startTime;
+        }
+        System.getLogger(DocumentBuilderPoolTest.class.getName()).log(Level.INFO,
+                "Parsed {0} reports: factory per parse {1} us/parse, pooled builders {2} us/parse", rounds,
+                TimeUnit.NANOSECONDS.toMicros(elapsed[0] / rounds),
+                TimeUnit.NANOSECONDS.toMicros(elapsed[1] / rounds));
+    }
+}
@@ -0,0 +1,130 @@
+package com.kautiainen.antti.reaktor.birdnest.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient.Version;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Testing the connection reuse of the shared HTTP client against a local HTTP
+ * stub.
+ */
+public class HttpClientRegistryTest {
+
+    /**
+     * The number of requests of a test.
+     */
+    private static final int REQUESTS = 50;
+
+    /**
+     * The stub server.
+     */
+    private HttpServer server;
+
+    /**
+     * The remote addresses of the connections the server has accepted.
+     */
+    private final Set<InetSocketAddress> connections = ConcurrentHashMap.newKeySet();
+
+    /**
+     * The number of the requests offering a protocol upgrade.
+     */
+    private final AtomicInteger upgrades = new AtomicInteger();
+
+    @Before
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", (HttpExchange exchange) -> {
+            connections.add(exchange.getRemoteAddress());
+            if (exchange.getRequestHeaders().containsKey("Upgrade")) {
+                upgrades.incrementAndGet();
+            }
+            byte[] body = "content".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+    }
+
+    @After
+    public void stopServer() {
+        server.stop(0);
+    }
+
+    /**
+     * Read the stream as a string.
+     *
+     * @param in The stream.
+     * @return The content of the stream.
+     */
+    private static String read(InputStream in) {
+        try (in) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Create a new registry.
+     *
+     * @return The registry with the default settings.
+     */
+    private static HttpClientRegistry createRegistry() {
+        return new HttpClientRegistry(Version.HTTP_2, null, HttpClientRegistry.DEFAULT_CONNECT_TIMEOUT,
+                HttpClientRegistry.DEFAULT_REQUEST_TIMEOUT, HttpClientRegistry.DEFAULT_POOL_SIZE);
+    }
+
+    /**
+     * Perform the requests.
+     *
+     * @param shared Do the requests use the same registry.
+     */
+    private void performRequests(boolean shared) {
+        URI uri = URI.create("http://localhost:" + server.getAddress().getPort() + "/drones");
+        HttpClientRegistry registry = createRegistry();
+        for (int i = 0; i < REQUESTS; i++) {
+            HttpDataSource<String> source = new HttpDataSource<>(uri, HttpClientRegistryTest::read);
+            source.setClientRegistry(shared ? registry : createRegistry());
+            assertEquals("content", source.get());
+            if (!shared) {
+                source.getClientRegistry().shutdown();
+            }
+        }
+        registry.shutdown();
+    }
+
+    @Test
+    public void testConnectionReuse() {
+        performRequests(true);
+        int sharedConnections = connections.size();
+        connections.clear();
+        performRequests(false);
+        int separateConnections = connections.size();
+
+        assertTrue("Shared client did not reuse connections", sharedConnections < REQUESTS / 2);
+        assertTrue(separateConnections >= REQUESTS);
+
+        // The HTTP/2 client does not offer the h2c upgrade on the plain connections.
+        assertEquals(0, upgrades.get());
+    }
+}
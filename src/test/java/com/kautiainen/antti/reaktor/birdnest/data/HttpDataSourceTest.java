@@ -0,0 +1,186 @@
+package com.kautiainen.antti.reaktor.birdnest.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StreamCorruptedException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Testing the response handling of HttpDataSource against a local HTTP stub.
+ */
+public class HttpDataSourceTest {
+
+    /**
+     * The stub server.
+     */
+    private HttpServer server;
+
+    /**
+     * The content of the compressed responses.
+     */
+    private static final String COMPRESSED_CONTENT = "<drone><serialNumber>SN-1</serialNumber></drone>".repeat(200);
+
+    /**
+     * The accepted encodings of the requests of the compressed resources.
+     */
+    private final List<String> acceptedEncodings = new java.util.concurrent.CopyOnWriteArrayList<>();
+
+    /**
+     * The number of requests the server has received.
+     */
+    private final AtomicInteger requests = new AtomicInteger();
+
+    @Before
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", (HttpExchange exchange) -> {
+            int request = requests.incrementAndGet();
+            byte[] body = ("response " + request).getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "text/plain; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.createContext("/validated", (HttpExchange exchange) -> {
+            requests.incrementAndGet();
+            exchange.getResponseHeaders().add("ETag", "\"v1\"");
+            if ("\"v1\"".equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                exchange.sendResponseHeaders(304, -1);
+                exchange.close();
+                return;
+            }
+            byte[] body = "validated".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        for (String encoding : new String[] { "gzip", "deflate" }) {
+            server.createContext("/" + encoding, (HttpExchange exchange) -> {
+                requests.incrementAndGet();
+                acceptedEncodings.add(String.valueOf(exchange.getRequestHeaders().getFirst("Accept-Encoding")));
+                ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+                try (OutputStream out = "gzip".equals(encoding) ? new GZIPOutputStream(compressed)
+                        : new DeflaterOutputStream(compressed)) {
+                    out.write(COMPRESSED_CONTENT.getBytes(StandardCharsets.UTF_8));
+                }
+                exchange.getResponseHeaders().add("Content-Encoding", encoding);
+                exchange.sendResponseHeaders(200, compressed.size());
+                try (OutputStream out = exchange.getResponseBody()) {
+                    compressed.writeTo(out);
+                }
+            });
+        }
+        server.start();
+    }
+
+    @After
+    public void stopServer() {
+        server.stop(0);
+    }
+
+    /**
+     * Create a source reading the response as a string.
+     *
+     * @return The created source.
+     */
+    private HttpDataSource<String> createSource() {
+        return createSource("/data");
+    }
+
+    /**
+     * Create a source reading the response of the path as a string.
+     *
+     * @param path The path of the resource.
+     * @return The created source.
+     */
+    private HttpDataSource<String> createSource(String path) {
+        return new HttpDataSource<>(URI.create("http://localhost:" + server.getAddress().getPort() + path),
+                (InputStream in) -> {
+                    try {
+                        return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+    }
+
+    @Test
+    public void testSingleRequest() {
+        HttpDataSource<String> source = createSource();
+        assertEquals("response 1", source.get());
+        assertEquals("response 2", source.get());
+        assertEquals(2, requests.get());
+        assertEquals(2, source.getResponseCount());
+        assertEquals("response 1response 2".length(), source.getBytesReceived());
+        assertEquals(0, source.getUnconsumedResponseCount());
+    }
+
+    @Test
+    public void testContentType() {
+        HttpDataSource<String> source = createSource();
+        List<Exception> errors = new ArrayList<>();
+        source.addExceptionHandler(new DataSource.ExceptionHandler() {
+            @Override
+            public boolean handleException(Exception e) {
+                return errors.add(e);
+            }
+        });
+        source.setAcceptedContentTypes("application/xml");
+        assertNull(source.get());
+        assertEquals(1, errors.size());
+        assertTrue(errors.get(0) instanceof StreamCorruptedException);
+
+        source.setAcceptedContentTypes("application/xml", "text/plain");
+        assertEquals("response 2", source.get());
+    }
+
+    @Test
+    public void testNotModified() {
+        HttpDataSource<String> source = createSource("/validated/");
+        assertEquals("validated", source.get());
+        assertEquals("validated", source.get());
+        assertEquals("validated", source.get());
+        assertEquals(3, requests.get());
+        assertEquals(2, source.getNotModifiedCount());
+        assertEquals(2 * "validated".length(), source.getBytesSaved());
+
+        source.setConditionalRequestsEnabled(false);
+        assertEquals("validated", source.get());
+        assertEquals(2, source.getNotModifiedCount());
+    }
+
+    @Test
+    public void testCompression() {
+        for (String encoding : new String[] { "gzip", "deflate" }) {
+            HttpDataSource<String> source = createSource("/" + encoding + "/");
+            assertEquals(COMPRESSED_CONTENT, source.get());
+            assertTrue(source.getBytesReceived() < COMPRESSED_CONTENT.length() / 10);
+            assertEquals(0, source.getUnconsumedResponseCount());
+        }
+        assertEquals(List.of(HttpDataSource.ACCEPTED_ENCODINGS, HttpDataSource.ACCEPTED_ENCODINGS),
+                acceptedEncodings);
+    }
+}
@@ -0,0 +1,240 @@
+package com.kautiainen.antti.reaktor.birdnest.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Testing PersistentCache.
+ */
+public class PersistentCacheTest {
+
+    /**
+     * The folder of the cache files.
+     */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * The clock advanced by the test.
+     */
+    private final TtlCacheTest.TestClock clock = new TtlCacheTest.TestClock();
+
+    /**
+     * The time to live of the values.
+     */
+    private static final Duration TTL = Duration.ofMinutes(10);
+
+    /**
+     * Encode the string.
+     *
+     * @param value The string.
+     * @return The UTF-8 bytes of the string.
+     */
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Get the cached string.
+     *
+     * @param cache The cache.
+     * @param key   The key.
+     * @return The cached string, or an undefined value, if the key has no value.
+     */
+    private static String getString(PersistentCache cache, String key) {
+        PersistentCache.Entry entry = cache.get(key);
+        return entry == null ? null : new String(entry.getValue(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testReopen() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("pilots").resolve("pilots.log");
+        try (PersistentCache cache = new PersistentCache(file, TTL, clock)) {
+            cache.put("SN-1", bytes("{\"pilotId\":\"P-1\"}"));
+            cache.put("SN-2", bytes("{\"pilotId\":\"P-2\"}"));
+            clock.advance(Duration.ofMinutes(1));
+            cache.put("SN-1", bytes("{\"pilotId\":\"P-3\"}"));
+            assertTrue(cache.remove("SN-2"));
+            assertFalse(cache.remove("SN-2"));
+        }
+
+        try (PersistentCache cache = new PersistentCache(file, TTL, clock)) {
+            assertEquals("{\"pilotId\":\"P-3\"}", getString(cache, "SN-1"));
+            assertEquals(clock.instant().plus(TTL), cache.get("SN-1").getExpireTime());
+            assertNull(cache.get("SN-2"));
+            assertEquals(1, cache.size());
+            assertEquals(3, cache.getGarbageCount());
+            assertEquals(0, cache.getCompactionCount());
+        }
+    }
+
+    @Test
+    public void testPurgeOnLoad() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("pilots.log");
+        try (PersistentCache cache = new PersistentCache(file, TTL, clock)) {
+            cache.put("SN-expired", bytes("expired pilot"));
+            clock.advance(Duration.ofMinutes(5));
+            cache.put("SN-live", bytes("live pilot"));
+        }
+
+        // The expired value is purged from the storage, when the cache is opened.
+        clock.advance(Duration.ofMinutes(6));
+        try (PersistentCache cache = new PersistentCache(file, TTL, clock)) {
+            assertNull(cache.get("SN-expired"));
+            assertEquals("live pilot", getString(cache, "SN-live"));
+            assertEquals(1, cache.getCompactionCount());
+            assertEquals(0, cache.getGarbageCount());
+            assertEquals(1, cache.getEntries().size());
+        }
+        String content = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+        assertFalse(content.contains("SN-expired"));
+        assertFalse(content.contains("expired pilot"));
+        assertTrue(content.contains("live pilot"));
+
+        // The values expire at runtime.
+        clock.advance(Duration.ofMinutes(5));
+        try (PersistentCache cache = new PersistentCache(file, TTL, clock)) {
+            assertEquals(0, cache.size());
+            assertEquals(0, Files.size(file));
+        }
+    }
+
+    @Test
+    public void testCompaction() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("pilots.log");
+        try (PersistentCache cache = new PersistentCache(file, TTL, clock)) {
+            cache.put("SN-2", bytes("other pilot"));
+            for (int i = 0; i <= PersistentCache.MIN_COMPACTION_GARBAGE; i++) {
+                cache.put("SN-1", bytes("pilot " + i));
+            }
+            assertEquals(1, cache.getCompactionCount());
+            assertEquals(0, cache.getGarbageCount());
+
+            // The expired values are purged on request.
+            clock.advance(TTL);
+            cache.put("SN-1", bytes("pilot"));
+            assertEquals(1, cache.purgeExpired());
+            assertEquals(2, cache.getCompactionCount());
+            assertEquals(0, cache.getGarbageCount());
+        }
+        try (PersistentCache cache = new PersistentCache(file, TTL, clock)) {
+            assertEquals("pilot", getString(cache, "SN-1"));
+            assertEquals(1, cache.size());
+        }
+    }
+
+    @Test
+    public void testClosed() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("pilots.log");
+        PersistentCache cache = new PersistentCache(file, TTL, clock);
+        cache.put("SN-1", bytes("pilot"));
+        cache.close();
+        try {
+            cache.compact();
+            fail("Closed cache was compacted");
+        } catch (IOException expected) {
+            // The log is not reopened.
+        }
+        try {
+            cache.put("SN-2", bytes("pilot"));
+            fail("Closed cache was written");
+        } catch (IOException expected) {
+            // The log is not reopened.
+        }
+        clock.advance(TTL);
+        assertEquals(1, cache.purgeExpired());
+        assertEquals(0, cache.getCompactionCount());
+    }
+
+    @Test
+    public void testIncompleteRecord() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("pilots.log");
+        try (PersistentCache cache = new PersistentCache(file, TTL, clock)) {
+            cache.put("SN-1", bytes("pilot"));
+        }
+        // Writing a record interrupted by a crash.
+        try (DataOutputStream out = new DataOutputStream(
+                Files.newOutputStream(file, StandardOpenOption.APPEND))) {
+            out.writeUTF("SN-2");
+            out.writeLong(clock.instant().plus(TTL).toEpochMilli());
+            out.writeInt(100);
+            out.write(bytes("truncated"));
+        }
+
+        try (PersistentCache cache = new PersistentCache(file, TTL, clock)) {
+            assertEquals("pilot", getString(cache, "SN-1"));
+            assertNull(cache.get("SN-2"));
+            assertEquals(1, cache.getCompactionCount());
+            cache.put("SN-3", bytes("appended pilot"));
+        }
+        try (PersistentCache cache = new PersistentCache(file, TTL, clock)) {
+            assertEquals("appended pilot", getString(cache, "SN-3"));
+            assertEquals(2, cache.size());
+        }
+    }
+
+    @Test
+    public void testRecordCutWithinKey() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("pilots.log");
+        try (PersistentCache cache = new PersistentCache(file, TTL, clock)) {
+            cache.put("SN-1", bytes("pilot"));
+        }
+        long complete = Files.size(file);
+        try (PersistentCache cache = new PersistentCache(file, TTL, clock)) {
+            cache.put("SN-2", bytes("torn pilot"));
+        }
+        // Cutting the log within the key of the second record by a crash.
+        try (java.nio.channels.FileChannel channel = java.nio.channels.FileChannel.open(file,
+                StandardOpenOption.WRITE)) {
+            channel.truncate(complete + 4);
+        }
+
+        try (PersistentCache cache = new PersistentCache(file, TTL, clock)) {
+            assertNull(cache.get("SN-2"));
+            assertEquals(1, cache.getCompactionCount());
+            cache.put("SN-3", bytes("appended pilot"));
+        }
+        try (PersistentCache cache = new PersistentCache(file, TTL, clock)) {
+            assertEquals("pilot", getString(cache, "SN-1"));
+            assertEquals("appended pilot", getString(cache, "SN-3"));
+            assertEquals(2, cache.size());
+            assertEquals(0, cache.getCompactionCount());
+        }
+    }
+
+    @Test
+    public void testInvalidLength() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("pilots.log");
+        try (PersistentCache cache = new PersistentCache(file, TTL, clock)) {
+            cache.put("SN-1", bytes("pilot"));
+        }
+        // Writing a record whose length was corrupted.
+        try (DataOutputStream out = new DataOutputStream(
+                Files.newOutputStream(file, StandardOpenOption.APPEND))) {
+            out.writeUTF("SN-2");
+            out.writeLong(clock.instant().plus(TTL).toEpochMilli());
+            out.writeInt(Integer.MAX_VALUE);
+        }
+
+        try (PersistentCache cache = new PersistentCache(file, TTL, clock)) {
+            assertEquals("pilot", getString(cache, "SN-1"));
+            assertNull(cache.get("SN-2"));
+            assertEquals(1, cache.getCompactionCount());
+        }
+    }
+}
@@ -0,0 +1,246 @@
+package com.kautiainen.antti.reaktor.birdnest.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Testing ResiliencePolicy against a flaky local HTTP stub.
+ */
+public class ResiliencePolicyTest {
+
+    /**
+     * The clock advanced by the test.
+     */
+    private static class TestClock extends Clock {
+
+        /**
+         * The current time.
+         */
+        private volatile Instant now_ = Instant.parse("2022-12-20T10:00:00.000Z");
+
+        /**
+         * Advance the clock.
+         *
+         * @param amount The advanced duration.
+         */
+        void advance(Duration amount) {
+            now_ = now_.plus(amount);
+        }
+
+        @Override
+        public Instant instant() {
+            return now_;
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+    }
+
+    /**
+     * The stub server.
+     */
+    private HttpServer server;
+
+    /**
+     * The number of requests the server has received.
+     */
+    private final AtomicInteger requests = new AtomicInteger();
+
+    /**
+     * The number of the next requests failing with status 503.
+     */
+    private final AtomicInteger failures = new AtomicInteger();
+
+    /**
+     * The clock of the tested policy.
+     */
+    private final TestClock clock = new TestClock();
+
+    @Before
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", (HttpExchange exchange) -> {
+            int request = requests.incrementAndGet();
+            if (failures.getAndUpdate((int count) -> Math.max(0, count - 1)) > 0) {
+                exchange.sendResponseHeaders(503, -1);
+                exchange.close();
+                return;
+            }
+            byte[] body = ("response " + request).getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+    }
+
+    @After
+    public void stopServer() {
+        server.stop(0);
+    }
+
+    /**
+     * Create a policy with short delays and the test clock.
+     *
+     * @param maxAttempts      The maximum number of attempts.
+     * @param failureThreshold The number of failures opening the circuit.
+     * @return The created policy.
+     */
+    private ResiliencePolicy createPolicy(int maxAttempts, int failureThreshold) {
+        return new ResiliencePolicy(Duration.ofMillis(1), Duration.ofMillis(10), maxAttempts, failureThreshold,
+                Duration.ofSeconds(10), clock, new Random(42));
+    }
+
+    /**
+     * Create a source reading the response as a string.
+     *
+     * @param policy The resilience policy of the source.
+     * @return The created source.
+     */
+    private HttpDataSource<String> createSource(ResiliencePolicy policy) {
+        HttpDataSource<String> source = new HttpDataSource<>(
+                URI.create("http://localhost:" + server.getAddress().getPort() + "/data"), (InputStream in) -> {
+                    try {
+                        return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+        source.setResiliencePolicy(policy);
+        return source;
+    }
+
+    @Test
+    public void testRetry() {
+        ResiliencePolicy policy = createPolicy(3, 5);
+        HttpDataSource<String> source = createSource(policy);
+        failures.set(2);
+
+        assertEquals("response 3", source.get());
+        assertEquals(3, requests.get());
+        assertEquals(ResiliencePolicy.State.CLOSED, policy.getEndpoint(source.getSourceURI()).getState());
+        assertEquals(0, policy.getEndpoint(source.getSourceURI()).getFailureCount());
+    }
+
+    @Test
+    public void testCircuitBreaker() {
+        ResiliencePolicy policy = createPolicy(1, 3);
+        HttpDataSource<String> source = createSource(policy);
+        List<Exception> errors = new CopyOnWriteArrayList<>();
+        source.addExceptionHandler(new DataSource.ExceptionHandler() {
+            @Override
+            public boolean handleException(Exception exception) {
+                errors.add(exception);
+                return true;
+            }
+        });
+        ResiliencePolicy.Endpoint endpoint = policy.getEndpoint(source.getSourceURI());
+        failures.set(Integer.MAX_VALUE);
+
+        for (int i = 0; i < 3; i++) {
+            assertNull(source.get());
+        }
+        assertEquals(ResiliencePolicy.State.OPEN, endpoint.getState());
+        assertEquals(Duration.ofSeconds(10), endpoint.getRetryAfter());
+
+        // The open circuit rejects the requests without sending them.
+        assertNull(source.get());
+        assertEquals(3, requests.get());
+        assertEquals(1, endpoint.getRejectedCount());
+        assertTrue(errors.get(errors.size() - 1) instanceof ResiliencePolicy.CircuitOpenException);
+
+        // A failed probe opens the circuit again.
+        clock.advance(Duration.ofSeconds(10));
+        assertNull(source.get());
+        assertEquals(4, requests.get());
+        assertEquals(ResiliencePolicy.State.OPEN, endpoint.getState());
+        assertEquals(2, endpoint.getOpenCount());
+
+        // A successful probe closes the circuit.
+        failures.set(0);
+        clock.advance(Duration.ofSeconds(10));
+        assertEquals("response 5", source.get());
+        assertEquals(ResiliencePolicy.State.CLOSED, endpoint.getState());
+    }
+
+    @Test
+    public void testHalfOpenProbe() {
+        ResiliencePolicy policy = createPolicy(1, 1);
+        ResiliencePolicy.Endpoint endpoint = policy.getEndpoint(URI.create("http://example.com/a"));
+        assertTrue(endpoint == policy.getEndpoint(URI.create("http://example.com/b")));
+
+        endpoint.recordFailure();
+        assertEquals(ResiliencePolicy.State.OPEN, endpoint.getState());
+        assertTrue(!endpoint.tryAcquire());
+        clock.advance(Duration.ofSeconds(10));
+        // Only a single probe is let through.
+        assertTrue(endpoint.tryAcquire());
+        assertEquals(ResiliencePolicy.State.HALF_OPEN, endpoint.getState());
+        assertTrue(!endpoint.tryAcquire());
+        // A lost probe is replaced after the open duration.
+        clock.advance(Duration.ofSeconds(10));
+        assertTrue(endpoint.tryAcquire());
+        endpoint.recordSuccess();
+        assertEquals(ResiliencePolicy.State.CLOSED, endpoint.getState());
+    }
+
+    @Test
+    public void testBackoff() {
+        Duration base = Duration.ofMillis(100);
+        Duration max = Duration.ofSeconds(5);
+        ResiliencePolicy first = new ResiliencePolicy(base, max, 3, 5, Duration.ofSeconds(10), clock,
+                new Random(7));
+        ResiliencePolicy second = new ResiliencePolicy(base, max, 3, 5, Duration.ofSeconds(10), clock,
+                new Random(7));
+        ResiliencePolicy.Backoff backoff = first.newBackoff();
+        ResiliencePolicy.Backoff same = second.newBackoff();
+
+        Duration previous = base;
+        for (int i = 0; i < 50; i++) {
+            Duration delay = backoff.next();
+            // The same seed gives the same delays.
+            assertEquals(delay, same.next());
+            assertTrue(delay.compareTo(base) >= 0);
+            assertTrue(delay.compareTo(max) <= 0);
+            assertTrue(delay.compareTo(previous.multipliedBy(3)) <= 0);
+            previous = delay;
+        }
+        assertEquals(50, backoff.getAttempts());
+        backoff.reset();
+        assertEquals(0, backoff.getAttempts());
+        assertTrue(backoff.next().compareTo(base.multipliedBy(3)) <= 0);
+    }
+}
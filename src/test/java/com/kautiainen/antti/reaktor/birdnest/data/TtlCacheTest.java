@@ -0,0 +1,133 @@
+package com.kautiainen.antti.reaktor.birdnest.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+import org.junit.Test;
+
+/**
+ * Testing TtlCache.
+ */
+public class TtlCacheTest {
+
+    /**
+     * The clock advanced by the test.
+     */
+    static class TestClock extends Clock {
+
+        /**
+         * The current time.
+         */
+        private volatile Instant now_ = Instant.parse("2022-12-20T10:00:00.000Z");
+
+        /**
+         * Advance the clock.
+         *
+         * @param amount The advanced duration.
+         */
+        void advance(Duration amount) {
+            now_ = now_.plus(amount);
+        }
+
+        @Override
+        public Instant instant() {
+            return now_;
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+    }
+
+    /**
+     * The clock of the tested caches.
+     */
+    private final TestClock clock = new TestClock();
+
+    @Test
+    public void testTimeToLive() throws IOException {
+        TtlCache<String, String> cache = new TtlCache<>(10, Duration.ofMinutes(30), Duration.ofMinutes(1), clock);
+        assertNull(cache.get("SN-1"));
+        cache.put("SN-1", "pilot");
+        IOException notFound = new FileNotFoundException("SN-2");
+        cache.putFailure("SN-2", notFound);
+
+        assertEquals("pilot", cache.get("SN-1").get());
+        assertTrue(cache.get("SN-2").isNegative());
+        try {
+            cache.get("SN-2").get();
+            fail("The cached failure was not thrown");
+        } catch (FileNotFoundException exception) {
+            assertSame(notFound, exception);
+        }
+
+        // The failure expires before the value.
+        clock.advance(Duration.ofMinutes(1));
+        assertNull(cache.get("SN-2"));
+        assertEquals("pilot", cache.get("SN-1").getValue());
+        clock.advance(Duration.ofMinutes(29));
+        assertNull(cache.get("SN-1"));
+
+        assertEquals(2, cache.getHitCount());
+        assertEquals(2, cache.getNegativeHitCount());
+        assertEquals(3, cache.getMissCount());
+        assertEquals(2, cache.getExpirationCount());
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testSegmentedEviction() {
+        TtlCache<Integer, Integer> cache = new TtlCache<>(5, Duration.ofMinutes(30), Duration.ofMinutes(1), clock);
+        for (int i = 0; i < 3; i++) {
+            cache.put(i, i);
+            // Promoting the entry to the protected segment.
+            cache.get(i);
+        }
+
+        // A scan of the entries used once does not flush the entries used again.
+        for (int i = 10; i < 20; i++) {
+            cache.put(i, i);
+        }
+        assertEquals(5, cache.size());
+        for (int i = 0; i < 3; i++) {
+            assertEquals(Integer.valueOf(i), cache.get(i).getValue());
+        }
+        assertNull(cache.get(10));
+        assertEquals(Integer.valueOf(19), cache.get(19).getValue());
+        assertEquals(8, cache.getEvictionCount());
+
+        // The protected segment overflows to the probationary segment.
+        cache.get(18);
+        assertEquals(Integer.valueOf(0), cache.get(0).getValue());
+        assertEquals(5, cache.size());
+        assertEquals(8, cache.getEvictionCount());
+    }
+
+    @Test
+    public void testBoundedExpiration() {
+        TtlCache<String, String> cache = new TtlCache<>(10, Duration.ofMinutes(30), Duration.ofMinutes(1), clock);
+        cache.put("SN-1", "pilot", clock.instant().plus(Duration.ofMinutes(5)));
+        cache.put("SN-2", "pilot", clock.instant().plus(Duration.ofHours(1)));
+        assertEquals(clock.instant().plus(Duration.ofMinutes(5)), cache.get("SN-1").getExpireTime());
+        assertEquals(clock.instant().plus(Duration.ofMinutes(30)), cache.get("SN-2").getExpireTime());
+        clock.advance(Duration.ofMinutes(5));
+        assertNull(cache.get("SN-1"));
+    }
+}
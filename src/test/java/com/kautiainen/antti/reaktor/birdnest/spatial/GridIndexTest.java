@@ -0,0 +1,93 @@
+package com.kautiainen.antti.reaktor.birdnest.spatial;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Testing GridIndex against linear scans.
+ */
+public class GridIndexTest {
+
+    /**
+     * The number of random positions.
+     */
+    private static final int COUNT = 2000;
+
+    /**
+     * The X coordinates of the positions. Some positions are outside the area.
+     */
+    private final double[] x = new double[COUNT];
+
+    /**
+     * The Y coordinates of the positions. Some positions are outside the area.
+     */
+    private final double[] y = new double[COUNT];
+
+    /**
+     * Create the test with random positions.
+     */
+    public GridIndexTest() {
+        Random random = new Random(42);
+        for (int i = 0; i < COUNT; i++) {
+            x[i] = -20000 + random.nextDouble() * 540000;
+            y[i] = -20000 + random.nextDouble() * 540000;
+        }
+    }
+
+    @Test
+    public void testWithinRadius() {
+        GridIndex index = new GridIndex(x, y, COUNT);
+        double[][] queries = { { 250000, 250000, 100000 }, { 0, 0, 60000 }, { 510000, 120000, 30000 },
+                { 100, 499000, 0 } };
+        for (double[] query : queries) {
+            BitSet expected = new BitSet();
+            for (int i = 0; i < COUNT; i++) {
+                double dx = x[i] - query[0], dy = y[i] - query[1];
+                if (dx * dx + dy * dy <= query[2] * query[2]) {
+                    expected.set(i);
+                }
+            }
+            assertEquals(expected, index.withinRadius(query[0], query[1], query[2]));
+        }
+    }
+
+    @Test
+    public void testWithinRectangle() {
+        GridIndex index = new GridIndex(x, y, COUNT);
+        BitSet expected = new BitSet();
+        for (int i = 0; i < COUNT; i++) {
+            if (x[i] >= -5000 && x[i] <= 123456 && y[i] >= 200000 && y[i] <= 300000) {
+                expected.set(i);
+            }
+        }
+        assertEquals(expected, index.withinRectangle(-5000, 200000, 123456, 300000));
+    }
+
+    @Test
+    public void testNearest() {
+        GridIndex index = new GridIndex(x, y, COUNT);
+        for (double[] point : new double[][] { { 250000, 250000 }, { -30000, 600000 }, { 1000, 1000 } }) {
+            Integer[] all = new Integer[COUNT];
+            for (int i = 0; i < COUNT; i++) {
+                all[i] = i;
+            }
+            Arrays.sort(all, Comparator.comparingDouble((Integer i) -> {
+                double dx = x[i] - point[0], dy = y[i] - point[1];
+                return dx * dx + dy * dy;
+            }));
+            int[] expected = new int[10];
+            for (int i = 0; i < expected.length; i++) {
+                expected[i] = all[i];
+            }
+            assertArrayEquals(expected, index.nearest(point[0], point[1], 10));
+        }
+        assertEquals(0, index.nearest(0, 0, 0).length);
+    }
+}
@@ -0,0 +1,108 @@
+package com.kautiainen.antti.reaktor.birdnest.spatial;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Testing ZoneSet against testing each zone separately.
+ */
+public class ZoneSetTest {
+
+    /**
+     * The number of random positions.
+     */
+    private static final int COUNT = 2000;
+
+    /**
+     * The zones of the tests.
+     */
+    private final List<Zone> zones = List.of(new CircleZone("nest", 250000, 250000, 100000),
+            new CircleZone("corner", 0, 0, 60000), new CircleZone("edge", 510000, 120000, 30000),
+            new PolygonZone("square", new double[] { 300000, 480000, 480000, 300000 },
+                    new double[] { 300000, 300000, 480000, 480000 }),
+            new PolygonZone("triangle", new double[] { 20000, 200000, 20000 },
+                    new double[] { 480000, 480000, 300000 }));
+
+    @Test
+    public void testEvaluate() {
+        Random random = new Random(42);
+        double[] x = new double[COUNT], y = new double[COUNT];
+        for (int i = 0; i < COUNT; i++) {
+            x[i] = -20000 + random.nextDouble() * 540000;
+            y[i] = -20000 + random.nextDouble() * 540000;
+        }
+        ZoneSet set = new ZoneSet(zones);
+        Map<String, BitSet> result = set.evaluate(x, y, COUNT);
+        BitSet any = new BitSet();
+        assertEquals(zones.size(), result.size());
+        for (Zone zone : zones) {
+            BitSet expected = new BitSet();
+            for (int i = 0; i < COUNT; i++) {
+                if (zone.contains(x[i], y[i])) {
+                    expected.set(i);
+                }
+            }
+            assertFalse(zone.getId(), expected.isEmpty());
+            assertEquals(zone.getId(), expected, result.get(zone.getId()));
+            any.or(expected);
+        }
+        assertEquals(any, set.evaluateAny(x, y, COUNT));
+    }
+
+    @Test
+    public void testZones() {
+        CircleZone circle = new CircleZone("circle", 0, 0, 100.5);
+        // The ceiling of the distance is compared with the radius.
+        assertTrue(circle.contains(100, 0));
+        assertFalse(circle.contains(100.5, 0));
+
+        PolygonZone square = new PolygonZone("square", new double[] { 0, 0, 10, 10 }, new double[] { 0, 10, 10, 0 });
+        assertTrue(square.contains(5, 5));
+        assertTrue(square.contains(10, 5));
+        assertFalse(square.contains(11, 5));
+        // The distance is measured to the center of the zone.
+        assertEquals(0.0, square.distance(5, 5), 1e-9);
+        assertEquals(5.0, square.distance(8, 9), 1e-9);
+        assertEquals(100.0, circle.distance(60, -80), 1e-9);
+
+        // The center of the polygon is its centroid, not the mean of its vertices.
+        PolygonZone pentagon = new PolygonZone("pentagon", new double[] { 0, 6, 6, 1, 0 },
+                new double[] { 0, 0, 6, 6, 5 });
+        assertEquals(647.0 / 213, pentagon.getCenterX(), 1e-9);
+        assertEquals(631.0 / 213, pentagon.getCenterY(), 1e-9);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testConcavePolygon() {
+        new PolygonZone("concave", new double[] { 0, 10, 5, 10, 0 }, new double[] { 0, 0, 5, 10, 10 });
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSelfIntersectingPolygon() {
+        // The pentagram turns the same way at each vertex, but twice around.
+        double[] x = new double[5], y = new double[5];
+        for (int i = 0; i < 5; i++) {
+            x[i] = 100 * Math.cos(i * 4 * Math.PI / 5);
+            y[i] = 100 * Math.sin(i * 4 * Math.PI / 5);
+        }
+        new PolygonZone("pentagram", x, y);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDuplicateVertex() {
+        new PolygonZone("duplicate", new double[] { 0, 10, 10, 10, 0 }, new double[] { 0, 0, 10, 10, 10 });
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDuplicateIdentifier() {
+        new ZoneSet(List.of(new CircleZone("a", 0, 0, 1), new CircleZone("a", 5, 5, 1)));
+    }
+}
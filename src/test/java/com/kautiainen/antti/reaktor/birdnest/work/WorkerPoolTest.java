@@ -0,0 +1,136 @@
+package com.kautiainen.antti.reaktor.birdnest.work;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Testing WorkerPool.
+ */
+public class WorkerPoolTest {
+
+    /**
+     * The tested pool.
+     */
+    private final WorkerPool pool = new WorkerPool("test");
+
+    @After
+    public void shutdown() {
+        pool.close();
+    }
+
+    @Test
+    public void testLifecycle() throws InterruptedException {
+        AtomicInteger starts = new AtomicInteger();
+        AtomicInteger steps = new AtomicInteger();
+        AtomicInteger stops = new AtomicInteger();
+        CountDownLatch stepped = new CountDownLatch(2);
+        WorkerPool.Handle handle = pool.start("sleeper", new Worker() {
+
+            @Override
+            public void onStart(WorkerPool.Handle handle) {
+                starts.incrementAndGet();
+            }
+
+            @Override
+            public Duration step() {
+                steps.incrementAndGet();
+                stepped.countDown();
+                return Duration.ofHours(1);
+            }
+
+            @Override
+            public void onStop() {
+                stops.incrementAndGet();
+            }
+        });
+
+        // The worker waits its delay until woken.
+        handle.wake();
+        assertTrue(stepped.await(5, TimeUnit.SECONDS));
+        assertEquals(1, pool.getWorkerCount());
+
+        // Cancelling interrupts the delay, and stops the worker.
+        handle.cancel();
+        assertTrue(handle.await(Duration.ofSeconds(5)));
+        assertTrue(handle.isDone());
+        assertEquals(1, starts.get());
+        assertEquals(2, steps.get());
+        assertEquals(1, stops.get());
+        assertEquals(0, pool.getWorkerCount());
+    }
+
+    @Test
+    public void testEndAndErrors() throws InterruptedException {
+        AtomicInteger steps = new AtomicInteger();
+        List<Exception> errors = new ArrayList<>();
+        WorkerPool.Handle handle = pool.start("counter", new Worker() {
+
+            @Override
+            public Duration step() throws Exception {
+                int step = steps.incrementAndGet();
+                if (step == 2) {
+                    throw new IllegalStateException("Failed step");
+                }
+                return step < 3 ? Duration.ZERO : null;
+            }
+
+            @Override
+            public Duration onError(Exception exception) {
+                errors.add(exception);
+                return Duration.ofMillis(1);
+            }
+        });
+
+        // Returning an undefined delay ends the worker.
+        assertTrue(handle.await(Duration.ofSeconds(5)));
+        assertEquals(3, steps.get());
+        assertEquals(1, errors.size());
+        assertFalse(handle.isCancelled());
+    }
+
+    @Test
+    public void testFanOut() throws Exception {
+        int count = 8;
+        CountDownLatch running = new CountDownLatch(count);
+        List<Callable<Integer>> tasks = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            int value = i;
+            tasks.add(() -> {
+                // All tasks run at the same time.
+                running.countDown();
+                assertTrue(running.await(5, TimeUnit.SECONDS));
+                return value;
+            });
+        }
+
+        List<Future<Integer>> results = pool.invokeAll(tasks);
+        for (int i = 0; i < count; i++) {
+            assertEquals(Integer.valueOf(i), results.get(i).get());
+        }
+    }
+
+    @Test
+    public void testShutdown() throws InterruptedException {
+        WorkerPool.Handle handle = pool.start("blocked", () -> {
+            Thread.sleep(Long.MAX_VALUE);
+            return null;
+        });
+        pool.shutdown(Duration.ofSeconds(5));
+        assertTrue(pool.isShutdown());
+        assertTrue(handle.await(Duration.ofSeconds(5)));
+        assertTrue(handle.isCancelled());
+    }
+}